@@ -0,0 +1,62 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.admission.AdmissionController;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eight threads hammering one machine whose every call holds its lock for a few microseconds
+ * of work, with and without admission control in front. Sample mode reports the latency
+ * percentiles of every call, throttled ones included.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class AdmissionControlBenchmark {
+    private static final long WORK_TOKENS = 2000;
+
+    @Param({"none", "controlled"})
+    public String admission;
+
+    private VendingMachine vendingMachine;
+
+    @Setup
+    public void setUp() {
+        VendingMachine slow = new ConcurrentVendingMachineImpl(true) {
+            @Override
+            public synchronized int tryInsertChange(Change change) {
+                Blackhole.consumeCPU(WORK_TOKENS);
+
+                return super.tryInsertChange(change) == TransactionResult.OK ? TransactionResult.OK
+                        : TransactionResult.CHANGE_NOT_ACCEPTED;
+            }
+        };
+
+        this.vendingMachine = "none".equals(this.admission) ? slow
+                : new AdmissionController(1e6, 64, 1e5, 16, 2, 0).wrap(slow);
+    }
+
+    @Benchmark
+    public int insertAndRefund() {
+        int result = this.vendingMachine.tryInsertChange(Change.TEN_PENCE);
+
+        if (result == TransactionResult.OK) {
+            this.vendingMachine.refundChange();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.fleet.AlertIndex;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the stock alerts of a large fleet current, and reading the most urgent machines off
+ * them, against finding those machines by looking at every machine's stock.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class AlertIndexBenchmark {
+    private static final int ROUTE_LENGTH = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"1000000"})
+        public int size;
+
+        @Param({"10"})
+        public int k;
+
+        VendingFleet fleet;
+        int[] machineIds = new int[ROUTE_LENGTH];
+        int[] slots = new int[ROUTE_LENGTH];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.fleet = new VendingFleet(this.size);
+            Random random = new Random(16);
+
+            for (int i = 0; i < ROUTE_LENGTH; i++) {
+                this.machineIds[i] = random.nextInt(this.size);
+                this.slots[i] = random.nextInt(3);
+            }
+
+            // Spread the fleet's stock levels out so the heaps have some shape
+            for (int id = 0; id < this.size; id++) {
+                this.fleet.restock(id, random.nextInt(3), random.nextInt(40));
+            }
+        }
+    }
+
+    /**
+     * Restock one unit and sell it again, two index updates
+     */
+    @Benchmark
+    public int restockAndSell(Fleet fleet) {
+        int i = fleet.next++ & (ROUTE_LENGTH - 1);
+        int id = fleet.machineIds[i];
+
+        fleet.fleet.restock(id, fleet.slots[i], 1);
+        fleet.fleet.catalog(id).take(fleet.slots[i]);
+        fleet.fleet.getStockAlerts().update(id);
+
+        return id;
+    }
+
+    @Benchmark
+    public int[] mostUrgent(Fleet fleet) {
+        return fleet.fleet.getStockAlerts().mostUrgent(fleet.k);
+    }
+
+    /**
+     * The sweep the index replaces: every machine's emptiest slot, keeping the k lowest
+     */
+    @Benchmark
+    public long[] sweep(Fleet fleet) {
+        long[] lowest = new long[fleet.k];
+        Arrays.fill(lowest, Long.MAX_VALUE);
+        AlertIndex.Urgency urgency = id -> {
+            int stock = Integer.MAX_VALUE;
+
+            for (int slot = 0; slot < 3; slot++) {
+                stock = Math.min(stock, fleet.fleet.catalog(id).getStock(slot));
+            }
+
+            return stock;
+        };
+
+        for (int id = 0; id < fleet.size; id++) {
+            long candidate = ((long) urgency.of(id) << 32) | id;
+
+            if (candidate < lowest[fleet.k - 1]) {
+                int at = fleet.k - 1;
+
+                while (at > 0 && lowest[at - 1] > candidate) {
+                    lowest[at] = lowest[at - 1];
+                    at--;
+                }
+
+                lowest[at] = candidate;
+            }
+        }
+
+        return lowest;
+    }
+}
@@ -0,0 +1,104 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying a backlog of orders through the batch API against one call per coin and sale
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class BatchBenchmark {
+    private static final Change[] CHANGE = Change.values();
+
+    @State(Scope.Benchmark)
+    public static class Backlog {
+        @Param({"1000000"})
+        public int orders;
+
+        @Param({"default", "concurrent"})
+        public String implementation;
+
+        int[] coins;
+        String[] slots;
+        VendingMachine vendingMachine;
+        Product[] products;
+        byte[] results;
+
+        /**
+         * Orders paid with the exact money, as most are, so the cash box never runs short of change
+         */
+        @Setup(Level.Trial)
+        public void generate() {
+            Random random = new Random(42);
+            this.coins = new int[this.orders * CHANGE.length];
+            this.slots = new String[this.orders];
+            this.results = new byte[this.orders];
+
+            for (int order = 0; order < this.orders; order++) {
+                int base = order * CHANGE.length;
+
+                if (random.nextBoolean()) {
+                    this.coins[base + Change.FIFTY_PENCE.ordinal()] = 1;
+                    this.coins[base + Change.TEN_PENCE.ordinal()] = 1;
+                    this.slots[order] = "A";
+                } else {
+                    if (random.nextBoolean()) {
+                        this.coins[base + Change.ONE_POUND.ordinal()] = 1;
+                    } else {
+                        this.coins[base + Change.FIFTY_PENCE.ordinal()] = 2;
+                    }
+
+                    this.slots[order] = "B";
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            this.vendingMachine = Machines.create(this.implementation);
+            this.products = new Product[this.orders];
+
+            for (int order = 0; order < this.orders; order++) {
+                this.products[order] = this.vendingMachine.getProductList().get(this.slots[order]);
+            }
+        }
+    }
+
+    @Benchmark
+    public int oneByOne(Backlog backlog) {
+        VendingMachine vendingMachine = backlog.vendingMachine;
+        int sold = 0;
+
+        for (int order = 0; order < backlog.orders; order++) {
+            for (int ordinal = 0; ordinal < CHANGE.length; ordinal++) {
+                for (int i = backlog.coins[order * CHANGE.length + ordinal]; i > 0; i--) {
+                    vendingMachine.tryInsertChange(CHANGE[ordinal]);
+                }
+            }
+
+            if (vendingMachine.tryPurchase(backlog.products[order]) == TransactionResult.OK) {
+                sold++;
+            }
+        }
+
+        return sold;
+    }
+
+    @Benchmark
+    public int batched(Backlog backlog) {
+        return backlog.vendingMachine.tryPurchase(backlog.coins, backlog.products, 0, backlog.orders, backlog.results);
+    }
+}
@@ -0,0 +1,111 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keypad autocomplete, price filtering and in stock paging over a five thousand slot
+ * micro-market, through the query indexes and by scanning the whole product list.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CatalogQueryBenchmark {
+    private static final int SLOTS = 5000;
+    private static final int PAGE = 20;
+    private static final String[] NAMES = {"Cola", "Crisps", "Chocolate", "Water", "Apple", "Sandwich", "Gum"};
+
+    private ProductCatalog catalog;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(25);
+        String[] codes = new String[SLOTS];
+        String[] names = new String[SLOTS];
+        int[] costs = new int[SLOTS];
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            codes[slot] = String.format("%c%03d", (char) ('A' + slot / 1000), slot % 1000);
+            names[slot] = NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(1000);
+            costs[slot] = 10 * (1 + random.nextInt(300));
+        }
+
+        this.catalog = new ProductCatalog(new Planogram(codes, names, costs));
+
+        // One slot in ten stocked
+        for (int slot = 0; slot < SLOTS; slot++) {
+            this.catalog.restock(slot, random.nextInt(10) == 0 ? 5 : 0);
+        }
+
+        this.catalog.asMap();
+    }
+
+    @Benchmark
+    public List<Product> nameAutocomplete() {
+        return this.catalog.query().namePrefix("cola 1").page(0, PAGE);
+    }
+
+    @Benchmark
+    public List<Product> nameAutocompleteScan() {
+        List<Product> products = new ArrayList<>();
+
+        for (Product product : this.catalog.asMap().values()) {
+            if (product.getName().regionMatches(true, 0, "cola 1", 0, 6)) {
+                products.add(product);
+            }
+        }
+
+        return products.subList(0, Math.min(PAGE, products.size()));
+    }
+
+    @Benchmark
+    public List<Product> priceRange() {
+        return this.catalog.query().costing(1000, 1100).page(0, PAGE);
+    }
+
+    @Benchmark
+    public List<Product> priceRangeScan() {
+        List<Product> products = new ArrayList<>();
+
+        for (Product product : this.catalog.asMap().values()) {
+            if (product.getCost() >= 1000 && product.getCost() <= 1100) {
+                products.add(product);
+            }
+        }
+
+        return products.subList(0, Math.min(PAGE, products.size()));
+    }
+
+    @Benchmark
+    public List<Product> inStockLastPage() {
+        return this.catalog.query().inStock().page(480, PAGE);
+    }
+
+    @Benchmark
+    public List<Product> inStockLastPageScan() {
+        List<Product> products = new ArrayList<>();
+
+        for (Map.Entry<String, Product> entry : new TreeMap<>(this.catalog.asMap()).entrySet()) {
+            if (!entry.getValue().isOutOfStock()) {
+                products.add(entry.getValue());
+            }
+        }
+
+        return products.subList(Math.min(480, products.size()), Math.min(500, products.size()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.impl.ChangeMaker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change making from the precomputed table, from the cache, and from a full search
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChangeMakerBenchmark {
+    private final int[] fullCashBox = {0, 0, 0, 5, 5, 5, 5, 0};
+    private final int[] noTenPence = {0, 0, 0, 0, 5, 5, 5, 0};
+    private final int[] change = new int[8];
+    private final ChangeMaker uncached = new ChangeMaker(new int[]{1, 2, 5, 10, 20, 50, 100, 200}, 1, 0);
+
+    @Benchmark
+    public boolean fromTable() {
+        return ChangeMaker.DEFAULT.makeChange(180, this.fullCashBox, this.change);
+    }
+
+    @Benchmark
+    public boolean fromCache() {
+        return ChangeMaker.DEFAULT.makeChange(160, this.noTenPence, this.change);
+    }
+
+    @Benchmark
+    public boolean fromSearch() {
+        return this.uncached.makeChange(160, this.noTenPence, this.change);
+    }
+}
@@ -0,0 +1,95 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One machine driven by a coin validator, a keypad and a telemetry poller at once.
+ *
+ * The default implementation is not thread-safe, so it is measured the way callers have to use
+ * it today: behind one lock shared by every thread.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedVendingMachineBenchmark {
+
+    @State(Scope.Group)
+    public static class SharedMachine {
+        @Param({"default", "concurrent", "fleet", "metered"})
+        public String implementation;
+
+        VendingMachine vendingMachine;
+        Product product;
+        boolean locked;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            this.vendingMachine = Machines.create(this.implementation);
+            this.product = this.vendingMachine.getProductList().get("B");
+            this.locked = "default".equals(this.implementation);
+        }
+    }
+
+    @Benchmark
+    @Group("machine")
+    @GroupThreads(2)
+    public int coinValidator(SharedMachine machine) {
+        try {
+            if (machine.locked) {
+                synchronized (machine) {
+                    return machine.vendingMachine.insertChange(Change.FIFTY_PENCE);
+                }
+            }
+
+            return machine.vendingMachine.insertChange(Change.FIFTY_PENCE);
+        } catch (ChangeNotAcceptedException e) {
+            // Escrow full, the keypad will catch up
+            return -1;
+        }
+    }
+
+    @Benchmark
+    @Group("machine")
+    @GroupThreads(1)
+    public int keypad(SharedMachine machine) {
+        try {
+            if (machine.locked) {
+                synchronized (machine) {
+                    machine.vendingMachine.purchase(machine.product);
+                }
+            } else {
+                machine.vendingMachine.purchase(machine.product);
+            }
+
+            return 1;
+        } catch (InsufficientChangeException | OutOfStockException e) {
+            return 0;
+        }
+    }
+
+    @Benchmark
+    @Group("machine")
+    @GroupThreads(1)
+    public int telemetry(SharedMachine machine) {
+        if (machine.locked) {
+            synchronized (machine) {
+                return machine.vendingMachine.getBalance();
+            }
+        }
+
+        return machine.vendingMachine.getBalance();
+    }
+}
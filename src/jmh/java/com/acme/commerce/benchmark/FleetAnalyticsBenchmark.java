@@ -0,0 +1,55 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.analytics.FleetAnalytics;
+import com.acme.commerce.vendingmachine.analytics.FleetSummary;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling up a large fleet snapshot, on one thread and on every processor
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FleetAnalyticsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Snapshot {
+        @Param({"1000000"})
+        public int size;
+
+        // 0 for one thread per processor
+        @Param({"1", "0"})
+        public int parallelism;
+
+        MachineSnapshot snapshot;
+        FleetAnalytics analytics;
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.snapshot = new VendingFleet(this.size).snapshot();
+            this.pool = new ForkJoinPool(this.parallelism > 0 ? this.parallelism : Runtime.getRuntime().availableProcessors());
+            this.analytics = new FleetAnalytics(this.pool, FleetAnalytics.DEFAULT_MINIMUM_COINS);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            this.pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public FleetSummary summarize(Snapshot snapshot) {
+        return snapshot.analytics.summarize(snapshot.snapshot);
+    }
+}
@@ -0,0 +1,91 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sale at a randomly chosen machine of a large fleet, so that the working set no longer fits
+ * in cache. Run with {@code -t} to spread the traffic over several threads.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FleetBenchmark {
+    private static final int ROUTE_LENGTH = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"100000"})
+        public int size;
+
+        @Param({"default", "fleet"})
+        public String implementation;
+
+        VendingMachine[] machines;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.machines = new VendingMachine[this.size];
+            VendingFleet fleet = "fleet".equals(this.implementation) ? new VendingFleet(this.size) : null;
+
+            for (int id = 0; id < this.size; id++) {
+                if (fleet == null) {
+                    VendingMachineImpl vendingMachine = new VendingMachineImpl(true);
+                    Machines.restock(vendingMachine.getCatalog());
+                    this.machines[id] = vendingMachine;
+                } else {
+                    Machines.restock(fleet.catalog(id));
+                    this.machines[id] = fleet.machine(id);
+                    this.machines[id].powerOn();
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Route {
+        int[] machineIds = new int[ROUTE_LENGTH];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(Fleet fleet) {
+            Random random = new Random(Thread.currentThread().getId());
+
+            for (int i = 0; i < ROUTE_LENGTH; i++) {
+                this.machineIds[i] = random.nextInt(fleet.size);
+            }
+        }
+    }
+
+    /**
+     * The default implementation is not thread-safe, so each thread locks the machine it visits
+     */
+    @Benchmark
+    public int purchase(Fleet fleet, Route route) throws Exception {
+        VendingMachine vendingMachine = fleet.machines[route.machineIds[route.next++ & (ROUTE_LENGTH - 1)]];
+
+        synchronized (vendingMachine) {
+            vendingMachine.refundChange();
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.purchase(vendingMachine.getProductList().get("B"));
+
+            return vendingMachine.getBalance();
+        }
+    }
+
+    @Benchmark
+    public int getBalance(Fleet fleet, Route route) {
+        return fleet.machines[route.machineIds[route.next++ & (ROUTE_LENGTH - 1)]].getBalance();
+    }
+}
@@ -0,0 +1,100 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.impl.MachineTemplate;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.net.HashRing;
+import com.acme.commerce.vendingmachine.net.MachineClient;
+import com.acme.commerce.vendingmachine.net.MachineServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three server nodes on loopback, called one round trip at a time and in pipelined batches.
+ * Each operation is a coin inserted and refunded, two requests; scores are per operation.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MachineServerBenchmark {
+    private static final int NODES = 3;
+    private static final int MACHINES = 1024;
+    private static final int BATCH = 256;
+
+    private final List<MachineServer> servers = new ArrayList<>();
+    private MachineClient client;
+    private MachineClient.Pipeline pipeline;
+    private int machine;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<VendingMachine[]> served = new ArrayList<>();
+
+        for (int node = 0; node < NODES; node++) {
+            final VendingMachine[] nodeMachines = new VendingMachine[MACHINES];
+            served.add(nodeMachines);
+
+            MachineServer server = new MachineServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    id -> id >= 0 && id < MACHINES ? nodeMachines[id] : null);
+            this.servers.add(server);
+            addresses.add(server.getAddress());
+        }
+
+        HashRing<InetSocketAddress> ring = new HashRing<>(addresses);
+
+        for (int id = 0; id < MACHINES; id++) {
+            served.get(ring.indexOf(id))[id] = new VendingMachineImpl(true, MachineTemplate.defaults());
+        }
+
+        this.client = new MachineClient(ring);
+        this.pipeline = this.client.pipeline();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.client.close();
+
+        for (MachineServer server : this.servers) {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public int roundTrips() throws IOException {
+        int machine = this.machine++ & (MACHINES - 1);
+        this.client.tryInsertChange(machine, Change.ONE_POUND);
+
+        return this.client.refundChange(machine);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int pipelined() throws IOException {
+        MachineClient.Pipeline pipeline = this.pipeline;
+        pipeline.clear();
+
+        for (int i = 0; i < BATCH; i++) {
+            int machine = this.machine++ & (MACHINES - 1);
+            pipeline.insertChange(machine, Change.ONE_POUND);
+            pipeline.refundChange(machine);
+        }
+
+        pipeline.send();
+
+        return pipeline.getValue(pipeline.size() - 1);
+    }
+}
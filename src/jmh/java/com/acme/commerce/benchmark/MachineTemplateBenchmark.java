@@ -0,0 +1,32 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.impl.MachineTemplate;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a default machine, on its own and from the shared template. Run with the gc profiler
+ * to see the bytes each machine costs.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineTemplateBenchmark {
+
+    @Benchmark
+    public VendingMachineImpl standalone() {
+        return new VendingMachineImpl(true);
+    }
+
+    @Benchmark
+    public VendingMachineImpl fromTemplate() {
+        return new VendingMachineImpl(true, MachineTemplate.defaults());
+    }
+}
@@ -0,0 +1,86 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.audit.AuditTrail;
+import com.acme.commerce.vendingmachine.audit.AuditedVendingMachine;
+import com.acme.commerce.vendingmachine.audit.FileAuditSink;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.metrics.MeteredVendingMachine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Builds the implementation named by a benchmark parameter
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+final class Machines {
+    private static final int BOTTOMLESS = 1 << 30;
+
+    private Machines() {
+    }
+
+    /**
+     * Powered on machine with the default products, stocked so deep that no benchmark empties a slot
+     */
+    static VendingMachine create(String implementation) {
+        switch (implementation) {
+            case "default":
+                VendingMachineImpl defaultMachine = new VendingMachineImpl(true);
+                restock(defaultMachine.getCatalog());
+
+                return defaultMachine;
+            case "concurrent":
+                ConcurrentVendingMachineImpl concurrentMachine = new ConcurrentVendingMachineImpl(true);
+                restock(concurrentMachine.getCatalog());
+
+                return concurrentMachine;
+            case "euro":
+                // The concurrent machine again, counting in euro denominations instead of Change ordinals
+                ConcurrentVendingMachineImpl euroMachine = new ConcurrentVendingMachineImpl(true, CurrencyProfile.EUR,
+                        new CatalogPublisher(new ConcurrentVendingMachineImpl().getCatalog().getPlanogram()));
+                restock(euroMachine.getCatalog());
+
+                return euroMachine;
+            case "fleet":
+                VendingFleet fleet = new VendingFleet(1);
+                VendingMachine vendingMachine = fleet.machine(0);
+                vendingMachine.powerOn();
+                restock(fleet.catalog(0));
+
+                return vendingMachine;
+            case "metered":
+                // The concurrent machine behind the metrics decorator, to compare against "concurrent"
+                return new MeteredVendingMachine(create("concurrent"));
+            case "sampled":
+                return new MeteredVendingMachine(create("concurrent"), 16);
+            case "audited":
+                // The concurrent machine recording to a trail whose writer formats every event and writes it away
+                return new AuditedVendingMachine(create("concurrent"), auditTrail(), 0);
+            default:
+                throw new IllegalArgumentException("Unknown implementation " + implementation);
+        }
+    }
+
+    private static AuditTrail auditTrail() {
+        try {
+            return new AuditTrail(new FileAuditSink(Paths.get("/dev/null")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void restock(ProductCatalog catalog) {
+        for (int slot = 0; slot < catalog.getPlanogram().slots(); slot++) {
+            catalog.restock(slot, BOTTOMLESS - catalog.getStock(slot));
+        }
+    }
+}
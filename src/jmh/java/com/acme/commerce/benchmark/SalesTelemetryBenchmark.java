@@ -0,0 +1,60 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.audit.AuditEvent;
+import com.acme.commerce.vendingmachine.telemetry.SalesTelemetry;
+import com.acme.commerce.vendingmachine.telemetry.SalesWindow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting events into the telemetry of a thousand machines, and asking for the last hour of
+ * one machine and of the fleet. Time moves on a second per event so buckets keep turning over.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SalesTelemetryBenchmark {
+    private static final int MACHINES = 1024;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private SalesTelemetry telemetry;
+    private long time;
+    private int machine;
+
+    @Setup
+    public void setUp() {
+        this.telemetry = new SalesTelemetry(MACHINES, new String[]{"A", "B", "C"});
+
+        for (int i = 0; i < 4 * MACHINES * 60; i++) {
+            record();
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        int machine = this.machine++ & (MACHINES - 1);
+        long time = this.time += 1000;
+
+        this.telemetry.record(machine, time, AuditEvent.INSERT, Change.FIFTY_PENCE, null, 50, TransactionResult.OK);
+        this.telemetry.record(machine, time, AuditEvent.PURCHASE, null, "B", 100, TransactionResult.OK);
+    }
+
+    @Benchmark
+    public SalesWindow machineHour() {
+        return this.telemetry.window(this.machine++ & (MACHINES - 1), this.time, HOUR);
+    }
+
+    @Benchmark
+    public SalesWindow fleetHour() {
+        return this.telemetry.fleetWindow(this.time, HOUR);
+    }
+}
@@ -0,0 +1,67 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and restoring a whole fleet through a snapshot file
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SnapshotBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SnapshotFile {
+        @Param({"100000"})
+        public int size;
+
+        VendingFleet fleet;
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            this.fleet = new VendingFleet(this.size);
+            this.file = Files.createTempFile("fleet", ".snapshot");
+
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                this.fleet.snapshot().writeTo(channel);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(this.file);
+        }
+    }
+
+    @Benchmark
+    public VendingFleet restore(SnapshotFile snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile.file, StandardOpenOption.READ)) {
+            return new VendingFleet(MachineSnapshot.readFrom(channel));
+        }
+    }
+
+    @Benchmark
+    public long write(SnapshotFile snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile.file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            snapshotFile.fleet.snapshot().writeTo(channel);
+
+            return channel.size();
+        }
+    }
+}
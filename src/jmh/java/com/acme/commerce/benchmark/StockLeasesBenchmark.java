@@ -0,0 +1,67 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking out and ending a lease while a large number of others are outstanding
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class StockLeasesBenchmark {
+    private static final long LONG_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @State(Scope.Thread)
+    public static class Leases {
+        @Param({"0", "1000000"})
+        public int outstanding;
+
+        StockLeases leases;
+        ProductCatalog[] catalogs;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            VendingFleet fleet = new VendingFleet(1000);
+            this.leases = new StockLeases();
+            this.catalogs = new ProductCatalog[fleet.size()];
+
+            for (int id = 0; id < fleet.size(); id++) {
+                this.catalogs[id] = fleet.catalog(id);
+                Machines.restock(this.catalogs[id]);
+            }
+
+            for (int i = 0; i < this.outstanding; i++) {
+                this.leases.reserve(this.catalogs[i % this.catalogs.length], i % 3, LONG_TIMEOUT_MILLIS);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean reserveAndRelease(Leases leases) {
+        ProductCatalog catalog = leases.catalogs[leases.next++ % leases.catalogs.length];
+        long lease = leases.leases.reserve(catalog, 1, 30000);
+
+        return leases.leases.release(lease);
+    }
+
+    @Benchmark
+    public boolean reserveAndCommit(Leases leases) {
+        ProductCatalog catalog = leases.catalogs[leases.next++ % leases.catalogs.length];
+        long lease = leases.leases.reserve(catalog, 1, 30000);
+        boolean claimed = leases.leases.claim(lease);
+        leases.leases.commit(lease);
+
+        return claimed;
+    }
+}
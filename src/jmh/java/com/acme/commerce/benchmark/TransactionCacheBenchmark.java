@@ -0,0 +1,59 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.idempotency.DeduplicatingVendingMachine;
+import com.acme.commerce.vendingmachine.idempotency.TransactionCache;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A coin inserted and refunded, straight to the machine, with a new transaction id for each
+ * call, and as a retry answered from the cache. The cache is smaller than the transactions
+ * made, so new ids also pay for an eviction.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionCacheBenchmark {
+    private VendingMachine raw;
+    private DeduplicatingVendingMachine deduplicated;
+    private long transaction;
+
+    @Setup
+    public void setUp() {
+        this.raw = new VendingMachineImpl(true);
+        this.deduplicated = new DeduplicatingVendingMachine(new VendingMachineImpl(true), new TransactionCache(), 1);
+        this.deduplicated.tryInsertChange(-1, Change.ONE_POUND);
+        this.deduplicated.refundChange(-2);
+    }
+
+    @Benchmark
+    public int raw() {
+        this.raw.tryInsertChange(Change.ONE_POUND);
+
+        return this.raw.refundChange();
+    }
+
+    @Benchmark
+    public int newTransactions() {
+        this.deduplicated.tryInsertChange(++this.transaction, Change.ONE_POUND);
+
+        return this.deduplicated.refundChange(++this.transaction);
+    }
+
+    @Benchmark
+    public int retries() {
+        this.deduplicated.tryInsertChange(-1, Change.ONE_POUND);
+
+        return this.deduplicated.refundChange(-2);
+    }
+}
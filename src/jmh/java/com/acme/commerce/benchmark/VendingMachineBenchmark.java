@@ -0,0 +1,151 @@
+package com.acme.commerce.benchmark;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded cost of each hot path, per implementation
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VendingMachineBenchmark {
+
+    @State(Scope.Thread)
+    public static class Machine {
+        @Param({"default", "concurrent", "euro", "fleet", "metered", "sampled", "audited"})
+        public String implementation;
+
+        VendingMachine vendingMachine;
+        Product costsOnePound;
+        Product costsOneSeventy;
+
+        /**
+         * A fresh machine each iteration so the cash box never grows without bound
+         */
+        @Setup(Level.Iteration)
+        public void setUp() throws ChangeNotAcceptedException {
+            this.vendingMachine = Machines.create(this.implementation);
+            this.costsOnePound = this.vendingMachine.getProductList().get("B");
+            this.costsOneSeventy = this.vendingMachine.getProductList().get("C");
+
+            // Seven coins in escrow for the balance benchmark, refunded by the others as they go
+            for (int i = 0; i < 6; i++) {
+                this.vendingMachine.insertChange(Change.TEN_PENCE);
+            }
+
+            this.vendingMachine.insertChange(Change.ONE_POUND);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AcceptingMachine {
+        @Param({"default", "concurrent"})
+        public String implementation;
+
+        VendingMachineImpl defaultMachine = new VendingMachineImpl(true);
+        ConcurrentVendingMachineImpl concurrentMachine = new ConcurrentVendingMachineImpl(true);
+        Change[] coins = Change.values();
+        int next;
+    }
+
+    @Benchmark
+    public int insertChange(Machine machine) throws ChangeNotAcceptedException {
+        machine.vendingMachine.refundChange();
+
+        return machine.vendingMachine.insertChange(Change.TWENTY_PENCE);
+    }
+
+    @Benchmark
+    public int getBalance(Machine machine) {
+        return machine.vendingMachine.getBalance();
+    }
+
+    @Benchmark
+    public boolean acceptsChangeDenomination(AcceptingMachine machine) {
+        Change change = machine.coins[machine.next++ & 7];
+
+        return "default".equals(machine.implementation)
+                ? machine.defaultMachine.acceptsChangeDenomination(change)
+                : machine.concurrentMachine.acceptsChangeDenomination(change);
+    }
+
+    /**
+     * Exact money, nothing to pay back
+     */
+    @Benchmark
+    public int purchase(Machine machine) throws Exception {
+        machine.vendingMachine.refundChange();
+        machine.vendingMachine.insertChange(Change.ONE_POUND);
+        machine.vendingMachine.purchase(machine.costsOnePound);
+
+        return machine.vendingMachine.getBalance();
+    }
+
+    /**
+     * 60p change owed, made up from the 50p and 10p just inserted so the cash box never runs dry
+     */
+    @Benchmark
+    public int purchaseWithChange(Machine machine) throws Exception {
+        machine.vendingMachine.refundChange();
+        machine.vendingMachine.insertChange(Change.ONE_POUND);
+        machine.vendingMachine.insertChange(Change.FIFTY_PENCE);
+        machine.vendingMachine.insertChange(Change.TEN_PENCE);
+        machine.vendingMachine.purchase(machine.costsOnePound);
+
+        return machine.vendingMachine.getBalance();
+    }
+
+    /**
+     * The failed sale most often seen in the field
+     */
+    @Benchmark
+    public int purchaseWithInsufficientFunds(Machine machine) throws ChangeNotAcceptedException, OutOfStockException {
+        machine.vendingMachine.refundChange();
+        machine.vendingMachine.insertChange(Change.TEN_PENCE);
+
+        try {
+            machine.vendingMachine.purchase(machine.costsOneSeventy);
+        } catch (InsufficientChangeException e) {
+            return e.getMessage().length();
+        }
+
+        return 0;
+    }
+
+    /**
+     * The same failed sale through the result code API
+     */
+    @Benchmark
+    public int tryPurchaseWithInsufficientFunds(Machine machine) {
+        machine.vendingMachine.refundChange();
+        machine.vendingMachine.tryInsertChange(Change.TEN_PENCE);
+
+        return machine.vendingMachine.tryPurchase(machine.costsOneSeventy);
+    }
+
+    /**
+     * Exact money through the result code API
+     */
+    @Benchmark
+    public int tryPurchase(Machine machine) {
+        machine.vendingMachine.refundChange();
+        machine.vendingMachine.tryInsertChange(Change.ONE_POUND);
+
+        return machine.vendingMachine.tryPurchase(machine.costsOnePound);
+    }
+}
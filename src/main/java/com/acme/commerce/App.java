@@ -1,13 +1,30 @@
 package com.acme.commerce;
 
+import com.acme.commerce.vendingmachine.simulation.LoadGenerator;
+import com.acme.commerce.vendingmachine.simulation.LoadProfile;
+
 /**
- * Hello world!
+ * Runs the load generator against the chosen implementation and prints what it measured
+ *
+ * mvn -q compile exec:java -Dexec.args="--implementation=fleet --machines=10000 --threads=4"
  *
+ * @author William Brown
+ * @since 1.0
  */
-public class App 
-{
-    public static void main( String[] args )
-    {
-        System.out.println( "Hello World!" );
+public class App {
+    public static void main(String[] args) throws InterruptedException {
+        LoadProfile profile;
+
+        try {
+            profile = LoadProfile.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadProfile.usage());
+            System.exit(2);
+
+            return;
+        }
+
+        System.out.print(new LoadGenerator(profile).run());
     }
 }
@@ -0,0 +1,61 @@
+package com.acme.commerce.vendingmachine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Vending Machine whose operations complete later rather than block the caller.
+ *
+ * Operations take effect in the order they are called. Each future completes with what the
+ * matching {@link VendingMachine} method would return, or exceptionally with what it would
+ * throw. A machine that cannot queue any more work completes the future straight away with a
+ * {@link com.acme.commerce.vendingmachine.exception.MachineBusyException}.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface AsyncVendingMachine {
+    CompletableFuture<List<Change>> getAcceptedChange();
+    CompletableFuture<Boolean> isPoweredOn();
+    CompletableFuture<Void> powerOn();
+    CompletableFuture<Void> powerOff();
+    CompletableFuture<Integer> getBalance();
+    CompletableFuture<Map<Change, Integer>> getChangeAvailable();
+    CompletableFuture<Integer> insertChange(Change change);
+    CompletableFuture<List<Change>> getChangeInserted();
+    CompletableFuture<Integer> refundChange();
+    CompletableFuture<Void> reset();
+    CompletableFuture<Void> purchase(Product product);
+    CompletableFuture<Map<String, Product>> getProductList();
+
+    /**
+     * As insertChange, completing with a {@link TransactionResult} code
+     *
+     * @param change
+     * @return CompletableFuture
+     */
+    CompletableFuture<Integer> tryInsertChange(Change change);
+
+    /**
+     * As purchase, completing with a {@link TransactionResult} code
+     *
+     * @param product
+     * @return CompletableFuture
+     */
+    CompletableFuture<Integer> tryPurchase(Product product);
+
+    /**
+     * Operations waiting to run, a measure of how far behind the machine is
+     *
+     * @return int
+     */
+    int getPending();
+
+    /**
+     * Most operations that can wait before new ones are turned away
+     *
+     * @return int
+     */
+    int getCapacity();
+}
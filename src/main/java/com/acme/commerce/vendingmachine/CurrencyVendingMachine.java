@@ -0,0 +1,44 @@
+package com.acme.commerce.vendingmachine;
+
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+
+/**
+ * A Vending Machine that works in the currency of a {@link CurrencyProfile}
+ *
+ * Coins and notes are named by their denomination in the profile. The {@link Change} methods
+ * still work, matching each Change coin to the denomination with the same face value in minor
+ * units, and report only the denominations that have a Change coin of their value.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface CurrencyVendingMachine extends VendingMachine {
+
+    CurrencyProfile getCurrencyProfile();
+
+    /**
+     * Insert a coin or note
+     *
+     * @param denomination One of the profile's denominations
+     * @return int New balance, in minor units
+     * @throws ChangeNotAcceptedException
+     */
+    int insertDenomination(int denomination) throws ChangeNotAcceptedException;
+
+    /**
+     * As insertDenomination, without allocating or throwing
+     *
+     * @param denomination One of the profile's denominations
+     * @return int A {@link TransactionResult} code
+     */
+    int tryInsertDenomination(int denomination);
+
+    /**
+     * Number of coins or notes of a denomination in the cash box
+     *
+     * @param denomination One of the profile's denominations
+     * @return int
+     */
+    int getDenominationAvailable(int denomination);
+}
@@ -0,0 +1,42 @@
+package com.acme.commerce.vendingmachine;
+
+/**
+ * A Vending Machine whose state changing calls can carry a transaction id chosen by the caller.
+ * A call repeated with an id the machine has already seen returns the first call's outcome and
+ * changes nothing, so a caller that timed out can safely retry.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface IdempotentVendingMachine extends VendingMachine {
+    /**
+     * Transaction id of a call that is not to be deduplicated
+     */
+    long NO_TRANSACTION = 0L;
+
+    /**
+     * As tryInsertChange, at most once per transaction id
+     *
+     * @param transactionId
+     * @param change
+     * @return int A {@link TransactionResult} code, the first call's for a repeated id
+     */
+    int tryInsertChange(long transactionId, Change change);
+
+    /**
+     * As tryPurchase, at most once per transaction id
+     *
+     * @param transactionId
+     * @param product
+     * @return int A {@link TransactionResult} code, the first call's for a repeated id
+     */
+    int tryPurchase(long transactionId, Product product);
+
+    /**
+     * As refundChange, at most once per transaction id
+     *
+     * @param transactionId
+     * @return int Amount refunded, the first call's for a repeated id
+     */
+    int refundChange(long transactionId);
+}
@@ -0,0 +1,48 @@
+package com.acme.commerce.vendingmachine;
+
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+
+/**
+ * A Vending Machine that can hold a unit of a product for a customer while they pay
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface ReservableVendingMachine extends VendingMachine {
+    long NO_LEASE = -1L;
+
+    /**
+     * Take a unit of the product out of stock and hold it until it is bought, released or the timeout passes
+     *
+     * @param product       One of this machine's products
+     * @param timeoutMillis
+     * @return long Lease id, or {@link #NO_LEASE} if the product is out of stock or not sold here
+     */
+    long reserve(Product product, long timeoutMillis);
+
+    /**
+     * Give up a reservation, the unit goes back on sale
+     *
+     * @param lease
+     * @return boolean false if the lease had already ended
+     */
+    boolean release(long lease);
+
+    /**
+     * Buy the reserved unit. If the balance falls short the reservation is kept.
+     *
+     * @param lease
+     * @throws OutOfStockException if the reservation has ended
+     * @throws InsufficientChangeException
+     */
+    void purchase(long lease) throws OutOfStockException, InsufficientChangeException;
+
+    /**
+     * As purchase, without allocating or throwing
+     *
+     * @param lease
+     * @return int A {@link TransactionResult} code, RESERVATION_EXPIRED if the reservation has ended
+     */
+    int tryPurchase(long lease);
+}
@@ -0,0 +1,11 @@
+package com.acme.commerce.vendingmachine;
+
+/**
+ * A Vending Machine with several front panels sharing one cash box and one stock
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface SessionVendingMachine extends VendingMachine {
+    VendingSession openSession();
+}
@@ -0,0 +1,52 @@
+package com.acme.commerce.vendingmachine;
+
+/**
+ * Result codes returned by the allocation free transaction methods, such as
+ * {@link VendingMachine#tryPurchase(Product)}
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class TransactionResult {
+    public static final int OK = 0;
+    public static final int CHANGE_NOT_ACCEPTED = 1;
+    public static final int OUT_OF_STOCK = 2;
+    public static final int INSUFFICIENT_FUNDS = 3;
+    public static final int EXACT_CHANGE_ONLY = 4;
+    public static final int RESERVATION_EXPIRED = 5;
+
+    /**
+     * Turned away by admission control before reaching the machine, nothing was changed
+     */
+    public static final int THROTTLED = 6;
+
+    private static final String[] DESCRIPTIONS = {
+            "OK", "CHANGE_NOT_ACCEPTED", "OUT_OF_STOCK", "INSUFFICIENT_FUNDS", "EXACT_CHANGE_ONLY",
+            "RESERVATION_EXPIRED", "THROTTLED"
+    };
+
+    private TransactionResult() {
+    }
+
+    /**
+     * Name of a result code, for logs and reports
+     *
+     * @param result
+     * @return String
+     */
+    public static String describe(int result) {
+        return result >= 0 && result < DESCRIPTIONS.length ? DESCRIPTIONS[result] : "UNKNOWN(" + result + ")";
+    }
+
+    /**
+     * Whether a result is the machine's own answer to a call, rather than {@link #THROTTLED} or a
+     * code from outside this class, such as a protocol rejection, for a call that never reached
+     * the machine and changed nothing
+     *
+     * @param result
+     * @return boolean
+     */
+    public static boolean isOutcome(int result) {
+        return result >= 0 && result < DESCRIPTIONS.length && result != THROTTLED;
+    }
+}
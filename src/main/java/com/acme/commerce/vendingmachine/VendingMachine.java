@@ -25,4 +25,78 @@ public interface VendingMachine {
     void reset();
     void purchase(Product product) throws OutOfStockException, InsufficientChangeException;
     Map<String, Product> getProductList();
+
+    /**
+     * As insertChange, without allocating or throwing
+     *
+     * @param change
+     * @return int A {@link TransactionResult} code
+     */
+    int tryInsertChange(Change change);
+
+    /**
+     * As purchase, without allocating or throwing
+     *
+     * @param product
+     * @return int A {@link TransactionResult} code
+     */
+    int tryPurchase(Product product);
+
+    /**
+     * Insert a run of coins, with the same outcome as calling tryInsertChange on each in turn.
+     * Implementations validate the whole run first and then update the balance once.
+     *
+     * @param coins   Coins in the order they were inserted
+     * @param offset  Index of the first coin
+     * @param length  Number of coins
+     * @param results Receives the {@link TransactionResult} code of each coin, at the coin's index
+     * @return int Number of coins accepted
+     */
+    default int tryInsertChange(Change[] coins, int offset, int length, byte[] results) {
+        int accepted = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            results[i] = (byte) tryInsertChange(coins[i]);
+
+            if (results[i] == TransactionResult.OK) {
+                accepted++;
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Apply a run of orders, each a handful of coins followed by a purchase, with the same
+     * outcome as inserting every order's coins with tryInsertChange and then calling tryPurchase.
+     * Refused coins are left out and coins from an order that does not sell stay in the balance
+     * for the next, just as they would one call at a time.
+     *
+     * @param coins    Coin counts, Change.values().length per order indexed by Change.ordinal()
+     * @param products The product bought by each order
+     * @param offset   Index of the first order
+     * @param length   Number of orders
+     * @param results  Receives the {@link TransactionResult} code of each purchase, at the order's index
+     * @return int Number of orders sold
+     */
+    default int tryPurchase(int[] coins, Product[] products, int offset, int length, byte[] results) {
+        Change[] denominations = Change.values();
+        int sold = 0;
+
+        for (int order = offset; order < offset + length; order++) {
+            for (Change change : denominations) {
+                for (int i = coins[order * denominations.length + change.ordinal()]; i > 0; i--) {
+                    tryInsertChange(change);
+                }
+            }
+
+            results[order] = (byte) tryPurchase(products[order]);
+
+            if (results[order] == TransactionResult.OK) {
+                sold++;
+            }
+        }
+
+        return sold;
+    }
 }
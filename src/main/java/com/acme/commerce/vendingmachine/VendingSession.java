@@ -0,0 +1,32 @@
+package com.acme.commerce.vendingmachine;
+
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+
+import java.util.List;
+
+/**
+ * One customer's transaction at a front panel of a shared machine.
+ *
+ * Each session has its own inserted coin ledger. The machine's cash box and product stock
+ * are only touched when the session purchases, so panels never wait on each other while
+ * coins are being inserted. Closing a session refunds whatever is still inserted.
+ *
+ * The try methods return {@link TransactionResult} codes instead of throwing.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface VendingSession extends AutoCloseable {
+    int insertChange(Change change) throws ChangeNotAcceptedException;
+    int getBalance();
+    List<Change> getChangeInserted();
+    int refundChange();
+    void purchase(Product product) throws OutOfStockException, InsufficientChangeException;
+    int tryInsertChange(Change change);
+    int tryPurchase(Product product);
+
+    @Override
+    void close();
+}
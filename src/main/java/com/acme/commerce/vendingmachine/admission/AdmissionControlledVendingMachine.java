@@ -0,0 +1,173 @@
+package com.acme.commerce.vendingmachine.admission;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.ThrottledException;
+import com.acme.commerce.vendingmachine.exception.TransactionExceptions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission Controlled Vending Machine
+ *
+ * A machine behind its node's {@link AdmissionController}. Coins and purchases must first take
+ * a place in the machine's queue and a token from the machine's and the node's buckets, or are
+ * turned away with {@link TransactionResult#THROTTLED} without reaching the machine: a refused
+ * coin is handed back, and a refused purchase leaves the balance for a later try. The throwing
+ * calls raise a {@link ThrottledException} for either, which callers can tell apart from a sold
+ * out product or a refused coin.
+ * Refunds, reads and servicing always go straight through, so a customer can always get their
+ * money back.
+ *
+ * Adds no lock of its own, so the machine keeps whatever thread safety the wrapped one has. A
+ * caller that must never block, such as a {@link com.acme.commerce.vendingmachine.net.MachineServer}
+ * thread, should use a controller whose longest wait is 0.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class AdmissionControlledVendingMachine implements VendingMachine {
+    private final VendingMachine vendingMachine;
+    private final AdmissionController controller;
+    private final TokenBucket bucket;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    AdmissionControlledVendingMachine(VendingMachine vendingMachine, AdmissionController controller,
+                                      TokenBucket bucket) {
+        this.vendingMachine = vendingMachine;
+        this.controller = controller;
+        this.bucket = bucket;
+    }
+
+    public AdmissionController getController() {
+        return this.controller;
+    }
+
+    /**
+     * Calls running at or waiting for the machine
+     *
+     * @return int
+     */
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    @Override
+    public int tryInsertChange(Change change) {
+        if (!enter()) {
+            return TransactionResult.THROTTLED;
+        }
+
+        try {
+            return this.vendingMachine.tryInsertChange(change);
+        } finally {
+            this.queued.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int tryPurchase(Product product) {
+        if (!enter()) {
+            return TransactionResult.THROTTLED;
+        }
+
+        try {
+            return this.vendingMachine.tryPurchase(product);
+        } finally {
+            this.queued.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException, ThrottledException {
+        TransactionExceptions.checkInsert(tryInsertChange(change));
+
+        return getBalance();
+    }
+
+    @Override
+    public void purchase(Product product)
+            throws OutOfStockException, InsufficientChangeException, ThrottledException {
+        int balance = getBalance();
+
+        TransactionExceptions.checkPurchase(tryPurchase(product), product.getCost() - balance,
+                TransactionExceptions.currencyOf(this.vendingMachine));
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.vendingMachine.getAcceptedChange();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.vendingMachine.isPoweredOn();
+    }
+
+    @Override
+    public void powerOn() {
+        this.vendingMachine.powerOn();
+    }
+
+    @Override
+    public void powerOff() {
+        this.vendingMachine.powerOff();
+    }
+
+    @Override
+    public int getBalance() {
+        return this.vendingMachine.getBalance();
+    }
+
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        return this.vendingMachine.getChangeAvailable();
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.vendingMachine.getChangeInserted();
+    }
+
+    @Override
+    public int refundChange() {
+        return this.vendingMachine.refundChange();
+    }
+
+    @Override
+    public void reset() {
+        this.vendingMachine.reset();
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.vendingMachine.getProductList();
+    }
+
+    /**
+     * Take a place in the queue and be admitted, or give the place back
+     */
+    private boolean enter() {
+        if (this.queued.incrementAndGet() > this.controller.getMaxQueued()) {
+            this.queued.decrementAndGet();
+            this.controller.shedByQueue();
+
+            return false;
+        }
+
+        if (!this.controller.admit(this.bucket)) {
+            this.queued.decrementAndGet();
+
+            return false;
+        }
+
+        return true;
+    }
+}
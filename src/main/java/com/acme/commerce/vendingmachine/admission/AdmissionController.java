@@ -0,0 +1,180 @@
+package com.acme.commerce.vendingmachine.admission;
+
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.metrics.StripedCounters;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission Controller
+ *
+ * Admission control for the machines of one node. Every machine wrapped by {@link #wrap} gets
+ * its own {@link TokenBucket} and wait queue, and all of them share the node's bucket, so a
+ * burst at one machine is held to that machine's rate and a burst across the node to the
+ * node's. A call that would wait longer than the longest wait, or find the machine's queue
+ * full, is turned away with {@link com.acme.commerce.vendingmachine.TransactionResult#THROTTLED}
+ * before it reaches the machine, so the calls that are let in see bounded latency however
+ * many arrive.
+ *
+ * The counters say how many calls were let in, how many of those waited for a token, and how
+ * many were shed for each reason. They are striped, so counting does not contend.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class AdmissionController {
+    private static final int ADMITTED = 0;
+    private static final int DELAYED = 1;
+    private static final int SHED_MACHINE_RATE = 2;
+    private static final int SHED_NODE_RATE = 3;
+    private static final int SHED_QUEUE_FULL = 4;
+    private static final int COUNTERS = 5;
+
+    private final TokenBucket node;
+    private final double machinePermitsPerSecond;
+    private final int machineBurst;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final StockLeases.Ticker ticker;
+    private final StripedCounters counters = new StripedCounters(COUNTERS);
+
+    /**
+     * @param nodePermitsPerSecond    Calls per second across every machine of the node
+     * @param nodeBurst               Calls the node lets in at once after a quiet spell
+     * @param machinePermitsPerSecond Calls per second at any one machine
+     * @param machineBurst            Calls a machine lets in at once after a quiet spell
+     * @param maxQueued               Calls a machine holds at once, running or waiting
+     * @param maxWaitMillis           Longest a call waits for a token before it is turned away, 0 to never wait
+     */
+    public AdmissionController(double nodePermitsPerSecond, int nodeBurst, double machinePermitsPerSecond,
+                               int machineBurst, int maxQueued, long maxWaitMillis) {
+        this(nodePermitsPerSecond, nodeBurst, machinePermitsPerSecond, machineBurst, maxQueued,
+                TimeUnit.MILLISECONDS.toNanos(maxWaitMillis), StockLeases.Ticker.SYSTEM);
+    }
+
+    /**
+     * @param nodePermitsPerSecond    Calls per second across every machine of the node
+     * @param nodeBurst               Calls the node lets in at once after a quiet spell
+     * @param machinePermitsPerSecond Calls per second at any one machine
+     * @param machineBurst            Calls a machine lets in at once after a quiet spell
+     * @param maxQueued               Calls a machine holds at once, running or waiting
+     * @param maxWaitNanos            Longest a call waits for a token before it is turned away, 0 to never wait
+     * @param ticker                  Source of time
+     */
+    public AdmissionController(double nodePermitsPerSecond, int nodeBurst, double machinePermitsPerSecond,
+                               int machineBurst, int maxQueued, long maxWaitNanos, StockLeases.Ticker ticker) {
+        if (!(machinePermitsPerSecond > 0) || machineBurst < 1 || maxQueued < 1 || maxWaitNanos < 0) {
+            throw new IllegalArgumentException("Machines need a positive rate, a burst and queue of at least 1,"
+                    + " and a wait of no less than 0");
+        }
+
+        this.node = new TokenBucket(nodePermitsPerSecond, nodeBurst, ticker);
+        this.machinePermitsPerSecond = machinePermitsPerSecond;
+        this.machineBurst = machineBurst;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWaitNanos;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Put a machine of this node behind admission control
+     *
+     * @param vendingMachine
+     * @return AdmissionControlledVendingMachine
+     */
+    public AdmissionControlledVendingMachine wrap(VendingMachine vendingMachine) {
+        return new AdmissionControlledVendingMachine(vendingMachine, this,
+                new TokenBucket(this.machinePermitsPerSecond, this.machineBurst, this.ticker));
+    }
+
+    public long getAdmitted() {
+        return this.counters.get(ADMITTED);
+    }
+
+    /**
+     * Calls let in that first waited for a token
+     *
+     * @return long
+     */
+    public long getDelayed() {
+        return this.counters.get(DELAYED);
+    }
+
+    /**
+     * Calls turned away for any reason
+     *
+     * @return long
+     */
+    public long getShed() {
+        return getShedByMachineRate() + getShedByNodeRate() + getShedByQueue();
+    }
+
+    public long getShedByMachineRate() {
+        return this.counters.get(SHED_MACHINE_RATE);
+    }
+
+    public long getShedByNodeRate() {
+        return this.counters.get(SHED_NODE_RATE);
+    }
+
+    /**
+     * Calls turned away because their machine already held as many as it queues
+     *
+     * @return long
+     */
+    public long getShedByQueue() {
+        return this.counters.get(SHED_QUEUE_FULL);
+    }
+
+    int getMaxQueued() {
+        return this.maxQueued;
+    }
+
+    /**
+     * Take a token from the machine's bucket and the node's, waiting for them if they are due
+     * soon enough. The caller has already taken its place in the machine's queue.
+     *
+     * @return boolean false if the call is to be turned away
+     */
+    boolean admit(TokenBucket machine) {
+        long machineWait = machine.reserve(this.maxWaitNanos);
+
+        if (machineWait == TokenBucket.REFUSED) {
+            this.counters.increment(SHED_MACHINE_RATE);
+
+            return false;
+        }
+
+        long nodeWait = this.node.reserve(this.maxWaitNanos);
+
+        if (nodeWait == TokenBucket.REFUSED) {
+            machine.release();
+            this.counters.increment(SHED_NODE_RATE);
+
+            return false;
+        }
+
+        long wait = Math.max(machineWait, nodeWait);
+
+        if (wait > 0) {
+            this.counters.increment(DELAYED);
+            long due = this.ticker.nanoTime() + wait;
+
+            // Parking can end early, spuriously or on an interrupt, and the tokens are not ours
+            // until they are due
+            for (long left = wait; left > 0; left = due - this.ticker.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+        }
+
+        this.counters.increment(ADMITTED);
+
+        return true;
+    }
+
+    void shedByQueue() {
+        this.counters.increment(SHED_QUEUE_FULL);
+    }
+}
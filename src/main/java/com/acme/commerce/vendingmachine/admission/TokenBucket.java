@@ -0,0 +1,98 @@
+package com.acme.commerce.vendingmachine.admission;
+
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token Bucket
+ *
+ * A rate limit of so many calls per second with bursts of up to a number of calls, held as
+ * a single time rather than a count of tokens: the time at which the bucket would next be empty
+ * if nothing more were taken (the generic cell rate algorithm). Taking a token is one compare
+ * and set of that time, with no lock and no refill thread, so one bucket can be shared by every
+ * thread on a node.
+ *
+ * A call can also reserve a token that only becomes free a little later, and wait for it; the
+ * time it would have to wait is known up front, so a caller that would wait too long is turned
+ * away at once instead of joining the queue.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class TokenBucket {
+    /**
+     * Returned by {@link #reserve(long)} when no token is free soon enough
+     */
+    public static final long REFUSED = -1L;
+
+    private final StockLeases.Ticker ticker;
+    private final long intervalNanos;
+    private final long burstNanos;
+    // Theoretical time of the next call at the steady rate; the bucket is full while it is in the past
+    private final AtomicLong next;
+
+    /**
+     * @param permitsPerSecond Steady rate
+     * @param burst            Calls allowed at once after a quiet spell, at least 1
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, StockLeases.Ticker.SYSTEM);
+    }
+
+    /**
+     * @param permitsPerSecond Steady rate
+     * @param burst            Calls allowed at once after a quiet spell, at least 1
+     * @param ticker           Source of time
+     */
+    public TokenBucket(double permitsPerSecond, int burst, StockLeases.Ticker ticker) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and a burst of at least 1");
+        }
+
+        this.ticker = ticker;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = (burst - 1) * this.intervalNanos;
+        this.next = new AtomicLong(ticker.nanoTime());
+    }
+
+    /**
+     * Take a token if one is free now
+     *
+     * @return boolean
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Take a token that is free now or within the given wait
+     *
+     * @param maxWaitNanos Longest the caller will wait
+     * @return long Nanoseconds until the token is free, 0 if it is now, or {@link #REFUSED}
+     */
+    public long reserve(long maxWaitNanos) {
+        long now = this.ticker.nanoTime();
+
+        for (;;) {
+            long next = this.next.get();
+            long wait = next - this.burstNanos - now;
+
+            if (wait > maxWaitNanos) {
+                return REFUSED;
+            }
+
+            if (this.next.compareAndSet(next, Math.max(next, now) + this.intervalNanos)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Give back a token taken by reserve but not used, for example because another limit refused the call
+     */
+    public void release() {
+        this.next.addAndGet(-this.intervalNanos);
+    }
+}
@@ -0,0 +1,175 @@
+package com.acme.commerce.vendingmachine.analytics;
+
+import com.acme.commerce.vendingmachine.impl.CoinLedger;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fleet Analytics
+ *
+ * Rolls a {@link MachineSnapshot} of any number of machines up into a {@link FleetSummary}:
+ * cash by denomination, sales and stock by slot, and the machines that need a visit because a
+ * slot is empty or they are low on change. Working from a snapshot means no live machine is
+ * touched and nothing needs copying defensively; the snapshot's column arrays are read directly.
+ *
+ * The machines are split into ranges that are totalled in parallel on a fork/join pool. Range
+ * boundaries fall on multiples of 64 machines, so each task owns whole words of the sold out and
+ * low change bitmaps and writes them without coordination. Partial totals are a few longs per
+ * denomination and slot, so combining them costs nothing next to the scan.
+ *
+ * A summary is exactly as consistent as its snapshot. A snapshot read back from disk, or taken
+ * of machines that are not trading, is a consistent cut. A snapshot of a live fleet is not:
+ * {@link com.acme.commerce.vendingmachine.fleet.VendingFleet#snapshot()} reads every counter
+ * atomically, but a sale in flight may be caught with its unit taken from stock and its coins
+ * not yet banked, or the other way round. Totals
+ * from a live fleet can therefore be out by the sales in flight while it was copied, and a slot
+ * may show as sold out for a sale that then fell through. They settle on the next summary.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class FleetAnalytics {
+    public static final int DEFAULT_MINIMUM_COINS = 3;
+
+    private static final int DENOMINATIONS = CoinLedger.DENOMINATIONS;
+    // Machines per leaf task, a multiple of 64
+    private static final int LEAF_MACHINES = 1 << 13;
+
+    private final ForkJoinPool pool;
+    private final int minimumCoins;
+
+    /**
+     * Analytics on the common pool, counting a machine as low on change below three of any accepted coin
+     */
+    public FleetAnalytics() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MINIMUM_COINS);
+    }
+
+    /**
+     * @param pool         Pool to run on
+     * @param minimumCoins A machine holding fewer of any accepted coin than this is low on change
+     */
+    public FleetAnalytics(ForkJoinPool pool, int minimumCoins) {
+        this.pool = pool;
+        this.minimumCoins = minimumCoins;
+    }
+
+    /**
+     * @param snapshot Machines to summarize
+     * @return FleetSummary
+     */
+    public FleetSummary summarize(MachineSnapshot snapshot) {
+        long[] soldOut = new long[(snapshot.size() + 63) >>> 6];
+        long[] lowChange = new long[soldOut.length];
+        Totals totals = this.pool.invoke(new Rollup(snapshot, CoinLedger.mask(snapshot.getAcceptedChange()),
+                this.minimumCoins, soldOut, lowChange, 0, snapshot.size()));
+
+        return new FleetSummary(snapshot.size(), snapshot.getSlotCodes().clone(), snapshot.getCosts().clone(),
+                totals.cash, totals.sold, totals.stock, BitSet.valueOf(soldOut), BitSet.valueOf(lowChange));
+    }
+
+    /**
+     * Sums over a range of machines
+     */
+    private static final class Totals {
+        final long[] cash = new long[DENOMINATIONS];
+        final long[] sold;
+        final long[] stock;
+
+        Totals(int slots) {
+            this.sold = new long[slots];
+            this.stock = new long[slots];
+        }
+
+        Totals add(Totals other) {
+            for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                this.cash[ordinal] += other.cash[ordinal];
+            }
+
+            for (int slot = 0; slot < this.sold.length; slot++) {
+                this.sold[slot] += other.sold[slot];
+                this.stock[slot] += other.stock[slot];
+            }
+
+            return this;
+        }
+    }
+
+    private static final class Rollup extends RecursiveTask<Totals> {
+        private final MachineSnapshot snapshot;
+        private final int acceptedCoinMask;
+        private final int minimumCoins;
+        private final long[] soldOut;
+        private final long[] lowChange;
+        private final int from;
+        private final int to;
+
+        Rollup(MachineSnapshot snapshot, int acceptedCoinMask, int minimumCoins, long[] soldOut, long[] lowChange,
+               int from, int to) {
+            this.snapshot = snapshot;
+            this.acceptedCoinMask = acceptedCoinMask;
+            this.minimumCoins = minimumCoins;
+            this.soldOut = soldOut;
+            this.lowChange = lowChange;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (this.to - this.from <= LEAF_MACHINES) {
+                return scan();
+            }
+
+            int middle = this.from + (((this.to - this.from) >>> 1) & ~63);
+            Rollup left = new Rollup(this.snapshot, this.acceptedCoinMask, this.minimumCoins, this.soldOut,
+                    this.lowChange, this.from, middle);
+            Rollup right = new Rollup(this.snapshot, this.acceptedCoinMask, this.minimumCoins, this.soldOut,
+                    this.lowChange, middle, this.to);
+            left.fork();
+
+            return right.compute().add(left.join());
+        }
+
+        private Totals scan() {
+            int slots = this.snapshot.slots();
+            int[] changeAvailable = this.snapshot.getChangeAvailable();
+            int[] stock = this.snapshot.getStock();
+            int[] sold = this.snapshot.getSold();
+            Totals totals = new Totals(slots);
+
+            for (int machine = this.from; machine < this.to; machine++) {
+                int coins = machine * DENOMINATIONS;
+                boolean lowOnChange = false;
+
+                for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                    int count = changeAvailable[coins + ordinal];
+                    totals.cash[ordinal] += count;
+                    lowOnChange |= count < this.minimumCoins && (this.acceptedCoinMask & (1 << ordinal)) != 0;
+                }
+
+                int units = machine * slots;
+                boolean emptySlot = false;
+
+                for (int slot = 0; slot < slots; slot++) {
+                    totals.stock[slot] += stock[units + slot];
+                    totals.sold[slot] += sold[units + slot];
+                    emptySlot |= stock[units + slot] <= 0;
+                }
+
+                if (emptySlot) {
+                    this.soldOut[machine >>> 6] |= 1L << machine;
+                }
+
+                if (lowOnChange) {
+                    this.lowChange[machine >>> 6] |= 1L << machine;
+                }
+            }
+
+            return totals;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.acme.commerce.vendingmachine.analytics;
+
+import com.acme.commerce.vendingmachine.Change;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fleet Summary
+ *
+ * Back office totals for a fleet, worked out by {@link FleetAnalytics} from one snapshot so
+ * that every figure describes the same moment.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class FleetSummary {
+    private static final Change[] CHANGE = Change.values();
+
+    private final int machines;
+    private final String[] slotCodes;
+    private final int[] costs;
+    private final long[] cash;
+    private final long[] sold;
+    private final long[] stock;
+    private final BitSet soldOut;
+    private final BitSet lowChange;
+
+    FleetSummary(int machines, String[] slotCodes, int[] costs, long[] cash, long[] sold, long[] stock,
+                 BitSet soldOut, BitSet lowChange) {
+        this.machines = machines;
+        this.slotCodes = slotCodes;
+        this.costs = costs;
+        this.cash = cash;
+        this.sold = sold;
+        this.stock = stock;
+        this.soldOut = soldOut;
+        this.lowChange = lowChange;
+    }
+
+    public int getMachines() {
+        return this.machines;
+    }
+
+    /**
+     * Coins of one denomination held in the fleet's cash boxes
+     *
+     * @param change
+     * @return long
+     */
+    public long getCoins(Change change) {
+        return this.cash[change.ordinal()];
+    }
+
+    /**
+     * Value, in pennies, of the coins of each denomination held in the fleet's cash boxes
+     *
+     * @return Map
+     */
+    public Map<Change, Long> getCashByDenomination() {
+        Map<Change, Long> cash = new LinkedHashMap<>();
+
+        for (Change change : CHANGE) {
+            cash.put(change, this.cash[change.ordinal()] * change.getValue());
+        }
+
+        return cash;
+    }
+
+    /**
+     * Value, in pennies, of every coin in the fleet's cash boxes
+     *
+     * @return long
+     */
+    public long getTotalCash() {
+        long total = 0;
+
+        for (Change change : CHANGE) {
+            total += this.cash[change.ordinal()] * change.getValue();
+        }
+
+        return total;
+    }
+
+    /**
+     * Units sold from a slot across the fleet
+     *
+     * @param slot
+     * @return long
+     */
+    public long getUnitsSold(int slot) {
+        return this.sold[slot];
+    }
+
+    /**
+     * Units left in a slot across the fleet
+     *
+     * @param slot
+     * @return long
+     */
+    public long getUnitsInStock(int slot) {
+        return this.stock[slot];
+    }
+
+    /**
+     * Takings, in pennies, by slot code, at the slot's current price
+     *
+     * @return Map
+     */
+    public Map<String, Long> getRevenueByProduct() {
+        Map<String, Long> revenue = new LinkedHashMap<>();
+
+        for (int slot = 0; slot < this.slotCodes.length; slot++) {
+            revenue.put(this.slotCodes[slot], this.sold[slot] * this.costs[slot]);
+        }
+
+        return revenue;
+    }
+
+    public long getTotalRevenue() {
+        long total = 0;
+
+        for (int slot = 0; slot < this.slotCodes.length; slot++) {
+            total += this.sold[slot] * this.costs[slot];
+        }
+
+        return total;
+    }
+
+    /**
+     * Machines with at least one empty slot
+     *
+     * @return BitSet Indexed by machine id, a copy
+     */
+    public BitSet getSoldOutMachines() {
+        return (BitSet) this.soldOut.clone();
+    }
+
+    /**
+     * Machines holding too few of an accepted coin to be sure of making change
+     *
+     * @return BitSet Indexed by machine id, a copy
+     */
+    public BitSet getLowChangeMachines() {
+        return (BitSet) this.lowChange.clone();
+    }
+
+    public int getSoldOutCount() {
+        return this.soldOut.cardinality();
+    }
+
+    public int getLowChangeCount() {
+        return this.lowChange.cardinality();
+    }
+}
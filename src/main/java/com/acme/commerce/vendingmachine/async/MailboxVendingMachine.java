@@ -0,0 +1,249 @@
+package com.acme.commerce.vendingmachine.async;
+
+import com.acme.commerce.vendingmachine.AsyncVendingMachine;
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.MachineBusyException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mailbox Vending Machine
+ *
+ * Runs a plain {@link VendingMachine} as an actor. Every call becomes a message in the
+ * machine's mailbox and the mailbox is drained by at most one thread at a time, so the wrapped
+ * machine sees a single caller and needs no locking of its own. The draining thread is
+ * borrowed from a shared executor only while there is mail, which lets a handful of threads
+ * serve any number of machines.
+ *
+ * The mailbox is bounded. Once it is full further calls fail at once with a
+ * {@link MachineBusyException} instead of queueing without limit.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MailboxVendingMachine implements AsyncVendingMachine, Runnable {
+    // Messages handled per turn on a thread, so that one busy machine cannot starve the rest
+    private static final int THROUGHPUT = 32;
+
+    private final VendingMachine vendingMachine;
+    private final Executor executor;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<Message<?>> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param vendingMachine Machine to run, which must not be used directly from then on
+     * @param executor       Threads to run on, such as a {@link VendingEventLoop}
+     * @param capacity       Most messages that can wait in the mailbox
+     */
+    public MailboxVendingMachine(VendingMachine vendingMachine, Executor executor, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive, not " + capacity);
+        }
+
+        this.vendingMachine = vendingMachine;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public CompletableFuture<List<Change>> getAcceptedChange() {
+        return send(VendingMachine::getAcceptedChange);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isPoweredOn() {
+        return send(VendingMachine::isPoweredOn);
+    }
+
+    @Override
+    public CompletableFuture<Void> powerOn() {
+        return send(vendingMachine -> {
+            vendingMachine.powerOn();
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> powerOff() {
+        return send(vendingMachine -> {
+            vendingMachine.powerOff();
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> getBalance() {
+        return send(VendingMachine::getBalance);
+    }
+
+    @Override
+    public CompletableFuture<Map<Change, Integer>> getChangeAvailable() {
+        return send(VendingMachine::getChangeAvailable);
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertChange(Change change) {
+        return send(vendingMachine -> vendingMachine.insertChange(change));
+    }
+
+    @Override
+    public CompletableFuture<List<Change>> getChangeInserted() {
+        return send(VendingMachine::getChangeInserted);
+    }
+
+    @Override
+    public CompletableFuture<Integer> refundChange() {
+        return send(VendingMachine::refundChange);
+    }
+
+    @Override
+    public CompletableFuture<Void> reset() {
+        return send(vendingMachine -> {
+            vendingMachine.reset();
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> purchase(Product product) {
+        return send(vendingMachine -> {
+            vendingMachine.purchase(product);
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Product>> getProductList() {
+        return send(VendingMachine::getProductList);
+    }
+
+    @Override
+    public CompletableFuture<Integer> tryInsertChange(Change change) {
+        return send(vendingMachine -> vendingMachine.tryInsertChange(change));
+    }
+
+    @Override
+    public CompletableFuture<Integer> tryPurchase(Product product) {
+        return send(vendingMachine -> vendingMachine.tryPurchase(product));
+    }
+
+    @Override
+    public int getPending() {
+        return this.pending.get();
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Handle the next batch of mail. Called by the executor, never by users of the machine.
+     */
+    @Override
+    public void run() {
+        for (int i = 0; i < THROUGHPUT; i++) {
+            Message<?> message = this.mailbox.poll();
+
+            if (message == null) {
+                break;
+            }
+
+            this.pending.decrementAndGet();
+            message.deliver(this.vendingMachine);
+        }
+
+        this.scheduled.set(false);
+
+        // Mail that arrived after the last poll but saw the flag still set is ours to schedule
+        if (!this.mailbox.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private <T> CompletableFuture<T> send(Operation<T> operation) {
+        Message<T> message = new Message<>(operation);
+
+        if (!reserve()) {
+            message.future.completeExceptionally(new MachineBusyException(this.capacity));
+
+            return message.future;
+        }
+
+        this.mailbox.offer(message);
+        schedule();
+
+        return message.future;
+    }
+
+    private boolean reserve() {
+        for (;;) {
+            int current = this.pending.get();
+
+            if (current >= this.capacity) {
+                return false;
+            }
+
+            if (this.pending.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void schedule() {
+        if (!this.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            this.executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // The executor has shut down, nothing queued will ever run
+            for (Message<?> message; (message = this.mailbox.poll()) != null; ) {
+                this.pending.decrementAndGet();
+                message.future.completeExceptionally(e);
+            }
+
+            this.scheduled.set(false);
+        }
+    }
+
+    /**
+     * A call to make on the machine
+     */
+    private interface Operation<T> {
+        T apply(VendingMachine vendingMachine) throws Exception;
+    }
+
+    private static final class Message<T> {
+        final Operation<T> operation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Message(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        void deliver(VendingMachine vendingMachine) {
+            try {
+                this.future.complete(this.operation.apply(vendingMachine));
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.acme.commerce.vendingmachine.async;
+
+import com.acme.commerce.vendingmachine.AsyncVendingMachine;
+import com.acme.commerce.vendingmachine.VendingMachine;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vending Event Loop
+ *
+ * A small fixed pool of daemon threads shared by many {@link MailboxVendingMachine}s. A
+ * machine only holds a thread while it has mail, and each machine has at most one entry in
+ * the pool's queue however much mail it holds, so the queue never outgrows the number of
+ * machines.
+ *
+ * Any other {@link Executor} can run mailbox machines too, for example one that starts a
+ * virtual thread per task on a JDK that has them.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class VendingEventLoop implements Executor, Closeable {
+    public static final int DEFAULT_MAILBOX_CAPACITY = 64;
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ExecutorService threads;
+
+    /**
+     * One thread per processor
+     */
+    public VendingEventLoop() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads Number of threads
+     */
+    public VendingEventLoop(int threads) {
+        final int pool = POOLS.incrementAndGet();
+
+        this.threads = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vending-loop-" + pool + "-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Run a machine on this loop with the default mailbox capacity
+     *
+     * @param vendingMachine
+     * @return AsyncVendingMachine
+     */
+    public AsyncVendingMachine machine(VendingMachine vendingMachine) {
+        return machine(vendingMachine, DEFAULT_MAILBOX_CAPACITY);
+    }
+
+    /**
+     * Run a machine on this loop
+     *
+     * @param vendingMachine Machine to run, which must not be used directly from then on
+     * @param capacity       Most operations that can wait before new ones are turned away
+     * @return AsyncVendingMachine
+     */
+    public AsyncVendingMachine machine(VendingMachine vendingMachine, int capacity) {
+        return new MailboxVendingMachine(vendingMachine, this, capacity);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.threads.execute(command);
+    }
+
+    /**
+     * Finish the work already queued and stop the threads. Calls made afterwards fail.
+     */
+    @Override
+    public void close() {
+        this.threads.shutdown();
+
+        try {
+            this.threads.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import com.acme.commerce.vendingmachine.Change;
+
+/**
+ * Audit Event
+ *
+ * One slot of an {@link AuditTrail}'s ring. Events are allocated once, when the trail is built,
+ * and overwritten in turn, so a sink must copy anything it keeps before returning from
+ * {@link AuditSink#onEvent}.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class AuditEvent {
+    public static final byte INSERT = 1;
+    public static final byte REFUND = 2;
+    public static final byte PURCHASE = 3;
+    public static final byte RESET = 4;
+    public static final byte POWER_ON = 5;
+    public static final byte POWER_OFF = 6;
+
+    private static final String[] TYPES = {
+            null, "INSERT", "REFUND", "PURCHASE", "RESET", "POWER_ON", "POWER_OFF"
+    };
+
+    private long sequence;
+    private long time;
+    private int machine;
+    private byte type;
+    private Change change;
+    private String slotCode;
+    private int amount;
+    private int result;
+    private int balance;
+
+    AuditEvent() {
+    }
+
+    /**
+     * Name of an event type, for logs and reports
+     *
+     * @param type
+     * @return String
+     */
+    public static String describe(byte type) {
+        return type > 0 && type < TYPES.length ? TYPES[type] : "UNKNOWN(" + type + ")";
+    }
+
+    /**
+     * Position of the event in the trail, starting at 1
+     *
+     * @return long
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Milliseconds since the epoch at which the event was recorded
+     *
+     * @return long
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    public int getMachine() {
+        return this.machine;
+    }
+
+    /**
+     * One of the event type constants
+     *
+     * @return byte
+     */
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * The coin inserted
+     *
+     * @return Change or null for anything but an insert
+     */
+    public Change getChange() {
+        return this.change;
+    }
+
+    /**
+     * The slot bought from
+     *
+     * @return String or null for anything but a purchase of a listed product
+     */
+    public String getSlotCode() {
+        return this.slotCode;
+    }
+
+    /**
+     * Pennies: the coin's value, the product's cost, or the balance refunded
+     *
+     * @return int
+     */
+    public int getAmount() {
+        return this.amount;
+    }
+
+    /**
+     * The {@link com.acme.commerce.vendingmachine.TransactionResult} code of the operation
+     *
+     * @return int
+     */
+    public int getResult() {
+        return this.result;
+    }
+
+    /**
+     * The machine's balance after the operation
+     *
+     * @return int
+     */
+    public int getBalance() {
+        return this.balance;
+    }
+
+    void set(long time, int machine, byte type, Change change, String slotCode, int amount, int result, int balance) {
+        this.time = time;
+        this.machine = machine;
+        this.type = type;
+        this.change = change;
+        this.slotCode = slotCode;
+        this.amount = amount;
+        this.result = result;
+        this.balance = balance;
+    }
+
+    void stamp(long sequence) {
+        this.sequence = sequence;
+    }
+}
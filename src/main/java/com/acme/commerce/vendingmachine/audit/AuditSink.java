@@ -0,0 +1,23 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where an {@link AuditTrail} writes its events. Called from the trail's writer thread only,
+ * with events in sequence order and in batches of whatever has been recorded since the last.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface AuditSink extends Closeable {
+
+    /**
+     * Write one event. The event is reused once this returns.
+     *
+     * @param event
+     * @param endOfBatch true for the last event available, a good time to flush
+     * @throws IOException
+     */
+    void onEvent(AuditEvent event, boolean endOfBatch) throws IOException;
+}
@@ -0,0 +1,279 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import com.acme.commerce.vendingmachine.Change;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit Trail
+ *
+ * Hands events from the threads that record them to a single writer thread, through a ring of
+ * events allocated up front. Recording claims the next sequence number with one atomic
+ * increment, fills in the event and the time in that sequence's slot and publishes it with an
+ * ordered store, so it takes no lock and allocates nothing. The writer takes every event
+ * published since its last pass as one batch and passes them in sequence order to an
+ * {@link AuditSink}, which can then write the whole batch at once.
+ *
+ * Nothing is ever dropped. If the writer falls a full ring behind, recording waits for it, and
+ * {@link #getStalls()} counts how often that happened. Size the ring for the longest burst the
+ * sink has to absorb.
+ *
+ * Closing stops recording and returns once every event recorded before it has been written.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class AuditTrail implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    // Added to the claimed sequence on close, so a claim that sees it knows the trail is closed
+    private static final long CLOSED = 1L << 62;
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AuditEvent[] events;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AuditSink sink;
+    private final Thread writer;
+
+    private volatile long written;
+    private volatile long last = Long.MAX_VALUE;
+    private volatile long failed;
+    private volatile Exception failure;
+
+    /**
+     * Trail of {@link #DEFAULT_CAPACITY} events
+     *
+     * @param sink
+     */
+    public AuditTrail(AuditSink sink) {
+        this(sink, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param sink
+     * @param capacity Events the ring holds, a power of two
+     */
+    public AuditTrail(AuditSink sink, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, not " + capacity);
+        }
+
+        this.events = new AuditEvent[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        this.sink = sink;
+
+        for (int i = 0; i < capacity; i++) {
+            this.events[i] = new AuditEvent();
+        }
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Record an event
+     *
+     * @param machine  Id of the machine
+     * @param type     One of the {@link AuditEvent} type constants
+     * @param change   Coin inserted, or null
+     * @param slotCode Slot bought from, or null
+     * @param amount   Pennies, see {@link AuditEvent#getAmount()}
+     * @param result   TransactionResult code
+     * @param balance  Balance after the operation
+     * @return long Sequence number of the event
+     * @throws IllegalStateException if the trail is closed
+     */
+    public long record(int machine, byte type, Change change, String slotCode, int amount, int result,
+                       int balance) {
+        long sequence = this.claimed.incrementAndGet();
+
+        if (sequence >= CLOSED) {
+            throw new IllegalStateException("Audit trail is closed");
+        }
+
+        long wrapPoint = sequence - this.events.length;
+
+        if (wrapPoint > this.written) {
+            awaitWritten(wrapPoint, false);
+        }
+
+        int index = (int) sequence & this.mask;
+        this.events[index].set(System.currentTimeMillis(), machine, type, change, slotCode, amount, result, balance);
+        this.published.lazySet(index, sequence);
+
+        return sequence;
+    }
+
+    /**
+     * Sequence number of the last event recorded
+     *
+     * @return long
+     */
+    public long getRecorded() {
+        return Math.min(this.claimed.get() & (CLOSED - 1), this.last);
+    }
+
+    /**
+     * Sequence number of the last event passed to the sink
+     *
+     * @return long
+     */
+    public long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Times a recording thread found the ring full and had to wait for the writer
+     *
+     * @return long
+     */
+    public long getStalls() {
+        return this.stalls.get();
+    }
+
+    /**
+     * Events the sink threw on
+     *
+     * @return long
+     */
+    public long getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Block until the given event has been passed to the sink
+     *
+     * @param sequence
+     * @throws InterruptedException
+     */
+    public void awaitWritten(long sequence) throws InterruptedException {
+        awaitWritten(sequence, true);
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Stop recording, write everything recorded so far and close the sink
+     *
+     * @throws IOException the first failure of the sink, if it ever failed
+     */
+    @Override
+    public void close() throws IOException {
+        long claimed = this.claimed.getAndAdd(CLOSED);
+
+        if (claimed < CLOSED) {
+            this.last = claimed;
+            LockSupport.unpark(this.writer);
+        }
+
+        boolean interrupted = false;
+
+        while (this.writer.isAlive()) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Exception failure = this.failure;
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("Audit sink failed", failure);
+        }
+    }
+
+    private void awaitWritten(long sequence, boolean interruptible) {
+        if (!interruptible) {
+            this.stalls.incrementAndGet();
+        }
+
+        for (int spins = 0; this.written < sequence && this.writer.isAlive(); spins++) {
+            if (interruptible && Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            if (spins < SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        long next = 1;
+        int idle = 0;
+
+        while (true) {
+            long end = next;
+
+            while (this.published.get((int) end & this.mask) == end) {
+                end++;
+            }
+
+            if (end > next) {
+                for (long sequence = next; sequence < end; sequence++) {
+                    AuditEvent event = this.events[(int) sequence & this.mask];
+                    event.stamp(sequence);
+                    write(event, sequence == end - 1);
+                }
+
+                next = end;
+                this.written = end - 1;
+                idle = 0;
+            } else if (next > this.last) {
+                break;
+            } else if (++idle < SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        try {
+            this.sink.close();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void write(AuditEvent event, boolean endOfBatch) {
+        try {
+            this.sink.onEvent(event, endOfBatch);
+        } catch (IOException | RuntimeException e) {
+            this.failed++;
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if (this.failure == null) {
+            this.failure = e;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.TransactionExceptions;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Audited Vending Machine
+ *
+ * Records every coin, refund, purchase, reset and power change made through another machine in
+ * an {@link AuditTrail}, refused and failed ones included, with its outcome and the balance it
+ * left. Recording takes no lock and allocates nothing, so the machine keeps whatever thread
+ * safety the wrapped one has, and any number of machines can share one trail.
+ *
+ * Each event carries the time it was recorded and the outcome the wrapped machine returned. The
+ * balance it left, and the amount a refund paid back, are read from the wrapped machine around
+ * the call, so they are exact only while one thread at a time uses the machine; a machine
+ * shared between threads is recorded with the right outcomes, but a balance may include coins
+ * another thread inserted in between.
+ *
+ * Purchases are recorded by slot code; a product that is not on the list is recorded by its
+ * cost alone.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class AuditedVendingMachine implements VendingMachine {
+    private final VendingMachine vendingMachine;
+    private final AuditTrail trail;
+    private final int machine;
+    private final Map<Product, String> slotCodes = new IdentityHashMap<>();
+
+    /**
+     * @param vendingMachine Machine to audit
+     * @param trail          Trail to record to, possibly shared with other machines
+     * @param machine        Id the machine's events are recorded under
+     */
+    public AuditedVendingMachine(VendingMachine vendingMachine, AuditTrail trail, int machine) {
+        this.vendingMachine = vendingMachine;
+        this.trail = trail;
+        this.machine = machine;
+
+        for (Map.Entry<String, Product> entry : vendingMachine.getProductList().entrySet()) {
+            this.slotCodes.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    public AuditTrail getTrail() {
+        return this.trail;
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.vendingMachine.getAcceptedChange();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.vendingMachine.isPoweredOn();
+    }
+
+    @Override
+    public void powerOn() {
+        this.vendingMachine.powerOn();
+        record(AuditEvent.POWER_ON, null, null, 0, TransactionResult.OK);
+    }
+
+    @Override
+    public void powerOff() {
+        this.vendingMachine.powerOff();
+        record(AuditEvent.POWER_OFF, null, null, 0, TransactionResult.OK);
+    }
+
+    @Override
+    public int getBalance() {
+        return this.vendingMachine.getBalance();
+    }
+
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        return this.vendingMachine.getChangeAvailable();
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException {
+        TransactionExceptions.checkInsert(tryInsertChange(change));
+
+        return getBalance();
+    }
+
+    @Override
+    public int tryInsertChange(Change change) {
+        int result = this.vendingMachine.tryInsertChange(change);
+        record(AuditEvent.INSERT, change, null, change.getValue(), result);
+
+        return result;
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.vendingMachine.getChangeInserted();
+    }
+
+    @Override
+    public int refundChange() {
+        int refunded = this.vendingMachine.getBalance();
+        int balance = this.vendingMachine.refundChange();
+        this.trail.record(this.machine, AuditEvent.REFUND, null, null, refunded, TransactionResult.OK, balance);
+
+        return balance;
+    }
+
+    @Override
+    public void reset() {
+        this.vendingMachine.reset();
+        record(AuditEvent.RESET, null, null, 0, TransactionResult.OK);
+    }
+
+    @Override
+    public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+        int balance = getBalance();
+
+        TransactionExceptions.checkPurchase(tryPurchase(product), product.getCost() - balance,
+                TransactionExceptions.currencyOf(this.vendingMachine));
+    }
+
+    @Override
+    public int tryPurchase(Product product) {
+        int result = this.vendingMachine.tryPurchase(product);
+        record(AuditEvent.PURCHASE, null, this.slotCodes.get(product), product.getCost(), result);
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.vendingMachine.getProductList();
+    }
+
+    private void record(byte type, Change change, String slotCode, int amount, int result) {
+        this.trail.record(this.machine, type, change, slotCode, amount, result, this.vendingMachine.getBalance());
+    }
+}
@@ -0,0 +1,81 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File Audit Sink
+ *
+ * Appends events to a file as JSON lines. Lines are formatted straight into one buffer that is
+ * written out when it fills and at the end of every batch, so a busy trail costs one write call
+ * per batch rather than per event, and formatting allocates nothing.
+ *
+ * Written lines are in the operating system's cache at once and forced to disk on close.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class FileAuditSink implements AuditSink {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final JsonLines json = new JsonLines();
+    private final byte[] lines;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param file Audit file, created if it does not exist and appended to if it does
+     * @throws IOException
+     */
+    public FileAuditSink(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       Audit file, created if it does not exist and appended to if it does
+     * @param bufferSize Bytes formatted before a write, at least one line
+     * @throws IOException
+     */
+    public FileAuditSink(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.lines = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(this.lines);
+    }
+
+    @Override
+    public void onEvent(AuditEvent event, boolean endOfBatch) throws IOException {
+        if (this.buffer.remaining() < JsonLines.maxLength(event)) {
+            flush();
+        }
+
+        this.buffer.position(this.json.write(event, this.lines, this.buffer.position()));
+
+        if (endOfBatch) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            this.channel.force(false);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+
+        this.buffer.clear();
+    }
+}
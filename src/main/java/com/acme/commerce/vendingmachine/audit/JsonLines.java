@@ -0,0 +1,178 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes events as lines of JSON, in ASCII, straight into a byte array without allocating:
+ *
+ * <pre>
+ * {"seq":7,"time":1700000000000,"machine":3,"event":"PURCHASE","result":"OK","slot":"A","amount":60,"balance":0}
+ * </pre>
+ *
+ * "coin" is written for inserts and "slot" for purchases of listed products. Each sink has its
+ * own, as it is not thread safe.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+final class JsonLines {
+    // Longest line with an empty slot code
+    private static final int MAX_FIXED_LENGTH = 256;
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private static final byte[] SEQ = ascii("{\"seq\":");
+    private static final byte[] TIME = ascii(",\"time\":");
+    private static final byte[] MACHINE = ascii(",\"machine\":");
+    private static final byte[] EVENT = ascii(",\"event\":\"");
+    private static final byte[] RESULT = ascii("\",\"result\":\"");
+    private static final byte[] COIN = ascii("\",\"coin\":\"");
+    private static final byte[] SLOT = ascii("\",\"slot\":\"");
+    private static final byte[] AMOUNT = ascii("\",\"amount\":");
+    private static final byte[] BALANCE = ascii(",\"balance\":");
+    private static final byte[] END = ascii("}\n");
+
+    private static final byte[][] TYPES = new byte[AuditEvent.POWER_OFF + 1][];
+    private static final byte[][] RESULTS = new byte[TransactionResult.THROTTLED + 1][];
+    private static final byte[][] COINS = new byte[Change.values().length][];
+
+    static {
+        for (byte type = AuditEvent.INSERT; type < TYPES.length; type++) {
+            TYPES[type] = ascii(AuditEvent.describe(type));
+        }
+
+        for (int result = 0; result < RESULTS.length; result++) {
+            RESULTS[result] = ascii(TransactionResult.describe(result));
+        }
+
+        for (Change change : Change.values()) {
+            COINS[change.ordinal()] = ascii(change.name());
+        }
+    }
+
+    // Events in a burst share the millisecond they were recorded in, so the digits of the last time are kept
+    private long time = -1;
+    private final byte[] timeDigits = new byte[20];
+    private int timeLength;
+
+    /**
+     * Most bytes {@link #write} can write for the event
+     *
+     * @param event
+     * @return int
+     */
+    static int maxLength(AuditEvent event) {
+        return MAX_FIXED_LENGTH + (event.getSlotCode() == null ? 0 : 6 * event.getSlotCode().length());
+    }
+
+    /**
+     * Write the event's line into the array
+     *
+     * @param event
+     * @param line     Room for at least {@link #maxLength} bytes from the offset
+     * @param offset
+     * @return int Offset just past the end of the line
+     */
+    int write(AuditEvent event, byte[] line, int offset) {
+        if (event.getTime() != this.time) {
+            this.time = event.getTime();
+            this.timeLength = putLong(this.timeDigits, 0, this.time);
+        }
+
+        int at = put(line, offset, SEQ);
+        at = putLong(line, at, event.getSequence());
+        at = put(line, at, TIME);
+        System.arraycopy(this.timeDigits, 0, line, at, this.timeLength);
+        at += this.timeLength;
+        at = put(line, at, MACHINE);
+        at = putLong(line, at, event.getMachine());
+        at = put(line, at, EVENT);
+        at = putName(line, at, TYPES, event.getType(), AuditEvent.describe(event.getType()));
+        at = put(line, at, RESULT);
+        at = putName(line, at, RESULTS, event.getResult(), TransactionResult.describe(event.getResult()));
+
+        if (event.getChange() != null) {
+            at = put(line, at, COIN);
+            at = put(line, at, COINS[event.getChange().ordinal()]);
+        }
+
+        if (event.getSlotCode() != null) {
+            at = put(line, at, SLOT);
+            at = putString(line, at, event.getSlotCode());
+        }
+
+        at = put(line, at, AMOUNT);
+        at = putLong(line, at, event.getAmount());
+        at = put(line, at, BALANCE);
+        at = putLong(line, at, event.getBalance());
+
+        return put(line, at, END);
+    }
+
+    private static int put(byte[] line, int at, byte[] bytes) {
+        // The pieces are a few bytes long, too short for arraycopy to pay
+        for (byte b : bytes) {
+            line[at++] = b;
+        }
+
+        return at;
+    }
+
+    private static int putName(byte[] line, int at, byte[][] names, int code, String unknown) {
+        if (code >= 0 && code < names.length && names[code] != null) {
+            return put(line, at, names[code]);
+        }
+
+        // Only codes added after this class, never on a normal run
+        return putString(line, at, unknown);
+    }
+
+    private static int putString(byte[] line, int at, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\') {
+                line[at++] = (byte) c;
+            } else {
+                line[at++] = '\\';
+                line[at++] = 'u';
+                line[at++] = HEX[(c >> 12) & 0xf];
+                line[at++] = HEX[(c >> 8) & 0xf];
+                line[at++] = HEX[(c >> 4) & 0xf];
+                line[at++] = HEX[c & 0xf];
+            }
+        }
+
+        return at;
+    }
+
+    private static int putLong(byte[] line, int at, long value) {
+        // Sequence numbers and times are never negative, every other field is an int
+        if (value < 0) {
+            line[at++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+
+        // Dividing by the constant 10 compiles to a multiply, unlike dividing by a power of ten held in a variable
+        int end = at + digits;
+
+        for (int index = end - 1; index >= at; index--) {
+            line[index] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return end;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
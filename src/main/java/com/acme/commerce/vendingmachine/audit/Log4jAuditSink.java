@@ -0,0 +1,50 @@
+package com.acme.commerce.vendingmachine.audit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Log4j Audit Sink
+ *
+ * Logs each event as a JSON line at INFO through the {@value #LOGGER} logger, so the trail can
+ * be routed with the rest of an application's logging. The log call allocates, but only on the
+ * trail's writer thread; recording stays allocation free. Prefer {@link FileAuditSink} when the
+ * audit file only needs to be written.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class Log4jAuditSink implements AuditSink {
+    public static final String LOGGER = "com.acme.commerce.vendingmachine.audit";
+
+    private final Logger logger;
+    private final JsonLines json = new JsonLines();
+    private final byte[] line = new byte[1024];
+
+    public Log4jAuditSink() {
+        this(LogManager.getLogger(LOGGER));
+    }
+
+    public Log4jAuditSink(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onEvent(AuditEvent event, boolean endOfBatch) {
+        if (!this.logger.isInfoEnabled()) {
+            return;
+        }
+
+        byte[] line = JsonLines.maxLength(event) > this.line.length ? new byte[JsonLines.maxLength(event)] : this.line;
+        int length = this.json.write(event, line, 0);
+
+        // Without the line break, the layout adds its own
+        this.logger.info(new String(line, 0, length - 1, StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void close() {
+    }
+}
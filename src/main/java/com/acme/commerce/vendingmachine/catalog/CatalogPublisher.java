@@ -0,0 +1,105 @@
+package com.acme.commerce.vendingmachine.catalog;
+
+import com.acme.commerce.vendingmachine.Product;
+
+import java.util.Map;
+
+/**
+ * Catalog Publisher
+ *
+ * The current {@link Planogram} of every machine that shares it, usually every machine on a
+ * node. Catalogs read the planogram through here with a single volatile read and no lock, and
+ * a sale prices its product from whichever version it read, so it sees either the old price
+ * list or the new one, never a mix of the two.
+ *
+ * Publishing swaps in a whole new planogram with the next version number; sales already in
+ * flight finish at the price they read. Slots are fixed by the machines' stock counters, so a
+ * new version may change any slot's product and price but keeps the same slot codes.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class CatalogPublisher {
+    private volatile Planogram current;
+
+    /**
+     * @param planogram First version of the catalog
+     */
+    public CatalogPublisher(Planogram planogram) {
+        this.current = planogram;
+    }
+
+    /**
+     * The latest version, read once per sale
+     *
+     * @return Planogram
+     */
+    public Planogram current() {
+        return this.current;
+    }
+
+    public long getVersion() {
+        return this.current.getVersion();
+    }
+
+    /**
+     * Make the given planogram the catalog of every machine sharing this publisher
+     *
+     * @param planogram New products and prices
+     * @return Planogram The version published
+     * @throws IllegalArgumentException if the slot codes differ from the current ones
+     */
+    public synchronized Planogram publish(Planogram planogram) {
+        Planogram current = this.current;
+
+        if (!current.hasSameSlots(planogram)) {
+            throw new IllegalArgumentException("A new catalog version must keep the same slot codes");
+        }
+
+        Planogram next = planogram.withVersion(current.getVersion() + 1);
+        this.current = next;
+
+        return next;
+    }
+
+    /**
+     * Publish a new assortment, ignoring the products' quantities
+     *
+     * @param products Products by slot code, one for every slot
+     * @return Planogram The version published
+     */
+    public Planogram publish(Map<String, Product> products) {
+        return publish(new Planogram(products));
+    }
+
+    /**
+     * Publish new prices for some slots, the rest keep the products and prices they have
+     *
+     * @param costs Cost by slot code
+     * @return Planogram The version published
+     * @throws IllegalArgumentException if a slot code is unknown or a cost is negative
+     */
+    public synchronized Planogram reprice(Map<String, Integer> costs) {
+        Planogram current = this.current;
+        int[] newCosts = current.getCosts();
+
+        for (Map.Entry<String, Integer> entry : costs.entrySet()) {
+            int slot = current.slotOf(entry.getKey());
+
+            if (slot < 0) {
+                throw new IllegalArgumentException("No slot " + entry.getKey());
+            }
+
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Slot " + entry.getKey() + " cannot cost less than nothing");
+            }
+
+            newCosts[slot] = entry.getValue();
+        }
+
+        Planogram next = current.withCosts(newCosts, current.getVersion() + 1);
+        this.current = next;
+
+        return next;
+    }
+}
@@ -0,0 +1,313 @@
+package com.acme.commerce.vendingmachine.catalog;
+
+import com.acme.commerce.vendingmachine.Product;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Catalog Query
+ *
+ * Finds products in a {@link ProductCatalog} too large to list whole, such as a wall unit or
+ * micro-market with thousands of slots: by slot code or product name prefix for keypad
+ * autocomplete, by price range and by whether the slot is in stock. Results are read a page at
+ * a time or streamed, and no filter is answered by looking at every slot.
+ *
+ * One filter drives the query and picks the order of its results: a code prefix gives a run of
+ * slots in slot code order; failing that a name prefix gives a run of the planogram's name index,
+ * in name order ignoring case; failing that a price range gives a run of its price index, cheapest
+ * first; and with none of those every slot is visited in slot code order. The other filters are
+ * checked against each slot of the run in constant time. When the run is in slot code order the
+ * catalog's in stock index skips empty slots a word at a time.
+ *
+ * Every page or stream reads the current planogram once, so paging through a catalog while a new
+ * version is published keeps the same order, as the slots do not change. Stock is read as the
+ * results are, and the products are live views. A query is not thread safe, but is cheap to build.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class CatalogQuery {
+    private final ProductCatalog catalog;
+    private String codePrefix;
+    private String namePrefix;
+    private boolean inStock;
+    private boolean priced;
+    private int minCost;
+    private int maxCost;
+
+    CatalogQuery(ProductCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Only slots whose code starts with the prefix
+     *
+     * @param prefix Prefix, or null for any
+     * @return CatalogQuery This query
+     */
+    public CatalogQuery codePrefix(String prefix) {
+        this.codePrefix = prefix;
+
+        return this;
+    }
+
+    /**
+     * Only products whose name starts with the prefix, ignoring case
+     *
+     * @param prefix Prefix, or null for any
+     * @return CatalogQuery This query
+     */
+    public CatalogQuery namePrefix(String prefix) {
+        this.namePrefix = prefix;
+
+        return this;
+    }
+
+    /**
+     * Only slots with stock left
+     *
+     * @return CatalogQuery This query
+     */
+    public CatalogQuery inStock() {
+        this.inStock = true;
+
+        return this;
+    }
+
+    /**
+     * Only products costing from the lowest to the highest price, both included
+     *
+     * @param minCost Pennies
+     * @param maxCost Pennies
+     * @return CatalogQuery This query
+     * @throws IllegalArgumentException if the lowest price is above the highest
+     */
+    public CatalogQuery costing(int minCost, int maxCost) {
+        if (minCost > maxCost) {
+            throw new IllegalArgumentException("The lowest price cannot be above the highest");
+        }
+
+        this.priced = true;
+        this.minCost = minCost;
+        this.maxCost = maxCost;
+
+        return this;
+    }
+
+    /**
+     * One page of the matching products
+     *
+     * @param offset Matching products to skip
+     * @param limit  Most products to return
+     * @return List
+     * @throws IllegalArgumentException if the offset or limit is negative
+     */
+    public List<Product> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("A page cannot start or end before the first product");
+        }
+
+        Cursor cursor = new Cursor();
+        List<Product> products = new ArrayList<>(Math.min(limit, cursor.to - cursor.from));
+
+        cursor.skip(offset);
+
+        for (int slot = cursor.nextSlot(); slot >= 0 && products.size() < limit; slot = cursor.nextSlot()) {
+            products.add(this.catalog.product(slot));
+        }
+
+        return products;
+    }
+
+    /**
+     * Every matching product, lazily
+     *
+     * @return Stream
+     */
+    public Stream<Product> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Cursor(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Number of matching products
+     *
+     * @return int
+     */
+    public int count() {
+        Cursor cursor = new Cursor();
+
+        if (!cursor.isFiltered()) {
+            return cursor.to - cursor.from;
+        }
+
+        int count = 0;
+
+        while (cursor.nextSlot() >= 0) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Walks the driving run of one version of the planogram, checking the other filters
+     */
+    private final class Cursor implements Iterator<Product> {
+        private static final int SLOT_ORDER = 0;
+        private static final int NAME_ORDER = 1;
+        private static final int PRICE_ORDER = 2;
+
+        private final Planogram planogram = CatalogQuery.this.catalog.getPlanogram();
+        private final int order;
+        private final int from;
+        private final int to;
+        private final int lowerSlot;
+        private final int upperSlot;
+        private final int lowerName;
+        private final int upperName;
+        private final boolean indexedStock;
+        private int position;
+        private int next = -1;
+
+        Cursor() {
+            String codePrefix = CatalogQuery.this.codePrefix;
+            String namePrefix = CatalogQuery.this.namePrefix;
+
+            this.lowerSlot = codePrefix == null ? 0 : this.planogram.lowerSlotCode(codePrefix);
+            this.upperSlot = codePrefix == null ? this.planogram.slots() : this.planogram.upperSlotCode(codePrefix);
+            this.lowerName = namePrefix == null ? 0 : this.planogram.lowerName(namePrefix);
+            this.upperName = namePrefix == null ? this.planogram.slots() : this.planogram.upperName(namePrefix);
+
+            if (codePrefix != null || (namePrefix == null && !CatalogQuery.this.priced)) {
+                this.order = SLOT_ORDER;
+                this.from = this.lowerSlot;
+                this.to = this.upperSlot;
+            } else if (namePrefix != null) {
+                this.order = NAME_ORDER;
+                this.from = this.lowerName;
+                this.to = this.upperName;
+            } else {
+                this.order = PRICE_ORDER;
+                this.from = cheaperThan(CatalogQuery.this.minCost);
+                this.to = this.planogram.affordable(CatalogQuery.this.maxCost);
+            }
+
+            this.indexedStock = this.order == SLOT_ORDER && CatalogQuery.this.catalog.isStockIndexed();
+            this.position = this.from;
+        }
+
+        /**
+         * Does any slot of the run need checking, or does all of it match?
+         */
+        boolean isFiltered() {
+            return CatalogQuery.this.inStock
+                    || (this.order != NAME_ORDER && CatalogQuery.this.namePrefix != null)
+                    || (this.order != PRICE_ORDER && CatalogQuery.this.priced);
+        }
+
+        /**
+         * Pass over matching slots, jumping straight there when the whole run matches
+         */
+        void skip(int count) {
+            if (!isFiltered()) {
+                this.position = (int) Math.min(this.to, (long) this.position + count);
+
+                return;
+            }
+
+            for (int skipped = 0; skipped < count && nextSlot() >= 0; skipped++) {
+                // Skipped
+            }
+        }
+
+        /**
+         * @return int The next matching slot, or -1 when there are no more
+         */
+        int nextSlot() {
+            while (this.position < this.to) {
+                int slot;
+
+                if (this.indexedStock && CatalogQuery.this.inStock) {
+                    slot = CatalogQuery.this.catalog.nextInStock(this.position, this.to);
+                    this.position = slot + 1;
+
+                    if (slot >= this.to) {
+                        return -1;
+                    }
+                } else {
+                    slot = slotAt(this.position++);
+                }
+
+                if (matches(slot)) {
+                    return slot;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next < 0) {
+                this.next = nextSlot();
+            }
+
+            return this.next >= 0;
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int slot = this.next;
+            this.next = -1;
+
+            return CatalogQuery.this.catalog.product(slot);
+        }
+
+        private int slotAt(int position) {
+            switch (this.order) {
+                case NAME_ORDER:
+                    return this.planogram.slotByName(position);
+                case PRICE_ORDER:
+                    return this.planogram.slotByPrice(position);
+                default:
+                    return position;
+            }
+        }
+
+        private boolean matches(int slot) {
+            if (slot < this.lowerSlot || slot >= this.upperSlot) {
+                return false;
+            }
+
+            int rank = this.planogram.rankByName(slot);
+
+            if (rank < this.lowerName || rank >= this.upperName) {
+                return false;
+            }
+
+            if (CatalogQuery.this.priced) {
+                int cost = this.planogram.getCost(slot);
+
+                if (cost < CatalogQuery.this.minCost || cost > CatalogQuery.this.maxCost) {
+                    return false;
+                }
+            }
+
+            return !CatalogQuery.this.inStock || this.indexedStock || !CatalogQuery.this.catalog.isOutOfStock(slot);
+        }
+
+        /**
+         * Number of products by price costing less than the given cost
+         */
+        private int cheaperThan(int cost) {
+            return cost == Integer.MIN_VALUE ? 0 : this.planogram.affordable(cost - 1);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.acme.commerce.vendingmachine.catalog;
+
+import com.acme.commerce.vendingmachine.Product;
+
+import java.util.*;
+
+/**
+ * Planogram
+ *
+ * The fixed part of a catalog: which product sits in which slot and what it costs. Slots are
+ * numbered in slot code order, codes are interned and found by binary search. Alongside the
+ * slots sits an index of slots ordered by price, so the products a balance can buy are always
+ * a prefix of that index, found by binary search instead of a scan. A third index orders the
+ * slots by product name, ignoring case, so the slots whose code or name starts with what has been
+ * typed on the keypad so far are a run of one index or the other, again found by binary search.
+ *
+ * Immutable, one planogram may be shared by any number of catalogs. Price and assortment
+ * changes are new planograms with a higher version, published through a {@link CatalogPublisher}.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class Planogram {
+    private final String[] slotCodes;
+    private final String[] names;
+    private final int[] costs;
+    private final int[] slotsByPrice;
+    private final int[] sortedCosts;
+    private final String[] sortedNames;
+    private final int[] slotsByName;
+    private final int[] nameRanks;
+    private final long version;
+
+    /**
+     * Planogram of the given products, ignoring their quantities
+     *
+     * @param products Products by slot code
+     */
+    public Planogram(Map<String, Product> products) {
+        this(new TreeMap<>(products));
+    }
+
+    /**
+     * @param slotCodes Slot codes in ascending order
+     * @param names     Product name per slot
+     * @param costs     Product cost per slot
+     */
+    public Planogram(String[] slotCodes, String[] names, int[] costs) {
+        this(slotCodes, names, costs, 0);
+    }
+
+    /**
+     * @param slotCodes Slot codes in ascending order
+     * @param names     Product name per slot
+     * @param costs     Product cost per slot
+     * @param version   Version of the catalog this planogram belongs to
+     */
+    public Planogram(String[] slotCodes, String[] names, int[] costs, long version) {
+        if (names.length != slotCodes.length || costs.length != slotCodes.length) {
+            throw new IllegalArgumentException("Every slot needs a code, a name and a cost");
+        }
+
+        for (int slot = 1; slot < slotCodes.length; slot++) {
+            if (slotCodes[slot - 1].compareTo(slotCodes[slot]) >= 0) {
+                throw new IllegalArgumentException("Slot codes must be unique and ascending");
+            }
+        }
+
+        this.version = version;
+        this.slotCodes = new String[slotCodes.length];
+        this.names = names.clone();
+        this.costs = costs.clone();
+
+        for (int slot = 0; slot < slotCodes.length; slot++) {
+            this.slotCodes[slot] = slotCodes[slot].intern();
+        }
+
+        this.slotsByPrice = sortByPrice(this.costs);
+        this.sortedCosts = new int[this.costs.length];
+
+        for (int rank = 0; rank < this.slotsByPrice.length; rank++) {
+            this.sortedCosts[rank] = this.costs[this.slotsByPrice[rank]];
+        }
+
+        this.slotsByName = sortByName(this.names);
+        this.sortedNames = new String[this.names.length];
+        this.nameRanks = new int[this.names.length];
+
+        for (int rank = 0; rank < this.slotsByName.length; rank++) {
+            this.sortedNames[rank] = nameKey(this.names[this.slotsByName[rank]]);
+            this.nameRanks[this.slotsByName[rank]] = rank;
+        }
+    }
+
+    private Planogram(SortedMap<String, Product> products) {
+        this(products.keySet().toArray(new String[products.size()]), names(products), costs(products));
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * This planogram as another version
+     */
+    Planogram withVersion(long version) {
+        return new Planogram(this.slotCodes, this.names, this.costs, version);
+    }
+
+    /**
+     * This planogram's products at new costs, as another version
+     */
+    Planogram withCosts(int[] costs, long version) {
+        return new Planogram(this.slotCodes, this.names, costs, version);
+    }
+
+    /**
+     * Cost of every slot, in slot order
+     *
+     * @return int[] Copy
+     */
+    public int[] getCosts() {
+        return this.costs.clone();
+    }
+
+    /**
+     * Does the other planogram have the same slot codes, in the same order?
+     *
+     * @param planogram
+     * @return boolean
+     */
+    public boolean hasSameSlots(Planogram planogram) {
+        return Arrays.equals(this.slotCodes, planogram.slotCodes);
+    }
+
+    /**
+     * Number of slots
+     *
+     * @return int
+     */
+    public int slots() {
+        return this.slotCodes.length;
+    }
+
+    public String getSlotCode(int slot) {
+        return this.slotCodes[slot];
+    }
+
+    public String getName(int slot) {
+        return this.names[slot];
+    }
+
+    public int getCost(int slot) {
+        return this.costs[slot];
+    }
+
+    /**
+     * Slot holding the given code
+     *
+     * @param slotCode
+     * @return int Slot, or -1 if there is no such slot
+     */
+    public int slotOf(String slotCode) {
+        int slot = Arrays.binarySearch(this.slotCodes, slotCode);
+
+        return slot < 0 ? -1 : slot;
+    }
+
+    /**
+     * Number of slots whose product costs no more than the balance. Those slots are
+     * {@link #slotByPrice(int) slotByPrice(0)} up to, but excluding, this number.
+     *
+     * @param balance Pennies
+     * @return int
+     */
+    public int affordable(int balance) {
+        int low = 0;
+        int high = this.sortedCosts.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (this.sortedCosts[middle] <= balance) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Slot of the product with the given rank by price, cheapest first
+     *
+     * @param rank
+     * @return int
+     */
+    public int slotByPrice(int rank) {
+        return this.slotsByPrice[rank];
+    }
+
+    /**
+     * First slot whose code starts with the prefix. The slots whose code does are this one up to,
+     * but excluding, {@link #upperSlotCode(String)}, in slot code order.
+     *
+     * @param prefix
+     * @return int
+     */
+    public int lowerSlotCode(String prefix) {
+        return lowerBound(this.slotCodes, prefix);
+    }
+
+    /**
+     * Slot after the last whose code starts with the prefix, see {@link #lowerSlotCode(String)}
+     *
+     * @param prefix
+     * @return int
+     */
+    public int upperSlotCode(String prefix) {
+        return upperBound(this.slotCodes, lowerBound(this.slotCodes, prefix), prefix);
+    }
+
+    /**
+     * Rank by name of the first product whose name starts with the prefix, ignoring case. The
+     * products whose name does are {@link #slotByName(int) slotByName(lowerName(prefix))} up to,
+     * but excluding, {@link #upperName(String)}.
+     *
+     * @param prefix
+     * @return int
+     */
+    public int lowerName(String prefix) {
+        return lowerBound(this.sortedNames, nameKey(prefix));
+    }
+
+    /**
+     * Rank by name after the last product whose name starts with the prefix, see {@link #lowerName(String)}
+     *
+     * @param prefix
+     * @return int
+     */
+    public int upperName(String prefix) {
+        String key = nameKey(prefix);
+
+        return upperBound(this.sortedNames, lowerBound(this.sortedNames, key), key);
+    }
+
+    /**
+     * Slot of the product with the given rank by name, ignoring case, ties in slot order
+     *
+     * @param rank
+     * @return int
+     */
+    public int slotByName(int rank) {
+        return this.slotsByName[rank];
+    }
+
+    /**
+     * Rank by name of the product in a slot, the inverse of {@link #slotByName(int)}
+     *
+     * @param slot
+     * @return int
+     */
+    public int rankByName(int slot) {
+        return this.nameRanks[slot];
+    }
+
+    /**
+     * Index of the first key not less than the given one
+     */
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (sorted[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Index of the first key from the given one on that does not start with the prefix. The keys
+     * that do are a run, as a key not less than the prefix that does not start with it sorts after
+     * every key that does.
+     */
+    private static int upperBound(String[] sorted, int from, String prefix) {
+        int low = from;
+        int high = sorted.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (sorted[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Names are indexed and searched in lower case
+     */
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Slots ordered by name ignoring case, ties in slot order
+     */
+    private static int[] sortByName(String[] names) {
+        Integer[] slots = new Integer[names.length];
+        String[] keys = new String[names.length];
+
+        for (int slot = 0; slot < names.length; slot++) {
+            slots[slot] = slot;
+            keys[slot] = nameKey(names[slot]);
+        }
+
+        // Stable, so equal names stay in slot order
+        Arrays.sort(slots, (left, right) -> keys[left].compareTo(keys[right]));
+
+        int[] sorted = new int[names.length];
+
+        for (int rank = 0; rank < slots.length; rank++) {
+            sorted[rank] = slots[rank];
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Slots ordered by cost, ties in slot order
+     */
+    private static int[] sortByPrice(int[] costs) {
+        long[] keys = new long[costs.length];
+
+        for (int slot = 0; slot < costs.length; slot++) {
+            keys[slot] = ((long) costs[slot] << 32) | slot;
+        }
+
+        Arrays.sort(keys);
+
+        int[] slots = new int[costs.length];
+
+        for (int rank = 0; rank < keys.length; rank++) {
+            slots[rank] = (int) keys[rank];
+        }
+
+        return slots;
+    }
+
+    private static String[] names(SortedMap<String, Product> products) {
+        String[] names = new String[products.size()];
+        int slot = 0;
+
+        for (Product product : products.values()) {
+            names[slot++] = product.getName();
+        }
+
+        return names;
+    }
+
+    private static int[] costs(SortedMap<String, Product> products) {
+        int[] costs = new int[products.size()];
+        int slot = 0;
+
+        for (Product product : products.values()) {
+            costs[slot++] = product.getCost();
+        }
+
+        return costs;
+    }
+}
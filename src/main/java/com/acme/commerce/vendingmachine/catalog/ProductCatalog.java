@@ -0,0 +1,398 @@
+package com.acme.commerce.vendingmachine.catalog;
+
+import com.acme.commerce.vendingmachine.Product;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Product Catalog
+ *
+ * A machine's products: a {@link Planogram} plus one stock counter per slot. The planogram is
+ * read through a {@link CatalogPublisher}, which several catalogs may share so that one price
+ * change reaches all of them at once. Stock is held in an
+ * atomic array and only ever decremented by compare-and-set in {@link #take(int)}, so however many
+ * threads buy from a slot at once it can never sell more units than it holds.
+ *
+ * Completed sales are counted per slot in a second array laid out the same way, for revenue
+ * reporting. The counters are {@code base + slot} of each array, so a fleet can keep the stock
+ * and sales of all its machines in one pair of arrays and look at any machine through a
+ * throwaway catalog.
+ *
+ * A catalog with counters of its own also keeps an index of the slots in stock, one bit per slot,
+ * updated only when a slot empties or is refilled, so {@link CatalogQuery in stock queries} skip
+ * runs of empty slots a word at a time. A catalog over counters held elsewhere cannot see changes
+ * made through other catalogs, so it has no index and its queries check each slot's stock.
+ *
+ * The products handed out by {@link #product(int)} and {@link #asMap()} are live views of a slot,
+ * whose name and cost follow the latest published planogram,
+ * created the first time they are asked for. They compare equal to any {@link Product} with the
+ * same name, cost and quantity.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class ProductCatalog {
+    private final CatalogPublisher publisher;
+    private final AtomicIntegerArray stock;
+    private final AtomicIntegerArray sold;
+    // Bit per slot, set while the slot is in stock, or null when the counters are held elsewhere
+    private final AtomicLongArray inStock;
+    private final int base;
+    private volatile Map<String, Product> productList;
+
+    /**
+     * Catalog of the given products, stocked with their quantities
+     *
+     * @param products Products by slot code
+     */
+    public ProductCatalog(Map<String, Product> products) {
+        this(new Planogram(products));
+
+        Planogram planogram = getPlanogram();
+
+        for (int slot = 0; slot < planogram.slots(); slot++) {
+            restock(slot, products.get(planogram.getSlotCode(slot)).getQuantityAvailable());
+        }
+    }
+
+    /**
+     * Empty catalog with its own stock and sales counters
+     *
+     * @param planogram
+     */
+    public ProductCatalog(Planogram planogram) {
+        this(new CatalogPublisher(planogram));
+    }
+
+    /**
+     * Empty catalog with its own stock and sales counters, following the publisher's planogram
+     *
+     * @param publisher
+     */
+    public ProductCatalog(CatalogPublisher publisher) {
+        this(publisher, new AtomicIntegerArray(publisher.current().slots()),
+                new AtomicIntegerArray(publisher.current().slots()),
+                new AtomicLongArray((publisher.current().slots() + 63) >>> 6), 0);
+    }
+
+    /**
+     * Catalog over stock and sales counters held elsewhere
+     *
+     * @param planogram
+     * @param stock     Stock array, slot {@code s} is counter {@code base + s}
+     * @param sold      Units sold, laid out as the stock
+     * @param base
+     */
+    public ProductCatalog(Planogram planogram, AtomicIntegerArray stock, AtomicIntegerArray sold, int base) {
+        this(new CatalogPublisher(planogram), stock, sold, base);
+    }
+
+    /**
+     * Catalog over stock and sales counters held elsewhere, following the publisher's planogram
+     *
+     * @param publisher
+     * @param stock     Stock array, slot {@code s} is counter {@code base + s}
+     * @param sold      Units sold, laid out as the stock
+     * @param base
+     */
+    public ProductCatalog(CatalogPublisher publisher, AtomicIntegerArray stock, AtomicIntegerArray sold, int base) {
+        this(publisher, stock, sold, null, base);
+    }
+
+    private ProductCatalog(CatalogPublisher publisher, AtomicIntegerArray stock, AtomicIntegerArray sold,
+                           AtomicLongArray inStock, int base) {
+        this.publisher = publisher;
+        this.stock = stock;
+        this.sold = sold;
+        this.inStock = inStock;
+        this.base = base;
+    }
+
+    /**
+     * The current version of the planogram. Read it once and use that version throughout, so
+     * that a price change published part way through is not half seen.
+     *
+     * @return Planogram
+     */
+    public Planogram getPlanogram() {
+        return this.publisher.current();
+    }
+
+    public CatalogPublisher getPublisher() {
+        return this.publisher;
+    }
+
+    /**
+     * Products by slot code, as live views
+     *
+     * @return Map
+     */
+    public Map<String, Product> asMap() {
+        Map<String, Product> productList = this.productList;
+
+        if (productList == null) {
+            Planogram planogram = getPlanogram();
+            productList = new HashMap<>();
+
+            for (int slot = 0; slot < planogram.slots(); slot++) {
+                productList.put(planogram.getSlotCode(slot), new CatalogProduct(this, slot));
+            }
+
+            productList = Collections.unmodifiableMap(productList);
+            this.productList = productList;
+        }
+
+        return productList;
+    }
+
+    /**
+     * Live view of one slot
+     *
+     * @param slot
+     * @return Product
+     */
+    public Product product(int slot) {
+        return asMap().get(getPlanogram().getSlotCode(slot));
+    }
+
+    /**
+     * Slot of a product handed out by this catalog, or by another catalog over the same counters
+     *
+     * @param product
+     * @return int Slot, or -1 if the product is not from this catalog
+     */
+    public int slotOf(Product product) {
+        if (product instanceof CatalogProduct) {
+            CatalogProduct catalogProduct = (CatalogProduct) product;
+
+            if (sharesStock(catalogProduct.catalog)) {
+                return catalogProduct.slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Does the other catalog look at the same stock counters as this one?
+     *
+     * @param catalog
+     * @return boolean
+     */
+    public boolean sharesStock(ProductCatalog catalog) {
+        return catalog.stock == this.stock && catalog.base == this.base;
+    }
+
+    public int getStock(int slot) {
+        return this.stock.get(this.base + slot);
+    }
+
+    public boolean isOutOfStock(int slot) {
+        return this.stock.get(this.base + slot) <= 0;
+    }
+
+    /**
+     * Atomically remove one unit from a slot
+     *
+     * @param slot
+     * @return boolean false if the slot is empty
+     */
+    public boolean take(int slot) {
+        int index = this.base + slot;
+
+        for (;;) {
+            int quantity = this.stock.get(index);
+
+            if (quantity <= 0) {
+                return false;
+            }
+
+            if (this.stock.compareAndSet(index, quantity, quantity - 1)) {
+                if (quantity == 1) {
+                    indexStock(slot);
+                }
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add units to a slot, including one handed back by a sale that did not go through
+     *
+     * @param slot
+     * @param quantity
+     * @return int New stock level
+     */
+    public int restock(int slot, int quantity) {
+        int stock = this.stock.addAndGet(this.base + slot, quantity);
+
+        if ((stock > 0) != (stock - quantity > 0)) {
+            indexStock(slot);
+        }
+
+        return stock;
+    }
+
+    /**
+     * Count units as sold, once the sale that took them from stock has been paid for
+     *
+     * @param slot
+     * @param quantity
+     * @return int Units sold from the slot so far
+     */
+    public int recordSales(int slot, int quantity) {
+        return this.sold.addAndGet(this.base + slot, quantity);
+    }
+
+    public int getSold(int slot) {
+        return this.sold.get(this.base + slot);
+    }
+
+    /**
+     * In stock products whose cost the balance covers, cheapest first. Only the products the
+     * price index says are affordable are looked at.
+     *
+     * @param balance Pennies
+     * @return List
+     */
+    public List<Product> affordable(int balance) {
+        Planogram planogram = getPlanogram();
+        int affordable = planogram.affordable(balance);
+        List<Product> products = new ArrayList<>(affordable);
+
+        for (int rank = 0; rank < affordable; rank++) {
+            int slot = planogram.slotByPrice(rank);
+
+            if (!isOutOfStock(slot)) {
+                products.add(product(slot));
+            }
+        }
+
+        return products;
+    }
+
+    /**
+     * Query over this catalog's products, matching all of them until narrowed
+     *
+     * @return CatalogQuery
+     */
+    public CatalogQuery query() {
+        return new CatalogQuery(this);
+    }
+
+    /**
+     * Has the catalog an index of the slots in stock?
+     */
+    boolean isStockIndexed() {
+        return this.inStock != null;
+    }
+
+    /**
+     * First slot from the given one on that is in stock, by the index
+     *
+     * @return int Slot, or the number of slots if there is none
+     */
+    int nextInStock(int slot, int slots) {
+        int word = slot >>> 6;
+        long bits = slot < slots ? this.inStock.get(word) & (-1L << slot) : 0;
+
+        while (bits == 0) {
+            if (++word << 6 >= slots) {
+                return slots;
+            }
+
+            bits = this.inStock.get(word);
+        }
+
+        return Math.min(slots, (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * Set or clear a slot's bit after its stock crossed zero. A take and a restock crossing at
+     * once may write their bits in either order, so each writer reads the stock again after
+     * writing and goes round until the bit agrees with it.
+     */
+    private void indexStock(int slot) {
+        if (this.inStock == null) {
+            return;
+        }
+
+        int word = slot >>> 6;
+        long bit = 1L << slot;
+
+        for (;;) {
+            boolean inStock = this.stock.get(this.base + slot) > 0;
+
+            for (;;) {
+                long bits = this.inStock.get(word);
+                long next = inStock ? bits | bit : bits & ~bit;
+
+                if (bits == next || this.inStock.compareAndSet(word, bits, next)) {
+                    break;
+                }
+            }
+
+            if ((this.stock.get(this.base + slot) > 0) == inStock) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * One slot of a catalog, as a Product
+     */
+    private static final class CatalogProduct implements Product {
+        private final ProductCatalog catalog;
+        private final int slot;
+
+        CatalogProduct(ProductCatalog catalog, int slot) {
+            this.catalog = catalog;
+            this.slot = slot;
+        }
+
+        @Override
+        public String getName() {
+            return this.catalog.getPlanogram().getName(this.slot);
+        }
+
+        @Override
+        public int getCost() {
+            return this.catalog.getPlanogram().getCost(this.slot);
+        }
+
+        @Override
+        public int getQuantityAvailable() {
+            return this.catalog.getStock(this.slot);
+        }
+
+        @Override
+        public boolean isOutOfStock() {
+            return this.catalog.isOutOfStock(this.slot);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Product)) {
+                return false;
+            }
+
+            Product product = (Product) o;
+
+            return getCost() == product.getCost()
+                    && getQuantityAvailable() == product.getQuantityAvailable()
+                    && Objects.equals(getName(), product.getName());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(getName(), getCost(), getQuantityAvailable());
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.acme.commerce.vendingmachine.catalog;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock Leases
+ *
+ * Holds units of stock for customers who have chosen a product but not yet paid. Reserving takes
+ * the unit out of its {@link ProductCatalog} straight away, so nobody else can buy it; the lease
+ * then ends in one of three ways:
+ *
+ * <ul>
+ *     <li>{@link #claim(long) claimed} by the sale, then {@link #commit(long) committed} once
+ *     paid for, or {@link #unclaim(long) handed back} to the lease if payment falls short</li>
+ *     <li>{@link #release(long) released} by the customer, putting the unit back</li>
+ *     <li>expired, putting the unit back</li>
+ * </ul>
+ *
+ * Expiry is tracked by a hashed timing wheel: a ring of buckets, each a doubly linked list of the
+ * leases due in that tick. Leases live in parallel slab arrays indexed by lease slot, linked by
+ * index, so a lease costs about 35 bytes and no allocation. Adding and removing a lease is
+ * constant time and expiring does work only for the buckets that have come due. The wheel turns
+ * lazily on every call, and on {@link #expire()} for callers that want to sweep an idle machine.
+ *
+ * Lease ids carry a generation alongside the slab index, so a stale id from an ended lease never
+ * matches the lease that reuses its slot. All methods are synchronized; use one instance per
+ * shard of machines where contention matters.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class StockLeases {
+    public static final long NO_LEASE = -1L;
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final int NONE = -1;
+    private static final byte FREE = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte CLAIMED = 2;
+
+    private final Ticker ticker;
+    private final long tickNanos;
+    private final int[] buckets;
+    private final int wheelMask;
+    private final long origin;
+    private long tick;
+
+    // Lease slab, one entry per lease slot
+    private long[] deadlines;
+    private int[] next;
+    private int[] previous;
+    private int[] bucketOf;
+    private int[] generations;
+    private byte[] states;
+    private int[] slots;
+    private ProductCatalog[] catalogs;
+
+    private int free = NONE;
+    private int used;
+    private int active;
+
+    public StockLeases() {
+        this(DEFAULT_CAPACITY, DEFAULT_WHEEL_SIZE, DEFAULT_TICK_MILLIS, Ticker.SYSTEM);
+    }
+
+    /**
+     * @param capacity   Leases allocated up front, the slab doubles as needed
+     * @param wheelSize  Buckets in the wheel, rounded up to a power of two
+     * @param tickMillis Time covered by each bucket, and so the expiry resolution
+     * @param ticker     Source of time
+     */
+    public StockLeases(int capacity, int wheelSize, long tickMillis, Ticker ticker) {
+        int buckets = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.ticker = ticker;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.buckets = new int[buckets];
+        this.wheelMask = buckets - 1;
+        this.origin = ticker.nanoTime();
+
+        Arrays.fill(this.buckets, NONE);
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Take a unit of a slot out of stock and hold it for the customer
+     *
+     * @param catalog
+     * @param slot
+     * @param timeoutMillis How long to hold the unit
+     * @return long Lease id, or {@link #NO_LEASE} if the slot is out of stock
+     */
+    public synchronized long reserve(ProductCatalog catalog, int slot, long timeoutMillis) {
+        long now = advance();
+
+        if (!catalog.take(slot)) {
+            return NO_LEASE;
+        }
+
+        if (this.free == NONE && this.used == this.states.length) {
+            allocate(this.states.length * 2);
+        }
+
+        int lease;
+
+        if (this.free != NONE) {
+            lease = this.free;
+            this.free = this.next[lease];
+        } else {
+            lease = this.used++;
+        }
+
+        this.catalogs[lease] = catalog;
+        this.slots[lease] = slot;
+        this.deadlines[lease] = now + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        link(lease);
+        this.active++;
+
+        return ((long) this.generations[lease] << 32) | lease;
+    }
+
+    /**
+     * End a lease and put its unit back in stock
+     *
+     * @param lease
+     * @return boolean false if the lease had already ended
+     */
+    public synchronized boolean release(long lease) {
+        advance();
+
+        int index = find(lease, ACTIVE);
+
+        if (index == NONE) {
+            return false;
+        }
+
+        unlink(index);
+        this.catalogs[index].restock(this.slots[index], 1);
+        recycle(index);
+
+        return true;
+    }
+
+    /**
+     * Take a lease off the wheel while its sale is being paid for, it cannot expire while claimed
+     *
+     * @param lease
+     * @return boolean false if the lease has ended
+     */
+    public synchronized boolean claim(long lease) {
+        advance();
+
+        int index = find(lease, ACTIVE);
+
+        if (index == NONE) {
+            return false;
+        }
+
+        unlink(index);
+        this.states[index] = CLAIMED;
+
+        return true;
+    }
+
+    /**
+     * The claimed lease has been paid for, its unit is counted as sold by its catalog
+     *
+     * @param lease
+     */
+    public synchronized void commit(long lease) {
+        int index = find(lease, CLAIMED);
+
+        if (index == NONE) {
+            throw new IllegalStateException("Lease " + lease + " is not claimed");
+        }
+
+        this.catalogs[index].recordSales(this.slots[index], 1);
+        recycle(index);
+    }
+
+    /**
+     * The claimed lease was not paid for, put it back on the wheel with its original deadline
+     *
+     * @param lease
+     */
+    public synchronized void unclaim(long lease) {
+        int index = find(lease, CLAIMED);
+
+        if (index == NONE) {
+            throw new IllegalStateException("Lease " + lease + " is not claimed");
+        }
+
+        link(index);
+        advance();
+    }
+
+    /**
+     * Catalog the leased unit came from
+     *
+     * @param lease A lease that has not ended
+     * @return ProductCatalog
+     */
+    public synchronized ProductCatalog getCatalog(long lease) {
+        return this.catalogs[live(lease)];
+    }
+
+    /**
+     * Slot the leased unit came from
+     *
+     * @param lease A lease that has not ended
+     * @return int
+     */
+    public synchronized int getSlot(long lease) {
+        return this.slots[live(lease)];
+    }
+
+    /**
+     * Turn the wheel to now, expiring every lease that is due
+     *
+     * @return int Number of leases still held
+     */
+    public synchronized int expire() {
+        advance();
+
+        return this.active;
+    }
+
+    /**
+     * Number of leases held, claimed or not
+     *
+     * @return int
+     */
+    public synchronized int size() {
+        return this.active;
+    }
+
+    /**
+     * Expire the leases in every bucket that has come due since the last turn. A lease more than
+     * one revolution away stays in its bucket until the wheel comes round again.
+     */
+    private long advance() {
+        long now = this.ticker.nanoTime();
+        long target = (now - this.origin) / this.tickNanos;
+
+        // Every bucket is visited at most once per turn however long the wheel stood still
+        long from = Math.max(this.tick + 1, target - this.wheelMask);
+
+        for (long tick = from; tick <= target; tick++) {
+            int index = this.buckets[(int) tick & this.wheelMask];
+
+            while (index != NONE) {
+                int following = this.next[index];
+
+                if (this.deadlines[index] <= now) {
+                    unlink(index);
+                    this.catalogs[index].restock(this.slots[index], 1);
+                    recycle(index);
+                }
+
+                index = following;
+            }
+        }
+
+        this.tick = Math.max(this.tick, target);
+
+        return now;
+    }
+
+    private void link(int index) {
+        // First tick that starts at or after the deadline, so the lease is due when its bucket comes round
+        long due = (this.deadlines[index] - this.origin + this.tickNanos - 1) / this.tickNanos;
+
+        // Leases already due go in the next bucket to be visited
+        int bucket = (int) Math.max(due, this.tick + 1) & this.wheelMask;
+
+        this.states[index] = ACTIVE;
+        this.bucketOf[index] = bucket;
+        this.previous[index] = NONE;
+        this.next[index] = this.buckets[bucket];
+
+        if (this.buckets[bucket] != NONE) {
+            this.previous[this.buckets[bucket]] = index;
+        }
+
+        this.buckets[bucket] = index;
+    }
+
+    private void unlink(int index) {
+        if (this.previous[index] != NONE) {
+            this.next[this.previous[index]] = this.next[index];
+        } else {
+            this.buckets[this.bucketOf[index]] = this.next[index];
+        }
+
+        if (this.next[index] != NONE) {
+            this.previous[this.next[index]] = this.previous[index];
+        }
+    }
+
+    private void recycle(int index) {
+        this.states[index] = FREE;
+        this.catalogs[index] = null;
+        this.generations[index] = (this.generations[index] + 1) & Integer.MAX_VALUE;
+        this.next[index] = this.free;
+        this.free = index;
+        this.active--;
+    }
+
+    private int find(long lease, byte state) {
+        int index = (int) lease;
+
+        if (lease < 0 || index >= this.used || this.states[index] != state
+                || this.generations[index] != (int) (lease >>> 32)) {
+            return NONE;
+        }
+
+        return index;
+    }
+
+    private int live(long lease) {
+        int index = find(lease, ACTIVE);
+
+        if (index == NONE) {
+            index = find(lease, CLAIMED);
+        }
+
+        if (index == NONE) {
+            throw new IllegalStateException("Lease " + lease + " has ended");
+        }
+
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        int length = this.states == null ? 0 : this.states.length;
+
+        this.deadlines = this.deadlines == null ? new long[capacity] : Arrays.copyOf(this.deadlines, capacity);
+        this.next = this.next == null ? new int[capacity] : Arrays.copyOf(this.next, capacity);
+        this.previous = this.previous == null ? new int[capacity] : Arrays.copyOf(this.previous, capacity);
+        this.bucketOf = this.bucketOf == null ? new int[capacity] : Arrays.copyOf(this.bucketOf, capacity);
+        this.generations = this.generations == null ? new int[capacity] : Arrays.copyOf(this.generations, capacity);
+        this.states = this.states == null ? new byte[capacity] : Arrays.copyOf(this.states, capacity);
+        this.slots = this.slots == null ? new int[capacity] : Arrays.copyOf(this.slots, capacity);
+        this.catalogs = this.catalogs == null ? new ProductCatalog[capacity] : Arrays.copyOf(this.catalogs, capacity);
+
+        // Generations start at 1 so that no lease id is 0
+        Arrays.fill(this.generations, length, capacity, 1);
+    }
+
+    /**
+     * Source of time, replaceable in tests
+     */
+    public interface Ticker {
+        Ticker SYSTEM = new Ticker() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        long nanoTime();
+    }
+}
@@ -0,0 +1,271 @@
+package com.acme.commerce.vendingmachine.currency;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.impl.ChangeMaker;
+import com.acme.commerce.vendingmachine.impl.CoinLedger;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.joda.money.format.MoneyFormatter;
+import org.joda.money.format.MoneyFormatterBuilder;
+
+import java.util.*;
+
+/**
+ * Currency Profile
+ *
+ * The money a machine deals in: its currency, its denominations and which of them it takes.
+ * Denominations are numbered from 0 in ascending order of value and that number is the
+ * denomination's lane in the escrow word and its counter in the cash box, see {@link CoinLedger},
+ * so a profile has at most {@link CoinLedger#DENOMINATIONS} of them.
+ *
+ * Amounts are whole minor units (pennies, cents) held in primitives everywhere a sale happens.
+ * joda-money is only used to {@link #format(long) format} an amount for a person to read.
+ *
+ * Notes are taken but never paid back out as change, apart from a note still in the escrow
+ * of the sale, so each profile has a {@link #getPayoutMask() payout mask} of its coins.
+ *
+ * Immutable and safe to share.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class CurrencyProfile {
+
+    /**
+     * Sterling, with the {@link Change} coins in ordinal order. Machines take 10p to one pound.
+     */
+    public static final CurrencyProfile GBP = new CurrencyProfile("GBP", Locale.UK,
+            new int[]{1, 2, 5, 10, 20, 50, 100, 200},
+            new String[]{"1p", "2p", "5p", "10p", "20p", "50p", "\u00a31", "\u00a32"},
+            0, mask(3, 4, 5, 6), ChangeMaker.DEFAULT);
+
+    /**
+     * Euro coins from 5 cents to 2 euros, plus 5 and 10 euro notes
+     */
+    public static final CurrencyProfile EUR = new CurrencyProfile("EUR", Locale.GERMANY,
+            new int[]{5, 10, 20, 50, 100, 200, 500, 1000},
+            new String[]{"5c", "10c", "20c", "50c", "\u20ac1", "\u20ac2", "\u20ac5", "\u20ac10"},
+            mask(6, 7), mask(0, 1, 2, 3, 4, 5, 6, 7));
+
+    /**
+     * US nickels, dimes and quarters, plus $1 and $5 bills
+     */
+    public static final CurrencyProfile USD = new CurrencyProfile("USD", Locale.US,
+            new int[]{5, 10, 25, 100, 500},
+            new String[]{"5\u00a2", "10\u00a2", "25\u00a2", "$1", "$5"},
+            mask(3, 4), mask(0, 1, 2, 3, 4));
+
+    private static final Map<String, CurrencyProfile> PROFILES = new HashMap<>();
+
+    static {
+        for (CurrencyProfile profile : new CurrencyProfile[]{GBP, EUR, USD}) {
+            PROFILES.put(profile.getCurrencyCode(), profile);
+        }
+    }
+
+    private final CurrencyUnit currency;
+    private final int[] values;
+    private final String[] labels;
+    private final int noteMask;
+    private final int acceptedMask;
+    private final ChangeMaker changeMaker;
+    private final MoneyFormatter formatter;
+    private final Change[] changeByDenomination;
+    private final int[] denominationByChange;
+
+    /**
+     * @param currencyCode ISO 4217 code
+     * @param locale       Locale amounts are formatted for
+     * @param values       Value of each denomination in minor units, ascending
+     * @param labels       Name of each denomination, as printed on it
+     * @param noteMask     Denominations that are notes, one bit per denomination
+     * @param acceptedMask Denominations machines take, one bit per denomination
+     * @throws IllegalArgumentException if the denominations do not fit the coin ledger
+     */
+    public CurrencyProfile(String currencyCode, Locale locale, int[] values, String[] labels, int noteMask,
+                           int acceptedMask) {
+        this(currencyCode, locale, values, labels, noteMask, acceptedMask, null);
+    }
+
+    private CurrencyProfile(String currencyCode, Locale locale, int[] values, String[] labels, int noteMask,
+                            int acceptedMask, ChangeMaker changeMaker) {
+        if (values.length > CoinLedger.DENOMINATIONS || labels.length != values.length) {
+            throw new IllegalArgumentException("Up to " + CoinLedger.DENOMINATIONS
+                    + " denominations are supported, each with a label");
+        }
+
+        int denominations = (1 << values.length) - 1;
+
+        if ((noteMask & ~denominations) != 0 || (acceptedMask & ~denominations) != 0) {
+            throw new IllegalArgumentException("Masks may only name the profile's denominations");
+        }
+
+        this.currency = CurrencyUnit.of(currencyCode);
+        this.values = values.clone();
+        this.labels = labels.clone();
+        this.noteMask = noteMask;
+        this.acceptedMask = acceptedMask;
+        this.changeMaker = changeMaker == null ? new ChangeMaker(this.values) : changeMaker;
+        this.formatter = new MoneyFormatterBuilder().appendCurrencySymbolLocalized().appendAmountLocalized()
+                .toFormatter(locale);
+
+        Change[] changes = Change.values();
+        this.changeByDenomination = new Change[values.length];
+        this.denominationByChange = new int[changes.length];
+        Arrays.fill(this.denominationByChange, -1);
+
+        for (Change change : changes) {
+            int denomination = Arrays.binarySearch(this.values, change.getValue());
+
+            if (denomination >= 0) {
+                this.changeByDenomination[denomination] = change;
+                this.denominationByChange[change.ordinal()] = denomination;
+            }
+        }
+    }
+
+    /**
+     * Profile of one of the built in currencies
+     *
+     * @param currencyCode GBP, EUR or USD
+     * @return CurrencyProfile
+     * @throws IllegalArgumentException if there is no profile for the currency
+     */
+    public static CurrencyProfile forCurrency(String currencyCode) {
+        CurrencyProfile profile = PROFILES.get(currencyCode);
+
+        if (profile == null) {
+            throw new IllegalArgumentException("No currency profile for " + currencyCode);
+        }
+
+        return profile;
+    }
+
+    public String getCurrencyCode() {
+        return this.currency.getCode();
+    }
+
+    /**
+     * Number of denominations
+     *
+     * @return int
+     */
+    public int denominations() {
+        return this.values.length;
+    }
+
+    /**
+     * @param denomination
+     * @return int Value in minor units
+     */
+    public int getValue(int denomination) {
+        return this.values[denomination];
+    }
+
+    public String getLabel(int denomination) {
+        return this.labels[denomination];
+    }
+
+    public boolean isNote(int denomination) {
+        return (this.noteMask & (1 << denomination)) != 0;
+    }
+
+    /**
+     * Do machines take this denomination?
+     *
+     * @param denomination
+     * @return boolean false for anything that is not one of the profile's denominations
+     */
+    public boolean accepts(int denomination) {
+        return denomination >= 0 && (this.acceptedMask & (1 << denomination)) != 0;
+    }
+
+    public int getAcceptedMask() {
+        return this.acceptedMask;
+    }
+
+    /**
+     * Denominations the cash box may pay out as change, every coin but no notes
+     *
+     * @return int One bit per denomination
+     */
+    public int getPayoutMask() {
+        return ~this.noteMask & ((1 << this.values.length) - 1);
+    }
+
+    /**
+     * Change maker over this profile's denominations
+     *
+     * @return ChangeMaker
+     */
+    public ChangeMaker getChangeMaker() {
+        return this.changeMaker;
+    }
+
+    /**
+     * Denomination with the given value
+     *
+     * @param value Minor units
+     * @return int Denomination, or -1 if no denomination has that value
+     */
+    public int denominationOf(int value) {
+        int denomination = Arrays.binarySearch(this.values, value);
+
+        return denomination < 0 ? -1 : denomination;
+    }
+
+    /**
+     * Denomination with the same face value as a {@link Change} coin
+     *
+     * @param change
+     * @return int Denomination, or -1 if no denomination has that value
+     */
+    public int denominationOf(Change change) {
+        return this.denominationByChange[change.ordinal()];
+    }
+
+    /**
+     * The {@link Change} coin with the same face value as a denomination
+     *
+     * @param denomination
+     * @return Change or null if no Change coin has that value
+     */
+    public Change getChange(int denomination) {
+        return this.changeByDenomination[denomination];
+    }
+
+    /**
+     * An amount for display, with the currency symbol and the locale's decimal separator
+     *
+     * @param minorUnits
+     * @return String
+     */
+    public String format(long minorUnits) {
+        return this.formatter.print(toMoney(minorUnits));
+    }
+
+    /**
+     * An amount as joda-money, for reporting
+     *
+     * @param minorUnits
+     * @return Money
+     */
+    public Money toMoney(long minorUnits) {
+        return Money.ofMinor(this.currency, minorUnits);
+    }
+
+    private static int mask(int... denominations) {
+        int mask = 0;
+
+        for (int denomination : denominations) {
+            mask |= 1 << denomination;
+        }
+
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return getCurrencyCode() + " " + Arrays.toString(this.labels);
+    }
+}
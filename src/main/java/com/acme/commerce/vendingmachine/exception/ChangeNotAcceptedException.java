@@ -1,11 +1,13 @@
 package com.acme.commerce.vendingmachine.exception;
 
 /**
+ * Thrown for every rejected coin, so no stack trace is captured.
+ *
  * @author William Brown
  * @since 1.0
  */
 public class ChangeNotAcceptedException extends Exception {
     public ChangeNotAcceptedException() {
-        super("We do not accept that coin.");
+        super("We do not accept that coin.", null, false, false);
     }
 }
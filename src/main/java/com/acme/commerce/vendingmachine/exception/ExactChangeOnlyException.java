@@ -0,0 +1,19 @@
+package com.acme.commerce.vendingmachine.exception;
+
+/**
+ * Exact Change Only Exception for when the customer has paid enough but the machine
+ * cannot make up their change from the coins it holds
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class ExactChangeOnlyException extends InsufficientChangeException {
+
+    public ExactChangeOnlyException() {
+        this("Sorry this machine cannot make up your change, please insert the exact amount to purchase your product.");
+    }
+
+    public ExactChangeOnlyException(String message) {
+        super(message);
+    }
+}
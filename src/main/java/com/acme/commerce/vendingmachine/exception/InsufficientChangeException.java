@@ -1,15 +1,43 @@
 package com.acme.commerce.vendingmachine.exception;
 
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+
 /**
  * Insufficient Change Exception for when the customer has not inserted enough money
  * to purchase their product
  *
+ * Failed sales are routine, so no stack trace is captured.
+ *
  * @author William Brown
  * @since 1.0
  */
 public class InsufficientChangeException extends Exception {
 
     public InsufficientChangeException(String message) {
-        super(message);
+        super(message, null, false, false);
+    }
+
+    /**
+     * Exception telling the customer how much more to insert
+     *
+     * @param shortfall Pennies still needed
+     * @return InsufficientChangeException
+     */
+    public static InsufficientChangeException forShortfall(int shortfall) {
+        return forShortfall(shortfall, CurrencyProfile.GBP);
+    }
+
+    /**
+     * Exception telling the customer how much more to insert, in the machine's currency
+     *
+     * @param shortfall Minor units still needed
+     * @param profile   The machine's currency
+     * @return InsufficientChangeException
+     */
+    public static InsufficientChangeException forShortfall(int shortfall, CurrencyProfile profile) {
+        String stringChangeDifference = profile.format(shortfall);
+
+        return new InsufficientChangeException("You have not entered enough change to buy that product " +
+        " please insert " + stringChangeDifference + " more to purchase your product.");
     }
 }
@@ -0,0 +1,22 @@
+package com.acme.commerce.vendingmachine.exception;
+
+/**
+ * Machine Busy Exception for a request turned away because the machine has no room for it
+ * right now. Nothing was changed, so callers should slow down and try again; a busy machine is
+ * never out of stock. Unchecked, so a machine under load can raise it from calls that only
+ * declare their sale outcomes, and callers that care catch it ahead of those. Raised under
+ * load, so no stack trace is captured.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineBusyException extends RuntimeException {
+
+    public MachineBusyException(int capacity) {
+        this("Sorry this machine is busy with " + capacity + " requests, please try again shortly.");
+    }
+
+    protected MachineBusyException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -3,6 +3,8 @@ package com.acme.commerce.vendingmachine.exception;
 /**
  * Out Of Stock Exception
  *
+ * Failed sales are routine, so no stack trace is captured.
+ *
  * @author William Brown
  * @since 1.0
  */
@@ -10,11 +12,24 @@ public class OutOfStockException extends Exception {
 
     private int errCode;
 
+    public OutOfStockException() {
+        this(100, "Sorry this product is out of stock");
+    }
+
     public OutOfStockException(int errCode, String message) {
-        super(message);
+        super(message, null, false, false);
         this.errCode = errCode;
     }
 
+    /**
+     * The unit held for the customer has gone back on sale
+     *
+     * @return OutOfStockException
+     */
+    public static OutOfStockException reservationExpired() {
+        return new OutOfStockException(101, "Sorry your reservation has expired, please choose your product again");
+    }
+
     public int getErrCode() {
         return errCode;
     }
@@ -0,0 +1,16 @@
+package com.acme.commerce.vendingmachine.exception;
+
+/**
+ * Throttled Exception for a coin or purchase turned away by admission control before it
+ * reached the machine. A shed coin is handed back and a shed purchase leaves the balance, so
+ * the customer can simply try again shortly.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class ThrottledException extends MachineBusyException {
+
+    public ThrottledException() {
+        super("Sorry this machine is busy, please try again shortly");
+    }
+}
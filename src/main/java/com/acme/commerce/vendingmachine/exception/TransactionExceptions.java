@@ -0,0 +1,83 @@
+package com.acme.commerce.vendingmachine.exception;
+
+import com.acme.commerce.vendingmachine.CurrencyVendingMachine;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+
+/**
+ * The exceptions the throwing transaction methods raise for each {@link TransactionResult}
+ * code, for machines that implement them on top of the allocation free ones. A code the
+ * operation cannot end with is a bug, and is thrown as such rather than taken for success.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class TransactionExceptions {
+
+    private TransactionExceptions() {
+    }
+
+    /**
+     * Throw what insertChange throws for the result of tryInsertChange
+     *
+     * @param result A {@link TransactionResult} code
+     * @throws ChangeNotAcceptedException if the machine refused the coin
+     * @throws ThrottledException         if the coin was turned away before reaching the machine
+     * @throws IllegalStateException      if no insert ends with the code
+     */
+    public static void checkInsert(int result) throws ChangeNotAcceptedException, ThrottledException {
+        switch (result) {
+            case TransactionResult.OK:
+                return;
+            case TransactionResult.CHANGE_NOT_ACCEPTED:
+                throw new ChangeNotAcceptedException();
+            case TransactionResult.THROTTLED:
+                throw new ThrottledException();
+            default:
+                throw new IllegalStateException("Unexpected insert result " + TransactionResult.describe(result));
+        }
+    }
+
+    /**
+     * Throw what purchase throws for the result of tryPurchase
+     *
+     * @param result    A {@link TransactionResult} code
+     * @param shortfall Minor units the balance fell short of the cost, for an insufficient funds result
+     * @param profile   The machine's currency, to tell the customer the shortfall in
+     * @throws OutOfStockException        if there was nothing to sell
+     * @throws InsufficientChangeException if the balance was short or could not be made into change
+     * @throws ThrottledException          if the purchase was turned away before reaching the machine
+     * @throws IllegalStateException       if no purchase ends with the code
+     */
+    public static void checkPurchase(int result, int shortfall, CurrencyProfile profile)
+            throws OutOfStockException, InsufficientChangeException, ThrottledException {
+        switch (result) {
+            case TransactionResult.OK:
+                return;
+            case TransactionResult.OUT_OF_STOCK:
+                throw new OutOfStockException();
+            case TransactionResult.RESERVATION_EXPIRED:
+                throw OutOfStockException.reservationExpired();
+            case TransactionResult.THROTTLED:
+                throw new ThrottledException();
+            case TransactionResult.INSUFFICIENT_FUNDS:
+                throw InsufficientChangeException.forShortfall(shortfall, profile);
+            case TransactionResult.EXACT_CHANGE_ONLY:
+                throw new ExactChangeOnlyException();
+            default:
+                throw new IllegalStateException("Unexpected purchase result " + TransactionResult.describe(result));
+        }
+    }
+
+    /**
+     * The currency a machine works in, sterling unless it says otherwise
+     *
+     * @param vendingMachine The machine
+     * @return CurrencyProfile
+     */
+    public static CurrencyProfile currencyOf(VendingMachine vendingMachine) {
+        return vendingMachine instanceof CurrencyVendingMachine
+                ? ((CurrencyVendingMachine) vendingMachine).getCurrencyProfile() : CurrencyProfile.GBP;
+    }
+}
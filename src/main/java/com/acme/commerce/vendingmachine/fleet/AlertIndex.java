@@ -0,0 +1,227 @@
+package com.acme.commerce.vendingmachine.fleet;
+
+import java.util.Arrays;
+
+/**
+ * Alert Index
+ *
+ * Keeps machines ordered by how urgently they need a visit, so a dispatcher can pull the most
+ * urgent few without looking at every machine. Urgency is a number worked out per machine by
+ * an {@link Urgency} function, lowest first, such as the stock left in its emptiest slot.
+ *
+ * Machines are spread over shards by id, each shard an indexed binary min-heap with its own
+ * lock, so updates from different machines rarely wait for each other. After changing a
+ * machine call {@link #update(int)}, which works its urgency out again and moves it within its
+ * heap in O(log n). {@link #mostUrgent(int)} reads the top k of every shard and merges them.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class AlertIndex {
+    private static final int MAX_SHARDS = 64;
+
+    /**
+     * How urgently a machine needs attention, lower is more urgent
+     */
+    public interface Urgency {
+        int of(int machine);
+    }
+
+    private final Urgency urgency;
+    private final Shard[] shards;
+
+    /**
+     * Index over machines 0 to machines - 1, ordered by their current urgency
+     *
+     * @param machines
+     * @param urgency
+     */
+    public AlertIndex(int machines, Urgency urgency) {
+        int shards = Math.max(1, Math.min(MAX_SHARDS,
+                Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1));
+
+        this.urgency = urgency;
+        this.shards = new Shard[Math.min(shards, Math.max(1, machines))];
+
+        for (int shard = 0; shard < this.shards.length; shard++) {
+            this.shards[shard] = new Shard(shard, (machines - shard + this.shards.length - 1) / this.shards.length);
+        }
+    }
+
+    /**
+     * Work out a machine's urgency again and reposition it
+     *
+     * @param machine
+     */
+    public void update(int machine) {
+        this.shards[machine % this.shards.length].update(machine / this.shards.length);
+    }
+
+    /**
+     * Urgency of a machine as last worked out
+     *
+     * @param machine
+     * @return int
+     */
+    public int urgency(int machine) {
+        return this.shards[machine % this.shards.length].key(machine / this.shards.length);
+    }
+
+    /**
+     * The most urgent machines, most urgent first
+     *
+     * @param k Most machines to return
+     * @return int[] Machine ids, at most k of them
+     */
+    public int[] mostUrgent(int k) {
+        long[] candidates = new long[k * this.shards.length];
+        int count = 0;
+
+        for (Shard shard : this.shards) {
+            count = shard.top(k, candidates, count);
+        }
+
+        // Candidates pack urgency above machine id, so sorting orders by urgency then id
+        Arrays.sort(candidates, 0, count);
+
+        int[] machines = new int[Math.min(k, count)];
+
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = (int) candidates[i];
+        }
+
+        return machines;
+    }
+
+    /**
+     * Indexed min-heap over the machines of one shard, addressed by their index within the shard
+     */
+    private final class Shard {
+        private final int offset;
+        private final int[] heap;
+        private final int[] position;
+        private final int[] keys;
+
+        Shard(int offset, int size) {
+            this.offset = offset;
+            this.heap = new int[size];
+            this.position = new int[size];
+            this.keys = new int[size];
+
+            for (int local = 0; local < size; local++) {
+                this.heap[local] = local;
+                this.position[local] = local;
+                this.keys[local] = urgency.of(machine(local));
+            }
+
+            for (int index = size / 2 - 1; index >= 0; index--) {
+                siftDown(index);
+            }
+        }
+
+        synchronized void update(int local) {
+            int key = urgency.of(machine(local));
+            int previous = this.keys[local];
+            this.keys[local] = key;
+
+            if (key < previous) {
+                siftUp(this.position[local]);
+            } else if (key > previous) {
+                siftDown(this.position[local]);
+            }
+        }
+
+        synchronized int key(int local) {
+            return this.keys[local];
+        }
+
+        /**
+         * Add the shard's k most urgent machines to the candidates, walking the heap from the
+         * root and only ever expanding the smallest node seen so far
+         */
+        synchronized int top(int k, long[] candidates, int count) {
+            if (this.heap.length == 0 || k <= 0) {
+                return count;
+            }
+
+            int[] frontier = new int[k + 1];
+            int size = 0;
+            frontier[size++] = 0;
+
+            for (int taken = 0; taken < k && size > 0; taken++) {
+                int best = 0;
+
+                for (int i = 1; i < size; i++) {
+                    if (less(frontier[i], frontier[best])) {
+                        best = i;
+                    }
+                }
+
+                int index = frontier[best];
+                frontier[best] = frontier[--size];
+                candidates[count++] = pack(this.heap[index]);
+
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < this.heap.length; child++) {
+                    frontier[size++] = child;
+                }
+            }
+
+            return count;
+        }
+
+        private long pack(int local) {
+            return ((long) this.keys[local] << 32) | (machine(local) & 0xFFFFFFFFL);
+        }
+
+        private int machine(int local) {
+            return local * shards.length + this.offset;
+        }
+
+        private boolean less(int left, int right) {
+            return this.keys[this.heap[left]] < this.keys[this.heap[right]];
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+
+                if (!less(index, parent)) {
+                    return;
+                }
+
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            for (;;) {
+                int smallest = index;
+                int left = 2 * index + 1;
+
+                if (left < this.heap.length && less(left, smallest)) {
+                    smallest = left;
+                }
+
+                if (left + 1 < this.heap.length && less(left + 1, smallest)) {
+                    smallest = left + 1;
+                }
+
+                if (smallest == index) {
+                    return;
+                }
+
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int local = this.heap[i];
+            this.heap[i] = this.heap[j];
+            this.heap[j] = local;
+            this.position[this.heap[i]] = i;
+            this.position[this.heap[j]] = j;
+        }
+    }
+}
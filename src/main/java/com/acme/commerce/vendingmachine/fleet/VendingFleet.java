@@ -0,0 +1,709 @@
+package com.acme.commerce.vendingmachine.fleet;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.ReservableVendingMachine;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.ExactChangeOnlyException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.impl.ChangeMaker;
+import com.acme.commerce.vendingmachine.impl.CoinLedger;
+import com.acme.commerce.vendingmachine.impl.MachineTemplate;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Vending Fleet
+ *
+ * Hosts a large number of identically configured machines in a handful of flat arrays instead
+ * of one object graph per machine. Machine {@code id} owns:
+ *
+ * <ul>
+ *     <li>bit {@code id} of the power state</li>
+ *     <li>escrow word {@code id}, packed as described in {@link CoinLedger}</li>
+ *     <li>cash box counters {@code id * DENOMINATIONS + Change.ordinal()}</li>
+ *     <li>stock counters {@code id * slots + slot}, slots ordered by slot code</li>
+ *     <li>units sold counters, laid out as the stock</li>
+ * </ul>
+ *
+ * Slot codes, product names and prices are held once for the whole fleet, in a {@link Planogram}
+ * read through a {@link CatalogPublisher}, which may be shared with other fleets and machines
+ * so that a price change reaches all of them in one swap. With the default three
+ * product planogram that comes to 64 bytes of state per machine, see {@link #bytesPerMachine()},
+ * against well over a kilobyte for a {@code VendingMachineImpl}.
+ *
+ * {@link #machine(int)} hands out a throwaway {@link VendingMachine} view over one machine's
+ * state. All updates go through the same compare-and-set operations as
+ * {@code ConcurrentVendingMachineImpl}, so a machine may be driven from several threads. Stock
+ * reservations are held in {@link StockLeases} timing wheels, one per shard of machines, so
+ * customers reserving at machines of different shards do not contend for one wheel's lock.
+ *
+ * Two {@link AlertIndex alert indexes} rank the machines for the dispatcher, one by the stock
+ * left in each machine's emptiest slot and one by the fewest coins it holds of any accepted
+ * type. Sales, {@link #restock(int, int, int)}, {@link #topUpChange(int, Change, int)} and
+ * resets keep them current, so the machines most in need of a visit can be read off without
+ * looking at the rest of the fleet. Inserting coins only touches escrow and leaves them alone.
+ * They cost another 24 bytes per machine on top of its state.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class VendingFleet {
+    private static final int DENOMINATIONS = CoinLedger.DENOMINATIONS;
+    private static final int ESTIMATED_ARRAY_OVERHEAD = 16;
+
+    private final int size;
+    private final int slots;
+    private final CatalogPublisher publisher;
+    private final List<Change> acceptedCoins;
+    private final int acceptedCoinMask;
+
+    private final AtomicLongArray powerState;
+    private final AtomicLongArray changeInserted;
+    private final AtomicIntegerArray changeAvailable;
+    private final AtomicIntegerArray stock;
+    private final AtomicIntegerArray sold;
+    // Lease wheels, machine id modulo their number picks a machine's wheel
+    private final StockLeases[] leases = leaseShards();
+    private final AlertIndex stockAlerts;
+    private final AlertIndex changeAlerts;
+
+    /**
+     * Fleet of default machines, each with 5 of the accepted change types and the three default products
+     *
+     * @param size Number of machines
+     */
+    public VendingFleet(int size) {
+        this(size, MachineTemplate.defaults());
+    }
+
+    private VendingFleet(int size, MachineTemplate template) {
+        this(size, template.getAcceptedChange(), template.getChangeFloat(),
+                new CatalogPublisher(template.getPlanogram()), template::getStock);
+    }
+
+    /**
+     * Fleet of machines sharing one configuration. Every machine starts powered off with the
+     * given coin float and the given products, whose quantities become each machine's stock.
+     *
+     * @param size           Number of machines
+     * @param acceptedChange Coins the machines take
+     * @param changeFloat    Coins each machine starts with
+     * @param planogram      Products by slot code
+     */
+    public VendingFleet(int size, List<Change> acceptedChange, Map<Change, Integer> changeFloat,
+                        Map<String, Product> planogram) {
+        this(size, acceptedChange, changeFloat, new Planogram(planogram), planogram);
+    }
+
+    private VendingFleet(int size, List<Change> acceptedChange, Map<Change, Integer> changeFloat,
+                         Planogram planogram, Map<String, Product> quantities) {
+        this(size, acceptedChange, changeFloat, new CatalogPublisher(planogram), slot -> {
+            Product product = quantities.get(planogram.getSlotCode(slot));
+            return product == null ? 0 : product.getQuantityAvailable();
+        });
+    }
+
+    /**
+     * Fleet of machines sharing one configuration and following a published catalog. Every
+     * machine starts powered off with the given coin float and empty slots.
+     *
+     * @param size           Number of machines
+     * @param acceptedChange Coins the machines take
+     * @param changeFloat    Coins each machine starts with
+     * @param publisher      Catalog the machines sell from
+     */
+    public VendingFleet(int size, List<Change> acceptedChange, Map<Change, Integer> changeFloat,
+                        CatalogPublisher publisher) {
+        this(size, acceptedChange, changeFloat, publisher, slot -> 0);
+    }
+
+    /**
+     * @param quantities Units each machine starts with, by slot
+     */
+    private VendingFleet(int size, List<Change> acceptedChange, Map<Change, Integer> changeFloat,
+                         CatalogPublisher publisher, IntUnaryOperator quantities) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Fleet size cannot be negative");
+        }
+
+        this.size = size;
+        this.acceptedCoins = Collections.unmodifiableList(new ArrayList<>(acceptedChange));
+        this.acceptedCoinMask = CoinLedger.mask(acceptedChange);
+
+        this.publisher = publisher;
+        this.slots = publisher.current().slots();
+
+        int[] initialStock = new int[slots];
+        int slot;
+
+        for (slot = 0; slot < slots; slot++) {
+            initialStock[slot] = quantities.applyAsInt(slot);
+        }
+
+        this.powerState = new AtomicLongArray((size + 63) >>> 6);
+        this.changeInserted = new AtomicLongArray(size);
+        this.changeAvailable = new AtomicIntegerArray(size * DENOMINATIONS);
+        this.stock = new AtomicIntegerArray(size * slots);
+        this.sold = new AtomicIntegerArray(size * slots);
+
+        for (int machine = 0; machine < size; machine++) {
+            for (Map.Entry<Change, Integer> entry : changeFloat.entrySet()) {
+                this.changeAvailable.lazySet(machine * DENOMINATIONS + entry.getKey().ordinal(), entry.getValue());
+            }
+
+            for (slot = 0; slot < slots; slot++) {
+                this.stock.lazySet(machine * slots + slot, initialStock[slot]);
+            }
+        }
+
+        this.stockAlerts = new AlertIndex(size, this::lowestStock);
+        this.changeAlerts = new AlertIndex(size, this::fewestCoins);
+    }
+
+    /**
+     * Fleet restored from a snapshot, see {@link #snapshot()}
+     *
+     * @param snapshot
+     * @throws IllegalArgumentException if a machine has more coins of one type inserted than its escrow holds
+     */
+    public VendingFleet(MachineSnapshot snapshot) {
+        this.size = snapshot.size();
+        this.slots = snapshot.slots();
+        this.acceptedCoins = snapshot.getAcceptedChange();
+        this.acceptedCoinMask = CoinLedger.mask(this.acceptedCoins);
+        this.publisher = new CatalogPublisher(new Planogram(snapshot.getSlotCodes(), snapshot.getNames(),
+                snapshot.getCosts()));
+
+        int[] coins = snapshot.getChangeInserted();
+        long[] escrow = new long[this.size];
+
+        for (int machine = 0; machine < this.size; machine++) {
+            escrow[machine] = CoinLedger.pack(coins, machine * DENOMINATIONS);
+
+            if (escrow[machine] < 0) {
+                throw new IllegalArgumentException("Machine " + machine + " has more coins inserted than its escrow holds");
+            }
+        }
+
+        this.powerState = new AtomicLongArray(snapshot.getPowerState());
+        this.changeInserted = new AtomicLongArray(escrow);
+        this.changeAvailable = new AtomicIntegerArray(snapshot.getChangeAvailable());
+        this.stock = new AtomicIntegerArray(snapshot.getStock());
+        this.sold = new AtomicIntegerArray(snapshot.getSold());
+        this.stockAlerts = new AlertIndex(this.size, this::lowestStock);
+        this.changeAlerts = new AlertIndex(this.size, this::fewestCoins);
+    }
+
+    /**
+     * Copy of the state of every machine. Each counter is read atomically, but machines that are
+     * trading while the snapshot is taken may be caught part way through a sale.
+     *
+     * @return MachineSnapshot
+     */
+    public MachineSnapshot snapshot() {
+        long[] powerState = new long[this.powerState.length()];
+        int[] changeInserted = new int[this.size * DENOMINATIONS];
+        int[] changeAvailable = new int[this.changeAvailable.length()];
+        int[] stock = new int[this.stock.length()];
+        int[] sold = new int[this.sold.length()];
+
+        for (int i = 0; i < powerState.length; i++) {
+            powerState[i] = this.powerState.get(i);
+        }
+
+        for (int machine = 0; machine < this.size; machine++) {
+            long word = this.changeInserted.get(machine);
+
+            for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                changeInserted[machine * DENOMINATIONS + ordinal] = CoinLedger.count(word, ordinal);
+            }
+        }
+
+        for (int i = 0; i < changeAvailable.length; i++) {
+            changeAvailable[i] = this.changeAvailable.get(i);
+        }
+
+        for (int i = 0; i < stock.length; i++) {
+            stock[i] = this.stock.get(i);
+            sold[i] = this.sold.get(i);
+        }
+
+        Planogram planogram = this.publisher.current();
+        String[] slotCodes = new String[this.slots];
+        String[] names = new String[this.slots];
+        int[] costs = new int[this.slots];
+
+        for (int slot = 0; slot < this.slots; slot++) {
+            slotCodes[slot] = planogram.getSlotCode(slot);
+            names[slot] = planogram.getName(slot);
+            costs[slot] = planogram.getCost(slot);
+        }
+
+        return new MachineSnapshot(this.size, this.acceptedCoins, slotCodes, names, costs, powerState,
+                changeInserted, changeAvailable, stock, sold);
+    }
+
+    /**
+     * Number of machines in the fleet
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Lightweight view over one machine. A view holds the machine id and a {@link ProductCatalog}
+     * over the machine's counters, two small objects that own no state, and may be discarded
+     * freely. The catalog's products are only built if {@code getProductList()} is called.
+     *
+     * @param id Machine id, from 0 to size() - 1
+     * @return VendingMachine
+     */
+    public ReservableVendingMachine machine(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("No machine " + id + " in a fleet of " + this.size);
+        }
+
+        return new MachineView(id);
+    }
+
+    /**
+     * One machine's products, over the fleet's stock and sales counters
+     *
+     * @param id Machine id, from 0 to size() - 1
+     * @return ProductCatalog
+     */
+    public ProductCatalog catalog(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("No machine " + id + " in a fleet of " + this.size);
+        }
+
+        return new ProductCatalog(this.publisher, this.stock, this.sold, id * this.slots);
+    }
+
+    /**
+     * The fleet's catalog, publish to it to change every machine's products and prices at once
+     *
+     * @return CatalogPublisher
+     */
+    public CatalogPublisher getPublisher() {
+        return this.publisher;
+    }
+
+    /**
+     * Put units back into one of a machine's slots
+     *
+     * @param id       Machine id, from 0 to size() - 1
+     * @param slot     Slot, in slot code order
+     * @param quantity Units added
+     * @return int Stock now in the slot
+     */
+    public int restock(int id, int slot, int quantity) {
+        int stock = catalog(id).restock(slot, quantity);
+        this.stockAlerts.update(id);
+
+        return stock;
+    }
+
+    /**
+     * Add coins to a machine's cash box
+     *
+     * @param id     Machine id, from 0 to size() - 1
+     * @param change Coin type
+     * @param count  Coins added
+     * @return int Coins of that type now in the cash box
+     */
+    public int topUpChange(int id, Change change, int count) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("No machine " + id + " in a fleet of " + this.size);
+        }
+
+        int coins = this.changeAvailable.addAndGet(id * DENOMINATIONS + change.ordinal(), count);
+        this.changeAlerts.update(id);
+
+        return coins;
+    }
+
+    /**
+     * Machines ranked by the stock left in their emptiest slot. Stock put back through
+     * {@link #catalog(int)} rather than {@link #restock(int, int, int)} is seen at the machine's next sale.
+     *
+     * @return AlertIndex
+     */
+    public AlertIndex getStockAlerts() {
+        return this.stockAlerts;
+    }
+
+    /**
+     * Machines ranked by the fewest coins they hold of any accepted type
+     *
+     * @return AlertIndex
+     */
+    public AlertIndex getChangeAlerts() {
+        return this.changeAlerts;
+    }
+
+    /**
+     * Bytes of machine state held per machine, excluding the configuration shared by the fleet
+     *
+     * @return double
+     */
+    public double bytesPerMachine() {
+        return 1 / 8.0 + 8 + 4 * DENOMINATIONS + 8 * this.slots;
+    }
+
+    /**
+     * Estimated heap held by the fleet's state arrays, in bytes
+     *
+     * @return long
+     */
+    public long footprintBytes() {
+        return 5 * ESTIMATED_ARRAY_OVERHEAD
+                + 8L * this.powerState.length()
+                + 8L * this.changeInserted.length()
+                + 4L * this.changeAvailable.length()
+                + 4L * this.stock.length()
+                + 4L * this.sold.length();
+    }
+
+    private int lowestStock(int machine) {
+        int lowest = Integer.MAX_VALUE;
+
+        for (int slot = 0; slot < this.slots; slot++) {
+            lowest = Math.min(lowest, this.stock.get(machine * this.slots + slot));
+        }
+
+        return lowest;
+    }
+
+    private int fewestCoins(int machine) {
+        int fewest = Integer.MAX_VALUE;
+
+        for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+            if ((this.acceptedCoinMask & (1 << ordinal)) != 0) {
+                fewest = Math.min(fewest, this.changeAvailable.get(machine * DENOMINATIONS + ordinal));
+            }
+        }
+
+        return fewest;
+    }
+
+    /**
+     * A sale has gone through, its stock and cash box have both moved
+     */
+    private void sold(int machine) {
+        this.stockAlerts.update(machine);
+        this.changeAlerts.update(machine);
+    }
+
+    private boolean isPoweredOn(int machine) {
+        return (this.powerState.get(machine >>> 6) & (1L << machine)) != 0;
+    }
+
+    private void setPower(int machine, boolean isOn) {
+        int index = machine >>> 6;
+        long bit = 1L << machine;
+
+        for (;;) {
+            long current = this.powerState.get(index);
+            long next = isOn ? current | bit : current & ~bit;
+
+            if (current == next || this.powerState.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A power of two number of lease wheels, four per processor
+     */
+    private static StockLeases[] leaseShards() {
+        int shards = Integer.highestOneBit(Math.max(1, 4 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        StockLeases[] leases = new StockLeases[shards];
+
+        for (int shard = 0; shard < shards; shard++) {
+            leases[shard] = new StockLeases();
+        }
+
+        return leases;
+    }
+
+    /**
+     * One machine's state, as a Vending Machine
+     */
+    private class MachineView implements ReservableVendingMachine {
+        private final int id;
+        private final ProductCatalog catalog;
+        private final StockLeases leases;
+
+        MachineView(int id) {
+            this.id = id;
+            this.catalog = catalog(id);
+            this.leases = VendingFleet.this.leases[id & (VendingFleet.this.leases.length - 1)];
+        }
+
+        @Override
+        public List<Change> getAcceptedChange() {
+            return acceptedCoins;
+        }
+
+        @Override
+        public boolean isPoweredOn() {
+            return VendingFleet.this.isPoweredOn(this.id);
+        }
+
+        @Override
+        public void powerOn() {
+            setPower(this.id, true);
+        }
+
+        @Override
+        public void powerOff() {
+            setPower(this.id, false);
+        }
+
+        @Override
+        public int tryInsertChange(Change change) {
+            if ((acceptedCoinMask & (1 << change.ordinal())) == 0 || CoinLedger.insert(changeInserted, this.id, change) < 0) {
+                return TransactionResult.CHANGE_NOT_ACCEPTED;
+            }
+
+            return TransactionResult.OK;
+        }
+
+        @Override
+        public int getBalance() {
+            return CoinLedger.balance(changeInserted.get(this.id));
+        }
+
+        @Override
+        public Map<Change, Integer> getChangeAvailable() {
+            Map<Change, Integer> coins = new EnumMap<>(Change.class);
+
+            for (Change change : Change.values()) {
+                int count = changeAvailable.get(this.id * DENOMINATIONS + change.ordinal());
+
+                if (count > 0) {
+                    coins.put(change, count);
+                }
+            }
+
+            return coins;
+        }
+
+        @Override
+        public int insertChange(Change change) throws ChangeNotAcceptedException {
+            if ((acceptedCoinMask & (1 << change.ordinal())) == 0) {
+                throw new ChangeNotAcceptedException();
+            }
+
+            int balance = CoinLedger.insert(changeInserted, this.id, change);
+
+            // Escrow is full for this coin type, hand it back
+            if (balance < 0) {
+                throw new ChangeNotAcceptedException();
+            }
+
+            return balance;
+        }
+
+        @Override
+        public List<Change> getChangeInserted() {
+            List<Change> coins = new ArrayList<>();
+            CoinLedger.collect(changeInserted.get(this.id), coins);
+
+            return coins;
+        }
+
+        @Override
+        public int refundChange() {
+            CoinLedger.drain(changeInserted, this.id);
+
+            return getBalance();
+        }
+
+        @Override
+        public void reset() {
+            CoinLedger.drain(changeInserted, this.id);
+
+            for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                changeAvailable.set(this.id * DENOMINATIONS + ordinal, 0);
+            }
+
+            changeAlerts.update(this.id);
+        }
+
+        @Override
+        public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+            int slot = this.catalog.slotOf(product);
+
+            if (!takeStock(product, slot)) {
+                throw new OutOfStockException();
+            }
+
+            long settled = settle(product, slot);
+
+            if (settled == CoinLedger.NO_CHANGE) {
+                throw new ExactChangeOnlyException();
+            }
+
+            // Not enough funds to buy product, settle hands back the shortfall
+            if (settled < 0) {
+                throw InsufficientChangeException.forShortfall((int) -settled);
+            }
+        }
+
+        @Override
+        public int tryPurchase(Product product) {
+            int slot = this.catalog.slotOf(product);
+
+            if (!takeStock(product, slot)) {
+                return TransactionResult.OUT_OF_STOCK;
+            }
+
+            return CoinLedger.result(settle(product, slot));
+        }
+
+        @Override
+        public int tryInsertChange(Change[] coins, int offset, int length, byte[] results) {
+            return CoinLedger.insert(changeInserted, this.id, coins, offset, length, acceptedCoinMask, results);
+        }
+
+        @Override
+        public int tryPurchase(int[] coins, Product[] products, int offset, int length, byte[] results) {
+            int sold = 0;
+
+            for (int order = offset; order < offset + length; order++) {
+                CoinLedger.insert(changeInserted, this.id, coins, order * CoinLedger.DENOMINATIONS, acceptedCoinMask);
+                results[order] = (byte) tryPurchase(products[order]);
+
+                if (results[order] == TransactionResult.OK) {
+                    sold++;
+                }
+            }
+
+            return sold;
+        }
+
+        /**
+         * Remove a unit from the machines inventory, products not from the catalog are only checked
+         */
+        private boolean takeStock(Product product, int slot) {
+            if (slot < 0) {
+                return !product.isOutOfStock();
+            }
+
+            if (this.catalog.take(slot)) {
+                return true;
+            }
+
+            // A lapsed reservation may still hold the unit until the wheel turns, turn it and look again
+            this.leases.expire();
+
+            return this.catalog.take(slot);
+        }
+
+        /**
+         * Product has been taken from stock, take payment and dispense change or put it back
+         */
+        private long settle(Product product, int slot) {
+            long settled = CoinLedger.settle(changeInserted, this.id, changeAvailable, this.id * DENOMINATIONS,
+                    product.getCost(), ChangeMaker.DEFAULT, CoinLedger.changeBuffer());
+
+            if (slot >= 0) {
+                if (settled < 0) {
+                    this.catalog.restock(slot, 1);
+                } else {
+                    this.catalog.recordSales(slot, 1);
+                }
+            }
+
+            if (settled >= 0) {
+                sold(this.id);
+            }
+
+            return settled;
+        }
+
+        @Override
+        public long reserve(Product product, long timeoutMillis) {
+            int slot = this.catalog.slotOf(product);
+
+            return slot < 0 ? NO_LEASE : this.leases.reserve(this.catalog, slot, timeoutMillis);
+        }
+
+        @Override
+        public boolean release(long lease) {
+            return this.leases.release(lease);
+        }
+
+        @Override
+        public void purchase(long lease) throws OutOfStockException, InsufficientChangeException {
+            long settled = settle(lease);
+
+            if (settled == CoinLedger.NO_RESERVATION) {
+                throw OutOfStockException.reservationExpired();
+            }
+
+            if (settled == CoinLedger.NO_CHANGE) {
+                throw new ExactChangeOnlyException();
+            }
+
+            // Not enough funds to buy product, settle hands back the shortfall
+            if (settled < 0) {
+                throw InsufficientChangeException.forShortfall((int) -settled);
+            }
+        }
+
+        @Override
+        public int tryPurchase(long lease) {
+            return CoinLedger.result(settle(lease));
+        }
+
+        /**
+         * Pay for a reserved unit, the lease is claimed for the sale and handed back if it falls through
+         */
+        private long settle(long lease) {
+            if (!this.leases.claim(lease)) {
+                return CoinLedger.NO_RESERVATION;
+            }
+
+            // Machines share their shard's leases, make sure this one holds a unit of this machine
+            if (!this.catalog.sharesStock(this.leases.getCatalog(lease))) {
+                this.leases.unclaim(lease);
+
+                return CoinLedger.NO_RESERVATION;
+            }
+
+            long settled = CoinLedger.settle(changeInserted, this.id, changeAvailable, this.id * DENOMINATIONS,
+                    publisher.current().getCost(this.leases.getSlot(lease)), ChangeMaker.DEFAULT, CoinLedger.changeBuffer());
+
+            if (settled < 0) {
+                this.leases.unclaim(lease);
+            } else {
+                this.leases.commit(lease);
+                sold(this.id);
+            }
+
+            return settled;
+        }
+
+        @Override
+        public Map<String, Product> getProductList() {
+            return this.catalog.asMap();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.acme.commerce.vendingmachine.idempotency;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.IdempotentVendingMachine;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.TransactionExceptions;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicating Vending Machine
+ *
+ * Makes another machine idempotent by recording the outcome of every call that carries a
+ * transaction id in a {@link TransactionCache}. A call whose id is found returns the recorded
+ * outcome without reaching the machine; any other runs and has its outcome recorded, whether
+ * it succeeded or not. A call turned away before it reached the machine, as
+ * {@link TransactionResult#THROTTLED} or with a protocol rejection, changed nothing and is not
+ * recorded, so its retry runs. A retry is matched on its id alone, so it gets the first call's
+ * outcome even if it asks for something different.
+ *
+ * Looking up, running and recording happen under the machine's lock, so a retry that arrives
+ * while the first call is still running waits for it rather than running too. Calls without a
+ * transaction id go straight through.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class DeduplicatingVendingMachine implements IdempotentVendingMachine {
+    private final VendingMachine vendingMachine;
+    private final TransactionCache cache;
+    private final int machine;
+
+    /**
+     * @param vendingMachine Machine to deduplicate calls to
+     * @param cache          Cache to record outcomes in, possibly shared with other machines
+     * @param machine        Id the machine's transactions are recorded under, unique within the cache
+     */
+    public DeduplicatingVendingMachine(VendingMachine vendingMachine, TransactionCache cache, int machine) {
+        this.vendingMachine = vendingMachine;
+        this.cache = cache;
+        this.machine = machine;
+    }
+
+    public TransactionCache getCache() {
+        return this.cache;
+    }
+
+    @Override
+    public synchronized int tryInsertChange(long transactionId, Change change) {
+        if (transactionId == NO_TRANSACTION) {
+            return this.vendingMachine.tryInsertChange(change);
+        }
+
+        int result = this.cache.get(this.machine, transactionId);
+
+        if (result == TransactionCache.MISSING) {
+            result = this.vendingMachine.tryInsertChange(change);
+            record(transactionId, result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized int tryPurchase(long transactionId, Product product) {
+        if (transactionId == NO_TRANSACTION) {
+            return this.vendingMachine.tryPurchase(product);
+        }
+
+        int result = this.cache.get(this.machine, transactionId);
+
+        if (result == TransactionCache.MISSING) {
+            result = this.vendingMachine.tryPurchase(product);
+            record(transactionId, result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized int refundChange(long transactionId) {
+        if (transactionId != NO_TRANSACTION) {
+            int refunded = this.cache.get(this.machine, transactionId);
+
+            if (refunded != TransactionCache.MISSING) {
+                return refunded;
+            }
+        }
+
+        int refunded = this.vendingMachine.getBalance();
+        this.vendingMachine.refundChange();
+
+        if (transactionId != NO_TRANSACTION) {
+            this.cache.put(this.machine, transactionId, refunded);
+        }
+
+        return refunded;
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.vendingMachine.getAcceptedChange();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.vendingMachine.isPoweredOn();
+    }
+
+    @Override
+    public synchronized void powerOn() {
+        this.vendingMachine.powerOn();
+    }
+
+    @Override
+    public synchronized void powerOff() {
+        this.vendingMachine.powerOff();
+    }
+
+    @Override
+    public int getBalance() {
+        return this.vendingMachine.getBalance();
+    }
+
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        return this.vendingMachine.getChangeAvailable();
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException {
+        TransactionExceptions.checkInsert(tryInsertChange(change));
+
+        return getBalance();
+    }
+
+    @Override
+    public synchronized int tryInsertChange(Change change) {
+        return this.vendingMachine.tryInsertChange(change);
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.vendingMachine.getChangeInserted();
+    }
+
+    @Override
+    public synchronized int refundChange() {
+        return this.vendingMachine.refundChange();
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.vendingMachine.reset();
+    }
+
+    @Override
+    public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+        int balance = getBalance();
+
+        TransactionExceptions.checkPurchase(tryPurchase(product), product.getCost() - balance,
+                TransactionExceptions.currencyOf(this.vendingMachine));
+    }
+
+    @Override
+    public synchronized int tryPurchase(Product product) {
+        return this.vendingMachine.tryPurchase(product);
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.vendingMachine.getProductList();
+    }
+
+    private void record(long transactionId, int result) {
+        if (TransactionResult.isOutcome(result)) {
+            this.cache.put(this.machine, transactionId, result);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.acme.commerce.vendingmachine.idempotency;
+
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transaction Cache
+ *
+ * The outcomes of recent transactions, by machine and transaction id, in a fixed amount of
+ * memory. Entries are held in parallel arrays, grouped into sets of {@value #WAYS}; a
+ * transaction can only live in the set its ids hash to, so a lookup reads one set and never
+ * allocates. Adding to a full set replaces an expired entry if there is one, otherwise the
+ * entry closest to expiring, which is counted as an eviction: a retry of an evicted
+ * transaction would run again, so the capacity should cover every transaction made within the
+ * time-to-live, and a growing eviction count says it does not.
+ *
+ * Only {@link #put(int, long, int)} reads the clock; lookups judge expiry by the time of the
+ * latest put, so a hit costs no clock read. An outcome is therefore kept for at least its
+ * time-to-live, and until the next new transaction after that.
+ *
+ * Sets are guarded by a fixed number of locks, each set by the lock its index picks, so threads
+ * working on different machines rarely wait on each other. One cache can serve a whole fleet.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class TransactionCache {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Returned by {@link #get(int, long)} for a transaction the cache does not hold
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    public static final int WAYS = 8;
+
+    private static final int MAX_STRIPES = 64;
+    private static final long EMPTY = 0;
+
+    private final StockLeases.Ticker ticker;
+    private final long origin;
+    private final long timeToLiveNanos;
+    private final int setMask;
+    private final Object[] locks;
+    private final int lockMask;
+
+    // Entries, WAYS per set; a deadline of EMPTY marks a free entry
+    private final long[] transactions;
+    private final int[] machines;
+    private final int[] outcomes;
+    private final long[] deadlines;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Time of the latest put, what lookups take as now
+    private volatile long lastPut;
+
+    public TransactionCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE_MILLIS, StockLeases.Ticker.SYSTEM);
+    }
+
+    /**
+     * @param capacity         Entries held, rounded up to a power of two of at least {@value #WAYS}
+     * @param timeToLiveMillis How long an outcome is kept, at least as long as callers keep retrying
+     * @param ticker           Source of time
+     */
+    public TransactionCache(int capacity, long timeToLiveMillis, StockLeases.Ticker ticker) {
+        if (capacity < 1 || timeToLiveMillis < 1) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive");
+        }
+
+        int entries = Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        int sets = entries / WAYS;
+        int stripes = Math.min(sets, Math.min(MAX_STRIPES,
+                Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1));
+
+        this.ticker = ticker;
+        // Deadlines are kept from just before now, so none is ever EMPTY
+        this.origin = ticker.nanoTime() - 1;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.setMask = sets - 1;
+        this.locks = new Object[stripes];
+        this.lockMask = stripes - 1;
+        this.transactions = new long[entries];
+        this.machines = new int[entries];
+        this.outcomes = new int[entries];
+        this.deadlines = new long[entries];
+
+        for (int lock = 0; lock < stripes; lock++) {
+            this.locks[lock] = new Object();
+        }
+    }
+
+    public int getCapacity() {
+        return this.deadlines.length;
+    }
+
+    /**
+     * Unexpired entries replaced to make room, each a transaction that would run again if retried
+     *
+     * @return long
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * The outcome recorded for a transaction, if it has not expired
+     *
+     * @param machine
+     * @param transactionId
+     * @return int Outcome, or {@link #MISSING}
+     */
+    public int get(int machine, long transactionId) {
+        int set = setOf(machine, transactionId);
+        int base = set * WAYS;
+        long now = this.lastPut;
+
+        synchronized (this.locks[set & this.lockMask]) {
+            for (int entry = base; entry < base + WAYS; entry++) {
+                if (this.transactions[entry] == transactionId && this.machines[entry] == machine
+                        && this.deadlines[entry] > now) {
+                    return this.outcomes[entry];
+                }
+            }
+        }
+
+        return MISSING;
+    }
+
+    /**
+     * Record a transaction's outcome, replacing any held for the same transaction
+     *
+     * @param machine
+     * @param transactionId
+     * @param outcome       Anything but {@link #MISSING}
+     */
+    public void put(int machine, long transactionId, int outcome) {
+        int set = setOf(machine, transactionId);
+        int base = set * WAYS;
+        long now = this.ticker.nanoTime() - this.origin;
+
+        if (now > this.lastPut) {
+            this.lastPut = now;
+        }
+
+        synchronized (this.locks[set & this.lockMask]) {
+            int victim = base;
+
+            for (int entry = base; entry < base + WAYS; entry++) {
+                if (this.transactions[entry] == transactionId && this.machines[entry] == machine
+                        && this.deadlines[entry] != EMPTY) {
+                    victim = entry;
+                    break;
+                }
+
+                if (this.deadlines[entry] < this.deadlines[victim]) {
+                    victim = entry;
+                }
+            }
+
+            if (this.deadlines[victim] > now && (this.transactions[victim] != transactionId
+                    || this.machines[victim] != machine)) {
+                this.evictions.incrementAndGet();
+            }
+
+            this.transactions[victim] = transactionId;
+            this.machines[victim] = machine;
+            this.outcomes[victim] = outcome;
+            this.deadlines[victim] = now + this.timeToLiveNanos;
+        }
+    }
+
+    /**
+     * Forget every transaction
+     */
+    public void clear() {
+        for (int set = 0; set <= this.setMask; set++) {
+            synchronized (this.locks[set & this.lockMask]) {
+                for (int entry = set * WAYS; entry < (set + 1) * WAYS; entry++) {
+                    this.deadlines[entry] = EMPTY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finaliser of MurmurHash3 over both ids, so that sequential transaction ids spread over every set
+     */
+    private int setOf(int machine, long transactionId) {
+        long hash = transactionId ^ (machine * 0x9E3779B97F4A7C15L);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (int) hash & this.setMask;
+    }
+}
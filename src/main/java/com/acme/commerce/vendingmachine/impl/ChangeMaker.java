@@ -0,0 +1,321 @@
+package com.acme.commerce.vendingmachine.impl;
+
+import com.acme.commerce.vendingmachine.Change;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Change Maker
+ *
+ * Works out the fewest coins that add up to an amount using only the coins a machine actually
+ * holds. Denominations are identified by index (for {@link Change} that is the ordinal) and
+ * counts are passed as arrays in the same order.
+ *
+ * Answers come from three places, cheapest first:
+ *
+ * <ol>
+ *     <li>A table of the best unlimited-supply answer for every amount up to {@link #getTableSize()},
+ *     built once. When the machine holds enough of each coin that answer is also the best one
+ *     for the real inventory, which is the usual case.</li>
+ *     <li>A bounded cache of earlier answers keyed on the amount and the inventory, where each
+ *     count is capped at the most coins of that type the amount could ever use.</li>
+ *     <li>A bounded coin change dynamic programme over the real inventory.</li>
+ * </ol>
+ *
+ * Instances are immutable apart from the cache and safe to share between threads.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class ChangeMaker {
+    public static final int DEFAULT_TABLE_SIZE = 4096;
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    /**
+     * Change maker for the {@link Change} coins
+     */
+    public static final ChangeMaker DEFAULT = new ChangeMaker(values(Change.values()));
+
+    private static final long UNREACHABLE = -1L;
+    private static final long UNPACKABLE = -2L;
+
+    private final int[] values;
+    private final int laneBits;
+    private final long laneMax;
+    private final long[] table;
+    private final AtomicReferenceArray<Entry> cache;
+    private final int cacheMask;
+
+    /**
+     * @param values Value of each denomination, in ascending order
+     */
+    public ChangeMaker(int[] values) {
+        this(values, DEFAULT_TABLE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param values    Value of each denomination, in ascending order
+     * @param tableSize Amounts below this are answered from the precomputed table
+     * @param cacheSize Number of cached answers, rounded up to a power of two, 0 for no cache
+     */
+    public ChangeMaker(int[] values, int tableSize, int cacheSize) {
+        if (values.length == 0 || values.length > 64) {
+            throw new IllegalArgumentException("Between 1 and 64 denominations are supported");
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] <= 0 || (i > 0 && values[i] <= values[i - 1])) {
+                throw new IllegalArgumentException("Denominations must be positive and ascending");
+            }
+        }
+
+        this.values = values.clone();
+        this.laneBits = 64 / values.length;
+        this.laneMax = laneBits == 64 ? Long.MAX_VALUE : (1L << laneBits) - 1;
+        this.table = buildTable(tableSize);
+
+        int capacity = cacheSize <= 0 ? 0 : Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+        this.cache = capacity == 0 ? null : new AtomicReferenceArray<Entry>(capacity);
+        this.cacheMask = capacity - 1;
+    }
+
+    /**
+     * Number of denominations
+     *
+     * @return int
+     */
+    public int getDenominations() {
+        return this.values.length;
+    }
+
+    /**
+     * Amounts below this are answered without searching
+     *
+     * @return int
+     */
+    public int getTableSize() {
+        return this.table.length;
+    }
+
+    /**
+     * Fewest coins, drawn from the available counts, that add up to the amount
+     *
+     * @param amount    Amount to pay out
+     * @param available Coins held, per denomination
+     * @param change    Receives the coins to pay out, per denomination
+     * @return boolean false if the amount cannot be paid exactly, in which case change is left zeroed
+     */
+    public boolean makeChange(int amount, int[] available, int[] change) {
+        Arrays.fill(change, 0, this.values.length, 0);
+
+        if (amount <= 0) {
+            return amount == 0;
+        }
+
+        if (amount < this.table.length) {
+            long best = this.table[amount];
+
+            if (best == UNREACHABLE) {
+                return false;
+            }
+
+            if (best != UNPACKABLE && fits(best, available)) {
+                unpack(best, change);
+
+                return true;
+            }
+        }
+
+        long signature = this.cache == null ? -1L : signature(amount, available);
+
+        if (signature < 0) {
+            return solve(amount, available, change);
+        }
+
+        int slot = hash(amount, signature) & this.cacheMask;
+        Entry entry = this.cache.get(slot);
+
+        if (entry != null && entry.amount == amount && entry.signature == signature) {
+            if (entry.change == null) {
+                return false;
+            }
+
+            System.arraycopy(entry.change, 0, change, 0, this.values.length);
+
+            return true;
+        }
+
+        boolean possible = solve(amount, available, change);
+        this.cache.lazySet(slot, new Entry(amount, signature, possible ? change.clone() : null));
+
+        return possible;
+    }
+
+    /**
+     * Best unlimited-supply answer for every amount below the table size, packed one lane per
+     * denomination. Amounts with no answer are UNREACHABLE and answers with more coins of one
+     * type than a lane holds are UNPACKABLE.
+     */
+    private long[] buildTable(int tableSize) {
+        int[] fewest = new int[tableSize];
+        int[] lastCoin = new int[tableSize];
+        long[] table = new long[tableSize];
+
+        for (int amount = 1; amount < tableSize; amount++) {
+            fewest[amount] = Integer.MAX_VALUE;
+
+            // Largest coin first so that ties prefer bigger coins
+            for (int i = this.values.length - 1; i >= 0; i--) {
+                int rest = amount - this.values[i];
+
+                if (rest >= 0 && fewest[rest] != Integer.MAX_VALUE && fewest[rest] + 1 < fewest[amount]) {
+                    fewest[amount] = fewest[rest] + 1;
+                    lastCoin[amount] = i;
+                }
+            }
+
+            if (fewest[amount] == Integer.MAX_VALUE) {
+                table[amount] = UNREACHABLE;
+            } else if (table[amount - this.values[lastCoin[amount]]] < 0) {
+                table[amount] = UNPACKABLE;
+            } else {
+                long previous = table[amount - this.values[lastCoin[amount]]];
+                int shift = lastCoin[amount] * this.laneBits;
+
+                table[amount] = ((previous >>> shift) & this.laneMax) == this.laneMax
+                        ? UNPACKABLE
+                        : previous + (1L << shift);
+            }
+        }
+
+        return table;
+    }
+
+    private boolean fits(long packed, int[] available) {
+        for (int i = 0; i < this.values.length; i++) {
+            if (((packed >>> (i * this.laneBits)) & this.laneMax) > available[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void unpack(long packed, int[] change) {
+        for (int i = 0; i < this.values.length; i++) {
+            change[i] = (int) ((packed >>> (i * this.laneBits)) & this.laneMax);
+        }
+    }
+
+    /**
+     * The available counts with each capped at the most coins of that type the amount could use,
+     * packed one lane per denomination. Inventories that only differ above those caps always
+     * have the same answer and so share a signature. -1 if a capped count overflows its lane.
+     */
+    private long signature(int amount, int[] available) {
+        long signature = 0;
+
+        for (int i = 0; i < this.values.length; i++) {
+            long usable = Math.min(Math.max(available[i], 0), amount / this.values[i]);
+
+            if (usable > this.laneMax) {
+                return -1L;
+            }
+
+            signature |= usable << (i * this.laneBits);
+        }
+
+        return signature;
+    }
+
+    private static int hash(int amount, long signature) {
+        long h = signature * 0x9E3779B97F4A7C15L + amount;
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Bounded coin change. stage[i][a] holds the fewest coins making a from the first i
+     * denominations, each stage adding one denomination in binary-split lots so that its count
+     * is respected. The answer is then read back from the largest denomination down.
+     */
+    private boolean solve(int amount, int[] available, int[] change) {
+        int denominations = this.values.length;
+        int[][] stage = new int[denominations + 1][amount + 1];
+
+        Arrays.fill(stage[0], Integer.MAX_VALUE);
+        stage[0][0] = 0;
+
+        for (int i = 0; i < denominations; i++) {
+            int[] previous = stage[i];
+            int[] current = stage[i + 1];
+            int value = this.values[i];
+            int remaining = Math.min(Math.max(available[i], 0), amount / value);
+
+            System.arraycopy(previous, 0, current, 0, amount + 1);
+
+            for (int lot = 1; remaining > 0; lot <<= 1) {
+                int coins = Math.min(lot, remaining);
+                int lotValue = coins * value;
+                remaining -= coins;
+
+                for (int a = amount; a >= lotValue; a--) {
+                    int without = current[a - lotValue];
+
+                    if (without != Integer.MAX_VALUE && without + coins < current[a]) {
+                        current[a] = without + coins;
+                    }
+                }
+            }
+        }
+
+        if (stage[denominations][amount] == Integer.MAX_VALUE) {
+            return false;
+        }
+
+        int rest = amount;
+
+        for (int i = denominations; i > 0; i--) {
+            int value = this.values[i - 1];
+            int target = stage[i][rest];
+
+            for (int coins = Math.min(Math.max(available[i - 1], 0), rest / value); coins >= 0; coins--) {
+                int without = stage[i - 1][rest - coins * value];
+
+                if (without != Integer.MAX_VALUE && without + coins == target) {
+                    change[i - 1] = coins;
+                    rest -= coins * value;
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static int[] values(Change[] changes) {
+        int[] values = new int[changes.length];
+
+        for (Change change : changes) {
+            values[change.ordinal()] = change.getValue();
+        }
+
+        return values;
+    }
+
+    /**
+     * A cached answer, change is null when the amount cannot be made
+     */
+    private static final class Entry {
+        final int amount;
+        final long signature;
+        final int[] change;
+
+        Entry(int amount, long signature, int[] change) {
+            this.amount = amount;
+            this.signature = signature;
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.acme.commerce.vendingmachine.impl;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free coin accounting shared by the concurrent vending machine implementations.
+ *
+ * The coins a customer has inserted (the escrow) are packed into a single long so that the
+ * count of each denomination and the balance they add up to always change together in one
+ * compare-and-set. Each denomination gets a six bit lane indexed by {@link Change#ordinal()},
+ * the top sixteen bits hold the running balance in pennies. A full lane means the escrow
+ * cannot take another coin of that type and the coin is handed back.
+ *
+ * Coins held by the machine (the cash box) are plain per-denomination counters, laid out as
+ * {@code base + Change.ordinal()} so that one array can hold the cash box of many machines.
+ *
+ * Machines working in another currency use the same lanes and counters numbered by the
+ * denominations of their {@code CurrencyProfile}, through the overloads that take a value.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class CoinLedger {
+    public static final int DENOMINATIONS = Change.values().length;
+    public static final int LANE_BITS = 6;
+    public static final int MAX_ESCROW_COINS = (1 << LANE_BITS) - 1;
+    public static final long NO_CHANGE = Long.MIN_VALUE;
+    // Outcome of a sale whose reservation has ended, for result()
+    public static final long NO_RESERVATION = Long.MIN_VALUE + 1;
+
+    private static final int BALANCE_SHIFT = LANE_BITS * DENOMINATIONS;
+    private static final int EVERY_DENOMINATION = (1 << DENOMINATIONS) - 1;
+    private static final Change[] CHANGE = Change.values();
+
+    // Per thread working space for settle, [0] the coins available, [1] the change paid out
+    private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[2][DENOMINATIONS];
+        }
+    };
+
+    private CoinLedger() {
+    }
+
+    /**
+     * This thread's buffer for receiving change from {@link #settle}, valid until its next call
+     *
+     * @return int[]
+     */
+    public static int[] changeBuffer() {
+        return SCRATCH.get()[1];
+    }
+
+    /**
+     * TransactionResult code for the outcome of {@link #settle}
+     *
+     * @param settled
+     * @return int
+     */
+    public static int result(long settled) {
+        if (settled == NO_CHANGE) {
+            return TransactionResult.EXACT_CHANGE_ONLY;
+        }
+
+        if (settled == NO_RESERVATION) {
+            return TransactionResult.RESERVATION_EXPIRED;
+        }
+
+        return settled < 0 ? TransactionResult.INSUFFICIENT_FUNDS : TransactionResult.OK;
+    }
+
+    /**
+     * Number of coins of the given denomination held in an escrow word
+     *
+     * @param word    Packed escrow
+     * @param ordinal Change.ordinal() of the denomination
+     * @return int
+     */
+    public static int count(long word, int ordinal) {
+        return (int) (word >>> (ordinal * LANE_BITS)) & MAX_ESCROW_COINS;
+    }
+
+    /**
+     * Value, in pennies, of the coins held in an escrow word
+     *
+     * @param word Packed escrow
+     * @return int
+     */
+    public static int balance(long word) {
+        return (int) (word >>> BALANCE_SHIFT);
+    }
+
+    /**
+     * Escrow word with one more coin of the given denomination, or -1 when that lane is full
+     *
+     * @param word   Packed escrow
+     * @param change Coin to add
+     * @return long
+     */
+    public static long add(long word, Change change) {
+        return add(word, change.ordinal(), change.getValue());
+    }
+
+    /**
+     * Escrow word with one more coin in the given lane, or -1 when that lane is full or the
+     * balance would overflow
+     *
+     * @param word         Packed escrow
+     * @param denomination Lane of the coin
+     * @param value        Value of the coin, in minor units
+     * @return long
+     */
+    public static long add(long word, int denomination, int value) {
+        if (count(word, denomination) == MAX_ESCROW_COINS) {
+            return -1L;
+        }
+
+        return word + (1L << (denomination * LANE_BITS)) + ((long) value << BALANCE_SHIFT);
+    }
+
+    /**
+     * Escrow word with the given coins added, skipping denominations outside the mask and
+     * any coin that would overflow its lane
+     *
+     * @param word         Packed escrow
+     * @param counts       Coin counts, DENOMINATIONS of them indexed by Change.ordinal()
+     * @param offset       Index of the first count
+     * @param acceptedMask Denominations to take, as built by {@link #mask}
+     * @return long
+     */
+    public static long add(long word, int[] counts, int offset, int acceptedMask) {
+        for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+            int count = counts[offset + ordinal];
+
+            if (count > 0 && (acceptedMask & (1 << ordinal)) != 0) {
+                count = Math.min(count, MAX_ESCROW_COINS - count(word, ordinal));
+                word += ((long) count << (ordinal * LANE_BITS)) + ((long) count * CHANGE[ordinal].getValue() << BALANCE_SHIFT);
+            }
+        }
+
+        return word;
+    }
+
+    /**
+     * Escrow word holding the given coin counts, or -1 when a count does not fit its lane
+     *
+     * @param counts Coin counts, DENOMINATIONS of them indexed by Change.ordinal()
+     * @param offset Index of the first count
+     * @return long
+     */
+    public static long pack(int[] counts, int offset) {
+        long word = 0;
+        int balance = 0;
+
+        for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+            int count = counts[offset + ordinal];
+
+            if (count < 0 || count > MAX_ESCROW_COINS) {
+                return -1L;
+            }
+
+            word |= (long) count << (ordinal * LANE_BITS);
+            balance += count * CHANGE[ordinal].getValue();
+        }
+
+        return word | ((long) balance << BALANCE_SHIFT);
+    }
+
+    /**
+     * Bit mask of the denominations in the given collection, indexed by Change.ordinal()
+     *
+     * @param acceptedChange
+     * @return int
+     */
+    public static int mask(Collection<Change> acceptedChange) {
+        int mask = 0;
+
+        for (Change change : acceptedChange) {
+            mask |= 1 << change.ordinal();
+        }
+
+        return mask;
+    }
+
+    /**
+     * Atomically add a coin to the escrow at the given index
+     *
+     * @param escrow
+     * @param index
+     * @param change
+     * @return int New balance, or -1 if the escrow has no room for the coin
+     */
+    public static int insert(AtomicLongArray escrow, int index, Change change) {
+        return insert(escrow, index, change.ordinal(), change.getValue());
+    }
+
+    /**
+     * Atomically add a coin, or note, to the escrow at the given index
+     *
+     * @param escrow
+     * @param index
+     * @param denomination Lane of the coin
+     * @param value        Value of the coin, in minor units
+     * @return int New balance, or -1 if the escrow has no room for the coin
+     */
+    public static int insert(AtomicLongArray escrow, int index, int denomination, int value) {
+        for (;;) {
+            long current = escrow.get(index);
+            long next = add(current, denomination, value);
+
+            if (next < 0) {
+                return -1;
+            }
+
+            if (escrow.compareAndSet(index, current, next)) {
+                return balance(next);
+            }
+        }
+    }
+
+    /**
+     * Atomically add a run of coins to the escrow at the given index in one compare-and-set
+     *
+     * @param escrow
+     * @param index
+     * @param coins        Coins in the order they were inserted
+     * @param offset       Index of the first coin
+     * @param length       Number of coins
+     * @param acceptedMask Denominations to take, as built by {@link #mask}
+     * @param results      Receives the TransactionResult code of each coin, at the coin's index
+     * @return int Number of coins accepted
+     */
+    public static int insert(AtomicLongArray escrow, int index, Change[] coins, int offset, int length,
+                             int acceptedMask, byte[] results) {
+        for (;;) {
+            long current = escrow.get(index);
+            long next = current;
+            int accepted = 0;
+
+            for (int i = offset; i < offset + length; i++) {
+                long added = (acceptedMask & (1 << coins[i].ordinal())) == 0 ? -1L : add(next, coins[i]);
+
+                if (added < 0) {
+                    results[i] = TransactionResult.CHANGE_NOT_ACCEPTED;
+                } else {
+                    results[i] = TransactionResult.OK;
+                    next = added;
+                    accepted++;
+                }
+            }
+
+            if (next == current || escrow.compareAndSet(index, current, next)) {
+                return accepted;
+            }
+        }
+    }
+
+    /**
+     * Atomically add coin counts to the escrow at the given index, as {@link #add(long, int[], int, int)}
+     *
+     * @param escrow
+     * @param index
+     * @param counts       Coin counts, DENOMINATIONS of them indexed by Change.ordinal()
+     * @param offset       Index of the first count
+     * @param acceptedMask Denominations to take
+     * @return int New balance
+     */
+    public static int insert(AtomicLongArray escrow, int index, int[] counts, int offset, int acceptedMask) {
+        for (;;) {
+            long current = escrow.get(index);
+            long next = add(current, counts, offset, acceptedMask);
+
+            if (next == current || escrow.compareAndSet(index, current, next)) {
+                return balance(next);
+            }
+        }
+    }
+
+    /**
+     * Sell against the escrow at the given index.
+     *
+     * If the escrow covers the cost the customer's change is worked out from the cash box plus
+     * the coins they inserted, the coins it needs from the cash box are reserved, and only then
+     * is the escrow claimed in one compare-and-set and the coins not paid back out are banked.
+     * Should another thread change the escrow or empty the cash box first, everything reserved
+     * is put back and the sale is tried again against the new state.
+     *
+     * A valid escrow word is never negative, so a negative result carries the outcome instead:
+     * {@link #NO_CHANGE} if the change cannot be made, otherwise {@code -result} more pennies are needed.
+     *
+     * @param escrow
+     * @param index
+     * @param coins       Cash box counters
+     * @param base        Offset of the machine's first counter
+     * @param cost        Price in pennies
+     * @param changeMaker
+     * @param change      Receives the coins paid back to the customer, per Change.ordinal()
+     * @return long Claimed escrow word, NO_CHANGE or the negated shortfall
+     */
+    public static long settle(AtomicLongArray escrow, int index, AtomicIntegerArray coins, int base, int cost,
+                              ChangeMaker changeMaker, int[] change) {
+        return settle(escrow, index, coins, base, cost, changeMaker, EVERY_DENOMINATION, change);
+    }
+
+    /**
+     * As {@link #settle(AtomicLongArray, int, AtomicIntegerArray, int, int, ChangeMaker, int[])},
+     * paying out of the cash box only in the denominations of the payout mask. Coins and notes
+     * in the escrow can always be handed back.
+     *
+     * @param escrow
+     * @param index
+     * @param coins       Cash box counters
+     * @param base        Offset of the machine's first counter
+     * @param cost        Price in minor units
+     * @param changeMaker Change maker over the machine's denominations
+     * @param payoutMask  Denominations the cash box pays out, one bit per lane
+     * @param change      Receives the coins paid back to the customer, per lane
+     * @return long Claimed escrow word, NO_CHANGE or the negated shortfall
+     */
+    public static long settle(AtomicLongArray escrow, int index, AtomicIntegerArray coins, int base, int cost,
+                              ChangeMaker changeMaker, int payoutMask, int[] change) {
+        int[] available = SCRATCH.get()[0];
+
+        // Lanes the change maker does not cover are never paid out
+        Arrays.fill(change, changeMaker.getDenominations(), DENOMINATIONS, 0);
+
+        for (;;) {
+            long current = escrow.get(index);
+            int due = balance(current) - cost;
+
+            if (due < 0) {
+                return due;
+            }
+
+            for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                available[ordinal] = (payoutMask & (1 << ordinal)) != 0
+                        ? coins.get(base + ordinal) + count(current, ordinal)
+                        : count(current, ordinal);
+            }
+
+            if (!changeMaker.makeChange(due, available, change)) {
+                return NO_CHANGE;
+            }
+
+            if (reserve(coins, base, current, change)) {
+                if (escrow.compareAndSet(index, current, 0L)) {
+                    for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+                        int banked = count(current, ordinal) - change[ordinal];
+
+                        if (banked > 0) {
+                            coins.addAndGet(base + ordinal, banked);
+                        }
+                    }
+
+                    return current;
+                }
+
+                release(coins, base, current, change, DENOMINATIONS);
+            }
+        }
+    }
+
+    /**
+     * Atomically empty the escrow at the given index
+     *
+     * @param escrow
+     * @param index
+     * @return long The escrow word that was removed
+     */
+    public static long drain(AtomicLongArray escrow, int index) {
+        return escrow.getAndSet(index, 0L);
+    }
+
+    /**
+     * Add one entry per coin held in an escrow word to the given list, smallest denomination first
+     *
+     * @param word
+     * @param coins
+     */
+    public static void collect(long word, List<Change> coins) {
+        for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+            for (int i = count(word, ordinal); i > 0; i--) {
+                coins.add(CHANGE[ordinal]);
+            }
+        }
+    }
+
+    /**
+     * Take the change that the escrow cannot cover out of the cash box, all or nothing
+     */
+    private static boolean reserve(AtomicIntegerArray coins, int base, long word, int[] change) {
+        for (int ordinal = 0; ordinal < DENOMINATIONS; ordinal++) {
+            int needed = change[ordinal] - count(word, ordinal);
+
+            if (needed > 0 && !take(coins, base + ordinal, needed)) {
+                release(coins, base, word, change, ordinal);
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Put back what reserve took for the denominations below the given ordinal
+     */
+    private static void release(AtomicIntegerArray coins, int base, long word, int[] change, int upTo) {
+        for (int ordinal = 0; ordinal < upTo; ordinal++) {
+            int taken = change[ordinal] - count(word, ordinal);
+
+            if (taken > 0) {
+                coins.addAndGet(base + ordinal, taken);
+            }
+        }
+    }
+
+    private static boolean take(AtomicIntegerArray coins, int index, int count) {
+        for (;;) {
+            int current = coins.get(index);
+
+            if (current < count) {
+                return false;
+            }
+
+            if (coins.compareAndSet(index, current, current - count)) {
+                return true;
+            }
+        }
+    }
+}
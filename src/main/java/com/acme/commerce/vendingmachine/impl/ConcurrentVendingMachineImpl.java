@@ -0,0 +1,522 @@
+package com.acme.commerce.vendingmachine.impl;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.CurrencyVendingMachine;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.ReservableVendingMachine;
+import com.acme.commerce.vendingmachine.SessionVendingMachine;
+import com.acme.commerce.vendingmachine.VendingSession;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.ExactChangeOnlyException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Vending Machine Implementation
+ *
+ * Safe to drive from several threads at once (coin validator, keypad, telemetry) without an
+ * external lock. Inserted coins and the balance live in one packed escrow word maintained by
+ * compare-and-set, the cash box is a set of atomic counters indexed by Change.ordinal(), see
+ * {@link CoinLedger}. A coin is therefore always either in the escrow, in the cash box or
+ * handed back to the customer, never in two places and never nowhere.
+ *
+ * Stock is held in a {@link ProductCatalog} and taken by compare-and-set before payment, so
+ * two customers can never both buy the last unit. A unit can also be {@link #reserve reserved}
+ * while the customer pays, see {@link StockLeases}.
+ *
+ * Additional front panels can {@link #openSession() open sessions} with their own escrow. The
+ * machine's own methods act on the built in front panel session.
+ *
+ * Money is counted in the denominations of a {@link CurrencyProfile}, sterling unless another
+ * profile is given. Sterling denominations are numbered as the {@link Change} ordinals.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class ConcurrentVendingMachineImpl implements SessionVendingMachine, ReservableVendingMachine,
+        CurrencyVendingMachine {
+    private static final int ESCROW = 0;
+
+    private volatile boolean isPoweredOn = false;
+    private final AtomicIntegerArray changeAvailable = new AtomicIntegerArray(CoinLedger.DENOMINATIONS);
+    private final Session frontPanel = new Session();
+    private final CurrencyProfile profile;
+    private final List<Change> acceptedCoins;
+    private final int acceptedCoinMask;
+    private final ProductCatalog catalog;
+    private final StockLeases leases = new StockLeases();
+
+    /**
+     * Default Vending Machine with 5 of all change types
+     */
+    public ConcurrentVendingMachineImpl() {
+        this(defaultCatalog());
+    }
+
+    /**
+     * Default, powered on, vending machine
+     *
+     * @param isOn boolean Initial power state of the new machine
+     */
+    public ConcurrentVendingMachineImpl(boolean isOn) {
+        this();
+
+        this.isPoweredOn = isOn;
+    }
+
+    /**
+     * Vending machine with 5 of all change types and empty slots, selling from a published catalog
+     *
+     * @param isOn      Initial power state
+     * @param publisher Catalog shared with the other machines on the node
+     */
+    public ConcurrentVendingMachineImpl(boolean isOn, CatalogPublisher publisher) {
+        this(CurrencyProfile.GBP, new ProductCatalog(publisher));
+
+        this.isPoweredOn = isOn;
+    }
+
+    /**
+     * Vending machine in another currency, with 5 of each coin it takes and empty slots,
+     * selling from a published catalog
+     *
+     * @param isOn      Initial power state
+     * @param profile   Currency and denominations the machine takes
+     * @param publisher Catalog shared with the other machines on the node
+     */
+    public ConcurrentVendingMachineImpl(boolean isOn, CurrencyProfile profile, CatalogPublisher publisher) {
+        this(profile, new ProductCatalog(publisher));
+
+        this.isPoweredOn = isOn;
+    }
+
+    private ConcurrentVendingMachineImpl(ProductCatalog catalog) {
+        this(CurrencyProfile.GBP, catalog);
+    }
+
+    private ConcurrentVendingMachineImpl(CurrencyProfile profile, ProductCatalog catalog) {
+        List<Change> acceptedCoins = new ArrayList<>();
+
+        for (int denomination = 0; denomination < profile.denominations(); denomination++) {
+            if (profile.accepts(denomination) && !profile.isNote(denomination)) {
+                // Sterling machines start with the default template's float
+                this.changeAvailable.set(denomination, profile == CurrencyProfile.GBP
+                        ? MachineTemplate.defaults().getChangeFloat(profile.getChange(denomination)) : 5);
+            }
+
+            if (profile.accepts(denomination) && profile.getChange(denomination) != null) {
+                acceptedCoins.add(profile.getChange(denomination));
+            }
+        }
+
+        this.profile = profile;
+        this.acceptedCoins = Collections.unmodifiableList(acceptedCoins);
+        this.acceptedCoinMask = profile.getAcceptedMask();
+        this.catalog = catalog;
+    }
+
+    /**
+     * The default template's products and stock, on a catalog of the machine's own
+     */
+    private static ProductCatalog defaultCatalog() {
+        MachineTemplate defaults = MachineTemplate.defaults();
+
+        return defaults.stock(new CatalogPublisher(defaults.getPlanogram()));
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.acceptedCoins;
+    }
+
+    @Override
+    public int getBalance() {
+        return this.frontPanel.getBalance();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.isPoweredOn;
+    }
+
+    @Override
+    public void powerOn() {
+        this.isPoweredOn = true;
+    }
+
+    @Override
+    public void powerOff() {
+        this.isPoweredOn = false;
+    }
+
+    /**
+     * Point in time copy of the cash box, each denomination read atomically
+     *
+     * @return Map
+     */
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        Map<Change, Integer> changeAvailable = new EnumMap<>(Change.class);
+
+        for (int denomination = 0; denomination < this.profile.denominations(); denomination++) {
+            Change change = this.profile.getChange(denomination);
+            int count = this.changeAvailable.get(denomination);
+
+            if (change != null && count > 0) {
+                changeAvailable.put(change, count);
+            }
+        }
+
+        return changeAvailable;
+    }
+
+    @Override
+    public CurrencyProfile getCurrencyProfile() {
+        return this.profile;
+    }
+
+    @Override
+    public int insertDenomination(int denomination) throws ChangeNotAcceptedException {
+        return this.frontPanel.insertDenomination(denomination);
+    }
+
+    @Override
+    public int tryInsertDenomination(int denomination) {
+        return this.frontPanel.tryInsertDenomination(denomination);
+    }
+
+    @Override
+    public int getDenominationAvailable(int denomination) {
+        return this.changeAvailable.get(denomination);
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException {
+        return this.frontPanel.insertChange(change);
+    }
+
+    /**
+     * Does this machine accept the inserted coin type?
+     *
+     * @param change
+     * @return
+     */
+    public boolean acceptsChangeDenomination(Change change) {
+        return acceptsDenomination(this.profile.denominationOf(change));
+    }
+
+    private boolean acceptsDenomination(int denomination) {
+        return denomination >= 0 && (this.acceptedCoinMask & (1 << denomination)) != 0;
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.frontPanel.getChangeInserted();
+    }
+
+    @Override
+    public int refundChange() {
+        return this.frontPanel.refundChange();
+    }
+
+    /**
+     * Empty the front panel and the cash box. Coins held by other open sessions are left with their customers.
+     */
+    @Override
+    public void reset() {
+        this.frontPanel.refundChange();
+
+        for (int ordinal = 0; ordinal < CoinLedger.DENOMINATIONS; ordinal++) {
+            this.changeAvailable.set(ordinal, 0);
+        }
+    }
+
+    @Override
+    public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+        this.frontPanel.purchase(product);
+    }
+
+    @Override
+    public int tryInsertChange(Change change) {
+        return this.frontPanel.tryInsertChange(change);
+    }
+
+    @Override
+    public int tryPurchase(Product product) {
+        return this.frontPanel.tryPurchase(product);
+    }
+
+    @Override
+    public int tryInsertChange(Change[] coins, int offset, int length, byte[] results) {
+        // The ledger's batch insert lanes coins by Change.ordinal(), which only sterling shares
+        if (this.profile != CurrencyProfile.GBP) {
+            return SessionVendingMachine.super.tryInsertChange(coins, offset, length, results);
+        }
+
+        return CoinLedger.insert(this.frontPanel.changeInserted, ESCROW, coins, offset, length, this.acceptedCoinMask,
+                results);
+    }
+
+    @Override
+    public int tryPurchase(int[] coins, Product[] products, int offset, int length, byte[] results) {
+        if (this.profile != CurrencyProfile.GBP) {
+            return SessionVendingMachine.super.tryPurchase(coins, products, offset, length, results);
+        }
+
+        int sold = 0;
+
+        for (int order = offset; order < offset + length; order++) {
+            CoinLedger.insert(this.frontPanel.changeInserted, ESCROW, coins, order * CoinLedger.DENOMINATIONS,
+                    this.acceptedCoinMask);
+            results[order] = (byte) this.frontPanel.tryPurchase(products[order]);
+
+            if (results[order] == TransactionResult.OK) {
+                sold++;
+            }
+        }
+
+        return sold;
+    }
+
+    @Override
+    public long reserve(Product product, long timeoutMillis) {
+        int slot = this.catalog.slotOf(product);
+
+        return slot < 0 ? NO_LEASE : this.leases.reserve(this.catalog, slot, timeoutMillis);
+    }
+
+    @Override
+    public boolean release(long lease) {
+        return this.leases.release(lease);
+    }
+
+    @Override
+    public void purchase(long lease) throws OutOfStockException, InsufficientChangeException {
+        this.frontPanel.purchase(lease);
+    }
+
+    @Override
+    public int tryPurchase(long lease) {
+        return CoinLedger.result(this.frontPanel.settle(lease));
+    }
+
+    @Override
+    public VendingSession openSession() {
+        return new Session();
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.catalog.asMap();
+    }
+
+    /**
+     * The machine's products
+     *
+     * @return ProductCatalog
+     */
+    public ProductCatalog getCatalog() {
+        return this.catalog;
+    }
+
+    /**
+     * A customer's escrow, committed to the shared cash box only on purchase
+     */
+    private class Session implements VendingSession {
+        private final AtomicLongArray changeInserted = new AtomicLongArray(1);
+
+        @Override
+        public int insertChange(Change change) throws ChangeNotAcceptedException {
+            return insertDenomination(profile.denominationOf(change));
+        }
+
+        @Override
+        public int tryInsertChange(Change change) {
+            return tryInsertDenomination(profile.denominationOf(change));
+        }
+
+        int insertDenomination(int denomination) throws ChangeNotAcceptedException {
+            if (!acceptsDenomination(denomination)) {
+                throw new ChangeNotAcceptedException();
+            }
+
+            int balance = CoinLedger.insert(this.changeInserted, ESCROW, denomination, profile.getValue(denomination));
+
+            // Escrow is full for this coin type, hand it back
+            if (balance < 0) {
+                throw new ChangeNotAcceptedException();
+            }
+
+            return balance;
+        }
+
+        int tryInsertDenomination(int denomination) {
+            if (!acceptsDenomination(denomination)
+                    || CoinLedger.insert(this.changeInserted, ESCROW, denomination, profile.getValue(denomination)) < 0) {
+                return TransactionResult.CHANGE_NOT_ACCEPTED;
+            }
+
+            return TransactionResult.OK;
+        }
+
+        @Override
+        public int getBalance() {
+            return CoinLedger.balance(this.changeInserted.get(ESCROW));
+        }
+
+        @Override
+        public List<Change> getChangeInserted() {
+            List<Change> changeInserted = new ArrayList<>();
+            long word = this.changeInserted.get(ESCROW);
+
+            for (int denomination = 0; denomination < profile.denominations(); denomination++) {
+                Change change = profile.getChange(denomination);
+
+                for (int i = CoinLedger.count(word, denomination); change != null && i > 0; i--) {
+                    changeInserted.add(change);
+                }
+            }
+
+            return changeInserted;
+        }
+
+        @Override
+        public int refundChange() {
+            CoinLedger.drain(this.changeInserted, ESCROW);
+
+            return getBalance();
+        }
+
+        /**
+         * Take the customer's coins into the cash box and pay out their change, in the fewest
+         * coins the cash box allows, if they cover the product.
+         *
+         * The unit is taken from stock first and the escrow is then claimed in a single
+         * compare-and-set, so two threads racing to buy with the same coins, or for the same last
+         * unit, cannot both succeed, see {@link CoinLedger#settle}.
+         *
+         * @param product
+         * @throws OutOfStockException
+         * @throws InsufficientChangeException
+         */
+        @Override
+        public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+            int slot = catalog.slotOf(product);
+
+            if (!takeStock(product, slot)) {
+                throw new OutOfStockException();
+            }
+
+            long settled = settle(product, slot);
+
+            if (settled == CoinLedger.NO_CHANGE) {
+                throw new ExactChangeOnlyException();
+            }
+
+            // Not enough funds to buy product, settle hands back the shortfall
+            if (settled < 0) {
+                throw InsufficientChangeException.forShortfall((int) -settled, profile);
+            }
+        }
+
+        @Override
+        public int tryPurchase(Product product) {
+            int slot = catalog.slotOf(product);
+
+            if (!takeStock(product, slot)) {
+                return TransactionResult.OUT_OF_STOCK;
+            }
+
+            return CoinLedger.result(settle(product, slot));
+        }
+
+        /**
+         * Remove a unit from the machines inventory, products not from the catalog are only checked
+         */
+        private boolean takeStock(Product product, int slot) {
+            if (slot < 0) {
+                return !product.isOutOfStock();
+            }
+
+            if (catalog.take(slot)) {
+                return true;
+            }
+
+            // A lapsed reservation may still hold the unit until the wheel turns, turn it and look again
+            leases.expire();
+
+            return catalog.take(slot);
+        }
+
+        /**
+         * Product has been taken from stock, take payment and dispense change or put it back
+         */
+        private long settle(Product product, int slot) {
+            long settled = CoinLedger.settle(this.changeInserted, ESCROW, changeAvailable, 0, product.getCost(),
+                    profile.getChangeMaker(), profile.getPayoutMask(), CoinLedger.changeBuffer());
+
+            if (slot >= 0) {
+                if (settled < 0) {
+                    catalog.restock(slot, 1);
+                } else {
+                    catalog.recordSales(slot, 1);
+                }
+            }
+
+            return settled;
+        }
+
+        /**
+         * Buy a reserved unit. The lease is claimed so that it cannot expire mid sale, then
+         * committed if the escrow covers it or handed back to the customer if not.
+         */
+        void purchase(long lease) throws OutOfStockException, InsufficientChangeException {
+            long settled = settle(lease);
+
+            if (settled == CoinLedger.NO_RESERVATION) {
+                throw OutOfStockException.reservationExpired();
+            }
+
+            if (settled == CoinLedger.NO_CHANGE) {
+                throw new ExactChangeOnlyException();
+            }
+
+            // Not enough funds to buy product, settle hands back the shortfall
+            if (settled < 0) {
+                throw InsufficientChangeException.forShortfall((int) -settled, profile);
+            }
+        }
+
+        long settle(long lease) {
+            if (!leases.claim(lease)) {
+                return CoinLedger.NO_RESERVATION;
+            }
+
+            int cost = catalog.getPlanogram().getCost(leases.getSlot(lease));
+            long settled = CoinLedger.settle(this.changeInserted, ESCROW, changeAvailable, 0, cost,
+                    profile.getChangeMaker(), profile.getPayoutMask(), CoinLedger.changeBuffer());
+
+            if (settled < 0) {
+                leases.unclaim(lease);
+            } else {
+                leases.commit(lease);
+            }
+
+            return settled;
+        }
+
+        @Override
+        public void close() {
+            refundChange();
+        }
+    }
+}
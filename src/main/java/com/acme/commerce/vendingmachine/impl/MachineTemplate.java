@@ -0,0 +1,177 @@
+package com.acme.commerce.vendingmachine.impl;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+
+import java.util.*;
+
+/**
+ * Machine Template
+ *
+ * The configuration shared by every {@link VendingMachineImpl} built from it: the accepted
+ * coins as a bit mask, the coin float each machine starts with, and the products, as a
+ * {@link CatalogPublisher} so that publishing to it reprices every machine of the template.
+ *
+ * A machine built from a template holds only what has moved away from it. Its cash box is the
+ * template's float until the first sale banks coins, and it has no escrow array until the first
+ * coin goes in. Building one allocates the machine, its catalog and its stock counters.
+ *
+ * Immutable apart from the publisher, and safe to share.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class MachineTemplate {
+    private static final MachineTemplate DEFAULT = new MachineTemplate(defaultAcceptedChange(),
+            defaultChangeFloat(), defaultProducts());
+
+    private final List<Change> acceptedCoins;
+    private final int acceptedCoinMask;
+    private final int[] changeFloat;
+    private final Planogram planogram;
+    private final CatalogPublisher publisher;
+    private final int[] stock;
+
+    /**
+     * @param acceptedChange Coins the machines take
+     * @param changeFloat    Coins each machine starts with
+     * @param products       Products by slot code, their quantities become each machine's starting stock
+     */
+    public MachineTemplate(List<Change> acceptedChange, Map<Change, Integer> changeFloat,
+                           Map<String, Product> products) {
+        this.acceptedCoins = Collections.unmodifiableList(new ArrayList<>(acceptedChange));
+        this.acceptedCoinMask = CoinLedger.mask(acceptedChange);
+        this.changeFloat = new int[CoinLedger.DENOMINATIONS];
+
+        for (Map.Entry<Change, Integer> entry : changeFloat.entrySet()) {
+            this.changeFloat[entry.getKey().ordinal()] = entry.getValue();
+        }
+
+        this.planogram = new Planogram(products);
+        this.publisher = new CatalogPublisher(this.planogram);
+        this.stock = new int[this.planogram.slots()];
+
+        for (int slot = 0; slot < this.stock.length; slot++) {
+            this.stock[slot] = products.get(this.planogram.getSlotCode(slot)).getQuantityAvailable();
+        }
+    }
+
+    /**
+     * The default machine: 10p to one pound coins, 5 of each, and the three default products
+     *
+     * @return MachineTemplate
+     */
+    public static MachineTemplate defaults() {
+        return DEFAULT;
+    }
+
+    public List<Change> getAcceptedChange() {
+        return this.acceptedCoins;
+    }
+
+    public int getAcceptedCoinMask() {
+        return this.acceptedCoinMask;
+    }
+
+    /**
+     * Coins a new machine starts with
+     *
+     * @param change
+     * @return int
+     */
+    public int getChangeFloat(Change change) {
+        return this.changeFloat[change.ordinal()];
+    }
+
+    /**
+     * Coins a new machine starts with, by coin
+     *
+     * @return Map
+     */
+    public Map<Change, Integer> getChangeFloat() {
+        Map<Change, Integer> changeFloat = new EnumMap<>(Change.class);
+
+        for (Change change : Change.values()) {
+            if (this.changeFloat[change.ordinal()] > 0) {
+                changeFloat.put(change, this.changeFloat[change.ordinal()]);
+            }
+        }
+
+        return changeFloat;
+    }
+
+    /**
+     * The products the template was built with, whatever has since been published
+     *
+     * @return Planogram
+     */
+    public Planogram getPlanogram() {
+        return this.planogram;
+    }
+
+    /**
+     * The template's products, publish to it to change them on every machine of the template
+     *
+     * @return CatalogPublisher
+     */
+    public CatalogPublisher getPublisher() {
+        return this.publisher;
+    }
+
+    /**
+     * Units a new machine starts with in a slot
+     *
+     * @param slot
+     * @return int
+     */
+    public int getStock(int slot) {
+        return this.stock[slot];
+    }
+
+    /**
+     * The float itself, shared by every machine that has not yet banked a coin. Never written.
+     */
+    int[] changeFloat() {
+        return this.changeFloat;
+    }
+
+    /**
+     * New catalog following the publisher, stocked as the template says
+     */
+    ProductCatalog stock(CatalogPublisher publisher) {
+        ProductCatalog catalog = new ProductCatalog(publisher);
+
+        for (int slot = 0; slot < this.stock.length; slot++) {
+            catalog.restock(slot, this.stock[slot]);
+        }
+
+        return catalog;
+    }
+
+    private static List<Change> defaultAcceptedChange() {
+        return Arrays.asList(Change.TEN_PENCE, Change.TWENTY_PENCE, Change.FIFTY_PENCE, Change.ONE_POUND);
+    }
+
+    private static Map<Change, Integer> defaultChangeFloat() {
+        Map<Change, Integer> changeFloat = new EnumMap<>(Change.class);
+
+        for (Change change : defaultAcceptedChange()) {
+            changeFloat.put(change, 5);
+        }
+
+        return changeFloat;
+    }
+
+    private static Map<String, Product> defaultProducts() {
+        Map<String, Product> availableProducts = new HashMap<>();
+        availableProducts.put("A", ProductFactory.createProduct("A nice product", 60, 10));
+        availableProducts.put("B", ProductFactory.createProduct("A berry nice product", 100, 4));
+        availableProducts.put("C", ProductFactory.createProduct("A cherry berry nice product", 170, 1));
+
+        return availableProducts;
+    }
+}
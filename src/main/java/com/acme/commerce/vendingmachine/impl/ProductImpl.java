@@ -2,6 +2,8 @@ package com.acme.commerce.vendingmachine.impl;
 
 import com.acme.commerce.vendingmachine.Product;
 
+import java.util.Objects;
+
 /**
  * Product Implementation
  *
@@ -38,4 +40,27 @@ public class ProductImpl implements Product {
     public boolean isOutOfStock() {
         return 0 == this.quantityAvailable;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        // Any product with the same details, so that catalog views compare equal too
+        if (!(o instanceof Product)) {
+            return false;
+        }
+
+        Product product = (Product) o;
+
+        return this.cost == product.getCost()
+                && this.quantityAvailable == product.getQuantityAvailable()
+                && Objects.equals(this.name, product.getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.name, this.cost, this.quantityAvailable);
+    }
 }
@@ -2,55 +2,65 @@ package com.acme.commerce.vendingmachine.impl;
 
 import com.acme.commerce.vendingmachine.Change;
 import com.acme.commerce.vendingmachine.Product;
-import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
 import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
 import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.ExactChangeOnlyException;
 import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
 import com.acme.commerce.vendingmachine.exception.OutOfStockException;
 
-import java.text.NumberFormat;
 import java.util.*;
 
 /**
  * Vending Machine Implementation
  *
+ * Coins are counted in arrays indexed by Change.ordinal() and the balance is kept as a running
+ * total, so inserting coins and buying products allocate nothing. The exception throwing methods
+ * are thin wrappers over the try methods.
+ *
+ * Products live in a {@link ProductCatalog}; a sale of one of its products takes a unit out of
+ * stock. Products that are not from the catalog are sold on their own stock flag, as before.
+ *
+ * Accepted coins, the starting float and the products come from a {@link MachineTemplate}. The
+ * machine reads the template's float until its first sale and only then takes a copy.
+ *
  * @author William Brown
  * @since 1.0
  */
 public class VendingMachineImpl implements VendingMachine {
+    private static final Change[] CHANGE_TYPES = Change.values();
+
+    // Escrow of a machine no coin has yet gone into, never written
+    private static final int[] NO_COINS = new int[CHANGE_TYPES.length];
+
+    // Per thread scratch space for making change, [0] the coins held, [1] the coins to return
+    private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[2][CHANGE_TYPES.length];
+        }
+    };
+
     private boolean isPoweredOn = false;
-    private Map<Change, Integer> changeAvailable = new EnumMap<>(Change.class);
-    private Map<Change, Integer> changeInserted = new HashMap<>();
-    private List<Change> acceptedCoins = new ArrayList<>();
-    private Map<String, Product> availableProducts = null;
+    private int[] changeAvailable;
+    private boolean sharesChangeFloat = false;
+    private int[] changeInserted;
+    private int balance = 0;
+    private List<Change> acceptedCoins;
+    private int acceptedCoinMask = 0;
+    private ProductCatalog catalog = null;
 
     /**
      * Default Vending Machine with 5 of all change types
+     *
+     * Built from {@link MachineTemplate#defaults()}, with a publisher of its own so that
+     * publishing to its catalog changes this machine only.
      */
     public VendingMachineImpl() {
-        this.isPoweredOn = false;
-        this.changeInserted = new EnumMap<Change, Integer>(Change.class);
-        this.changeAvailable = new EnumMap<Change, Integer>(Change.class);
-
-        this.changeAvailable.put(Change.TEN_PENCE, 5);
-        this.changeAvailable.put(Change.TWENTY_PENCE, 5);
-        this.changeAvailable.put(Change.FIFTY_PENCE, 5);
-        this.changeAvailable.put(Change.ONE_POUND, 5);
-
-        this.acceptedCoins = new ArrayList<>();
-        this.acceptedCoins.add(Change.TEN_PENCE);
-        this.acceptedCoins.add(Change.TWENTY_PENCE);
-        this.acceptedCoins.add(Change.FIFTY_PENCE);
-        this.acceptedCoins.add(Change.ONE_POUND);
-
-        Product aProduct = ProductFactory.createProduct("A nice product", 60, 10);
-        Product bProduct = ProductFactory.createProduct("A berry nice product", 100, 4);
-        Product cProduct = ProductFactory.createProduct("A cherry berry nice product", 170, 1);
-
-        availableProducts = new HashMap<>();
-        availableProducts.put("A", aProduct);
-        availableProducts.put("B", bProduct);
-        availableProducts.put("C", cProduct);
+        this(false, MachineTemplate.defaults(),
+                MachineTemplate.defaults().stock(new CatalogPublisher(MachineTemplate.defaults().getPlanogram())));
     }
 
     /**
@@ -64,6 +74,65 @@ public class VendingMachineImpl implements VendingMachine {
         this.isPoweredOn = isOn;
     }
 
+    /**
+     * Vending machine with 5 of all change types and empty slots, selling from a published catalog
+     *
+     * @param isOn      Initial power state
+     * @param publisher Catalog shared with the other machines on the node
+     */
+    public VendingMachineImpl(boolean isOn, CatalogPublisher publisher) {
+        this(isOn, MachineTemplate.defaults(), new ProductCatalog(publisher));
+    }
+
+    /**
+     * Vending machine stocked and floated as the template says, selling from the template's publisher
+     *
+     * @param isOn     Initial power state
+     * @param template Configuration shared with the other machines of the template
+     */
+    public VendingMachineImpl(boolean isOn, MachineTemplate template) {
+        this(isOn, template, template.stock(template.getPublisher()));
+    }
+
+    private VendingMachineImpl(boolean isOn, MachineTemplate template, ProductCatalog catalog) {
+        this.isPoweredOn = isOn;
+        this.acceptedCoins = template.getAcceptedChange();
+        this.acceptedCoinMask = template.getAcceptedCoinMask();
+        this.changeAvailable = template.changeFloat();
+        this.sharesChangeFloat = true;
+        this.changeInserted = NO_COINS;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Vending machine in a given state, for example one restored from a snapshot
+     *
+     * @param isOn            Initial power state
+     * @param acceptedChange  Coins the machine takes
+     * @param changeAvailable Coins in the cash box
+     * @param changeInserted  Coins the customer has inserted
+     * @param products        Products by slot code
+     */
+    public VendingMachineImpl(boolean isOn, List<Change> acceptedChange, Map<Change, Integer> changeAvailable,
+                              Map<Change, Integer> changeInserted, Map<String, Product> products) {
+        this.isPoweredOn = isOn;
+        this.acceptedCoins = Collections.unmodifiableList(new ArrayList<>(acceptedChange));
+        this.acceptedCoinMask = CoinLedger.mask(acceptedChange);
+        this.changeAvailable = new int[CHANGE_TYPES.length];
+        this.changeInserted = new int[CHANGE_TYPES.length];
+
+        for (Map.Entry<Change, Integer> entry : changeAvailable.entrySet()) {
+            this.changeAvailable[entry.getKey().ordinal()] = entry.getValue();
+        }
+
+        for (Map.Entry<Change, Integer> entry : changeInserted.entrySet()) {
+            this.changeInserted[entry.getKey().ordinal()] = entry.getValue();
+            this.balance += entry.getKey().getValue() * entry.getValue();
+        }
+
+        this.catalog = new ProductCatalog(products);
+    }
+
     @Override
     public List<Change> getAcceptedChange() {
         return this.acceptedCoins;
@@ -89,20 +158,96 @@ public class VendingMachineImpl implements VendingMachine {
         this.isPoweredOn = false;
     }
 
+    /**
+     * Copy of the cash box, listing only the change types the machine holds
+     *
+     * @return Map
+     */
     @Override
     public Map<Change, Integer> getChangeAvailable() {
+        Map<Change, Integer> changeAvailable = new EnumMap<>(Change.class);
+
+        for (Change changeType : CHANGE_TYPES) {
+            if (this.changeAvailable[changeType.ordinal()] > 0) {
+                changeAvailable.put(changeType, this.changeAvailable[changeType.ordinal()]);
+            }
+        }
+
         return changeAvailable;
     }
 
     @Override
     public int insertChange(Change change) throws ChangeNotAcceptedException {
-        if (!acceptsChangeDenomination(change)) {
+        if (tryInsertChange(change) != TransactionResult.OK) {
             throw new ChangeNotAcceptedException();
         }
 
+        return calculateChangeInserted();
+    }
+
+    @Override
+    public int tryInsertChange(Change change) {
+        if (!acceptsChangeDenomination(change)) {
+            return TransactionResult.CHANGE_NOT_ACCEPTED;
+        }
+
         addChange(change);
 
-        return calculateChangeInserted();
+        return TransactionResult.OK;
+    }
+
+    @Override
+    public int tryInsertChange(Change[] coins, int offset, int length, byte[] results) {
+        int[] changeInserted = ownChangeInserted();
+        int accepted = 0;
+        int added = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            Change change = coins[i];
+
+            if (acceptsChangeDenomination(change)) {
+                changeInserted[change.ordinal()]++;
+                added += change.getValue();
+                accepted++;
+                results[i] = TransactionResult.OK;
+            } else {
+                results[i] = TransactionResult.CHANGE_NOT_ACCEPTED;
+            }
+        }
+
+        this.balance += added;
+
+        return accepted;
+    }
+
+    @Override
+    public int tryPurchase(int[] coins, Product[] products, int offset, int length, byte[] results) {
+        int[] changeInserted = ownChangeInserted();
+        int sold = 0;
+
+        for (int order = offset; order < offset + length; order++) {
+            int base = order * CHANGE_TYPES.length;
+            int added = 0;
+
+            for (int ordinal = 0; ordinal < CHANGE_TYPES.length; ordinal++) {
+                int count = coins[base + ordinal];
+
+                // As with the default, counts of zero or less insert nothing
+                if (count > 0 && (this.acceptedCoinMask & (1 << ordinal)) != 0) {
+                    changeInserted[ordinal] += count;
+                    added += count * CHANGE_TYPES[ordinal].getValue();
+                }
+            }
+
+            this.balance += added;
+            results[order] = (byte) tryPurchase(products[order]);
+
+            if (results[order] == TransactionResult.OK) {
+                sold++;
+            }
+        }
+
+        return sold;
     }
 
     /**
@@ -112,47 +257,131 @@ public class VendingMachineImpl implements VendingMachine {
      * @return
      */
     public boolean acceptsChangeDenomination(Change change) {
-        return getAcceptedChange().contains(change);
+        return (this.acceptedCoinMask & (1 << change.ordinal())) != 0;
     }
 
     @Override
-    public List<Change> getChangeInserted() throws RuntimeException {
-        throw new RuntimeException("Not implemented yet");
+    public List<Change> getChangeInserted() {
+        List<Change> changeInserted = new ArrayList<>();
+
+        for (Change changeType : CHANGE_TYPES) {
+            for (int i = this.changeInserted[changeType.ordinal()]; i > 0; i--) {
+                changeInserted.add(changeType);
+            }
+        }
+
+        return changeInserted;
     }
 
     @Override
     public int refundChange() {
-        this.changeInserted.clear();
+        clearChangeInserted();
+        this.balance = 0;
 
         return calculateChangeInserted();
     }
 
     @Override
     public void reset() {
-        this.changeInserted.clear();
-        this.changeAvailable.clear();
+        clearChangeInserted();
+        ownChangeAvailable();
+        Arrays.fill(this.changeAvailable, 0);
+        this.balance = 0;
     }
 
     @Override
     public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
-        if (product.isOutOfStock()) {
-            throw new OutOfStockException(100, "Sorry this product is out of stock");
+        switch (tryPurchase(product)) {
+            case TransactionResult.OUT_OF_STOCK:
+                throw new OutOfStockException();
+            case TransactionResult.INSUFFICIENT_FUNDS:
+                throw InsufficientChangeException.forShortfall(product.getCost() - calculateChangeInserted());
+            case TransactionResult.EXACT_CHANGE_ONLY:
+                throw new ExactChangeOnlyException();
+            default:
+                // Sold
+        }
+    }
+
+    @Override
+    public int tryPurchase(Product product) {
+        int slot = this.catalog.slotOf(product);
+
+        // Remove this from the machines inventory, it goes back if the sale falls through
+        if (slot < 0 ? product.isOutOfStock() : !this.catalog.take(slot)) {
+            return TransactionResult.OUT_OF_STOCK;
+        }
+
+        int result = takePayment(product);
+
+        if (slot >= 0) {
+            if (result == TransactionResult.OK) {
+                this.catalog.recordSales(slot, 1);
+            } else {
+                this.catalog.restock(slot, 1);
+            }
         }
 
+        return result;
+    }
+
+    /**
+     * The machine's products
+     *
+     * @return ProductCatalog
+     */
+    public ProductCatalog getCatalog() {
+        return this.catalog;
+    }
+
+    /**
+     * Product has stock, take payment and dispense change
+     */
+    private int takePayment(Product product) {
         int changeToCostDifference = calculateChangeInserted() - product.getCost();
 
         // Not enough funds to buy product
         if (changeToCostDifference < 0) {
-            NumberFormat n = NumberFormat.getCurrencyInstance(Locale.UK);
-            String stringChangeDifference = n.format((changeToCostDifference / 100.0) * -1); // bring negative back to positive
+            return TransactionResult.INSUFFICIENT_FUNDS;
+        }
 
-            throw new InsufficientChangeException("You have not entered enough change to buy that product " +
-            " please insert " + stringChangeDifference + " more to purchase your product.");
-        } else {
-            // Product has stock and customer has paid enough for product
-            // @todo Remove this from the machines inventory
-            // @todo Return the remaining change to the customer
+        if (!dispenseChange(changeToCostDifference)) {
+            return TransactionResult.EXACT_CHANGE_ONLY;
         }
+
+        return TransactionResult.OK;
+    }
+
+    /**
+     * Bank the inserted change and pay the customer back the difference, in the fewest coins
+     * that can be made from the cash box and the coins they inserted.
+     *
+     * @param changeDue Pennies owed to the customer
+     * @return boolean false when the difference cannot be paid exactly, in which case nothing is banked
+     */
+    private boolean dispenseChange(int changeDue) {
+        int[][] scratch = SCRATCH.get();
+        int[] coinsHeld = scratch[0];
+        int[] coinsToReturn = scratch[1];
+
+        for (int ordinal = 0; ordinal < CHANGE_TYPES.length; ordinal++) {
+            coinsHeld[ordinal] = this.changeAvailable[ordinal] + this.changeInserted[ordinal];
+        }
+
+        if (!ChangeMaker.DEFAULT.makeChange(changeDue, coinsHeld, coinsToReturn)) {
+            return false;
+        }
+
+        int[] changeAvailable = ownChangeAvailable();
+
+        for (int ordinal = 0; ordinal < CHANGE_TYPES.length; ordinal++) {
+            changeAvailable[ordinal] = coinsHeld[ordinal] - coinsToReturn[ordinal];
+        }
+
+        clearChangeInserted();
+        this.balance = 0;
+
+        return true;
     }
 
     /**
@@ -161,37 +390,50 @@ public class VendingMachineImpl implements VendingMachine {
      * @param change
      */
     private void addChange(Change change) {
-        if (this.changeInserted.containsKey(change)) {
-            this.changeInserted.put(change, this.changeInserted.get(change) + 1);
-        } else {
-            this.changeInserted.put(change, 1);
-        }
+        ownChangeInserted()[change.ordinal()]++;
+        this.balance += change.getValue();
     }
 
     /**
-     * Calculate, in pennies, the total value of change inserted
-     *
-     * @return int Running total of value of inserted change
+     * The cash box, copied out of the template's float before its first write
      */
-    private int calculateChangeInserted() {
-        int total = 0;
+    private int[] ownChangeAvailable() {
+        if (this.sharesChangeFloat) {
+            this.changeAvailable = this.changeAvailable.clone();
+            this.sharesChangeFloat = false;
+        }
 
-        Iterator it = this.changeInserted.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pair = (Map.Entry) it.next();
+        return this.changeAvailable;
+    }
 
-            int numberOfChangeType = (Integer) pair.getValue();
-            Change changeType = Change.valueOf(pair.getKey().toString());
-            int valueOfChange = changeType.getValue();
+    /**
+     * The escrow, allocated when the first coin goes in
+     */
+    private int[] ownChangeInserted() {
+        if (this.changeInserted == NO_COINS) {
+            this.changeInserted = new int[CHANGE_TYPES.length];
+        }
+
+        return this.changeInserted;
+    }
 
-            total = total + (numberOfChangeType * valueOfChange);
+    private void clearChangeInserted() {
+        if (this.changeInserted != NO_COINS) {
+            Arrays.fill(this.changeInserted, 0);
         }
+    }
 
-        return total;
+    /**
+     * Calculate, in pennies, the total value of change inserted
+     *
+     * @return int Running total of value of inserted change
+     */
+    private int calculateChangeInserted() {
+        return this.balance;
     }
 
     @Override
     public Map<String, Product> getProductList() {
-        return this.availableProducts;
+        return this.catalog.asMap();
     }
 }
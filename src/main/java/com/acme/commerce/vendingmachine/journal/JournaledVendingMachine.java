@@ -0,0 +1,368 @@
+package com.acme.commerce.vendingmachine.journal;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.TransactionExceptions;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Journaled Vending Machine
+ *
+ * Records every state change a machine accepts in a {@link TransactionJournal}, so that the
+ * machine can be rebuilt exactly after a restart with {@link #recover(Path)}. Only operations
+ * that succeed are recorded; a refused coin or a failed sale changes nothing and so is not
+ * written. Replay drives a fresh machine through the same operations, which means the machine
+ * being journaled must start from the default state and behave deterministically.
+ *
+ * Products are recorded by their position in the sorted slot codes of the product list. A
+ * product that is not on the list is recorded by its cost alone.
+ *
+ * Records reach the disk within the journal's flush interval. Callers that must not continue
+ * until a sale is durable can wait on {@link #getJournal()}. Room for a record is made before the
+ * machine is touched, so an operation that cannot be journaled fails without taking effect.
+ *
+ * A machine recovered from a file also checkpoints to a {@link MachineSnapshot} beside it every
+ * {@link #DEFAULT_CHECKPOINT_RECORDS} records, then truncates the journal, so the journal stays
+ * bounded however long the machine runs. The snapshot notes the last record it covers, and
+ * recovery replays only the records after that, so a crash between writing the snapshot and
+ * truncating the journal replays nothing twice.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class JournaledVendingMachine implements VendingMachine, Closeable {
+    public static final int DEFAULT_CHECKPOINT_RECORDS = TransactionJournal.DEFAULT_CAPACITY / 2;
+
+    private static final int UNLISTED = -1;
+
+    private final VendingMachine vendingMachine;
+    private final TransactionJournal journal;
+    private final Path checkpoint;
+    private final long checkpointRecords;
+    private final Map<Product, Integer> slots = new IdentityHashMap<>();
+
+    /**
+     * Journal a machine without checkpoints, the journal grows for as long as it runs
+     *
+     * @param vendingMachine Machine to journal, in the state the journal's records leave it
+     * @param journal
+     */
+    public JournaledVendingMachine(VendingMachine vendingMachine, TransactionJournal journal) {
+        this(vendingMachine, journal, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param vendingMachine    Machine to journal, in the state the checkpoint and the journal's records leave it
+     * @param journal
+     * @param checkpoint        Snapshot file written by {@link #checkpoint()}, or null for none
+     * @param checkpointRecords Records after which a checkpoint is taken automatically
+     */
+    public JournaledVendingMachine(VendingMachine vendingMachine, TransactionJournal journal, Path checkpoint,
+                                   long checkpointRecords) {
+        if (checkpointRecords < 1) {
+            throw new IllegalArgumentException("Checkpoints need at least one record between them");
+        }
+
+        this.vendingMachine = vendingMachine;
+        this.journal = journal;
+        this.checkpoint = checkpoint;
+        this.checkpointRecords = checkpointRecords;
+
+        int slot = 0;
+
+        for (Product product : new TreeMap<>(vendingMachine.getProductList()).values()) {
+            this.slots.put(product, slot++);
+        }
+    }
+
+    /**
+     * Open the journal and rebuild a {@link VendingMachineImpl} from its last checkpoint, or from
+     * the default state if it has none, and the records since. The checkpoint is the file's name
+     * with {@code .snapshot} added.
+     *
+     * @param file Journal file, created if it does not exist
+     * @return JournaledVendingMachine
+     * @throws IOException
+     */
+    public static JournaledVendingMachine recover(Path file) throws IOException {
+        Path checkpoint = file.resolveSibling(file.getFileName() + ".snapshot");
+        TransactionJournal journal = new TransactionJournal(file);
+
+        try {
+            VendingMachine vendingMachine = new VendingMachineImpl();
+            long covered = 0;
+
+            if (Files.exists(checkpoint)) {
+                try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(8);
+
+                    while (header.hasRemaining() && channel.read(header) >= 0) {
+                        // Read the sequence covered
+                    }
+
+                    header.flip();
+                    covered = header.getLong();
+                    vendingMachine = MachineSnapshot.readFrom(channel).restore(0);
+                }
+            }
+
+            replay(journal, vendingMachine, covered);
+
+            return new JournaledVendingMachine(vendingMachine, journal, checkpoint, DEFAULT_CHECKPOINT_RECORDS);
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Replay the journal onto a machine in its initial state
+     *
+     * @param journal
+     * @param vendingMachine
+     * @return JournaledVendingMachine
+     * @throws IllegalStateException if the machine does not accept an operation that it accepted when recorded
+     */
+    public static JournaledVendingMachine recover(TransactionJournal journal, VendingMachine vendingMachine) {
+        replay(journal, vendingMachine, 0);
+
+        return new JournaledVendingMachine(vendingMachine, journal);
+    }
+
+    /**
+     * Replay the records after the given sequence onto a machine in the state it had then
+     */
+    private static void replay(TransactionJournal journal, final VendingMachine vendingMachine, final long covered) {
+        final SortedMap<String, Product> products = new TreeMap<>(vendingMachine.getProductList());
+        final Product[] slots = products.values().toArray(new Product[products.size()]);
+
+        journal.replay(new TransactionJournal.RecordHandler() {
+            @Override
+            public void onRecord(long sequence, byte type, int ordinal, int slot, int amount) {
+                if (sequence <= covered) {
+                    return;
+                }
+
+                int result = TransactionResult.OK;
+
+                switch (type) {
+                    case TransactionJournal.INSERT:
+                        result = vendingMachine.tryInsertChange(Change.values()[ordinal]);
+                        break;
+                    case TransactionJournal.REFUND:
+                        vendingMachine.refundChange();
+                        break;
+                    case TransactionJournal.PURCHASE:
+                        Product product = slot == UNLISTED
+                                ? ProductFactory.createProduct("Unlisted product", amount, 1)
+                                : slots[slot];
+                        result = vendingMachine.tryPurchase(product);
+                        break;
+                    case TransactionJournal.RESET:
+                        vendingMachine.reset();
+                        break;
+                    case TransactionJournal.POWER_ON:
+                        vendingMachine.powerOn();
+                        break;
+                    case TransactionJournal.POWER_OFF:
+                        vendingMachine.powerOff();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown record type " + type + " at " + sequence);
+                }
+
+                if (result != TransactionResult.OK) {
+                    throw new IllegalStateException("Record " + sequence + " could not be replayed: "
+                            + TransactionResult.describe(result));
+                }
+            }
+        });
+    }
+
+    /**
+     * The journal being written
+     *
+     * @return TransactionJournal
+     */
+    public TransactionJournal getJournal() {
+        return this.journal;
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.vendingMachine.getAcceptedChange();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.vendingMachine.isPoweredOn();
+    }
+
+    @Override
+    public synchronized void powerOn() {
+        this.journal.ensureCapacity();
+        this.vendingMachine.powerOn();
+        append(TransactionJournal.POWER_ON, 0, 0, 0);
+    }
+
+    @Override
+    public synchronized void powerOff() {
+        this.journal.ensureCapacity();
+        this.vendingMachine.powerOff();
+        append(TransactionJournal.POWER_OFF, 0, 0, 0);
+    }
+
+    @Override
+    public int getBalance() {
+        return this.vendingMachine.getBalance();
+    }
+
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        return this.vendingMachine.getChangeAvailable();
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException {
+        TransactionExceptions.checkInsert(tryInsertChange(change));
+
+        return getBalance();
+    }
+
+    @Override
+    public synchronized int tryInsertChange(Change change) {
+        this.journal.ensureCapacity();
+
+        int result = this.vendingMachine.tryInsertChange(change);
+
+        if (result == TransactionResult.OK) {
+            append(TransactionJournal.INSERT, change.ordinal(), 0, change.getValue());
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.vendingMachine.getChangeInserted();
+    }
+
+    @Override
+    public synchronized int refundChange() {
+        this.journal.ensureCapacity();
+
+        int balance = this.vendingMachine.refundChange();
+        append(TransactionJournal.REFUND, 0, 0, 0);
+
+        return balance;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.journal.ensureCapacity();
+        this.vendingMachine.reset();
+        append(TransactionJournal.RESET, 0, 0, 0);
+    }
+
+    @Override
+    public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+        int balance = getBalance();
+
+        TransactionExceptions.checkPurchase(tryPurchase(product), product.getCost() - balance,
+                TransactionExceptions.currencyOf(this.vendingMachine));
+    }
+
+    @Override
+    public synchronized int tryPurchase(Product product) {
+        this.journal.ensureCapacity();
+
+        int result = this.vendingMachine.tryPurchase(product);
+
+        if (result == TransactionResult.OK) {
+            Integer slot = this.slots.get(product);
+
+            append(TransactionJournal.PURCHASE, 0, slot == null ? UNLISTED : slot, product.getCost());
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.vendingMachine.getProductList();
+    }
+
+    /**
+     * Save the machine's state to the checkpoint file and truncate the journal. The snapshot is
+     * written beside the checkpoint, forced to disk and moved over it in one step, so a crash
+     * leaves either the old checkpoint or the new one.
+     *
+     * @throws IOException
+     * @throws IllegalStateException if the machine has no checkpoint file
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (this.checkpoint == null) {
+            throw new IllegalStateException("No checkpoint file");
+        }
+
+        Path next = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".next");
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putLong(0, this.journal.getAppended());
+
+        try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            MachineSnapshot.of(this.vendingMachine).writeTo(channel);
+            channel.force(true);
+        }
+
+        Files.move(next, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.journal.truncate();
+    }
+
+    /**
+     * Journal an operation that has taken effect, checkpointing when enough records have built up
+     */
+    private void append(byte type, int ordinal, int slot, int amount) {
+        this.journal.append(type, ordinal, slot, amount);
+
+        if (this.checkpoint != null && this.journal.getRecords() >= this.checkpointRecords) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                // The operation is journaled, the checkpoint is tried again after the next one
+            }
+        }
+    }
+
+    /**
+     * Flush and close the journal
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.journal.close();
+    }
+}
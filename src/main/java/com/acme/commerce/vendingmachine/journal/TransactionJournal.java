@@ -0,0 +1,392 @@
+package com.acme.commerce.vendingmachine.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction Journal
+ *
+ * Append only log of fixed size binary records in a memory mapped file. Appending is a handful
+ * of stores into the mapping, so it costs tens of nanoseconds. A background thread forces the
+ * mapping to disk every flush interval, committing every record appended since the last flush
+ * with one fsync; callers that need to know a record is on disk wait for it with
+ * {@link #awaitDurable(long)}.
+ *
+ * Record layout, big endian:
+ *
+ * <pre>
+ *  0  long  sequence, starting at 1
+ *  8  byte  type
+ *  9  byte  change ordinal
+ * 10  short unused
+ * 12  int   slot
+ * 16  int   amount
+ * 20  long  unused
+ * 28  int   checksum of the fields above
+ * </pre>
+ *
+ * On opening an existing journal the records are scanned up to the first one whose sequence or
+ * checksum does not match, which is where a crash interrupted the last write. New records are
+ * appended from there.
+ *
+ * Once the state the records build up has been saved elsewhere, {@link #truncate()} drops them
+ * and the next record is written at the start of the file again, so a journal that is truncated
+ * after every checkpoint never grows past the records written between two checkpoints. Sequence
+ * numbers carry on across a truncation; the header holds the last sequence dropped, and a record
+ * left over from before is never mistaken for a new one as its sequence does not match.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class TransactionJournal implements Closeable {
+    public static final int RECORD_SIZE = 32;
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+    public static final byte INSERT = 1;
+    public static final byte REFUND = 2;
+    public static final byte PURCHASE = 3;
+    public static final byte RESET = 4;
+    public static final byte POWER_ON = 5;
+    public static final byte POWER_OFF = 6;
+
+    private static final int MAGIC = 0x564D4A31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = RECORD_SIZE;
+    // Header offset of the sequence of the last record dropped by a truncation
+    private static final int BASE_OFFSET = 16;
+
+    private final FileChannel channel;
+    private final long flushIntervalNanos;
+    private final Thread flusher;
+
+    private volatile MappedByteBuffer buffer;
+    private volatile long base;
+    private volatile long appended;
+    private volatile long durable;
+    private volatile boolean closed;
+
+    /**
+     * Open, or create, a journal flushed every {@link #DEFAULT_FLUSH_INTERVAL_MILLIS}
+     *
+     * @param file
+     * @throws IOException
+     */
+    public TransactionJournal(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param file
+     * @param capacity             Records mapped up front, the mapping doubles when it fills
+     * @param flushIntervalMillis  Longest time a record waits to be forced to disk
+     * @throws IOException
+     */
+    public TransactionJournal(Path file, int capacity, long flushIntervalMillis) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        long size = Math.max(this.channel.size(), HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        this.buffer = map(size);
+
+        if (this.buffer.getInt(0) == 0) {
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(4, VERSION);
+            this.buffer.putInt(8, RECORD_SIZE);
+        } else if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            this.channel.close();
+
+            throw new IOException(file + " is not a version " + VERSION + " transaction journal");
+        }
+
+        this.base = this.buffer.getLong(BASE_OFFSET);
+        this.appended = scan();
+        this.durable = this.appended;
+        clearTail();
+
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "journal-flusher-" + file.getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Append a record. Records are numbered in the order they are appended.
+     *
+     * @param type    One of the record type constants
+     * @param ordinal Change.ordinal() for coin records
+     * @param slot
+     * @param amount
+     * @return long Sequence number of the record
+     */
+    public synchronized long append(byte type, int ordinal, int slot, int amount) {
+        ensureCapacity();
+
+        long sequence = this.appended + 1;
+        int offset = offset(sequence);
+        MappedByteBuffer buffer = this.buffer;
+        buffer.putLong(offset, sequence);
+        buffer.put(offset + 8, type);
+        buffer.put(offset + 9, (byte) ordinal);
+        buffer.putInt(offset + 12, slot);
+        buffer.putInt(offset + 16, amount);
+        buffer.putInt(offset + 28, checksum(sequence, type, ordinal, slot, amount));
+
+        this.appended = sequence;
+
+        return sequence;
+    }
+
+    /**
+     * Make sure the next record can be appended, growing the mapping if it is full. A writer that
+     * is the journal's only writer can call this before changing anything the record describes,
+     * so that it never has to undo a change because the record could not be written.
+     *
+     * @throws IllegalStateException if the journal is closed or cannot grow
+     */
+    public synchronized void ensureCapacity() {
+        if (this.closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        if (offset(this.appended + 1) + RECORD_SIZE > this.buffer.capacity()) {
+            grow();
+        }
+    }
+
+    /**
+     * Drop every record appended so far, once the state they describe has been saved. The
+     * records are forced to disk first, and the next one is written at the start of the file.
+     */
+    public synchronized void truncate() {
+        if (this.closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        flush();
+
+        MappedByteBuffer buffer = this.buffer;
+        buffer.putLong(BASE_OFFSET, this.appended);
+        buffer.force();
+        this.base = this.appended;
+        clearTail();
+    }
+
+    /**
+     * Sequence number of the last record dropped by {@link #truncate()}, 0 if none has been
+     *
+     * @return long
+     */
+    public long getBase() {
+        return this.base;
+    }
+
+    /**
+     * Number of records held, those appended since the last truncation
+     *
+     * @return long
+     */
+    public long getRecords() {
+        return this.appended - this.base;
+    }
+
+    /**
+     * Sequence number of the last record appended
+     *
+     * @return long
+     */
+    public long getAppended() {
+        return this.appended;
+    }
+
+    /**
+     * Sequence number of the last record known to be on disk
+     *
+     * @return long
+     */
+    public long getDurable() {
+        return this.durable;
+    }
+
+    /**
+     * Block until the given record has been forced to disk by a group commit
+     *
+     * @param sequence
+     * @throws InterruptedException
+     */
+    public void awaitDurable(long sequence) throws InterruptedException {
+        synchronized (this.flusher) {
+            while (this.durable < sequence && !this.closed) {
+                this.flusher.wait();
+            }
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk now
+     */
+    public void sync() {
+        flush();
+    }
+
+    /**
+     * Pass every record held, oldest first, to the handler
+     *
+     * @param handler
+     */
+    public void replay(RecordHandler handler) {
+        MappedByteBuffer buffer = this.buffer;
+        long last = this.appended;
+
+        for (long sequence = this.base + 1; sequence <= last; sequence++) {
+            int offset = offset(sequence);
+
+            handler.onRecord(sequence, buffer.get(offset + 8), buffer.get(offset + 9),
+                    buffer.getInt(offset + 12), buffer.getInt(offset + 16));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            flush();
+            this.closed = true;
+        }
+
+        this.flusher.interrupt();
+
+        synchronized (this.flusher) {
+            this.flusher.notifyAll();
+        }
+
+        this.channel.close();
+    }
+
+    /**
+     * Number of valid records, found by reading until the sequence breaks or a checksum fails
+     */
+    private long scan() {
+        MappedByteBuffer buffer = this.buffer;
+        long sequence = this.base + 1;
+
+        for (int offset = offset(sequence); offset + RECORD_SIZE <= buffer.capacity(); offset = offset(++sequence)) {
+            byte type = buffer.get(offset + 8);
+            int ordinal = buffer.get(offset + 9);
+            int slot = buffer.getInt(offset + 12);
+            int amount = buffer.getInt(offset + 16);
+
+            if (buffer.getLong(offset) != sequence
+                    || buffer.getInt(offset + 28) != checksum(sequence, type, ordinal, slot, amount)) {
+                break;
+            }
+        }
+
+        return sequence - 1;
+    }
+
+    /**
+     * Zero everything after the last valid record, so that a record which reached the disk
+     * after a lost one can never be mistaken for a new record with the same sequence number
+     */
+    private void clearTail() {
+        MappedByteBuffer buffer = this.buffer;
+        byte[] zeros = new byte[RECORD_SIZE * 128];
+
+        for (int offset = offset(this.appended + 1); offset < buffer.capacity(); offset += zeros.length) {
+            buffer.position(offset);
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.capacity() - offset));
+        }
+
+        buffer.position(0);
+        buffer.force();
+    }
+
+    private void flushLoop() {
+        while (!this.closed) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(this.flushIntervalNanos);
+            } catch (InterruptedException e) {
+                if (this.closed) {
+                    return;
+                }
+            }
+
+            flush();
+        }
+    }
+
+    /**
+     * One group commit: force the mapping and release everyone waiting on the records it covered
+     */
+    private void flush() {
+        synchronized (this.flusher) {
+            long appended = this.appended;
+
+            if (appended == this.durable) {
+                return;
+            }
+
+            this.buffer.force();
+            this.durable = appended;
+            this.flusher.notifyAll();
+        }
+    }
+
+    /**
+     * Double the mapping. The old mapping stays valid for anyone still holding it, both map the same pages.
+     */
+    private void grow() {
+        try {
+            this.buffer = map(2L * this.buffer.capacity());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot extend the journal", e);
+        }
+    }
+
+    private MappedByteBuffer map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal is full");
+        }
+
+        return this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private int offset(long sequence) {
+        return (int) (HEADER_SIZE + (sequence - this.base - 1) * RECORD_SIZE);
+    }
+
+    private static int checksum(long sequence, byte type, int ordinal, int slot, int amount) {
+        int h = 0x9E3779B9;
+        h = 31 * h + (int) (sequence ^ (sequence >>> 32));
+        h = 31 * h + type;
+        h = 31 * h + ordinal;
+        h = 31 * h + slot;
+        h = 31 * h + amount;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return h;
+    }
+
+    /**
+     * Receives records during replay
+     */
+    public interface RecordHandler {
+        void onRecord(long sequence, byte type, int ordinal, int slot, int amount);
+    }
+}
@@ -0,0 +1,129 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+/**
+ * Latency Histogram
+ *
+ * Log-linear histogram of durations in nanoseconds: every power of two is split into eight
+ * equal buckets, so any recorded value is known to within 12.5%, up to about 18 minutes. The
+ * buckets are {@link StripedCounters}, so recording is two uncontended atomic adds and no
+ * allocation whichever thread records.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int TOTAL = BUCKETS;
+
+    private final StripedCounters counters = new StripedCounters(BUCKETS + 1);
+
+    /**
+     * @param nanos Duration, negative durations count as 0
+     */
+    public void record(long nanos) {
+        this.counters.increment(bucket(nanos));
+        this.counters.add(TOTAL, Math.max(0, nanos));
+    }
+
+    /**
+     * Counts so far. Recording carries on while the snapshot is taken, so the result may
+     * include part of what was recorded at the same moment.
+     *
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS + 1];
+        this.counters.sumInto(counts);
+
+        return new Snapshot(counts);
+    }
+
+    public void reset() {
+        this.counters.reset();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+
+        int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(nanos));
+        int subBucket = (int) (Math.min(nanos, (1L << (MAX_EXPONENT + 1)) - 1) >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Largest duration that falls into the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * A histogram's counts at one moment
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+
+        Snapshot(long[] counts) {
+            long count = 0;
+
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                count += counts[bucket];
+            }
+
+            this.counts = counts;
+            this.count = count;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMean() {
+            return this.count == 0 ? 0 : (double) this.counts[TOTAL] / this.count;
+        }
+
+        /**
+         * Duration that the given fraction of recorded durations did not exceed, to bucket precision
+         *
+         * @param quantile Between 0 and 1, for example 0.99
+         * @return long Nanoseconds, 0 if nothing was recorded
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (this.count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * this.count));
+            long seen = 0;
+
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += this.counts[bucket];
+
+                if (seen >= rank) {
+                    return upperBound(bucket);
+                }
+            }
+
+            return upperBound(BUCKETS - 1);
+        }
+
+        public long getMax() {
+            return getValueAtQuantile(1.0);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Headline figures of a {@link LatencyHistogram.Snapshot}, in nanoseconds, as exported over JMX
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class LatencySummary {
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+    public LatencySummary(long count, double mean, long p50, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public static LatencySummary of(LatencyHistogram.Snapshot snapshot) {
+        return new LatencySummary(snapshot.getCount(), snapshot.getMean(), snapshot.getValueAtQuantile(0.5),
+                snapshot.getValueAtQuantile(0.99), snapshot.getValueAtQuantile(0.999), snapshot.getMax());
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getMean() {
+        return this.mean;
+    }
+
+    public long getP50() {
+        return this.p50;
+    }
+
+    public long getP99() {
+        return this.p99;
+    }
+
+    public long getP999() {
+        return this.p999;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                this.count, this.mean, this.p50, this.p99, this.p999, this.max);
+    }
+}
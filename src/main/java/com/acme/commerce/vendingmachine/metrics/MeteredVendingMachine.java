@@ -0,0 +1,215 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.ExactChangeOnlyException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.ThrottledException;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Metered Vending Machine
+ *
+ * Times every coin, refund and purchase made through another machine and counts their
+ * outcomes in a {@link VendingMachineMetrics}. Failed operations are counted by reason and
+ * their exceptions passed on unchanged. Recording adds no locking and allocates nothing,
+ * so the machine keeps whatever thread safety the wrapped one has.
+ *
+ * Sales are counted by the product's position in the sorted slot codes of the product list.
+ *
+ * Reading the clock twice costs more than the rest of the recording put together, so the
+ * machine can time a random sample of calls instead of every one. Counters are always exact;
+ * only the latency histograms are sampled, and their counts are then counts of samples.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MeteredVendingMachine implements VendingMachine {
+    private static final int UNLISTED = -1;
+    private static final long UNTIMED = Long.MIN_VALUE;
+    // A purchase that threw something unexpected, timed but counted as no outcome
+    private static final int FAILED = -1;
+
+    private final VendingMachine vendingMachine;
+    private final VendingMachineMetrics metrics;
+    private final int sampleMask;
+    private final Map<Product, Integer> slots = new IdentityHashMap<>();
+
+    /**
+     * Meter a machine, timing every call
+     *
+     * @param vendingMachine Machine to meter
+     */
+    public MeteredVendingMachine(VendingMachine vendingMachine) {
+        this(vendingMachine, 1);
+    }
+
+    /**
+     * @param vendingMachine Machine to meter
+     * @param sampleInterval Time about one call in this many, a power of two
+     */
+    public MeteredVendingMachine(VendingMachine vendingMachine, int sampleInterval) {
+        if (sampleInterval < 1 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("Sample interval must be a power of two, not " + sampleInterval);
+        }
+
+        TreeMap<String, Product> products = new TreeMap<>(vendingMachine.getProductList());
+        int slot = 0;
+
+        for (Product product : products.values()) {
+            this.slots.put(product, slot++);
+        }
+
+        this.vendingMachine = vendingMachine;
+        this.sampleMask = sampleInterval - 1;
+        this.metrics = new VendingMachineMetrics(products.keySet().toArray(new String[products.size()]));
+    }
+
+    public VendingMachineMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    @Override
+    public List<Change> getAcceptedChange() {
+        return this.vendingMachine.getAcceptedChange();
+    }
+
+    @Override
+    public boolean isPoweredOn() {
+        return this.vendingMachine.isPoweredOn();
+    }
+
+    @Override
+    public void powerOn() {
+        this.vendingMachine.powerOn();
+    }
+
+    @Override
+    public void powerOff() {
+        this.vendingMachine.powerOff();
+    }
+
+    @Override
+    public int getBalance() {
+        return this.vendingMachine.getBalance();
+    }
+
+    @Override
+    public Map<Change, Integer> getChangeAvailable() {
+        return this.vendingMachine.getChangeAvailable();
+    }
+
+    @Override
+    public int insertChange(Change change) throws ChangeNotAcceptedException {
+        long start = start();
+
+        try {
+            int balance = this.vendingMachine.insertChange(change);
+            this.metrics.recordInsert(change, TransactionResult.OK, elapsed(start));
+
+            return balance;
+        } catch (ThrottledException e) {
+            this.metrics.recordInsert(change, TransactionResult.THROTTLED, elapsed(start));
+
+            throw e;
+        } catch (ChangeNotAcceptedException e) {
+            this.metrics.recordInsert(change, TransactionResult.CHANGE_NOT_ACCEPTED, elapsed(start));
+
+            throw e;
+        }
+    }
+
+    @Override
+    public int tryInsertChange(Change change) {
+        long start = start();
+        int result = this.vendingMachine.tryInsertChange(change);
+        this.metrics.recordInsert(change, result, elapsed(start));
+
+        return result;
+    }
+
+    @Override
+    public List<Change> getChangeInserted() {
+        return this.vendingMachine.getChangeInserted();
+    }
+
+    @Override
+    public int refundChange() {
+        long start = start();
+        int balance = this.vendingMachine.refundChange();
+        this.metrics.recordRefund(elapsed(start));
+
+        return balance;
+    }
+
+    @Override
+    public void reset() {
+        this.vendingMachine.reset();
+    }
+
+    @Override
+    public void purchase(Product product) throws OutOfStockException, InsufficientChangeException {
+        long start = start();
+        int result = FAILED;
+
+        try {
+            this.vendingMachine.purchase(product);
+            result = TransactionResult.OK;
+        } catch (ThrottledException e) {
+            result = TransactionResult.THROTTLED;
+
+            throw e;
+        } catch (OutOfStockException e) {
+            result = TransactionResult.OUT_OF_STOCK;
+
+            throw e;
+        } catch (ExactChangeOnlyException e) {
+            result = TransactionResult.EXACT_CHANGE_ONLY;
+
+            throw e;
+        } catch (InsufficientChangeException e) {
+            result = TransactionResult.INSUFFICIENT_FUNDS;
+
+            throw e;
+        } finally {
+            this.metrics.recordPurchase(slotOf(product), result, elapsed(start));
+        }
+    }
+
+    @Override
+    public int tryPurchase(Product product) {
+        long start = start();
+        int result = this.vendingMachine.tryPurchase(product);
+        this.metrics.recordPurchase(slotOf(product), result, elapsed(start));
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Product> getProductList() {
+        return this.vendingMachine.getProductList();
+    }
+
+    private long start() {
+        return (ThreadLocalRandom.current().nextInt() & this.sampleMask) == 0 ? System.nanoTime() : UNTIMED;
+    }
+
+    private static long elapsed(long start) {
+        return start == UNTIMED ? VendingMachineMetrics.NOT_TIMED : Math.max(0, System.nanoTime() - start);
+    }
+
+    private int slotOf(Product product) {
+        Integer slot = this.slots.get(product);
+
+        return slot == null ? UNLISTED : slot;
+    }
+}
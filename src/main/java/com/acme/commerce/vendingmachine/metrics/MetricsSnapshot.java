@@ -0,0 +1,108 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+import com.acme.commerce.vendingmachine.Change;
+
+/**
+ * The counters and latencies of a {@link VendingMachineMetrics} at one moment
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class MetricsSnapshot {
+    private final String[] slotCodes;
+    private final long[] coinsInserted;
+    private final long[] coinsRejected;
+    private final long[] sales;
+    private final long[] purchaseOutcomes;
+    private final LatencyHistogram.Snapshot insertLatency;
+    private final LatencyHistogram.Snapshot purchaseLatency;
+    private final LatencyHistogram.Snapshot refundLatency;
+
+    MetricsSnapshot(String[] slotCodes, long[] coinsInserted, long[] coinsRejected, long[] sales,
+                    long[] purchaseOutcomes, LatencyHistogram.Snapshot insertLatency,
+                    LatencyHistogram.Snapshot purchaseLatency, LatencyHistogram.Snapshot refundLatency) {
+        this.slotCodes = slotCodes;
+        this.coinsInserted = coinsInserted;
+        this.coinsRejected = coinsRejected;
+        this.sales = sales;
+        this.purchaseOutcomes = purchaseOutcomes;
+        this.insertLatency = insertLatency;
+        this.purchaseLatency = purchaseLatency;
+        this.refundLatency = refundLatency;
+    }
+
+    public long getCoinsInserted(Change change) {
+        return this.coinsInserted[change.ordinal()];
+    }
+
+    public long getCoinsRejected(Change change) {
+        return this.coinsRejected[change.ordinal()];
+    }
+
+    /**
+     * Products sold from a slot
+     *
+     * @param slotCode
+     * @return long 0 for a code the machine does not list
+     */
+    public long getSales(String slotCode) {
+        for (int slot = 0; slot < this.slotCodes.length; slot++) {
+            if (this.slotCodes[slot].equals(slotCode)) {
+                return this.sales[slot];
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Products sold that were not on the machine's product list
+     *
+     * @return long
+     */
+    public long getUnlistedSales() {
+        return this.sales[this.slotCodes.length];
+    }
+
+    /**
+     * Purchase attempts that ended with the given result
+     *
+     * @param result A {@link com.acme.commerce.vendingmachine.TransactionResult} code
+     * @return long
+     */
+    public long getPurchaseOutcomes(int result) {
+        return result >= 0 && result < this.purchaseOutcomes.length ? this.purchaseOutcomes[result] : 0;
+    }
+
+    public LatencyHistogram.Snapshot getInsertLatency() {
+        return this.insertLatency;
+    }
+
+    public LatencyHistogram.Snapshot getPurchaseLatency() {
+        return this.purchaseLatency;
+    }
+
+    public LatencyHistogram.Snapshot getRefundLatency() {
+        return this.refundLatency;
+    }
+
+    String[] getSlotCodes() {
+        return this.slotCodes;
+    }
+
+    long[] getCoinsInserted() {
+        return this.coinsInserted;
+    }
+
+    long[] getCoinsRejected() {
+        return this.coinsRejected;
+    }
+
+    long[] getSales() {
+        return this.sales;
+    }
+
+    long[] getPurchaseOutcomes() {
+        return this.purchaseOutcomes;
+    }
+}
@@ -0,0 +1,210 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Vending Machine Metrics
+ *
+ * Counters and latency histograms for one vending machine, filled in by a
+ * {@link MeteredVendingMachine}. Every recorder is striped, so recording from many threads
+ * neither allocates nor contends. Figures can be read in code with {@link #snapshot()} or
+ * over JMX once {@link #register(String)} has been called.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class VendingMachineMetrics implements VendingMachineMetricsMXBean {
+    public static final String DOMAIN = "com.acme.commerce";
+    // Duration passed for a call that was counted but not timed
+    public static final long NOT_TIMED = -1L;
+
+    private static final Change[] CHANGE = Change.values();
+    private static final int DENOMINATIONS = CHANGE.length;
+    private static final int RESULTS = TransactionResult.THROTTLED + 1;
+    private static final int COINS_INSERTED = 0;
+    private static final int COINS_REJECTED = COINS_INSERTED + DENOMINATIONS;
+    private static final int PURCHASE_OUTCOMES = COINS_REJECTED + DENOMINATIONS;
+    private static final int COUNTERS = PURCHASE_OUTCOMES + RESULTS;
+
+    private final String[] slotCodes;
+    private final StripedCounters counters = new StripedCounters(COUNTERS);
+    private final StripedCounters sales;
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram purchaseLatency = new LatencyHistogram();
+    private final LatencyHistogram refundLatency = new LatencyHistogram();
+
+    /**
+     * @param slotCodes Codes of the machine's slots, sales are counted by index into this array
+     */
+    public VendingMachineMetrics(String[] slotCodes) {
+        this.slotCodes = slotCodes.clone();
+        this.sales = new StripedCounters(slotCodes.length + 1);
+    }
+
+    /**
+     * @param change
+     * @param result A {@link TransactionResult} code
+     * @param nanos  Time taken, or NOT_TIMED
+     */
+    public void recordInsert(Change change, int result, long nanos) {
+        this.counters.increment((result == TransactionResult.OK ? COINS_INSERTED : COINS_REJECTED) + change.ordinal());
+        record(this.insertLatency, nanos);
+    }
+
+    /**
+     * @param slot   Index into the slot codes, or -1 for a product that is not listed
+     * @param result A {@link TransactionResult} code
+     * @param nanos  Time taken, or NOT_TIMED
+     */
+    public void recordPurchase(int slot, int result, long nanos) {
+        if (result == TransactionResult.OK) {
+            this.sales.increment(slot < 0 ? this.slotCodes.length : slot);
+        }
+
+        if (result >= 0 && result < RESULTS) {
+            this.counters.increment(PURCHASE_OUTCOMES + result);
+        }
+
+        record(this.purchaseLatency, nanos);
+    }
+
+    /**
+     * @param nanos Time taken, or NOT_TIMED
+     */
+    public void recordRefund(long nanos) {
+        record(this.refundLatency, nanos);
+    }
+
+    /**
+     * Everything recorded so far
+     *
+     * @return MetricsSnapshot
+     */
+    public MetricsSnapshot snapshot() {
+        long[] counts = new long[COUNTERS];
+        long[] sales = new long[this.sales.size()];
+        long[] coinsInserted = new long[DENOMINATIONS];
+        long[] coinsRejected = new long[DENOMINATIONS];
+        long[] purchaseOutcomes = new long[RESULTS];
+
+        this.counters.sumInto(counts);
+        this.sales.sumInto(sales);
+        System.arraycopy(counts, COINS_INSERTED, coinsInserted, 0, DENOMINATIONS);
+        System.arraycopy(counts, COINS_REJECTED, coinsRejected, 0, DENOMINATIONS);
+        System.arraycopy(counts, PURCHASE_OUTCOMES, purchaseOutcomes, 0, RESULTS);
+
+        return new MetricsSnapshot(this.slotCodes, coinsInserted, coinsRejected, sales, purchaseOutcomes,
+                this.insertLatency.snapshot(), this.purchaseLatency.snapshot(), this.refundLatency.snapshot());
+    }
+
+    /**
+     * Publish on the platform MBean server as {@code com.acme.commerce:type=VendingMachine,name=<name>}
+     *
+     * @param name Name of the machine, unique among those registered
+     * @return ObjectName To pass to {@link #unregister(ObjectName)}
+     * @throws JMException if the name is taken or not a valid key property
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=VendingMachine,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+        return objectName;
+    }
+
+    /**
+     * @param objectName As returned by register
+     * @throws JMException
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCoinsInserted() {
+        return byDenomination(snapshot().getCoinsInserted());
+    }
+
+    @Override
+    public Map<String, Long> getCoinsRejected() {
+        return byDenomination(snapshot().getCoinsRejected());
+    }
+
+    @Override
+    public Map<String, Long> getSales() {
+        long[] sales = new long[this.sales.size()];
+        this.sales.sumInto(sales);
+
+        Map<String, Long> bySlot = new LinkedHashMap<>();
+
+        for (int slot = 0; slot < this.slotCodes.length; slot++) {
+            bySlot.put(this.slotCodes[slot], sales[slot]);
+        }
+
+        bySlot.put("UNLISTED", sales[this.slotCodes.length]);
+
+        return bySlot;
+    }
+
+    @Override
+    public Map<String, Long> getPurchaseOutcomes() {
+        Map<String, Long> byResult = new LinkedHashMap<>();
+
+        for (int result = 0; result < RESULTS; result++) {
+            byResult.put(TransactionResult.describe(result), this.counters.get(PURCHASE_OUTCOMES + result));
+        }
+
+        return byResult;
+    }
+
+    @Override
+    public LatencySummary getInsertLatency() {
+        return LatencySummary.of(this.insertLatency.snapshot());
+    }
+
+    @Override
+    public LatencySummary getPurchaseLatency() {
+        return LatencySummary.of(this.purchaseLatency.snapshot());
+    }
+
+    @Override
+    public LatencySummary getRefundLatency() {
+        return LatencySummary.of(this.refundLatency.snapshot());
+    }
+
+    @Override
+    public void reset() {
+        this.counters.reset();
+        this.sales.reset();
+        this.insertLatency.reset();
+        this.purchaseLatency.reset();
+        this.refundLatency.reset();
+    }
+
+    private static void record(LatencyHistogram histogram, long nanos) {
+        if (nanos != NOT_TIMED) {
+            histogram.record(nanos);
+        }
+    }
+
+    private static Map<String, Long> byDenomination(long[] counts) {
+        Map<String, Long> byDenomination = new LinkedHashMap<>();
+
+        for (Change change : CHANGE) {
+            byDenomination.put(change.name(), counts[change.ordinal()]);
+        }
+
+        return byDenomination;
+    }
+}
@@ -0,0 +1,42 @@
+package com.acme.commerce.vendingmachine.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link VendingMachineMetrics}, as seen in JConsole or any other JMX client
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public interface VendingMachineMetricsMXBean {
+    /**
+     * @return Map Coins taken, by denomination
+     */
+    Map<String, Long> getCoinsInserted();
+
+    /**
+     * @return Map Coins handed back, by denomination
+     */
+    Map<String, Long> getCoinsRejected();
+
+    /**
+     * @return Map Products sold, by slot code
+     */
+    Map<String, Long> getSales();
+
+    /**
+     * @return Map Purchase attempts, by {@link com.acme.commerce.vendingmachine.TransactionResult} name
+     */
+    Map<String, Long> getPurchaseOutcomes();
+
+    LatencySummary getInsertLatency();
+
+    LatencySummary getPurchaseLatency();
+
+    LatencySummary getRefundLatency();
+
+    /**
+     * Set every counter and histogram back to zero
+     */
+    void reset();
+}
@@ -0,0 +1,128 @@
+package com.acme.commerce.vendingmachine.net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hash Ring
+ *
+ * Consistent hashing of machine ids onto nodes. Each node is placed on a ring of 64 bit hashes
+ * at a number of points, and a machine belongs to the node at the first point at or after the
+ * machine's own hash. Adding or removing a node only moves the machines between its points and
+ * the points before them, about one machine in every n for a ring of n nodes, and the many
+ * points per node keep the shares even.
+ *
+ * A node's points depend only on its string form, so every client and server built from the
+ * same nodes agrees on where each machine lives, in whatever order the nodes are listed.
+ *
+ * Immutable and safe to share.
+ *
+ * @param <T> Node, for example its address
+ * @author William Brown
+ * @since 1.0
+ */
+public final class HashRing<T> {
+    public static final int DEFAULT_POINTS_PER_NODE = 160;
+
+    private final List<T> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Ring with {@link #DEFAULT_POINTS_PER_NODE} points per node
+     *
+     * @param nodes
+     */
+    public HashRing(List<T> nodes) {
+        this(nodes, DEFAULT_POINTS_PER_NODE);
+    }
+
+    /**
+     * @param nodes         Distinct nodes, at least one
+     * @param pointsPerNode Points each node is placed at
+     */
+    public HashRing(List<T> nodes, int pointsPerNode) {
+        if (nodes.isEmpty() || pointsPerNode < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node and one point per node");
+        }
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+
+        long[] placed = new long[nodes.size() * pointsPerNode];
+
+        for (int node = 0; node < nodes.size(); node++) {
+            long key = (long) String.valueOf(nodes.get(node)).hashCode() << 32;
+
+            for (int point = 0; point < pointsPerNode; point++) {
+                placed[node * pointsPerNode + point] = mix(key | point);
+            }
+        }
+
+        long[] hashes = placed.clone();
+        Arrays.sort(hashes);
+        this.points = hashes;
+        this.owners = new int[hashes.length];
+
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                int index = Arrays.binarySearch(hashes, placed[node * pointsPerNode + point]);
+
+                if (this.owners[index] != 0) {
+                    throw new IllegalArgumentException("Nodes " + nodes.get(this.owners[index] - 1) + " and "
+                            + nodes.get(node) + " hash to the same point");
+                }
+
+                this.owners[index] = node + 1;
+            }
+        }
+
+        for (int i = 0; i < this.owners.length; i++) {
+            this.owners[i]--;
+        }
+    }
+
+    public List<T> getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Index in {@link #getNodes()} of the node a machine lives on
+     *
+     * @param machine
+     * @return int
+     */
+    public int indexOf(int machine) {
+        int index = Arrays.binarySearch(this.points, mix(machine));
+
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return this.owners[index == this.points.length ? 0 : index];
+    }
+
+    /**
+     * The node a machine lives on
+     *
+     * @param machine
+     * @return T
+     */
+    public T nodeOf(int machine) {
+        return this.nodes.get(indexOf(machine));
+    }
+
+    /**
+     * Finaliser of MurmurHash3, spreads every input bit over the whole output
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+
+        return value;
+    }
+}
@@ -0,0 +1,553 @@
+package com.acme.commerce.vendingmachine.net;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.IdempotentVendingMachine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Machine Client
+ *
+ * Calls machines served by a ring of {@link MachineServer} nodes, sending each call to the node
+ * the {@link HashRing} puts the machine on. There is one connection per node.
+ *
+ * A node that does not answer within the timeout fails the call with a
+ * {@link SocketTimeoutException}. A call that fails for any reason closes the connections it
+ * was waiting on, since their answers may still arrive and would be taken for the next call's,
+ * and the next call to such a node connects again.
+ *
+ * Single calls wait for their answer. A {@link Pipeline} collects any number of calls and sends
+ * them together: every node is sent up to {@link #WINDOW} requests before any answer is read,
+ * so a batch costs a round trip per window per node instead of one per call, and the nodes work
+ * on their shares at the same time.
+ *
+ * Calls that change a machine can carry a transaction id, unique per machine, which makes them
+ * safe to retry after a timeout or a lost connection when the server's machines are an
+ * {@link IdempotentVendingMachine}: a repeat is answered with the first call's outcome.
+ *
+ * Thread safe; calls from different threads take turns on the connections.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineClient implements Closeable {
+    /**
+     * Requests in flight on a connection, few enough that their answers always fit the socket
+     * buffers, so the server never has to stop reading while the client is still writing
+     */
+    public static final int WINDOW = 1024;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final HashRing<InetSocketAddress> ring;
+    private final long timeoutMillis;
+    private final Selector selector;
+    private final SocketChannel[] channels;
+    private final SelectionKey[] keys;
+    private final ByteBuffer requests = ByteBuffer.allocateDirect(WINDOW * MachineProtocol.REQUEST_SIZE);
+    private final ByteBuffer responses = ByteBuffer.allocateDirect(WINDOW * MachineProtocol.RESPONSE_SIZE);
+    private final Pipeline call = new Pipeline();
+
+    /**
+     * Connect to every node
+     *
+     * @param nodes Server addresses, listed as the servers' own ring lists them
+     * @throws IOException
+     */
+    public MachineClient(List<InetSocketAddress> nodes) throws IOException {
+        this(new HashRing<>(nodes));
+    }
+
+    /**
+     * Connect to every node of a ring, waiting up to {@link #DEFAULT_TIMEOUT_MILLIS} for each
+     * connection and each answer
+     *
+     * @param ring
+     * @throws IOException
+     */
+    public MachineClient(HashRing<InetSocketAddress> ring) throws IOException {
+        this(ring, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Connect to every node of a ring
+     *
+     * @param ring
+     * @param timeoutMillis Longest wait to connect to a node, or for it to take or answer a window of calls
+     * @throws IOException
+     */
+    public MachineClient(HashRing<InetSocketAddress> ring, long timeoutMillis) throws IOException {
+        if (timeoutMillis <= 0 || timeoutMillis > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Timeout must be a positive number of milliseconds, not "
+                    + timeoutMillis);
+        }
+
+        this.ring = ring;
+        this.timeoutMillis = timeoutMillis;
+        this.selector = Selector.open();
+        this.channels = new SocketChannel[ring.getNodes().size()];
+        this.keys = new SelectionKey[this.channels.length];
+
+        try {
+            for (int node = 0; node < this.channels.length; node++) {
+                connect(node);
+            }
+        } catch (IOException e) {
+            close();
+
+            throw e;
+        }
+    }
+
+    public HashRing<InetSocketAddress> getRing() {
+        return this.ring;
+    }
+
+    /**
+     * Insert a coin
+     *
+     * @param machine
+     * @param change
+     * @return int TransactionResult code, or a {@link MachineProtocol} one
+     * @throws IOException
+     */
+    public int tryInsertChange(int machine, Change change) throws IOException {
+        return tryInsertChange(machine, IdempotentVendingMachine.NO_TRANSACTION, change);
+    }
+
+    /**
+     * Insert a coin, at most once per transaction id
+     *
+     * @param machine
+     * @param transactionId
+     * @param change
+     * @return int TransactionResult code, or a {@link MachineProtocol} one
+     * @throws IOException
+     */
+    public synchronized int tryInsertChange(int machine, long transactionId, Change change) throws IOException {
+        this.call.clear();
+        this.call.insertChange(machine, transactionId, change);
+        this.call.send();
+
+        return this.call.getResult(0);
+    }
+
+    /**
+     * @param machine
+     * @return int Balance in pennies
+     * @throws IOException
+     * @throws IllegalStateException if no node serves the machine
+     */
+    public synchronized int getBalance(int machine) throws IOException {
+        this.call.clear();
+        this.call.getBalance(machine);
+        this.call.send();
+
+        return valueOf(this.call, 0);
+    }
+
+    /**
+     * Buy the product in a slot
+     *
+     * @param machine
+     * @param slotCode Up to {@value MachineProtocol#MAX_SLOT_CODE_LENGTH} ASCII characters
+     * @return int TransactionResult code, or a {@link MachineProtocol} one
+     * @throws IOException
+     */
+    public int tryPurchase(int machine, String slotCode) throws IOException {
+        return tryPurchase(machine, IdempotentVendingMachine.NO_TRANSACTION, slotCode);
+    }
+
+    /**
+     * Buy the product in a slot, at most once per transaction id
+     *
+     * @param machine
+     * @param transactionId
+     * @param slotCode      Up to {@value MachineProtocol#MAX_SLOT_CODE_LENGTH} ASCII characters
+     * @return int TransactionResult code, or a {@link MachineProtocol} one
+     * @throws IOException
+     */
+    public synchronized int tryPurchase(int machine, long transactionId, String slotCode) throws IOException {
+        this.call.clear();
+        this.call.purchase(machine, transactionId, slotCode);
+        this.call.send();
+
+        return this.call.getResult(0);
+    }
+
+    /**
+     * Hand back the balance
+     *
+     * @param machine
+     * @return int Pennies refunded
+     * @throws IOException
+     * @throws IllegalStateException if no node serves the machine
+     */
+    public int refundChange(int machine) throws IOException {
+        return refundChange(machine, IdempotentVendingMachine.NO_TRANSACTION);
+    }
+
+    /**
+     * Hand back the balance, at most once per transaction id
+     *
+     * @param machine
+     * @param transactionId
+     * @return int Pennies refunded, by the first call for a repeated id
+     * @throws IOException
+     * @throws IllegalStateException if no node serves the machine
+     */
+    public synchronized int refundChange(int machine, long transactionId) throws IOException {
+        this.call.clear();
+        this.call.refundChange(machine, transactionId);
+        this.call.send();
+
+        return valueOf(this.call, 0);
+    }
+
+    /**
+     * A new, empty batch of calls, sent with {@link Pipeline#send()}
+     *
+     * @return Pipeline
+     */
+    public Pipeline pipeline() {
+        return new Pipeline();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+
+        for (SocketChannel channel : this.channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void connect(int node) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.socket().connect(this.ring.getNodes().get(node), (int) this.timeoutMillis);
+            channel.configureBlocking(false);
+            this.keys[node] = channel.register(this.selector, 0);
+        } catch (IOException e) {
+            channel.close();
+
+            throw e;
+        }
+
+        this.channels[node] = channel;
+    }
+
+    private void disconnect(int node) {
+        if (this.channels[node] != null) {
+            this.keys[node].cancel();
+
+            try {
+                this.channels[node].close();
+            } catch (IOException e) {
+                // Gone either way
+            }
+
+            this.channels[node] = null;
+            this.keys[node] = null;
+        }
+    }
+
+    /**
+     * Wait until the node's connection is ready for the operations, or throw once the deadline passes
+     */
+    private void await(int node, int operations, long deadline) throws IOException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Node " + this.ring.getNodes().get(node) + " did not answer within "
+                    + this.timeoutMillis + "ms");
+        }
+
+        this.keys[node].interestOps(operations);
+        this.selector.select(remaining);
+        this.selector.selectedKeys().clear();
+        this.keys[node].interestOps(0);
+    }
+
+    private static int valueOf(Pipeline pipeline, int call) {
+        if (pipeline.getResult(call) != 0) {
+            throw new IllegalStateException(MachineProtocol.describe(pipeline.getResult(call)));
+        }
+
+        return pipeline.getValue(call);
+    }
+
+    /**
+     * Send every call of a pipeline, a window per node at a time, and read back their answers
+     */
+    private synchronized void send(Pipeline pipeline) throws IOException {
+        int nodes = this.channels.length;
+        int[] byNode = new int[pipeline.size];
+        int[] starts = new int[nodes + 1];
+
+        // Calls grouped by node, in their order within each node
+        for (int call = 0; call < pipeline.size; call++) {
+            starts[pipeline.nodes[call] + 1]++;
+        }
+
+        for (int node = 0; node < nodes; node++) {
+            starts[node + 1] += starts[node];
+        }
+
+        int[] next = Arrays.copyOf(starts, nodes);
+
+        for (int call = 0; call < pipeline.size; call++) {
+            byNode[next[pipeline.nodes[call]]++] = call;
+        }
+
+        int[] sent = Arrays.copyOf(starts, nodes);
+        boolean[] pending = new boolean[nodes];
+        boolean more = true;
+
+        try {
+            while (more) {
+                more = false;
+
+                for (int node = 0; node < nodes; node++) {
+                    int from = sent[node];
+                    int to = Math.min(starts[node + 1], from + WINDOW);
+
+                    if (from < to) {
+                        pending[node] = true;
+                        write(node, pipeline, byNode, from, to);
+                    }
+                }
+
+                for (int node = 0; node < nodes; node++) {
+                    int from = sent[node];
+                    int to = Math.min(starts[node + 1], from + WINDOW);
+
+                    if (from < to) {
+                        read(node, pipeline, byNode, from, to);
+                        pending[node] = false;
+                        sent[node] = to;
+                        more |= to < starts[node + 1];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Answers still owed on these connections would be read as answers to later calls
+            for (int node = 0; node < nodes; node++) {
+                if (pending[node]) {
+                    disconnect(node);
+                }
+            }
+
+            throw e;
+        }
+    }
+
+    private void write(int node, Pipeline pipeline, int[] byNode, int from, int to) throws IOException {
+        ByteBuffer requests = this.requests;
+        requests.clear();
+
+        for (int i = from; i < to; i++) {
+            int call = byNode[i];
+
+            MachineProtocol.putRequest(requests, call, pipeline.operations[call], pipeline.ordinals[call],
+                    pipeline.machines[call], pipeline.slotCodes[call], pipeline.transactionIds[call]);
+        }
+
+        requests.flip();
+
+        if (this.channels[node] == null) {
+            connect(node);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+
+        while (requests.hasRemaining()) {
+            if (this.channels[node].write(requests) == 0) {
+                await(node, SelectionKey.OP_WRITE, deadline);
+            }
+        }
+    }
+
+    private void read(int node, Pipeline pipeline, int[] byNode, int from, int to) throws IOException {
+        ByteBuffer responses = this.responses;
+        responses.clear();
+        responses.limit((to - from) * MachineProtocol.RESPONSE_SIZE);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+
+        while (responses.hasRemaining()) {
+            int read = this.channels[node].read(responses);
+
+            if (read < 0) {
+                throw new IOException("Node " + this.ring.getNodes().get(node) + " closed the connection");
+            } else if (read == 0) {
+                await(node, SelectionKey.OP_READ, deadline);
+            }
+        }
+
+        responses.flip();
+
+        for (int i = from; i < to; i++) {
+            int call = byNode[i];
+            int requestId = responses.getInt();
+            responses.get();
+            int result = responses.get();
+            responses.getShort();
+            int value = responses.getInt();
+
+            if (requestId != call) {
+                throw new IOException("Node " + this.ring.getNodes().get(node) + " answered request " + requestId
+                        + " when " + call + " was next");
+            }
+
+            pipeline.results[call] = result;
+            pipeline.values[call] = value;
+        }
+    }
+
+    /**
+     * Pipeline
+     *
+     * A batch of calls. Each call method returns the call's index, under which its result and
+     * value can be read once the batch has been sent. Calls to one machine are applied in the
+     * order they were added; calls to machines on different nodes may be applied in any order.
+     *
+     * Not thread safe, build a pipeline on one thread.
+     */
+    public final class Pipeline {
+        private int size;
+        private byte[] operations = new byte[16];
+        private int[] ordinals = new int[16];
+        private int[] machines = new int[16];
+        private int[] slotCodes = new int[16];
+        private long[] transactionIds = new long[16];
+        private int[] nodes = new int[16];
+        private int[] results = new int[16];
+        private int[] values = new int[16];
+
+        private Pipeline() {
+        }
+
+        public int insertChange(int machine, Change change) {
+            return insertChange(machine, IdempotentVendingMachine.NO_TRANSACTION, change);
+        }
+
+        public int insertChange(int machine, long transactionId, Change change) {
+            return add(MachineProtocol.INSERT_CHANGE, change.ordinal(), machine, 0, transactionId);
+        }
+
+        public int getBalance(int machine) {
+            return add(MachineProtocol.GET_BALANCE, 0, machine, 0, IdempotentVendingMachine.NO_TRANSACTION);
+        }
+
+        /**
+         * @param machine
+         * @param slotCode Up to {@value MachineProtocol#MAX_SLOT_CODE_LENGTH} ASCII characters
+         * @return int
+         */
+        public int purchase(int machine, String slotCode) {
+            return purchase(machine, IdempotentVendingMachine.NO_TRANSACTION, slotCode);
+        }
+
+        public int purchase(int machine, long transactionId, String slotCode) {
+            return add(MachineProtocol.PURCHASE, 0, machine, MachineProtocol.packSlotCode(slotCode), transactionId);
+        }
+
+        public int refundChange(int machine) {
+            return refundChange(machine, IdempotentVendingMachine.NO_TRANSACTION);
+        }
+
+        public int refundChange(int machine, long transactionId) {
+            return add(MachineProtocol.REFUND_CHANGE, 0, machine, 0, transactionId);
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Send every call and wait for all of their answers
+         *
+         * @throws IOException
+         */
+        public void send() throws IOException {
+            MachineClient.this.send(this);
+        }
+
+        /**
+         * @param call
+         * @return int TransactionResult code, or a {@link MachineProtocol} one
+         */
+        public int getResult(int call) {
+            return this.results[call];
+        }
+
+        /**
+         * @param call
+         * @return int Balance after the call, or the amount refunded by a refund
+         */
+        public int getValue(int call) {
+            return this.values[call];
+        }
+
+        /**
+         * Empty the pipeline for reuse
+         */
+        public void clear() {
+            this.size = 0;
+        }
+
+        private int add(byte operation, int ordinal, int machine, int slotCode, long transactionId) {
+            if (this.size == this.operations.length) {
+                int capacity = this.size * 2;
+                this.operations = Arrays.copyOf(this.operations, capacity);
+                this.ordinals = Arrays.copyOf(this.ordinals, capacity);
+                this.machines = Arrays.copyOf(this.machines, capacity);
+                this.slotCodes = Arrays.copyOf(this.slotCodes, capacity);
+                this.transactionIds = Arrays.copyOf(this.transactionIds, capacity);
+                this.nodes = Arrays.copyOf(this.nodes, capacity);
+                this.results = Arrays.copyOf(this.results, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+            }
+
+            int call = this.size++;
+            this.operations[call] = operation;
+            this.ordinals[call] = ordinal;
+            this.machines[call] = machine;
+            this.slotCodes[call] = slotCode;
+            this.transactionIds[call] = transactionId;
+            this.nodes[call] = MachineClient.this.ring.indexOf(machine);
+
+            return call;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.acme.commerce.vendingmachine.net;
+
+import com.acme.commerce.vendingmachine.TransactionResult;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Machine Protocol
+ *
+ * The binary protocol spoken between a {@link MachineClient} and a {@link MachineServer}: fixed
+ * size frames, big endian, with no framing beyond their size. A client may send any number of
+ * requests without waiting, and the server answers each connection's requests in the order it
+ * sent them.
+ *
+ * Request, {@value #REQUEST_SIZE} bytes:
+ *
+ * <pre>
+ *  0  int   request id, echoed in the response
+ *  4  byte  operation
+ *  5  byte  change ordinal, for INSERT_CHANGE
+ *  6  short unused
+ *  8  int   machine id
+ * 12  int   slot code, up to 4 ASCII characters packed big endian, for PURCHASE
+ * 16  long  transaction id, or 0 for none; a call repeated with the same id is answered
+ *           with the first call's outcome and not run again
+ * </pre>
+ *
+ * Response, {@value #RESPONSE_SIZE} bytes:
+ *
+ * <pre>
+ *  0  int   request id
+ *  4  byte  operation
+ *  5  byte  result, a TransactionResult code or one of the protocol's own
+ *  6  short unused
+ *  8  int   balance after the operation, or the amount refunded for REFUND_CHANGE
+ * </pre>
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class MachineProtocol {
+    public static final int REQUEST_SIZE = 24;
+    public static final int RESPONSE_SIZE = 12;
+    public static final int MAX_SLOT_CODE_LENGTH = 4;
+
+    public static final byte INSERT_CHANGE = 1;
+    public static final byte GET_BALANCE = 2;
+    public static final byte PURCHASE = 3;
+    public static final byte REFUND_CHANGE = 4;
+
+    /**
+     * Result when the node serves no machine with the id, normally because the client's view
+     * of the ring differs from the servers'
+     */
+    public static final int UNKNOWN_MACHINE = 64;
+
+    /**
+     * Result for an operation, coin or slot the server does not know, or for a transaction id
+     * sent to a machine that cannot deduplicate calls
+     */
+    public static final int BAD_REQUEST = 65;
+
+    private MachineProtocol() {
+    }
+
+    /**
+     * Name of a result code, for logs and reports
+     *
+     * @param result
+     * @return String
+     */
+    public static String describe(int result) {
+        switch (result) {
+            case UNKNOWN_MACHINE:
+                return "UNKNOWN_MACHINE";
+            case BAD_REQUEST:
+                return "BAD_REQUEST";
+            default:
+                return TransactionResult.describe(result);
+        }
+    }
+
+    /**
+     * Slot code in the four bytes of a request
+     *
+     * @param slotCode
+     * @return int
+     * @throws IllegalArgumentException if the code is longer than {@value #MAX_SLOT_CODE_LENGTH} or not ASCII
+     */
+    public static int packSlotCode(String slotCode) {
+        if (slotCode.isEmpty() || slotCode.length() > MAX_SLOT_CODE_LENGTH) {
+            throw new IllegalArgumentException("Slot codes are 1 to " + MAX_SLOT_CODE_LENGTH
+                    + " characters, not \"" + slotCode + "\"");
+        }
+
+        int packed = 0;
+
+        for (int i = 0; i < slotCode.length(); i++) {
+            char c = slotCode.charAt(i);
+
+            if (c == 0 || c > 0x7f) {
+                throw new IllegalArgumentException("Slot codes are ASCII, not \"" + slotCode + "\"");
+            }
+
+            packed = packed << 8 | c;
+        }
+
+        return packed;
+    }
+
+    static void putRequest(ByteBuffer buffer, int requestId, byte operation, int ordinal, int machine, int slotCode,
+                           long transactionId) {
+        buffer.putInt(requestId);
+        buffer.put(operation);
+        buffer.put((byte) ordinal);
+        buffer.putShort((short) 0);
+        buffer.putInt(machine);
+        buffer.putInt(slotCode);
+        buffer.putLong(transactionId);
+    }
+
+    static void putResponse(ByteBuffer buffer, int requestId, byte operation, int result, int value) {
+        buffer.putInt(requestId);
+        buffer.put(operation);
+        buffer.put((byte) result);
+        buffer.putShort((short) 0);
+        buffer.putInt(value);
+    }
+}
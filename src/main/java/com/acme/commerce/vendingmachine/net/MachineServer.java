@@ -0,0 +1,356 @@
+package com.acme.commerce.vendingmachine.net;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.IdempotentVendingMachine;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Machine Server
+ *
+ * Serves the machines of one node over the {@link MachineProtocol}. One thread runs a selector
+ * over every connection, so the machines are only ever called from that thread and need not be
+ * thread safe. Each readable connection has every whole request in its input buffer answered,
+ * in order, into its output buffer, which is then written in one go; a client that pipelines
+ * many requests gets many answers per system call.
+ *
+ * Requests that carry a transaction id are passed on to machines that are an
+ * {@link IdempotentVendingMachine}, so a retried request is answered with its first outcome.
+ * Other machines refuse them with {@link MachineProtocol#BAD_REQUEST}, rather than running a
+ * call the client expects to be safe to retry.
+ *
+ * A client that sends faster than it reads fills its output buffer, at which point the server
+ * stops reading from it until the buffer drains, rather than buffering without limit.
+ *
+ * Several servers, on different ports, can run in one process, for example one per node of a
+ * ring under test on loopback.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineServer implements Closeable {
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Change[] CHANGE_TYPES = Change.values();
+
+    private final IntFunction<VendingMachine> machines;
+    private final Map<VendingMachine, SlotIndex> slotIndexes = new IdentityHashMap<>();
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final InetSocketAddress address;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile long requests;
+
+    /**
+     * Start serving
+     *
+     * @param address  Address to listen on, port 0 for any free port
+     * @param machines The node's machines by id, null for an id it does not serve. Called for
+     *                 every request, so should be a lookup, and must return the same machine
+     *                 for an id each time.
+     * @throws IOException
+     */
+    public MachineServer(InetSocketAddress address, IntFunction<VendingMachine> machines) throws IOException {
+        this.machines = machines;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+
+        try {
+            this.serverChannel.bind(address);
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+            this.address = (InetSocketAddress) this.serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            this.serverChannel.close();
+            this.selector.close();
+
+            throw e;
+        }
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "machine-server-" + this.address.getPort());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * The address the server is listening on, with the port it was given if it asked for any
+     *
+     * @return InetSocketAddress
+     */
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * Requests answered so far
+     *
+     * @return long
+     */
+    public long getRequests() {
+        return this.requests;
+    }
+
+    /**
+     * Stop serving and drop every connection
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.selector.wakeup();
+
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (!this.closed) {
+                this.selector.select();
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isValid()) {
+                            Connection connection = (Connection) key.attachment();
+
+                            if (key.isReadable() && connection.channel.read(connection.in) < 0) {
+                                drop(key);
+                            } else {
+                                answer(key, connection);
+                            }
+                        }
+                    } catch (IOException e) {
+                        drop(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The selector itself failed, nothing more can be served
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                drop(key);
+            }
+
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+        }
+    }
+
+    /**
+     * Answer every whole request read so far, as far as the output buffer has room, and write the answers
+     */
+    private void answer(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        boolean backlog;
+
+        do {
+            long answered = 0;
+            in.flip();
+
+            while (in.remaining() >= MachineProtocol.REQUEST_SIZE && out.remaining() >= MachineProtocol.RESPONSE_SIZE) {
+                handle(in, out);
+                answered++;
+            }
+
+            backlog = in.remaining() >= MachineProtocol.REQUEST_SIZE;
+            in.compact();
+
+            // Counted before the answers go out, so a client holding them sees them counted
+            if (answered > 0) {
+                this.requests += answered;
+            }
+
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+        } while (backlog && out.position() == 0);
+
+        // Wait for the client to read its answers before reading any more of its requests
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void handle(ByteBuffer in, ByteBuffer out) {
+        int requestId = in.getInt();
+        byte operation = in.get();
+        int ordinal = in.get();
+        in.getShort();
+        int machineId = in.getInt();
+        int slotCode = in.getInt();
+        long transactionId = in.getLong();
+
+        VendingMachine machine = this.machines.apply(machineId);
+        IdempotentVendingMachine idempotent = null;
+        int result = TransactionResult.OK;
+        int value = 0;
+
+        if (machine instanceof IdempotentVendingMachine) {
+            idempotent = (IdempotentVendingMachine) machine;
+        }
+
+        if (machine == null) {
+            result = MachineProtocol.UNKNOWN_MACHINE;
+        } else if (transactionId != IdempotentVendingMachine.NO_TRANSACTION && idempotent == null) {
+            result = MachineProtocol.BAD_REQUEST;
+        } else {
+            switch (operation) {
+                case MachineProtocol.INSERT_CHANGE:
+                    if (ordinal < 0 || ordinal >= CHANGE_TYPES.length) {
+                        result = MachineProtocol.BAD_REQUEST;
+                    } else if (idempotent != null) {
+                        result = idempotent.tryInsertChange(transactionId, CHANGE_TYPES[ordinal]);
+                    } else {
+                        result = machine.tryInsertChange(CHANGE_TYPES[ordinal]);
+                    }
+
+                    value = machine.getBalance();
+                    break;
+                case MachineProtocol.GET_BALANCE:
+                    value = machine.getBalance();
+                    break;
+                case MachineProtocol.PURCHASE:
+                    Product product = slotIndex(machine).productOf(slotCode);
+
+                    if (product == null) {
+                        result = MachineProtocol.BAD_REQUEST;
+                    } else if (idempotent != null) {
+                        result = idempotent.tryPurchase(transactionId, product);
+                    } else {
+                        result = machine.tryPurchase(product);
+                    }
+
+                    value = machine.getBalance();
+                    break;
+                case MachineProtocol.REFUND_CHANGE:
+                    if (idempotent != null) {
+                        value = idempotent.refundChange(transactionId);
+                    } else {
+                        value = machine.getBalance();
+                        machine.refundChange();
+                    }
+                    break;
+                default:
+                    result = MachineProtocol.BAD_REQUEST;
+            }
+        }
+
+        MachineProtocol.putResponse(out, requestId, operation, result, value);
+    }
+
+    private SlotIndex slotIndex(VendingMachine machine) {
+        SlotIndex slotIndex = this.slotIndexes.get(machine);
+
+        if (slotIndex == null) {
+            slotIndex = new SlotIndex(machine.getProductList());
+            this.slotIndexes.put(machine, slotIndex);
+        }
+
+        return slotIndex;
+    }
+
+    private void drop(SelectionKey key) {
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Gone either way
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A machine's products by packed slot code, so that a purchase is found without decoding a
+     * string. Codes are sorted and found by binary search, as
+     * {@link com.acme.commerce.vendingmachine.catalog.Planogram#slotOf} finds slot codes.
+     */
+    private static final class SlotIndex {
+        final int[] slotCodes;
+        final Product[] products;
+
+        SlotIndex(Map<String, Product> productList) {
+            Map<Integer, Product> packed = new TreeMap<>();
+
+            for (Map.Entry<String, Product> entry : productList.entrySet()) {
+                try {
+                    packed.put(MachineProtocol.packSlotCode(entry.getKey()), entry.getValue());
+                } catch (IllegalArgumentException e) {
+                    // A code the protocol cannot carry, so no client can ask for it
+                }
+            }
+
+            this.slotCodes = new int[packed.size()];
+            this.products = new Product[packed.size()];
+
+            int slot = 0;
+
+            for (Map.Entry<Integer, Product> entry : packed.entrySet()) {
+                this.slotCodes[slot] = entry.getKey();
+                this.products[slot++] = entry.getValue();
+            }
+        }
+
+        Product productOf(int slotCode) {
+            int slot = Arrays.binarySearch(this.slotCodes, slotCode);
+
+            return slot < 0 ? null : this.products[slot];
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.acme.commerce.vendingmachine.simulation;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.metrics.LatencyHistogram;
+import com.acme.commerce.vendingmachine.metrics.MeteredVendingMachine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ * Load Generator
+ *
+ * Drives a set of machines with simulated customers and measures how the implementation
+ * copes. Customers pick a product anywhere on the machine, pay with a realistic mix of coins
+ * (foreign and unaccepted ones included), and now and then change their mind and ask for a
+ * refund or try to buy with too little money. Machines that sell out get a service visit
+ * that restocks the slot.
+ *
+ * Each thread serves its own share of the machines from its own seeded random stream, so a
+ * profile always produces exactly the same customers and outcomes, whatever the timing. Every
+ * call is timed, which adds two clock reads to each operation; the figures are for comparing
+ * implementations under identical load rather than absolute cost.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class LoadGenerator {
+    private static final Change[] CHANGE = Change.values();
+    // Relative chance of each coin by Change.ordinal(), customers mostly carry silver and pounds
+    private static final int[] COIN_WEIGHTS = {2, 2, 3, 20, 20, 25, 25, 3};
+    private static final int COIN_WEIGHT_TOTAL = 100;
+    // Percentages of customers who try with too little money and who walk away after paying in
+    private static final int SHORT_CHANGED = 8;
+    private static final int CHANGED_MIND = 15;
+    private static final int SERVICE_STOCK = 20;
+
+    private final LoadProfile profile;
+    private final VendingMachine[] machines;
+    private final ProductCatalog[] catalogs;
+    private final Product[][] products;
+
+    /**
+     * Build the profile's machines, ready to run
+     *
+     * @param profile
+     */
+    public LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+        this.machines = new VendingMachine[profile.getMachines()];
+        this.catalogs = new ProductCatalog[profile.getMachines()];
+        this.products = new Product[profile.getMachines()][];
+
+        VendingFleet fleet = profile.getImplementation().equals("fleet") ? new VendingFleet(profile.getMachines()) : null;
+
+        for (int id = 0; id < this.machines.length; id++) {
+            switch (profile.getImplementation()) {
+                case "concurrent":
+                    ConcurrentVendingMachineImpl concurrentMachine = new ConcurrentVendingMachineImpl(true);
+                    this.machines[id] = concurrentMachine;
+                    this.catalogs[id] = concurrentMachine.getCatalog();
+                    break;
+                case "fleet":
+                    this.machines[id] = fleet.machine(id);
+                    this.machines[id].powerOn();
+                    this.catalogs[id] = fleet.catalog(id);
+                    break;
+                case "metered":
+                    VendingMachineImpl meteredMachine = new VendingMachineImpl(true);
+                    this.machines[id] = new MeteredVendingMachine(meteredMachine);
+                    this.catalogs[id] = meteredMachine.getCatalog();
+                    break;
+                default:
+                    VendingMachineImpl defaultMachine = new VendingMachineImpl(true);
+                    this.machines[id] = defaultMachine;
+                    this.catalogs[id] = defaultMachine.getCatalog();
+            }
+
+            // In slot order, which is the order of the catalog's slots
+            this.products[id] = new TreeMap<>(this.machines[id].getProductList()).values().toArray(new Product[0]);
+        }
+    }
+
+    /**
+     * Serve the warm up customers, then serve and measure the profile's customers
+     *
+     * @return LoadReport
+     * @throws InterruptedException
+     */
+    public LoadReport run() throws InterruptedException {
+        int threads = Math.min(this.profile.getThreads(), this.machines.length);
+        Worker[] workers = new Worker[threads];
+
+        for (int index = 0; index < threads; index++) {
+            workers[index] = new Worker(index, threads, new SplittableRandom(this.profile.getSeed() + index));
+        }
+
+        runPhase(workers, this.profile.getWarmupCustomers(), new Recorder());
+
+        Recorder recorder = new Recorder();
+        long elapsed = runPhase(workers, this.profile.getCustomers(), recorder);
+
+        return recorder.report(this.profile, threads, elapsed, workers);
+    }
+
+    private long runPhase(Worker[] workers, long customers, Recorder recorder) throws InterruptedException {
+        Thread[] threads = new Thread[workers.length];
+
+        for (int index = 0; index < workers.length; index++) {
+            workers[index].start(customers / workers.length + (index < customers % workers.length ? 1 : 0), recorder);
+            threads[index] = new Thread(workers[index], "load-" + index);
+        }
+
+        long start = System.nanoTime();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Latencies and counts of one phase, shared by its workers
+     */
+    static final class Recorder {
+        final LatencyHistogram insertLatency = new LatencyHistogram();
+        final LatencyHistogram purchaseLatency = new LatencyHistogram();
+        final LatencyHistogram refundLatency = new LatencyHistogram();
+
+        LoadReport report(LoadProfile profile, int threads, long elapsedNanos, Worker[] workers) {
+            long[] purchaseOutcomes = new long[TransactionResult.THROTTLED + 1];
+            long coinsRefused = 0;
+            long restocks = 0;
+            long allocatedBytes = 0;
+
+            for (Worker worker : workers) {
+                for (int result = 0; result < purchaseOutcomes.length; result++) {
+                    purchaseOutcomes[result] += worker.purchaseOutcomes[result];
+                }
+
+                coinsRefused += worker.coinsRefused;
+                restocks += worker.restocks;
+                allocatedBytes = worker.allocatedBytes < 0 || allocatedBytes < 0 ? -1 : allocatedBytes + worker.allocatedBytes;
+            }
+
+            return new LoadReport(profile.toString(), threads, profile.getCustomers(), elapsedNanos, allocatedBytes,
+                    purchaseOutcomes, coinsRefused, restocks, this.insertLatency.snapshot(),
+                    this.purchaseLatency.snapshot(), this.refundLatency.snapshot());
+        }
+    }
+
+    /**
+     * One thread's customers, on machines index, index + threads, index + 2 * threads and so on
+     */
+    final class Worker implements Runnable {
+        private final int index;
+        private final int stride;
+        private final int share;
+        private final SplittableRandom random;
+
+        private long customers;
+        private Recorder recorder;
+        private long[] purchaseOutcomes;
+        private long coinsRefused;
+        private long restocks;
+        private long allocatedBytes;
+
+        Worker(int index, int stride, SplittableRandom random) {
+            this.index = index;
+            this.stride = stride;
+            this.share = (machines.length - index + stride - 1) / stride;
+            this.random = random;
+        }
+
+        void start(long customers, Recorder recorder) {
+            this.customers = customers;
+            this.recorder = recorder;
+            this.purchaseOutcomes = new long[TransactionResult.THROTTLED + 1];
+            this.coinsRefused = 0;
+            this.restocks = 0;
+        }
+
+        @Override
+        public void run() {
+            long allocated = allocatedBytes();
+
+            for (long customer = 0; customer < this.customers; customer++) {
+                serve(this.index + this.stride * this.random.nextInt(this.share));
+            }
+
+            this.allocatedBytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        }
+
+        private void serve(int id) {
+            VendingMachine vendingMachine = machines[id];
+            int slot = this.random.nextInt(products[id].length);
+            Product product = products[id][slot];
+            int behaviour = this.random.nextInt(100);
+            int cost = product.getCost();
+
+            if (behaviour < SHORT_CHANGED) {
+                pay(vendingMachine, this.random.nextInt(cost));
+                purchase(vendingMachine, id, slot, product);
+            } else if (behaviour < SHORT_CHANGED + CHANGED_MIND) {
+                pay(vendingMachine, 1 + this.random.nextInt(cost));
+                refund(vendingMachine);
+            } else {
+                pay(vendingMachine, cost);
+                purchase(vendingMachine, id, slot, product);
+            }
+        }
+
+        /**
+         * Feed coins until the balance reaches the target
+         */
+        private void pay(VendingMachine vendingMachine, int target) {
+            int balance = 0;
+
+            while (balance < target) {
+                Change change = coin();
+                long start = System.nanoTime();
+                int result = vendingMachine.tryInsertChange(change);
+                this.recorder.insertLatency.record(System.nanoTime() - start);
+
+                if (result == TransactionResult.OK) {
+                    balance += change.getValue();
+                } else {
+                    this.coinsRefused++;
+                }
+            }
+        }
+
+        /**
+         * Buy, calling out the service engineer if the slot is empty, and take the money back if the sale fails
+         */
+        private void purchase(VendingMachine vendingMachine, int id, int slot, Product product) {
+            int result = timedPurchase(vendingMachine, product);
+
+            if (result == TransactionResult.OUT_OF_STOCK) {
+                catalogs[id].restock(slot, SERVICE_STOCK);
+                this.restocks++;
+                result = timedPurchase(vendingMachine, product);
+            }
+
+            this.purchaseOutcomes[result]++;
+
+            if (result != TransactionResult.OK) {
+                refund(vendingMachine);
+            }
+        }
+
+        private int timedPurchase(VendingMachine vendingMachine, Product product) {
+            long start = System.nanoTime();
+            int result = vendingMachine.tryPurchase(product);
+            this.recorder.purchaseLatency.record(System.nanoTime() - start);
+
+            return result;
+        }
+
+        private void refund(VendingMachine vendingMachine) {
+            long start = System.nanoTime();
+            vendingMachine.refundChange();
+            this.recorder.refundLatency.record(System.nanoTime() - start);
+        }
+
+        private Change coin() {
+            int roll = this.random.nextInt(COIN_WEIGHT_TOTAL);
+            int ordinal = 0;
+
+            while (roll >= COIN_WEIGHTS[ordinal]) {
+                roll -= COIN_WEIGHTS[ordinal++];
+            }
+
+            return CHANGE[ordinal];
+        }
+    }
+
+    /**
+     * Bytes this thread has allocated so far, or -1 where the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+}
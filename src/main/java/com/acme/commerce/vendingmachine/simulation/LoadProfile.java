@@ -0,0 +1,159 @@
+package com.acme.commerce.vendingmachine.simulation;
+
+/**
+ * Load Profile
+ *
+ * What a {@link LoadGenerator} run drives: which implementation, how many machines, threads
+ * and customers, and the seed their behaviour is drawn from. The same profile always produces
+ * the same customers, so two runs differ only in how fast the implementation serves them.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class LoadProfile {
+    public static final String[] IMPLEMENTATIONS = {"default", "concurrent", "fleet", "metered"};
+
+    private String implementation = "default";
+    private int machines = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long customers = 1000000;
+    private long warmupCustomers = 200000;
+    private long seed = 42;
+
+    /**
+     * Profile from command line options such as {@code --machines=10000 --threads=4}
+     *
+     * @param args
+     * @return LoadProfile
+     * @throws IllegalArgumentException for an unknown option or a bad value
+     */
+    public static LoadProfile parse(String[] args) {
+        LoadProfile profile = new LoadProfile();
+
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --option=value, not " + arg);
+            }
+
+            String option = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+
+            switch (option) {
+                case "implementation":
+                    profile.setImplementation(value);
+                    break;
+                case "machines":
+                    profile.setMachines(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    profile.setThreads(Integer.parseInt(value));
+                    break;
+                case "customers":
+                    profile.setCustomers(Long.parseLong(value));
+                    break;
+                case "warmup":
+                    profile.setWarmupCustomers(Long.parseLong(value));
+                    break;
+                case "seed":
+                    profile.setSeed(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + option);
+            }
+        }
+
+        return profile;
+    }
+
+    public static String usage() {
+        return "Options: --implementation=default|concurrent|fleet|metered --machines=1000 --threads=<cpus>"
+                + " --customers=1000000 --warmup=200000 --seed=42";
+    }
+
+    public String getImplementation() {
+        return this.implementation;
+    }
+
+    public void setImplementation(String implementation) {
+        for (String known : IMPLEMENTATIONS) {
+            if (known.equals(implementation)) {
+                this.implementation = known;
+
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown implementation " + implementation);
+    }
+
+    public int getMachines() {
+        return this.machines;
+    }
+
+    public void setMachines(int machines) {
+        this.machines = (int) positive("machines", machines);
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Each thread drives its own share of the machines, so there are never more threads than machines
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        this.threads = (int) positive("threads", threads);
+    }
+
+    public long getCustomers() {
+        return this.customers;
+    }
+
+    public void setCustomers(long customers) {
+        this.customers = positive("customers", customers);
+    }
+
+    public long getWarmupCustomers() {
+        return this.warmupCustomers;
+    }
+
+    /**
+     * Customers served before measuring starts, to let the JIT settle
+     *
+     * @param warmupCustomers
+     */
+    public void setWarmupCustomers(long warmupCustomers) {
+        if (warmupCustomers < 0) {
+            throw new IllegalArgumentException("warmup cannot be negative");
+        }
+
+        this.warmupCustomers = warmupCustomers;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String toString() {
+        return "implementation=" + this.implementation + " machines=" + this.machines + " threads="
+                + Math.min(this.threads, this.machines) + " customers=" + this.customers + " warmup="
+                + this.warmupCustomers + " seed=" + this.seed;
+    }
+
+    private static long positive(String option, long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(option + " must be positive, not " + value);
+        }
+
+        return value;
+    }
+}
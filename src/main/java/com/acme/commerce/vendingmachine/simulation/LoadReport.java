@@ -0,0 +1,144 @@
+package com.acme.commerce.vendingmachine.simulation;
+
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.metrics.LatencyHistogram;
+
+/**
+ * What one {@link LoadGenerator} run measured
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class LoadReport {
+    private final String profile;
+    private final int threads;
+    private final long customers;
+    private final long elapsedNanos;
+    private final long allocatedBytes;
+    private final long[] purchaseOutcomes;
+    private final long coinsRefused;
+    private final long restocks;
+    private final LatencyHistogram.Snapshot insertLatency;
+    private final LatencyHistogram.Snapshot purchaseLatency;
+    private final LatencyHistogram.Snapshot refundLatency;
+
+    LoadReport(String profile, int threads, long customers, long elapsedNanos, long allocatedBytes,
+               long[] purchaseOutcomes, long coinsRefused, long restocks, LatencyHistogram.Snapshot insertLatency,
+               LatencyHistogram.Snapshot purchaseLatency, LatencyHistogram.Snapshot refundLatency) {
+        this.profile = profile;
+        this.threads = threads;
+        this.customers = customers;
+        this.elapsedNanos = elapsedNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.purchaseOutcomes = purchaseOutcomes;
+        this.coinsRefused = coinsRefused;
+        this.restocks = restocks;
+        this.insertLatency = insertLatency;
+        this.purchaseLatency = purchaseLatency;
+        this.refundLatency = refundLatency;
+    }
+
+    public long getCustomers() {
+        return this.customers;
+    }
+
+    /**
+     * Coins, purchases and refunds made
+     *
+     * @return long
+     */
+    public long getOperations() {
+        return this.insertLatency.getCount() + this.purchaseLatency.getCount() + this.refundLatency.getCount();
+    }
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    public double getOperationsPerSecond() {
+        return getOperations() * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Bytes allocated by the load threads, or -1 if the JVM cannot measure it
+     *
+     * @return long
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    public double getAllocatedBytesPerOperation() {
+        return this.allocatedBytes < 0 ? -1 : (double) this.allocatedBytes / Math.max(1, getOperations());
+    }
+
+    /**
+     * Purchases that ended with the given result, after any restock
+     *
+     * @param result A {@link TransactionResult} code
+     * @return long
+     */
+    public long getPurchaseOutcomes(int result) {
+        return this.purchaseOutcomes[result];
+    }
+
+    public long getCoinsRefused() {
+        return this.coinsRefused;
+    }
+
+    public long getRestocks() {
+        return this.restocks;
+    }
+
+    public LatencyHistogram.Snapshot getInsertLatency() {
+        return this.insertLatency;
+    }
+
+    public LatencyHistogram.Snapshot getPurchaseLatency() {
+        return this.purchaseLatency;
+    }
+
+    public LatencyHistogram.Snapshot getRefundLatency() {
+        return this.refundLatency;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        double seconds = this.elapsedNanos / 1e9;
+
+        report.append(String.format("Profile     %s%n", this.profile));
+        report.append(String.format("Served      %,d customers, %,d operations in %.3fs on %d threads%n",
+                this.customers, getOperations(), seconds, this.threads));
+        report.append(String.format("Throughput  %,.0f operations/s, %,.0f customers/s%n",
+                getOperationsPerSecond(), this.customers / seconds));
+
+        if (this.allocatedBytes < 0) {
+            report.append(String.format("Allocation  not measurable on this JVM%n"));
+        } else {
+            report.append(String.format("Allocation  %,.1f MB/s, %.2f bytes/operation%n",
+                    this.allocatedBytes / seconds / (1024 * 1024), getAllocatedBytesPerOperation()));
+        }
+
+        report.append(String.format("Purchases  "));
+
+        for (int result = 0; result < this.purchaseOutcomes.length; result++) {
+            if (this.purchaseOutcomes[result] > 0) {
+                report.append(String.format(" %s=%,d", TransactionResult.describe(result), this.purchaseOutcomes[result]));
+            }
+        }
+
+        report.append(String.format("%nCoins       %,d refused, %,d restocks%n", this.coinsRefused, this.restocks));
+        report.append(latency("insert", this.insertLatency));
+        report.append(latency("purchase", this.purchaseLatency));
+        report.append(latency("refund", this.refundLatency));
+
+        return report.toString();
+    }
+
+    private static String latency(String operation, LatencyHistogram.Snapshot latency) {
+        return String.format("%-11s p50=%,dns p90=%,dns p99=%,dns p99.9=%,dns max=%,dns%n", operation,
+                latency.getValueAtQuantile(0.5), latency.getValueAtQuantile(0.9), latency.getValueAtQuantile(0.99),
+                latency.getValueAtQuantile(0.999), latency.getMax());
+    }
+}
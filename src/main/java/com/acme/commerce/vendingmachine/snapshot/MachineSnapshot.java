@@ -0,0 +1,433 @@
+package com.acme.commerce.vendingmachine.snapshot;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.impl.CoinLedger;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Machine Snapshot
+ *
+ * The complete state of one or more machines that share a configuration: power, coins inserted,
+ * cash box and stock, plus the accepted coins and the catalog they share. State is held in
+ * column arrays, machine after machine, so a snapshot of a whole fleet is a handful of arrays
+ * that are written and read with bulk buffer copies.
+ *
+ * Binary format, big endian:
+ *
+ * <pre>
+ * int    magic 'VMSS'
+ * short  version
+ * short  denominations
+ * int    machines
+ * int    slots
+ * int    accepted coin mask, bit Change.ordinal()
+ * int    catalog length in bytes
+ * catalog, for each slot: code and name as a short length and UTF-8 bytes, then int cost
+ * long[] power state, bit machine of word machine / 64
+ * int[]  coins inserted, machine * denominations + Change.ordinal()
+ * int[]  cash box, laid out the same way
+ * int[]  stock, machine * slots + slot
+ * int[]  units sold, laid out the same way (from version 2)
+ * </pre>
+ *
+ * Version 1 snapshots, written before sales were counted, read back with no units sold.
+ *
+ * Snapshots own the arrays they are built from and hand them out without copying; treat them as
+ * read only.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class MachineSnapshot {
+    public static final int MAGIC = 0x564D5353;
+    public static final short VERSION = 2;
+
+    private static final int DENOMINATIONS = CoinLedger.DENOMINATIONS;
+    private static final int HEADER_SIZE = 24;
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final Change[] CHANGE_TYPES = Change.values();
+
+    private final int size;
+    private final List<Change> acceptedChange;
+    private final String[] slotCodes;
+    private final String[] names;
+    private final int[] costs;
+    private final long[] powerState;
+    private final int[] changeInserted;
+    private final int[] changeAvailable;
+    private final int[] stock;
+    private final int[] sold;
+
+    /**
+     * @param size            Number of machines
+     * @param acceptedChange  Coins the machines take
+     * @param slotCodes       Slot codes, in slot order
+     * @param names           Product name per slot
+     * @param costs           Product cost per slot
+     * @param powerState      Power bit per machine, (size + 63) / 64 words
+     * @param changeInserted  Coins inserted, size * DENOMINATIONS
+     * @param changeAvailable Cash box, size * DENOMINATIONS
+     * @param stock           Stock, size * slots
+     * @param sold            Units sold, size * slots
+     */
+    public MachineSnapshot(int size, List<Change> acceptedChange, String[] slotCodes, String[] names, int[] costs,
+                           long[] powerState, int[] changeInserted, int[] changeAvailable, int[] stock, int[] sold) {
+        int slots = slotCodes.length;
+
+        if (size < 0 || names.length != slots || costs.length != slots
+                || powerState.length != (size + 63) >>> 6
+                || changeInserted.length != size * DENOMINATIONS
+                || changeAvailable.length != size * DENOMINATIONS
+                || stock.length != size * slots
+                || sold.length != size * slots) {
+            throw new IllegalArgumentException("Snapshot arrays do not match " + size + " machines of " + slots + " slots");
+        }
+
+        this.size = size;
+        this.acceptedChange = Collections.unmodifiableList(new ArrayList<>(acceptedChange));
+        this.slotCodes = slotCodes;
+        this.names = names;
+        this.costs = costs;
+        this.powerState = powerState;
+        this.changeInserted = changeInserted;
+        this.changeAvailable = changeAvailable;
+        this.stock = stock;
+        this.sold = sold;
+    }
+
+    /**
+     * Snapshot of a single machine, taken through its public interface. Sales are only known for
+     * machines that expose their {@link ProductCatalog}.
+     *
+     * @param vendingMachine
+     * @return MachineSnapshot
+     */
+    public static MachineSnapshot of(VendingMachine vendingMachine) {
+        SortedMap<String, Product> products = new TreeMap<>(vendingMachine.getProductList());
+        int slots = products.size();
+        String[] slotCodes = new String[slots];
+        String[] names = new String[slots];
+        int[] costs = new int[slots];
+        int[] stock = new int[slots];
+        int slot = 0;
+
+        for (Map.Entry<String, Product> entry : products.entrySet()) {
+            slotCodes[slot] = entry.getKey();
+            names[slot] = entry.getValue().getName();
+            costs[slot] = entry.getValue().getCost();
+            stock[slot] = entry.getValue().getQuantityAvailable();
+            slot++;
+        }
+
+        int[] changeInserted = new int[DENOMINATIONS];
+        int[] changeAvailable = new int[DENOMINATIONS];
+
+        for (Change change : vendingMachine.getChangeInserted()) {
+            changeInserted[change.ordinal()]++;
+        }
+
+        for (Map.Entry<Change, Integer> entry : vendingMachine.getChangeAvailable().entrySet()) {
+            changeAvailable[entry.getKey().ordinal()] = entry.getValue();
+        }
+
+        long[] powerState = {vendingMachine.isPoweredOn() ? 1L : 0L};
+
+        return new MachineSnapshot(1, vendingMachine.getAcceptedChange(), slotCodes, names, costs, powerState,
+                changeInserted, changeAvailable, stock, soldBy(vendingMachine, slots));
+    }
+
+    /**
+     * Write the snapshot in the binary format
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        byte[][] catalog = new byte[slots() * 2][];
+        int catalogLength = 0;
+
+        for (int slot = 0; slot < slots(); slot++) {
+            catalog[slot * 2] = this.slotCodes[slot].getBytes(StandardCharsets.UTF_8);
+            catalog[slot * 2 + 1] = this.names[slot].getBytes(StandardCharsets.UTF_8);
+            catalogLength += 2 + catalog[slot * 2].length + 2 + catalog[slot * 2 + 1].length + 4;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + catalogLength);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) DENOMINATIONS);
+        buffer.putInt(this.size);
+        buffer.putInt(slots());
+        buffer.putInt(CoinLedger.mask(this.acceptedChange));
+        buffer.putInt(catalogLength);
+
+        for (int slot = 0; slot < slots(); slot++) {
+            putString(buffer, catalog[slot * 2]);
+            putString(buffer, catalog[slot * 2 + 1]);
+            buffer.putInt(this.costs[slot]);
+        }
+
+        buffer.flip();
+        writeFully(channel, buffer);
+
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        for (int i = 0; i < this.powerState.length; i += CHUNK_SIZE / 8) {
+            int length = Math.min(CHUNK_SIZE / 8, this.powerState.length - i);
+            chunk.clear();
+            chunk.asLongBuffer().put(this.powerState, i, length);
+            chunk.limit(length * 8);
+            writeFully(channel, chunk);
+        }
+
+        writeInts(channel, chunk, this.changeInserted);
+        writeInts(channel, chunk, this.changeAvailable);
+        writeInts(channel, chunk, this.stock);
+        writeInts(channel, chunk, this.sold);
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeTo}
+     *
+     * @param channel
+     * @return MachineSnapshot
+     * @throws IOException if the data is not a snapshot of this version, or is truncated
+     */
+    public static MachineSnapshot readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header);
+        header.flip();
+
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a machine snapshot");
+        }
+
+        short version = header.getShort();
+        short denominations = header.getShort();
+
+        if (version < 1 || version > VERSION || denominations != DENOMINATIONS) {
+            throw new IOException("Unsupported snapshot version " + version + " with " + denominations + " denominations");
+        }
+
+        int size = header.getInt();
+        int slots = header.getInt();
+        int acceptedCoinMask = header.getInt();
+        ByteBuffer catalog = ByteBuffer.allocate(header.getInt());
+        readFully(channel, catalog);
+        catalog.flip();
+
+        String[] slotCodes = new String[slots];
+        String[] names = new String[slots];
+        int[] costs = new int[slots];
+
+        for (int slot = 0; slot < slots; slot++) {
+            slotCodes[slot] = getString(catalog).intern();
+            names[slot] = getString(catalog);
+            costs[slot] = catalog.getInt();
+        }
+
+        List<Change> acceptedChange = new ArrayList<>();
+
+        for (Change change : CHANGE_TYPES) {
+            if ((acceptedCoinMask & (1 << change.ordinal())) != 0) {
+                acceptedChange.add(change);
+            }
+        }
+
+        long[] powerState = new long[(size + 63) >>> 6];
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        for (int i = 0; i < powerState.length; i += CHUNK_SIZE / 8) {
+            int length = Math.min(CHUNK_SIZE / 8, powerState.length - i);
+            chunk.clear();
+            chunk.limit(length * 8);
+            readFully(channel, chunk);
+            chunk.flip();
+            chunk.asLongBuffer().get(powerState, i, length);
+        }
+
+        int[] changeInserted = readInts(channel, chunk, size * DENOMINATIONS);
+        int[] changeAvailable = readInts(channel, chunk, size * DENOMINATIONS);
+        int[] stock = readInts(channel, chunk, size * slots);
+        int[] sold = version >= 2 ? readInts(channel, chunk, size * slots) : new int[size * slots];
+
+        return new MachineSnapshot(size, acceptedChange, slotCodes, names, costs, powerState,
+                changeInserted, changeAvailable, stock, sold);
+    }
+
+    /**
+     * A new machine in the state of one of the snapshot's machines
+     *
+     * @param machine Machine id, from 0 to size() - 1
+     * @return VendingMachineImpl
+     */
+    public VendingMachineImpl restore(int machine) {
+        if (machine < 0 || machine >= this.size) {
+            throw new IndexOutOfBoundsException("No machine " + machine + " in a snapshot of " + this.size);
+        }
+
+        Map<Change, Integer> changeInserted = new EnumMap<>(Change.class);
+        Map<Change, Integer> changeAvailable = new EnumMap<>(Change.class);
+
+        for (Change change : CHANGE_TYPES) {
+            changeInserted.put(change, this.changeInserted[machine * DENOMINATIONS + change.ordinal()]);
+            changeAvailable.put(change, this.changeAvailable[machine * DENOMINATIONS + change.ordinal()]);
+        }
+
+        Map<String, Product> products = new HashMap<>();
+
+        for (int slot = 0; slot < slots(); slot++) {
+            products.put(this.slotCodes[slot], ProductFactory.createProduct(this.names[slot], this.costs[slot],
+                    this.stock[machine * slots() + slot]));
+        }
+
+        VendingMachineImpl vendingMachine = new VendingMachineImpl(isPoweredOn(machine), this.acceptedChange,
+                changeAvailable, changeInserted, products);
+
+        for (int slot = 0; slot < slots(); slot++) {
+            vendingMachine.getCatalog().recordSales(slot, this.sold[machine * slots() + slot]);
+        }
+
+        return vendingMachine;
+    }
+
+    /**
+     * Number of machines
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Number of product slots per machine
+     *
+     * @return int
+     */
+    public int slots() {
+        return this.slotCodes.length;
+    }
+
+    public List<Change> getAcceptedChange() {
+        return this.acceptedChange;
+    }
+
+    public String[] getSlotCodes() {
+        return this.slotCodes;
+    }
+
+    public String[] getNames() {
+        return this.names;
+    }
+
+    public int[] getCosts() {
+        return this.costs;
+    }
+
+    public boolean isPoweredOn(int machine) {
+        return (this.powerState[machine >>> 6] & (1L << machine)) != 0;
+    }
+
+    public long[] getPowerState() {
+        return this.powerState;
+    }
+
+    public int[] getChangeInserted() {
+        return this.changeInserted;
+    }
+
+    public int[] getChangeAvailable() {
+        return this.changeAvailable;
+    }
+
+    public int[] getStock() {
+        return this.stock;
+    }
+
+    public int[] getSold() {
+        return this.sold;
+    }
+
+    private static int[] soldBy(VendingMachine vendingMachine, int slots) {
+        ProductCatalog catalog = null;
+
+        if (vendingMachine instanceof VendingMachineImpl) {
+            catalog = ((VendingMachineImpl) vendingMachine).getCatalog();
+        } else if (vendingMachine instanceof ConcurrentVendingMachineImpl) {
+            catalog = ((ConcurrentVendingMachineImpl) vendingMachine).getCatalog();
+        }
+
+        int[] sold = new int[slots];
+
+        for (int slot = 0; catalog != null && slot < slots; slot++) {
+            sold[slot] = catalog.getSold(slot);
+        }
+
+        return sold;
+    }
+
+    private static void writeInts(WritableByteChannel channel, ByteBuffer chunk, int[] values) throws IOException {
+        for (int i = 0; i < values.length; i += CHUNK_SIZE / 4) {
+            int length = Math.min(CHUNK_SIZE / 4, values.length - i);
+            chunk.clear();
+            chunk.asIntBuffer().put(values, i, length);
+            chunk.limit(length * 4);
+            writeFully(channel, chunk);
+        }
+    }
+
+    private static int[] readInts(ReadableByteChannel channel, ByteBuffer chunk, int count) throws IOException {
+        int[] values = new int[count];
+
+        for (int i = 0; i < count; i += CHUNK_SIZE / 4) {
+            int length = Math.min(CHUNK_SIZE / 4, count - i);
+            chunk.clear();
+            chunk.limit(length * 4);
+            readFully(channel, chunk);
+            chunk.flip();
+            chunk.asIntBuffer().get(values, i, length);
+        }
+
+        return values;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot is truncated");
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.acme.commerce.vendingmachine.telemetry;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.audit.AuditEvent;
+import com.acme.commerce.vendingmachine.audit.AuditSink;
+import com.acme.commerce.vendingmachine.audit.AuditTrail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sales Telemetry
+ *
+ * Live sales rates, coin mix and refunds per machine and for the whole fleet, counted from the
+ * stream of machine events. As an {@link AuditSink} it is fed by an {@link AuditTrail}, on the
+ * trail's writer thread, so machines pay nothing for it beyond recording their audit events.
+ *
+ * Counts are kept in a ring of time buckets per machine, plus one for the fleet: each bucket
+ * holds a fixed set of int counters for the coins accepted by denomination, money inserted,
+ * refunds, revenue and units sold by slot. An event adds to the bucket its time falls in,
+ * clearing the bucket first if it last held an older stretch of time; nothing else is kept, so
+ * a machine costs the same memory however long it runs, and a query for the last N minutes
+ * sums at most that many buckets. A machine's ring is allocated by its first event.
+ *
+ * Events older than the fleet's ring, or for a machine id out of range, are counted as dropped
+ * and left out of every window, so a machine's windows always add up to the fleet's.
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class SalesTelemetry implements AuditSink {
+    public static final long DEFAULT_BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final int DEFAULT_BUCKETS = 60;
+
+    static final int DENOMINATIONS = Change.values().length;
+    static final int COINS = 0;
+    static final int INSERTED = COINS + DENOMINATIONS;
+    static final int REFUNDS = INSERTED + 1;
+    static final int REFUNDED = REFUNDS + 1;
+    static final int REVENUE = REFUNDED + 1;
+    static final int SALES = REVENUE + 1;
+
+    private final String[] slotCodes;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final long bucketMillis;
+    private final int buckets;
+    private final int fields;
+    private final Ring[] machines;
+    private final Ring fleet;
+
+    private long dropped;
+
+    /**
+     * Telemetry over the last hour, by the minute
+     *
+     * @param machines  Machines counted, by id from 0
+     * @param slotCodes Slot codes counted separately; sales from any other slot are counted together
+     */
+    public SalesTelemetry(int machines, String[] slotCodes) {
+        this(machines, slotCodes, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param machines     Machines counted, by id from 0
+     * @param slotCodes    Slot codes counted separately; sales from any other slot are counted together
+     * @param bucketMillis Time covered by each bucket, and so the resolution of queries
+     * @param buckets      Buckets per ring, so the longest query is buckets * bucketMillis
+     */
+    public SalesTelemetry(int machines, String[] slotCodes, long bucketMillis, int buckets) {
+        if (machines < 0 || bucketMillis < 1 || buckets < 1) {
+            throw new IllegalArgumentException("Telemetry needs a bucket of at least a millisecond and at least one bucket");
+        }
+
+        this.slotCodes = slotCodes.clone();
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.fields = SALES + slotCodes.length + 1;
+        this.machines = new Ring[machines];
+        this.fleet = new Ring(buckets, this.fields);
+
+        for (int slot = 0; slot < slotCodes.length; slot++) {
+            this.slots.put(slotCodes[slot], slot);
+        }
+    }
+
+    public long getBucketMillis() {
+        return this.bucketMillis;
+    }
+
+    /**
+     * Longest stretch of time a query can cover
+     *
+     * @return long
+     */
+    public long getSpanMillis() {
+        return this.bucketMillis * this.buckets;
+    }
+
+    /**
+     * Events that were too old for the fleet's ring or for an unknown machine
+     *
+     * @return long
+     */
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+
+    @Override
+    public void onEvent(AuditEvent event, boolean endOfBatch) {
+        record(event.getMachine(), event.getTime(), event.getType(), event.getChange(), event.getSlotCode(),
+                event.getAmount(), event.getResult());
+    }
+
+    /**
+     * Count one event, as recorded by an {@link AuditTrail}. Only accepted coins, sales and
+     * refunds of a balance count; anything else is ignored.
+     *
+     * @param machine
+     * @param timeMillis Time of the event, in milliseconds since the epoch
+     * @param type       One of the {@link AuditEvent} type constants
+     * @param change     The coin inserted
+     * @param slotCode   The slot bought from, null if not known
+     * @param amount     The coin's value, the product's cost, or the balance refunded
+     * @param result     A {@link TransactionResult} code
+     */
+    public void record(int machine, long timeMillis, byte type, Change change, String slotCode, int amount,
+                       int result) {
+        int count;
+
+        switch (type) {
+            case AuditEvent.INSERT:
+                if (result != TransactionResult.OK) {
+                    return;
+                }
+
+                count = COINS + change.ordinal();
+                break;
+            case AuditEvent.PURCHASE:
+                if (result != TransactionResult.OK) {
+                    return;
+                }
+
+                Integer slot = slotCode == null ? null : this.slots.get(slotCode);
+                count = SALES + (slot == null ? this.slotCodes.length : slot);
+                break;
+            case AuditEvent.REFUND:
+                if (amount == 0) {
+                    return;
+                }
+
+                count = REFUNDS;
+                break;
+            default:
+                return;
+        }
+
+        int total = type == AuditEvent.INSERT ? INSERTED : type == AuditEvent.PURCHASE ? REVENUE : REFUNDED;
+        long bucket = Math.floorDiv(timeMillis, this.bucketMillis);
+
+        synchronized (this) {
+            if (machine < 0 || machine >= this.machines.length) {
+                this.dropped++;
+
+                return;
+            }
+
+            Ring ring = this.machines[machine];
+
+            if (ring == null) {
+                ring = new Ring(this.buckets, this.fields);
+                this.machines[machine] = ring;
+            }
+
+            // The fleet's ring has every event the machine's has, so a bucket the fleet still
+            // holds, the machine still holds too
+            if (!this.fleet.add(bucket, count, total, amount)) {
+                this.dropped++;
+
+                return;
+            }
+
+            ring.add(bucket, count, total, amount);
+        }
+    }
+
+    /**
+     * What a machine did over the given time up to now
+     *
+     * @param machine
+     * @param spanMillis Time to cover, rounded up to whole buckets and at most {@link #getSpanMillis()}
+     * @return SalesWindow
+     */
+    public SalesWindow window(int machine, long spanMillis) {
+        return window(machine, System.currentTimeMillis(), spanMillis);
+    }
+
+    /**
+     * What a machine did over the given time up to a moment
+     *
+     * @param machine
+     * @param nowMillis  End of the window, in milliseconds since the epoch
+     * @param spanMillis Time to cover, rounded up to whole buckets and at most {@link #getSpanMillis()}
+     * @return SalesWindow
+     * @throws IllegalArgumentException for a machine id out of range
+     */
+    public synchronized SalesWindow window(int machine, long nowMillis, long spanMillis) {
+        if (machine < 0 || machine >= this.machines.length) {
+            throw new IllegalArgumentException("No machine " + machine);
+        }
+
+        return window(this.machines[machine], nowMillis, spanMillis);
+    }
+
+    /**
+     * What the whole fleet did over the given time up to now
+     *
+     * @param spanMillis Time to cover, rounded up to whole buckets and at most {@link #getSpanMillis()}
+     * @return SalesWindow
+     */
+    public SalesWindow fleetWindow(long spanMillis) {
+        return fleetWindow(System.currentTimeMillis(), spanMillis);
+    }
+
+    /**
+     * What the whole fleet did over the given time up to a moment
+     *
+     * @param nowMillis  End of the window, in milliseconds since the epoch
+     * @param spanMillis Time to cover, rounded up to whole buckets and at most {@link #getSpanMillis()}
+     * @return SalesWindow
+     */
+    public synchronized SalesWindow fleetWindow(long nowMillis, long spanMillis) {
+        return window(this.fleet, nowMillis, spanMillis);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private SalesWindow window(Ring ring, long nowMillis, long spanMillis) {
+        long last = Math.floorDiv(nowMillis, this.bucketMillis);
+        long count = Math.max(1, Math.min(this.buckets, (spanMillis + this.bucketMillis - 1) / this.bucketMillis));
+        long first = last - count + 1;
+        long[] totals = new long[this.fields];
+
+        if (ring != null) {
+            ring.sum(first, last, totals);
+        }
+
+        return new SalesWindow(first * this.bucketMillis, (last + 1) * this.bucketMillis, this.slotCodes, totals);
+    }
+
+    /**
+     * Buckets of counters, each tagged with the bucket number, time over bucket length, it holds
+     */
+    private static final class Ring {
+        private static final long UNUSED = Long.MIN_VALUE;
+
+        final long[] epochs;
+        final int[] counters;
+        final int fields;
+
+        Ring(int buckets, int fields) {
+            this.epochs = new long[buckets];
+            this.counters = new int[buckets * fields];
+            this.fields = fields;
+
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                this.epochs[bucket] = UNUSED;
+            }
+        }
+
+        /**
+         * @return boolean false if the bucket has already been reused for a later stretch of time
+         */
+        boolean add(long bucket, int count, int total, int amount) {
+            int index = (int) Math.floorMod(bucket, (long) this.epochs.length);
+            int base = index * this.fields;
+
+            if (this.epochs[index] != bucket) {
+                if (this.epochs[index] > bucket) {
+                    return false;
+                }
+
+                this.epochs[index] = bucket;
+
+                for (int field = base; field < base + this.fields; field++) {
+                    this.counters[field] = 0;
+                }
+            }
+
+            this.counters[base + count]++;
+            this.counters[base + total] += amount;
+
+            return true;
+        }
+
+        void sum(long first, long last, long[] totals) {
+            for (long bucket = first; bucket <= last; bucket++) {
+                int index = (int) Math.floorMod(bucket, (long) this.epochs.length);
+
+                if (this.epochs[index] == bucket) {
+                    int base = index * this.fields;
+
+                    for (int field = 0; field < this.fields; field++) {
+                        totals[field] += this.counters[base + field];
+                    }
+                }
+            }
+        }
+    }
+}
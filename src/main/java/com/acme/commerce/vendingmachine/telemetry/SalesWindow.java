@@ -0,0 +1,170 @@
+package com.acme.commerce.vendingmachine.telemetry;
+
+import com.acme.commerce.vendingmachine.Change;
+
+/**
+ * The sales, coins and refunds a {@link SalesTelemetry} counted for one machine, or the whole
+ * fleet, over a recent stretch of time
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public final class SalesWindow {
+    private static final long MILLIS_PER_MINUTE = 60000L;
+
+    private final long startMillis;
+    private final long endMillis;
+    private final String[] slotCodes;
+    private final long[] totals;
+
+    SalesWindow(long startMillis, long endMillis, String[] slotCodes, long[] totals) {
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.slotCodes = slotCodes;
+        this.totals = totals;
+    }
+
+    /**
+     * Start of the first bucket in the window, in milliseconds since the epoch
+     *
+     * @return long
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+
+    /**
+     * End of the last bucket in the window, exclusive
+     *
+     * @return long
+     */
+    public long getEndMillis() {
+        return this.endMillis;
+    }
+
+    /**
+     * Products sold, listed or not
+     *
+     * @return long
+     */
+    public long getUnitsSold() {
+        long units = 0;
+
+        for (int slot = 0; slot <= this.slotCodes.length; slot++) {
+            units += this.totals[SalesTelemetry.SALES + slot];
+        }
+
+        return units;
+    }
+
+    /**
+     * Products sold from a slot
+     *
+     * @param slotCode
+     * @return long 0 for a code the telemetry does not list
+     */
+    public long getUnitsSold(String slotCode) {
+        for (int slot = 0; slot < this.slotCodes.length; slot++) {
+            if (this.slotCodes[slot].equals(slotCode)) {
+                return this.totals[SalesTelemetry.SALES + slot];
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Products sold that were not on the telemetry's slot list
+     *
+     * @return long
+     */
+    public long getUnlistedUnitsSold() {
+        return this.totals[SalesTelemetry.SALES + this.slotCodes.length];
+    }
+
+    /**
+     * @return double Products sold per minute over the window
+     */
+    public double getUnitsPerMinute() {
+        return getUnitsSold() * (double) MILLIS_PER_MINUTE / (this.endMillis - this.startMillis);
+    }
+
+    /**
+     * @param slotCode
+     * @return double Products sold from a slot per minute over the window
+     */
+    public double getUnitsPerMinute(String slotCode) {
+        return getUnitsSold(slotCode) * (double) MILLIS_PER_MINUTE / (this.endMillis - this.startMillis);
+    }
+
+    /**
+     * Pennies taken for products sold
+     *
+     * @return long
+     */
+    public long getRevenue() {
+        return this.totals[SalesTelemetry.REVENUE];
+    }
+
+    /**
+     * Coins of a denomination accepted
+     *
+     * @param change
+     * @return long
+     */
+    public long getCoins(Change change) {
+        return this.totals[SalesTelemetry.COINS + change.ordinal()];
+    }
+
+    /**
+     * Share of the accepted coins that were of a denomination
+     *
+     * @param change
+     * @return double 0 when no coins were accepted
+     */
+    public double getCoinShare(Change change) {
+        long coins = 0;
+
+        for (int ordinal = 0; ordinal < SalesTelemetry.DENOMINATIONS; ordinal++) {
+            coins += this.totals[SalesTelemetry.COINS + ordinal];
+        }
+
+        return coins == 0 ? 0 : getCoins(change) / (double) coins;
+    }
+
+    /**
+     * Pennies inserted in accepted coins
+     *
+     * @return long
+     */
+    public long getInserted() {
+        return this.totals[SalesTelemetry.INSERTED];
+    }
+
+    /**
+     * Refunds that handed back a balance
+     *
+     * @return long
+     */
+    public long getRefunds() {
+        return this.totals[SalesTelemetry.REFUNDS];
+    }
+
+    /**
+     * Pennies handed back by refunds
+     *
+     * @return long
+     */
+    public long getRefunded() {
+        return this.totals[SalesTelemetry.REFUNDED];
+    }
+
+    /**
+     * Share of the money inserted that was refunded rather than spent
+     *
+     * @return double 0 when nothing was inserted
+     */
+    public double getRefundRatio() {
+        return getInserted() == 0 ? 0 : getRefunded() / (double) getInserted();
+    }
+}
@@ -0,0 +1,240 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.admission.AdmissionControlledVendingMachine;
+import com.acme.commerce.vendingmachine.admission.AdmissionController;
+import com.acme.commerce.vendingmachine.admission.TokenBucket;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.exception.MachineBusyException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.exception.ThrottledException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.metrics.MeteredVendingMachine;
+import com.acme.commerce.vendingmachine.metrics.MetricsSnapshot;
+import com.acme.commerce.vendingmachine.net.MachineProtocol;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class AdmissionControlTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now;
+
+    private final StockLeases.Ticker ticker = new StockLeases.Ticker() {
+        @Override
+        public long nanoTime() {
+            return AdmissionControlTest.this.now;
+        }
+    };
+
+    @Test
+    public void bucketsAllowABurstThenTheSteadyRate() {
+        TokenBucket bucket = new TokenBucket(1000, 3, this.ticker);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        this.now += MILLI;
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // A token a millisecond away can be reserved by a caller willing to wait that long
+        assertEquals(TokenBucket.REFUSED, bucket.reserve(MILLI / 2));
+        assertEquals(MILLI, bucket.reserve(MILLI));
+
+        bucket.release();
+        this.now += MILLI;
+        assertTrue(bucket.tryAcquire());
+
+        this.now += 10 * MILLI;
+        assertEquals("Quiet time fills the bucket no further than its burst", 0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(TokenBucket.REFUSED, bucket.reserve(0));
+    }
+
+    @Test
+    public void callsOverAMachinesRateAreThrottled() throws Exception {
+        AdmissionController controller = new AdmissionController(1e6, 100, 1000, 2, 10, 0, this.ticker);
+        AdmissionControlledVendingMachine vendingMachine = controller.wrap(new VendingMachineImpl(true));
+        Product product = vendingMachine.getProductList().get("A");
+
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.FIFTY_PENCE));
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.THROTTLED, vendingMachine.tryPurchase(product));
+        assertEquals("A throttled purchase leaves the balance", 60, vendingMachine.getBalance());
+
+        try {
+            vendingMachine.purchase(product);
+            fail("Throttled");
+        } catch (OutOfStockException e) {
+            fail("A busy machine is not sold out");
+        } catch (MachineBusyException e) {
+            assertTrue(e instanceof ThrottledException);
+        }
+
+        this.now += MILLI;
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(product));
+        assertEquals(TransactionResult.THROTTLED, vendingMachine.tryInsertChange(Change.ONE_POUND));
+        assertEquals("Refunds are never throttled", 0, vendingMachine.refundChange());
+
+        assertEquals(3, controller.getAdmitted());
+        assertEquals(3, controller.getShedByMachineRate());
+        assertEquals(3, controller.getShed());
+        assertEquals(0, vendingMachine.getQueued());
+    }
+
+    @Test
+    public void throttledCallsThrowAndAreMeteredAsThrottled() throws Exception {
+        AdmissionController controller = new AdmissionController(1e6, 100, 1000, 1, 10, 0, this.ticker);
+        MeteredVendingMachine vendingMachine = new MeteredVendingMachine(controller.wrap(new VendingMachineImpl(true)));
+        Product product = vendingMachine.getProductList().get("A");
+
+        vendingMachine.insertChange(Change.ONE_POUND);
+
+        try {
+            vendingMachine.insertChange(Change.TEN_PENCE);
+            fail("Throttled");
+        } catch (ThrottledException e) {
+            // Expected, the coin is handed back rather than refused
+        }
+
+        try {
+            vendingMachine.purchase(product);
+            fail("Throttled");
+        } catch (ThrottledException e) {
+            // Expected
+        }
+
+        MetricsSnapshot snapshot = vendingMachine.getMetrics().snapshot();
+        assertEquals(1, snapshot.getPurchaseOutcomes(TransactionResult.THROTTLED));
+        assertEquals(0, snapshot.getPurchaseOutcomes(TransactionResult.OUT_OF_STOCK));
+        assertEquals(100, vendingMachine.getBalance());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void anUnknownResultIsNotTakenForASale() throws Exception {
+        AdmissionController controller = new AdmissionController(1e6, 100, 1e6, 100, 10, 0, this.ticker);
+        VendingMachine vendingMachine = controller.wrap(new VendingMachineImpl(true) {
+            @Override
+            public int tryPurchase(Product product) {
+                return MachineProtocol.BAD_REQUEST;
+            }
+        });
+
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+    }
+
+    @Test
+    public void machinesShareTheNodesRate() {
+        AdmissionController controller = new AdmissionController(1000, 3, 1000, 2, 10, 0, this.ticker);
+        VendingMachine first = controller.wrap(new VendingMachineImpl(true));
+        VendingMachine second = controller.wrap(new VendingMachineImpl(true));
+
+        assertEquals(TransactionResult.OK, first.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.OK, first.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.OK, second.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.THROTTLED, second.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(1, controller.getShedByNodeRate());
+
+        // The second machine's token was given back when the node refused, so it goes first
+        this.now += MILLI;
+        assertEquals(TransactionResult.OK, second.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.THROTTLED, first.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(20, second.getBalance());
+    }
+
+    @Test
+    public void callsWaitForATokenDueSoon() {
+        AdmissionController controller = new AdmissionController(1e6, 100, 20, 1, 10, 200);
+        VendingMachine vendingMachine = controller.wrap(new VendingMachineImpl(true));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+        }
+
+        assertEquals(50, vendingMachine.getBalance());
+        assertEquals(5, controller.getAdmitted());
+        assertTrue(controller.getDelayed() >= 3);
+        assertEquals(0, controller.getShed());
+    }
+
+    @Test
+    public void anInterruptDoesNotCutAWaitShort() {
+        AdmissionController controller = new AdmissionController(1e6, 100, 20, 1, 10, 200);
+        VendingMachine vendingMachine = controller.wrap(new VendingMachineImpl(true));
+        long start = System.nanoTime();
+
+        // Parking returns at once while the interrupt is set, so only waiting out the token
+        // paces the calls
+        Thread.currentThread().interrupt();
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+            }
+        } finally {
+            assertTrue("The interrupt is left for the caller", Thread.interrupted());
+        }
+
+        assertTrue(System.nanoTime() - start >= 2 * 50 * MILLI - 5 * MILLI);
+        assertEquals(2, controller.getDelayed());
+    }
+
+    @Test
+    public void aFullQueueShedsAtOnce() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        VendingMachine slow = new ConcurrentVendingMachineImpl(true) {
+            @Override
+            public int tryInsertChange(Change change) {
+                entered.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.tryInsertChange(change);
+            }
+        };
+        AdmissionController controller = new AdmissionController(1e6, 100, 1e6, 100, 2, 0);
+        final AdmissionControlledVendingMachine vendingMachine = controller.wrap(slow);
+        Thread[] customers = new Thread[2];
+
+        for (int t = 0; t < customers.length; t++) {
+            customers[t] = new Thread(() -> vendingMachine.tryInsertChange(Change.TEN_PENCE));
+            customers[t].start();
+        }
+
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        assertEquals(2, vendingMachine.getQueued());
+        assertEquals(TransactionResult.THROTTLED, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(1, controller.getShedByQueue());
+
+        release.countDown();
+
+        for (Thread customer : customers) {
+            customer.join();
+        }
+
+        assertEquals(0, vendingMachine.getQueued());
+        assertEquals(20, vendingMachine.getBalance());
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+    }
+}
@@ -0,0 +1,99 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.fleet.AlertIndex;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class AlertIndexTest {
+
+    @Test
+    public void mostUrgentMatchesSortingEveryMachine() {
+        int machines = 1000;
+        int[] levels = new int[machines];
+        Random random = new Random(16);
+
+        for (int machine = 0; machine < machines; machine++) {
+            levels[machine] = random.nextInt(50);
+        }
+
+        AlertIndex index = new AlertIndex(machines, machine -> levels[machine]);
+
+        for (int i = 0; i < 20000; i++) {
+            int machine = random.nextInt(machines);
+            levels[machine] = random.nextInt(50);
+            index.update(machine);
+        }
+
+        long[] expected = new long[machines];
+
+        for (int machine = 0; machine < machines; machine++) {
+            expected[machine] = ((long) levels[machine] << 32) | machine;
+        }
+
+        Arrays.sort(expected);
+
+        int[] urgent = index.mostUrgent(25);
+        assertEquals(25, urgent.length);
+
+        for (int i = 0; i < urgent.length; i++) {
+            assertEquals((int) expected[i], urgent[i]);
+            assertEquals(levels[urgent[i]], index.urgency(urgent[i]));
+        }
+
+        assertEquals(machines, index.mostUrgent(5000).length);
+    }
+
+    @Test
+    public void salesAndRestocksMoveMachinesThroughTheStockAlerts() throws Exception {
+        VendingFleet fleet = new VendingFleet(200);
+        VendingMachine vendingMachine = fleet.machine(137);
+
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.insertChange(Change.TWENTY_PENCE);
+        vendingMachine.purchase(vendingMachine.getProductList().get("C"));
+
+        assertEquals(137, fleet.getStockAlerts().mostUrgent(1)[0]);
+        assertEquals(0, fleet.getStockAlerts().urgency(137));
+
+        fleet.restock(137, 2, 5);
+
+        // B, with 4 units, is now the emptiest slot
+        assertEquals(4, fleet.getStockAlerts().urgency(137));
+        assertNotEquals(137, fleet.getStockAlerts().mostUrgent(1)[0]);
+    }
+
+    @Test
+    public void payingOutChangeMovesMachinesThroughTheChangeAlerts() throws Exception {
+        VendingFleet fleet = new VendingFleet(50);
+        VendingMachine vendingMachine = fleet.machine(9);
+
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        // The 40p owed comes out of the cash box as two 20p pieces
+        assertEquals(3, fleet.getChangeAlerts().urgency(9));
+        assertArrayEquals(new int[]{9}, fleet.getChangeAlerts().mostUrgent(1));
+
+        fleet.topUpChange(9, Change.TWENTY_PENCE, 10);
+
+        assertEquals(5, fleet.getChangeAlerts().urgency(9));
+
+        fleet.machine(30).reset();
+
+        assertArrayEquals(new int[]{30}, fleet.getChangeAlerts().mostUrgent(1));
+    }
+}
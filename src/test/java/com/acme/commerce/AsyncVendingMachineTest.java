@@ -0,0 +1,103 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.AsyncVendingMachine;
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.async.MailboxVendingMachine;
+import com.acme.commerce.vendingmachine.async.VendingEventLoop;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.MachineBusyException;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class AsyncVendingMachineTest {
+
+    @Test
+    public void operationsCompleteInTheOrderTheyWereMade() throws Exception {
+        try (VendingEventLoop loop = new VendingEventLoop(2)) {
+            AsyncVendingMachine vendingMachine = loop.machine(new VendingMachineImpl(true));
+
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+            CompletableFuture<Void> tooShort = vendingMachine.purchase(new VendingMachineImpl().getProductList().get("B"));
+            CompletableFuture<Integer> balance = vendingMachine.insertChange(Change.TWENTY_PENCE);
+
+            try {
+                tooShort.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InsufficientChangeException);
+            }
+
+            assertEquals(70, (int) balance.get(5, TimeUnit.SECONDS));
+            assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED,
+                    (int) vendingMachine.tryInsertChange(Change.ONE_PENCE).get(5, TimeUnit.SECONDS));
+            assertEquals(0, (int) vendingMachine.refundChange().get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void aFullMailboxTurnsCallsAway() throws Exception {
+        final Queue<Runnable> runnable = new ArrayDeque<>();
+        AsyncVendingMachine vendingMachine = new MailboxVendingMachine(new VendingMachineImpl(true), runnable::add, 2);
+
+        CompletableFuture<Integer> first = vendingMachine.insertChange(Change.TEN_PENCE);
+        CompletableFuture<Integer> second = vendingMachine.insertChange(Change.TEN_PENCE);
+        CompletableFuture<Integer> third = vendingMachine.insertChange(Change.TEN_PENCE);
+
+        assertEquals(2, vendingMachine.getPending());
+        assertTrue(third.isCompletedExceptionally());
+
+        try {
+            third.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MachineBusyException);
+        }
+
+        runnable.poll().run();
+
+        assertEquals(10, (int) first.get());
+        assertEquals(20, (int) second.get());
+        assertEquals(0, vendingMachine.getPending());
+        assertTrue(runnable.isEmpty());
+    }
+
+    @Test
+    public void manyMachinesShareAFewThreads() throws Exception {
+        int machines = 10000;
+        int coins = 10;
+
+        try (VendingEventLoop loop = new VendingEventLoop(2)) {
+            List<AsyncVendingMachine> vendingMachines = new ArrayList<>();
+
+            for (int i = 0; i < machines; i++) {
+                vendingMachines.add(loop.machine(new VendingMachineImpl(true)));
+            }
+
+            // Unlocked machines that would lose coins if two threads ever ran one at once
+            for (int coin = 0; coin < coins; coin++) {
+                for (AsyncVendingMachine vendingMachine : vendingMachines) {
+                    vendingMachine.tryInsertChange(Change.TEN_PENCE);
+                }
+            }
+
+            for (AsyncVendingMachine vendingMachine : vendingMachines) {
+                assertEquals(coins * 10, (int) vendingMachine.getBalance().get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.audit.AuditEvent;
+import com.acme.commerce.vendingmachine.audit.AuditSink;
+import com.acme.commerce.vendingmachine.audit.AuditTrail;
+import com.acme.commerce.vendingmachine.audit.AuditedVendingMachine;
+import com.acme.commerce.vendingmachine.audit.FileAuditSink;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class AuditTrailTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Checks events arrive in sequence, and sleeps on the first to let the ring fill behind it
+     */
+    private static class CountingSink implements AuditSink {
+        volatile long events;
+        volatile long purchases;
+        volatile long lastTime;
+        volatile boolean inOrder = true;
+        volatile boolean closed;
+        private final long pauseMillis;
+
+        CountingSink(long pauseMillis) {
+            this.pauseMillis = pauseMillis;
+        }
+
+        @Override
+        public void onEvent(AuditEvent event, boolean endOfBatch) {
+            if (event.getSequence() == 1) {
+                try {
+                    Thread.sleep(this.pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (event.getSequence() != this.events + 1) {
+                this.inOrder = false;
+            }
+
+            if (event.getType() == AuditEvent.PURCHASE && event.getResult() == TransactionResult.OK) {
+                this.purchases++;
+            }
+
+            this.lastTime = event.getTime();
+            this.events++;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    @Test
+    public void everyOperationIsWrittenInOrder() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("audit.log");
+        AuditTrail trail = new AuditTrail(new FileAuditSink(file));
+        VendingMachine vendingMachine = new AuditedVendingMachine(new VendingMachineImpl(), trail, 7);
+
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+
+        try {
+            vendingMachine.insertChange(Change.ONE_PENCE);
+            fail("A penny is not accepted");
+        } catch (ChangeNotAcceptedException e) {
+            // Refused, and still recorded
+        }
+
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        try {
+            vendingMachine.purchase(vendingMachine.getProductList().get("B"));
+            fail("Nothing has been inserted");
+        } catch (InsufficientChangeException e) {
+            // Failed, and still recorded
+        }
+
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.refundChange();
+        vendingMachine.reset();
+        vendingMachine.powerOff();
+        trail.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+
+        assertEquals(9, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"seq\":1,\"time\":"));
+        assertTrue(lines.get(0).endsWith(
+                ",\"machine\":7,\"event\":\"POWER_ON\",\"result\":\"OK\",\"amount\":0,\"balance\":0}"));
+        assertTrue(lines.get(1).endsWith(
+                "\"event\":\"INSERT\",\"result\":\"OK\",\"coin\":\"ONE_POUND\",\"amount\":100,\"balance\":100}"));
+        assertTrue(lines.get(2).endsWith(
+                "\"event\":\"INSERT\",\"result\":\"CHANGE_NOT_ACCEPTED\",\"coin\":\"ONE_PENCE\",\"amount\":1,\"balance\":100}"));
+        assertTrue(lines.get(3).endsWith(
+                "\"event\":\"PURCHASE\",\"result\":\"OK\",\"slot\":\"A\",\"amount\":60,\"balance\":0}"));
+        assertTrue(lines.get(4).endsWith(
+                "\"event\":\"PURCHASE\",\"result\":\"INSUFFICIENT_FUNDS\",\"slot\":\"B\",\"amount\":100,\"balance\":0}"));
+        assertTrue(lines.get(6).endsWith("\"event\":\"REFUND\",\"result\":\"OK\",\"amount\":50,\"balance\":0}"));
+        assertTrue(lines.get(7).contains("\"event\":\"RESET\""));
+        assertTrue(lines.get(8).startsWith("{\"seq\":9,"));
+        assertTrue(lines.get(8).contains("\"event\":\"POWER_OFF\""));
+    }
+
+    @Test
+    public void aFullRingHoldsRecordersBackRatherThanDropEvents() throws Exception {
+        final int threads = 4;
+        final int sales = 5000;
+        CountingSink sink = new CountingSink(50);
+        final AuditTrail trail = new AuditTrail(sink, 16);
+        final VendingMachine vendingMachine = new AuditedVendingMachine(new ConcurrentVendingMachineImpl(true), trail, 0);
+        Thread[] buyers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            buyers[t] = new Thread(() -> {
+                for (int i = 0; i < sales; i++) {
+                    vendingMachine.tryInsertChange(Change.TWENTY_PENCE);
+                    vendingMachine.tryPurchase(vendingMachine.getProductList().get("A"));
+                }
+            });
+            buyers[t].start();
+        }
+
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+
+        long recorded = trail.getRecorded();
+        trail.close();
+
+        assertEquals(2L * threads * sales, recorded);
+        assertEquals(recorded, sink.events);
+        assertEquals(recorded, trail.getWritten());
+        assertTrue(sink.inOrder);
+        assertTrue(sink.closed);
+        assertTrue(trail.getStalls() > 0);
+        assertEquals(0, trail.getFailed());
+    }
+
+    @Test
+    public void recordingWaitsForNothingWhileTheRingHasRoom() throws Exception {
+        CountingSink sink = new CountingSink(0);
+        AuditTrail trail = new AuditTrail(sink, 1024);
+        VendingMachine vendingMachine = new AuditedVendingMachine(new VendingMachineImpl(true), trail, 0);
+
+        for (int i = 0; i < 100; i++) {
+            vendingMachine.tryInsertChange(Change.FIFTY_PENCE);
+            vendingMachine.tryInsertChange(Change.TEN_PENCE);
+            vendingMachine.tryPurchase(vendingMachine.getProductList().get("A"));
+        }
+
+        trail.awaitWritten(300);
+
+        assertEquals(300, sink.events);
+        assertEquals(10, sink.purchases);
+        assertEquals(0, trail.getStalls());
+
+        trail.close();
+    }
+
+    @Test
+    public void eventsKeepTheTimeTheyWereRecordedWhileTheWriterIsBehind() throws Exception {
+        CountingSink sink = new CountingSink(300);
+        AuditTrail trail = new AuditTrail(sink, 16);
+
+        trail.record(0, AuditEvent.POWER_ON, null, null, 0, TransactionResult.OK, 0);
+        Thread.sleep(50);
+        long before = System.currentTimeMillis();
+        trail.record(0, AuditEvent.RESET, null, null, 0, TransactionResult.OK, 0);
+        long after = System.currentTimeMillis();
+
+        trail.awaitWritten(2);
+
+        assertTrue(sink.lastTime >= before);
+        assertTrue(sink.lastTime <= after);
+
+        trail.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nothingIsRecordedAfterClose() throws Exception {
+        AuditTrail trail = new AuditTrail(new CountingSink(0), 16);
+        trail.close();
+
+        trail.record(0, AuditEvent.RESET, null, null, 0, TransactionResult.OK, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new AuditTrail(new CountingSink(0), 100);
+    }
+}
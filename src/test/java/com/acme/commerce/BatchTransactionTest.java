@@ -0,0 +1,134 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.metrics.MeteredVendingMachine;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class BatchTransactionTest {
+    private static final Change[] CHANGE = Change.values();
+    private static final String[] SLOTS = {"A", "B", "C"};
+
+    @Test
+    public void ordersWithNegativeCoinCountsInsertNothingOfThatCoin() {
+        for (int implementation = 0; implementation < 4; implementation++) {
+            VendingMachine vendingMachine = create(implementation);
+            int[] coins = new int[CHANGE.length];
+            byte[] results = new byte[1];
+            coins[Change.TEN_PENCE.ordinal()] = -5;
+            coins[Change.FIFTY_PENCE.ordinal()] = 1;
+
+            assertEquals(0, vendingMachine.tryPurchase(coins, new Product[]{vendingMachine.getProductList().get("A")},
+                    0, 1, results));
+            assertEquals(TransactionResult.INSUFFICIENT_FUNDS, results[0]);
+            assertEquals(50, vendingMachine.getBalance());
+            assertEquals(1, vendingMachine.getChangeInserted().size());
+        }
+    }
+
+    @Test
+    public void aBatchOfCoinsMatchesInsertingThemOneByOne() {
+        Change[] coins = {Change.ONE_PENCE, Change.TEN_PENCE, Change.ONE_POUND, Change.TWO_POUND, Change.FIFTY_PENCE};
+
+        for (int implementation = 0; implementation < 4; implementation++) {
+            VendingMachine vendingMachine = create(implementation);
+            byte[] results = new byte[coins.length];
+
+            assertEquals(2, vendingMachine.tryInsertChange(coins, 1, 3, results));
+            assertEquals(110, vendingMachine.getBalance());
+            assertEquals(TransactionResult.OK, results[1]);
+            assertEquals(TransactionResult.OK, results[2]);
+            assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, results[3]);
+            assertEquals(0, results[4]);
+        }
+    }
+
+    @Test
+    public void aBatchOfOrdersMatchesReplayingThemOneByOne() {
+        Random random = new Random(42);
+        int orders = 200;
+        int[] coins = new int[orders * CHANGE.length];
+        String[] slots = new String[orders];
+
+        for (int order = 0; order < orders; order++) {
+            for (int coin = random.nextInt(4); coin > 0; coin--) {
+                coins[order * CHANGE.length + random.nextInt(CHANGE.length)]++;
+            }
+
+            slots[order] = SLOTS[random.nextInt(SLOTS.length)];
+        }
+
+        for (int implementation = 0; implementation < 4; implementation++) {
+            VendingMachine batched = create(implementation);
+            VendingMachine oneByOne = create(implementation);
+            Product[] products = new Product[orders];
+            byte[] results = new byte[orders];
+            int sold = 0;
+
+            for (int order = 0; order < orders; order++) {
+                products[order] = batched.getProductList().get(slots[order]);
+            }
+
+            for (int order = 0; order < orders; order++) {
+                for (Change change : CHANGE) {
+                    for (int i = coins[order * CHANGE.length + change.ordinal()]; i > 0; i--) {
+                        oneByOne.tryInsertChange(change);
+                    }
+                }
+
+                int result = oneByOne.tryPurchase(oneByOne.getProductList().get(slots[order]));
+                batched.tryPurchase(coins, products, order, 1, results);
+                assertEquals("order " + order, result, results[order]);
+
+                if (result == TransactionResult.OK) {
+                    sold++;
+                }
+            }
+
+            VendingMachine whole = create(implementation);
+
+            for (int order = 0; order < orders; order++) {
+                products[order] = whole.getProductList().get(slots[order]);
+            }
+
+            assertEquals(sold, whole.tryPurchase(coins, products, 0, orders, results));
+            assertEquals(oneByOne.getBalance(), whole.getBalance());
+            assertEquals(oneByOne.getChangeAvailable(), whole.getChangeAvailable());
+
+            for (String slot : SLOTS) {
+                assertEquals(oneByOne.getProductList().get(slot).getQuantityAvailable(),
+                        whole.getProductList().get(slot).getQuantityAvailable());
+            }
+        }
+    }
+
+    private static VendingMachine create(int implementation) {
+        switch (implementation) {
+            case 0:
+                return new VendingMachineImpl(true);
+            case 1:
+                return new ConcurrentVendingMachineImpl(true);
+            case 2:
+                VendingMachine vendingMachine = new VendingFleet(1).machine(0);
+                vendingMachine.powerOn();
+
+                return vendingMachine;
+            default:
+                // Falls back to the one at a time defaults
+                return new MeteredVendingMachine(new VendingMachineImpl(true));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class CatalogPublisherTest {
+
+    private static CatalogPublisher publisher() {
+        return new CatalogPublisher(new Planogram(new String[]{"A", "B"}, new String[]{"Crisps", "Cola"},
+                new int[]{60, 100}));
+    }
+
+    private static int cash(VendingMachine vendingMachine) {
+        int cash = 0;
+
+        for (Map.Entry<Change, Integer> entry : vendingMachine.getChangeAvailable().entrySet()) {
+            cash += entry.getKey().getValue() * entry.getValue();
+        }
+
+        return cash;
+    }
+
+    @Test
+    public void oneRepriceReachesEveryMachineSharingThePublisher() throws Exception {
+        CatalogPublisher publisher = publisher();
+        VendingMachineImpl single = new VendingMachineImpl(true, publisher);
+        ConcurrentVendingMachineImpl concurrent = new ConcurrentVendingMachineImpl(true, publisher);
+        VendingFleet fleet = new VendingFleet(4, Arrays.asList(Change.TEN_PENCE, Change.ONE_POUND),
+                Collections.singletonMap(Change.TEN_PENCE, 10), publisher);
+
+        single.getCatalog().restock(1, 3);
+        fleet.restock(2, 1, 3);
+        assertEquals(0, concurrent.getProductList().get("B").getQuantityAvailable());
+
+        Planogram published = publisher.reprice(Collections.singletonMap("B", 90));
+
+        assertEquals(1, published.getVersion());
+        assertEquals(1, publisher.getVersion());
+
+        for (VendingMachine vendingMachine : new VendingMachine[]{single, concurrent, fleet.machine(2)}) {
+            assertEquals(90, vendingMachine.getProductList().get("B").getCost());
+            assertEquals(60, vendingMachine.getProductList().get("A").getCost());
+        }
+
+        VendingMachine vendingMachine = fleet.machine(2);
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.purchase(vendingMachine.getProductList().get("B"));
+
+        // Paid \u00a31 for a 90p product, 10p back
+        assertEquals(Integer.valueOf(9), vendingMachine.getChangeAvailable().get(Change.TEN_PENCE));
+        assertEquals(90, fleet.snapshot().getCosts()[1]);
+    }
+
+    @Test
+    public void aNewAssortmentReplacesProductsInTheSameSlots() {
+        CatalogPublisher publisher = publisher();
+        ConcurrentVendingMachineImpl vendingMachine = new ConcurrentVendingMachineImpl(true, publisher);
+
+        Map<String, Product> assortment = new HashMap<>();
+        assortment.put("A", ProductFactory.createProduct("Chocolate", 80, 0));
+        assortment.put("B", ProductFactory.createProduct("Water", 70, 0));
+        publisher.publish(assortment);
+
+        assertEquals("Water", vendingMachine.getProductList().get("B").getName());
+        assertEquals(1, vendingMachine.getCatalog().getPlanogram().affordable(75));
+        assertEquals(1, vendingMachine.getCatalog().getPlanogram().slotByPrice(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slotCodesCannotChange() {
+        publisher().publish(Collections.singletonMap("Z", ProductFactory.createProduct("Gum", 10, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSlotsCannotBeRepriced() {
+        publisher().reprice(Collections.singletonMap("Z", 10));
+    }
+
+    @Test
+    public void salesChargeOneVersionsPriceWhilePricesChange() throws Exception {
+        final CatalogPublisher publisher = publisher();
+        ConcurrentVendingMachineImpl vendingMachine = new ConcurrentVendingMachineImpl(true, publisher);
+        vendingMachine.getCatalog().restock(1, 100000);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread repricer = new Thread(() -> {
+            for (int i = 0; running.get(); i++) {
+                publisher.reprice(Collections.singletonMap("B", i % 2 == 0 ? 110 : 100));
+            }
+        });
+        repricer.start();
+
+        try {
+            for (int sale = 0; sale < 20000; sale++) {
+                int before = cash(vendingMachine);
+
+                // \u00a31.10 either pays exactly or gets its own 10p back, the cash box never runs dry
+                vendingMachine.tryInsertChange(Change.ONE_POUND);
+                vendingMachine.tryInsertChange(Change.TEN_PENCE);
+                assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(vendingMachine.getProductList().get("B")));
+
+                int charged = cash(vendingMachine) - before;
+                assertTrue("Charged " + charged, charged == 100 || charged == 110);
+            }
+        } finally {
+            running.set(false);
+            repricer.join();
+        }
+
+        assertTrue(publisher.getVersion() > 0);
+    }
+}
@@ -0,0 +1,178 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.CatalogQuery;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class CatalogQueryTest {
+    private static final String[] NAMES = {"Cola", "Crisps", "Chocolate", "Water", "Apple", "chewing gum"};
+
+    private static Map<String, Product> products() {
+        Map<String, Product> products = new HashMap<>();
+        products.put("A1", ProductFactory.createProduct("Cola", 120, 5));
+        products.put("A2", ProductFactory.createProduct("Crisps", 80, 0));
+        products.put("A10", ProductFactory.createProduct("Chocolate", 95, 2));
+        products.put("B1", ProductFactory.createProduct("Water", 100, 3));
+        products.put("B2", ProductFactory.createProduct("chewing gum", 50, 1));
+
+        return products;
+    }
+
+    private static List<String> names(List<Product> products) {
+        return products.stream().map(Product::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    public void prefixesCompleteCodesAndNames() {
+        ProductCatalog catalog = new ProductCatalog(products());
+
+        assertEquals(Arrays.asList("Cola", "Chocolate", "Crisps"), names(catalog.query().codePrefix("A").page(0, 10)));
+        assertEquals(Arrays.asList("Cola", "Chocolate"), names(catalog.query().codePrefix("A1").page(0, 10)));
+        assertEquals(0, catalog.query().codePrefix("C").count());
+        assertEquals(5, catalog.query().codePrefix("").count());
+
+        assertEquals("Name order, ignoring case", Arrays.asList("chewing gum", "Chocolate", "Cola", "Crisps"),
+                names(catalog.query().namePrefix("c").page(0, 10)));
+        assertEquals(Arrays.asList("chewing gum", "Chocolate"), names(catalog.query().namePrefix("CH").page(0, 10)));
+        assertEquals(0, catalog.query().namePrefix("Colas").count());
+
+        Planogram planogram = catalog.getPlanogram();
+
+        assertEquals(planogram.slotOf("A1"), planogram.lowerSlotCode("A1"));
+        assertEquals(planogram.slotOf("A2"), planogram.upperSlotCode("A1"));
+        assertEquals(planogram.slotOf("B1"), planogram.slotByName(planogram.upperName("s")));
+    }
+
+    @Test
+    public void stockAndPriceFiltersFollowSales() {
+        ProductCatalog catalog = new ProductCatalog(products());
+        Planogram planogram = catalog.getPlanogram();
+        int crisps = planogram.slotOf("A2");
+        int gum = planogram.slotOf("B2");
+
+        assertEquals("Cheapest first", Arrays.asList("chewing gum", "Crisps", "Chocolate", "Water"),
+                names(catalog.query().costing(50, 100).page(0, 10)));
+        assertEquals(Arrays.asList("Chocolate", "Water"), names(catalog.query().costing(90, 110).page(0, 10)));
+        assertEquals(Arrays.asList("Cola", "Chocolate", "Water", "chewing gum"),
+                names(catalog.query().inStock().page(0, 10)));
+
+        assertTrue(catalog.take(gum));
+        catalog.restock(crisps, 4);
+
+        assertEquals(Arrays.asList("Cola", "Chocolate", "Crisps", "Water"), names(catalog.query().inStock().page(0, 10)));
+        assertEquals(Arrays.asList("Chocolate", "Crisps"),
+                names(catalog.query().inStock().codePrefix("A").costing(0, 100).page(0, 10)));
+        assertEquals(Arrays.asList("Chocolate", "Cola", "Crisps"),
+                names(catalog.query().inStock().namePrefix("c").page(0, 10)));
+
+        try {
+            catalog.query().costing(100, 50);
+            fail("Empty range");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void largeCatalogsPageAndStreamLikeAScan() {
+        Random random = new Random(25);
+        int slots = 5000;
+        String[] codes = new String[slots];
+        String[] names = new String[slots];
+        int[] costs = new int[slots];
+
+        for (int slot = 0; slot < slots; slot++) {
+            codes[slot] = String.format("%c%03d", (char) ('A' + slot / 1000), slot % 1000);
+            names[slot] = NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(100);
+            costs[slot] = 10 * (1 + random.nextInt(30));
+        }
+
+        Planogram planogram = new Planogram(codes, names, costs);
+        ProductCatalog indexed = new ProductCatalog(planogram);
+        AtomicIntegerArray stock = new AtomicIntegerArray(2 * slots);
+        ProductCatalog shared = new ProductCatalog(new CatalogPublisher(planogram), stock, new AtomicIntegerArray(2 * slots),
+                slots);
+
+        for (int slot = 0; slot < slots; slot++) {
+            int quantity = random.nextInt(4) == 0 ? random.nextInt(5) : 0;
+            indexed.restock(slot, quantity);
+            shared.restock(slot, quantity);
+        }
+
+        for (ProductCatalog catalog : new ProductCatalog[]{indexed, shared}) {
+            for (int query = 0; query < 200; query++) {
+                String codePrefix = random.nextInt(3) == 0 ? codes[random.nextInt(slots)].substring(0, 1 + random.nextInt(3)) : null;
+                String namePrefix = random.nextInt(3) == 0 ? names[random.nextInt(slots)].substring(0, 1 + random.nextInt(6)).toUpperCase() : null;
+                boolean inStock = random.nextBoolean();
+                boolean priced = random.nextBoolean();
+                int minCost = random.nextInt(300);
+                int maxCost = minCost + random.nextInt(100);
+                // Views are handed out once per slot, and equal products in different slots must not merge
+                Set<Product> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+
+                for (int slot = 0; slot < slots; slot++) {
+                    if ((codePrefix == null || codes[slot].startsWith(codePrefix))
+                            && (namePrefix == null || names[slot].toLowerCase(Locale.ROOT).startsWith(namePrefix.toLowerCase(Locale.ROOT)))
+                            && (!inStock || !catalog.isOutOfStock(slot))
+                            && (!priced || (costs[slot] >= minCost && costs[slot] <= maxCost))) {
+                        expected.add(catalog.product(slot));
+                    }
+                }
+
+                CatalogQuery catalogQuery = catalog.query()
+                        .codePrefix(codePrefix).namePrefix(namePrefix);
+
+                if (inStock) {
+                    catalogQuery.inStock();
+                }
+
+                if (priced) {
+                    catalogQuery.costing(minCost, maxCost);
+                }
+
+                List<Product> streamed = catalogQuery.stream().collect(Collectors.toList());
+                List<Product> paged = new ArrayList<>();
+
+                for (int offset = 0; ; offset += 7) {
+                    List<Product> page = catalogQuery.page(offset, 7);
+                    paged.addAll(page);
+
+                    if (page.size() < 7) {
+                        break;
+                    }
+                }
+
+                assertEquals(expected.size(), catalogQuery.count());
+                assertEquals(expected.size(), streamed.size());
+                Set<Product> found = Collections.newSetFromMap(new IdentityHashMap<>());
+                found.addAll(streamed);
+
+                assertEquals(expected, found);
+                assertEquals("Pages follow the stream's order", streamed, paged);
+            }
+        }
+    }
+
+    @Test
+    public void machinesExposeTheirCatalogToQueries() {
+        VendingMachineImpl vendingMachine = new VendingMachineImpl(true);
+
+        assertEquals(Collections.singletonList(vendingMachine.getProductList().get("C")),
+                vendingMachine.getCatalog().query().costing(150, 200).inStock().page(0, 5));
+    }
+}
@@ -0,0 +1,138 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.exception.ExactChangeOnlyException;
+import com.acme.commerce.vendingmachine.impl.ChangeMaker;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class ChangeMakerTest {
+    private static final int[] PENCE = {1, 2, 5, 10, 20, 50, 100, 200};
+
+    @Test
+    public void usesTheFewestCoins() {
+        int[] change = new int[8];
+
+        assertTrue(ChangeMaker.DEFAULT.makeChange(180, coins(0, 0, 0, 5, 5, 5, 5, 0), change));
+        assertArrayEquals(coins(0, 0, 0, 1, 1, 1, 1, 0), change);
+    }
+
+    @Test
+    public void findsChangeWhereLargestCoinFirstWouldNot() {
+        int[] change = new int[8];
+
+        // Greedy takes the 50p and is then stuck with 10p owed and no 10p coins
+        assertTrue(ChangeMaker.DEFAULT.makeChange(60, coins(0, 0, 0, 0, 3, 1, 0, 0), change));
+        assertArrayEquals(coins(0, 0, 0, 0, 3, 0, 0, 0), change);
+    }
+
+    @Test
+    public void refusesWhenChangeCannotBeMade() {
+        int[] change = new int[8];
+
+        assertFalse(ChangeMaker.DEFAULT.makeChange(30, coins(0, 0, 0, 0, 1, 1, 0, 0), change));
+        assertArrayEquals(new int[8], change);
+    }
+
+    @Test
+    public void agreesWithAnExhaustiveSearch() {
+        ChangeMaker changeMaker = new ChangeMaker(PENCE, 64, 16);
+        Random random = new Random(42);
+        int[] change = new int[8];
+
+        for (int run = 0; run < 2000; run++) {
+            int[] available = new int[8];
+
+            for (int i = 0; i < 8; i++) {
+                available[i] = random.nextInt(4);
+            }
+
+            int amount = random.nextInt(300);
+            int expected = fewest(amount, available, 7);
+            boolean possible = changeMaker.makeChange(amount, available, change);
+
+            assertEquals(expected != Integer.MAX_VALUE, possible);
+
+            if (possible) {
+                int coins = 0;
+                int total = 0;
+
+                for (int i = 0; i < 8; i++) {
+                    assertTrue(change[i] <= available[i]);
+                    coins += change[i];
+                    total += change[i] * PENCE[i];
+                }
+
+                assertEquals(amount, total);
+                assertEquals(expected, coins);
+            }
+        }
+    }
+
+    @Test
+    public void purchaseReturnsChangeFromTheCashBox() throws Exception {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        assertEquals(0, vendingMachine.getBalance());
+        assertEquals(Integer.valueOf(6), vendingMachine.getChangeAvailable().get(Change.ONE_POUND));
+        assertEquals(Integer.valueOf(3), vendingMachine.getChangeAvailable().get(Change.TWENTY_PENCE));
+        assertEquals(Integer.valueOf(5), vendingMachine.getChangeAvailable().get(Change.TEN_PENCE));
+    }
+
+    @Test
+    public void purchaseIsRefusedWhenChangeCannotBeMade() throws Exception {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+        vendingMachine.reset();
+
+        vendingMachine.insertChange(Change.ONE_POUND);
+
+        try {
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            fail("ExactChangeOnlyException was expected.");
+        } catch (ExactChangeOnlyException e) {
+            assertEquals(100, vendingMachine.getBalance());
+            assertTrue(vendingMachine.getChangeAvailable().isEmpty());
+        }
+    }
+
+    private static int[] coins(int... counts) {
+        return counts;
+    }
+
+    /**
+     * Fewest coins from the first (index + 1) denominations, by trying every count of each
+     */
+    private static int fewest(int amount, int[] available, int index) {
+        if (amount == 0) {
+            return 0;
+        }
+
+        if (index < 0) {
+            return Integer.MAX_VALUE;
+        }
+
+        int best = Integer.MAX_VALUE;
+
+        for (int coins = 0; coins <= available[index] && coins * PENCE[index] <= amount; coins++) {
+            int rest = fewest(amount - coins * PENCE[index], available, index - 1);
+
+            if (rest != Integer.MAX_VALUE) {
+                best = Math.min(best, rest + coins);
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,193 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.VendingSession;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.CoinLedger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class ConcurrentVendingMachineTest {
+
+    @Test
+    public void behavesLikeTheDefaultMachine() throws ChangeNotAcceptedException {
+        VendingMachine vendingMachine = new ConcurrentVendingMachineImpl();
+
+        assertFalse(vendingMachine.isPoweredOn());
+        assertEquals(4, vendingMachine.getAcceptedChange().size());
+        assertEquals(3, vendingMachine.getProductList().size());
+
+        vendingMachine.insertChange(Change.TEN_PENCE);
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+
+        assertEquals(60, vendingMachine.getBalance());
+        assertEquals(0, vendingMachine.refundChange());
+    }
+
+    @Test(expected = ChangeNotAcceptedException.class)
+    public void addingUnacceptedChangeIsNotAllowed() throws ChangeNotAcceptedException {
+        new ConcurrentVendingMachineImpl().insertChange(Change.TWO_POUND);
+    }
+
+    @Test
+    public void changeInsertedListsEveryCoin() throws ChangeNotAcceptedException {
+        VendingMachine vendingMachine = new ConcurrentVendingMachineImpl();
+
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.insertChange(Change.TEN_PENCE);
+        vendingMachine.insertChange(Change.TEN_PENCE);
+
+        List<Change> expected = new ArrayList<>();
+        expected.add(Change.TEN_PENCE);
+        expected.add(Change.TEN_PENCE);
+        expected.add(Change.ONE_POUND);
+
+        assertEquals(expected, vendingMachine.getChangeInserted());
+    }
+
+    @Test
+    public void escrowHandsBackCoinsItHasNoRoomFor() {
+        VendingMachine vendingMachine = new ConcurrentVendingMachineImpl();
+        int accepted = 0;
+
+        for (int i = 0; i < CoinLedger.MAX_ESCROW_COINS + 5; i++) {
+            try {
+                vendingMachine.insertChange(Change.ONE_POUND);
+                accepted++;
+            } catch (ChangeNotAcceptedException e) {
+                // Coin returned
+            }
+        }
+
+        assertEquals(CoinLedger.MAX_ESCROW_COINS, accepted);
+        assertEquals(CoinLedger.MAX_ESCROW_COINS * 100, vendingMachine.getBalance());
+    }
+
+    @Test
+    public void purchaseMovesCoinsIntoTheCashBox() throws Exception {
+        VendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.insertChange(Change.TEN_PENCE);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        assertEquals(0, vendingMachine.getBalance());
+        assertEquals(Integer.valueOf(6), vendingMachine.getChangeAvailable().get(Change.FIFTY_PENCE));
+        assertEquals(Integer.valueOf(6), vendingMachine.getChangeAvailable().get(Change.TEN_PENCE));
+    }
+
+    @Test(expected = InsufficientChangeException.class)
+    public void cannotBuyIfNotEnoughChange() throws Exception {
+        VendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.purchase(ProductFactory.createProduct("A product", 170));
+    }
+
+    @Test
+    public void concurrentInsertsAndPurchasesNeverLoseOrCreateCoins() throws InterruptedException {
+        final ConcurrentVendingMachineImpl vendingMachine = new ConcurrentVendingMachineImpl(true);
+        final Product product = ProductFactory.createProduct("Ten pence chew", 10, 1);
+        final int startingFloat = cashBoxValue(vendingMachine);
+        final AtomicInteger inserted = new AtomicInteger();
+        final AtomicInteger sold = new AtomicInteger();
+        final AtomicInteger changeReturned = new AtomicInteger();
+        final AtomicInteger refunded = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final int threads = 4;
+        final int attempts = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // A session per customer, so each knows exactly what it put in and got back,
+                    // while all of them race for the shared cash box
+                    VendingSession session = vendingMachine.openSession();
+
+                    try {
+                        start.await();
+
+                        for (int i = 0; i < attempts; i++) {
+                            try {
+                                session.insertChange(Change.TEN_PENCE);
+                                inserted.incrementAndGet();
+                            } catch (ChangeNotAcceptedException e) {
+                                // Escrow full, coin returned
+                            }
+
+                            // Buy with two or three coins in, so most sales pay out change
+                            if (i % 3 == 2) {
+                                int balance = session.getBalance();
+
+                                try {
+                                    session.purchase(product);
+                                    sold.incrementAndGet();
+                                    changeReturned.addAndGet(balance - product.getCost());
+                                    assertEquals(0, session.getBalance());
+                                } catch (InsufficientChangeException | OutOfStockException e) {
+                                    assertEquals(balance, session.getBalance());
+                                }
+                            }
+                        }
+
+                        refunded.addAndGet(session.getBalance());
+                        session.refundChange();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Throwable e) {
+                        // An assertion failing here would only end this thread, so hand it to the test
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+
+        if (failure.get() instanceof AssertionError) {
+            throw (AssertionError) failure.get();
+        } else if (failure.get() != null) {
+            throw new AssertionError("A customer thread failed", failure.get());
+        }
+
+        // The cash box gains exactly the price of each sale, and every other penny went back to a customer
+        assertEquals(10 * sold.get(), cashBoxValue(vendingMachine) - startingFloat);
+        assertEquals(10 * inserted.get(), 10 * sold.get() + changeReturned.get() + refunded.get());
+        assertEquals(0, vendingMachine.getBalance());
+        assertTrue(changeReturned.get() > 0);
+    }
+
+    private static int cashBoxValue(VendingMachine vendingMachine) {
+        int value = 0;
+
+        for (Map.Entry<Change, Integer> entry : vendingMachine.getChangeAvailable().entrySet()) {
+            value += entry.getKey().getValue() * entry.getValue();
+        }
+
+        return value;
+    }
+}
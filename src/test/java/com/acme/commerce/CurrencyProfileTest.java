@@ -0,0 +1,150 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.admission.AdmissionController;
+import com.acme.commerce.vendingmachine.catalog.CatalogPublisher;
+import com.acme.commerce.vendingmachine.catalog.Planogram;
+import com.acme.commerce.vendingmachine.currency.CurrencyProfile;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class CurrencyProfileTest {
+    private static final int FIFTY_CENTS = 3;
+    private static final int ONE_EURO = 4;
+    private static final int TWO_EURO = 5;
+    private static final int FIVE_EURO = 6;
+    private static final int TEN_EURO = 7;
+
+    private static ConcurrentVendingMachineImpl machine(CurrencyProfile profile, int cost) {
+        CatalogPublisher publisher = new CatalogPublisher(new Planogram(new String[]{"A"}, new String[]{"Coffee"},
+                new int[]{cost}));
+        ConcurrentVendingMachineImpl vendingMachine = new ConcurrentVendingMachineImpl(true, profile, publisher);
+        vendingMachine.getCatalog().restock(0, 10);
+
+        return vendingMachine;
+    }
+
+    @Test
+    public void sterlingMatchesTheChangeCoins() {
+        CurrencyProfile gbp = CurrencyProfile.GBP;
+
+        for (Change change : Change.values()) {
+            assertEquals(change.ordinal(), gbp.denominationOf(change));
+            assertEquals(change.getValue(), gbp.getValue(change.ordinal()));
+        }
+
+        assertEquals(Arrays.asList(Change.TEN_PENCE, Change.TWENTY_PENCE, Change.FIFTY_PENCE, Change.ONE_POUND),
+                new ConcurrentVendingMachineImpl(true).getAcceptedChange());
+        assertSame(gbp, CurrencyProfile.forCurrency("GBP"));
+    }
+
+    @Test
+    public void euroNotesAreTakenButNeverPaidOut() throws Exception {
+        ConcurrentVendingMachineImpl vendingMachine = machine(CurrencyProfile.EUR, 180);
+
+        vendingMachine.insertDenomination(FIVE_EURO);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        // 3.20 back in coins, the note is banked
+        assertEquals(1, vendingMachine.getDenominationAvailable(FIVE_EURO));
+        assertEquals(4, vendingMachine.getDenominationAvailable(TWO_EURO));
+        assertEquals(4, vendingMachine.getDenominationAvailable(ONE_EURO));
+        assertEquals(0, vendingMachine.getBalance());
+
+        // 5.00 owed on a 10 euro note is paid in coins even though a 5 euro note is in the cash box
+        vendingMachine.getCatalog().getPublisher().reprice(Collections.singletonMap("A", 500));
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertDenomination(TEN_EURO));
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(vendingMachine.getProductList().get("A")));
+        assertEquals(1, vendingMachine.getDenominationAvailable(FIVE_EURO));
+        assertEquals(1, vendingMachine.getDenominationAvailable(TEN_EURO));
+        assertEquals(2, vendingMachine.getDenominationAvailable(TWO_EURO));
+        assertEquals(3, vendingMachine.getDenominationAvailable(ONE_EURO));
+    }
+
+    @Test
+    public void aNoteInTheEscrowCanBeHandedBack() {
+        ConcurrentVendingMachineImpl vendingMachine = machine(CurrencyProfile.EUR, 500);
+
+        vendingMachine.tryInsertDenomination(FIVE_EURO);
+        vendingMachine.tryInsertDenomination(TWO_EURO);
+        vendingMachine.tryInsertDenomination(TWO_EURO);
+        vendingMachine.tryInsertDenomination(ONE_EURO);
+
+        // 5 euros over the price, the inserted note is the fewest pieces to hand back
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(vendingMachine.getProductList().get("A")));
+        assertEquals(0, vendingMachine.getDenominationAvailable(FIVE_EURO));
+        assertEquals(7, vendingMachine.getDenominationAvailable(TWO_EURO));
+        assertEquals(6, vendingMachine.getDenominationAvailable(ONE_EURO));
+    }
+
+    @Test
+    public void dollarsPayChangeInQuarters() throws Exception {
+        ConcurrentVendingMachineImpl vendingMachine = machine(CurrencyProfile.USD, 425);
+
+        vendingMachine.insertDenomination(4);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+        // A five dollar bill for 4.25, 75 cents back as three quarters
+        assertEquals(0, vendingMachine.getBalance());
+        assertEquals(1, vendingMachine.getDenominationAvailable(4));
+        assertEquals(2, vendingMachine.getDenominationAvailable(2));
+        assertEquals(5, vendingMachine.getDenominationAvailable(1));
+    }
+
+    @Test(expected = ChangeNotAcceptedException.class)
+    public void coinsOfTheWrongCurrencyAreRefused() throws Exception {
+        // No twenty cent piece in dollars
+        machine(CurrencyProfile.USD, 125).insertChange(Change.TWENTY_PENCE);
+    }
+
+    @Test
+    public void amountsAreFormattedForTheCurrency() throws Exception {
+        assertEquals("\u00a31.20", CurrencyProfile.GBP.format(120));
+        assertEquals("$1,234.05", CurrencyProfile.USD.format(123405));
+        assertEquals("\u20ac1,20", CurrencyProfile.EUR.format(120));
+
+        ConcurrentVendingMachineImpl vendingMachine = machine(CurrencyProfile.EUR, 180);
+        vendingMachine.insertDenomination(FIFTY_CENTS);
+
+        try {
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            fail();
+        } catch (InsufficientChangeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("\u20ac1,30 more"));
+        }
+    }
+
+    @Test
+    public void wrappedMachinesAskForTheShortfallInTheirCurrency() throws Exception {
+        ConcurrentVendingMachineImpl euroMachine = machine(CurrencyProfile.EUR, 180);
+        VendingMachine vendingMachine = new AdmissionController(1e6, 100, 1e6, 100, 10, 0).wrap(euroMachine);
+        euroMachine.insertDenomination(FIFTY_CENTS);
+
+        try {
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            fail();
+        } catch (InsufficientChangeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("\u20ac1,30 more"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void profilesMustFitTheLedger() {
+        new CurrencyProfile("JPY", Locale.JAPAN, new int[]{1, 5, 10, 50, 100, 500, 1000, 5000, 10000},
+                new String[]{"1", "5", "10", "50", "100", "500", "1000", "5000", "10000"}, 0, 1);
+    }
+}
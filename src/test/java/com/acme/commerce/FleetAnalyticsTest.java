@@ -0,0 +1,91 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.analytics.FleetAnalytics;
+import com.acme.commerce.vendingmachine.analytics.FleetSummary;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class FleetAnalyticsTest {
+
+    @Test
+    public void salesCashAndServiceVisitsAreRolledUp() throws Exception {
+        VendingFleet fleet = new VendingFleet(100);
+        VendingMachine vendingMachine = fleet.machine(70);
+        vendingMachine.powerOn();
+
+        // Sell out slot C, paying exactly
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.insertChange(Change.TWENTY_PENCE);
+        vendingMachine.purchase(vendingMachine.getProductList().get("C"));
+
+        // Paying a pound for a sixty pence product three times runs the twenty pence pieces down
+        VendingMachine shortOfChange = fleet.machine(5);
+        shortOfChange.powerOn();
+
+        for (int i = 0; i < 3; i++) {
+            shortOfChange.insertChange(Change.ONE_POUND);
+            shortOfChange.purchase(shortOfChange.getProductList().get("A"));
+        }
+
+        FleetSummary summary = new FleetAnalytics().summarize(fleet.snapshot());
+
+        assertEquals(100, summary.getMachines());
+        assertEquals(1, summary.getUnitsSold(2));
+        assertEquals(3, summary.getUnitsSold(0));
+        assertEquals(99, summary.getUnitsInStock(2));
+        assertEquals(170 + 3 * 60, summary.getTotalRevenue());
+        assertEquals(Long.valueOf(170), summary.getRevenueByProduct().get("C"));
+        assertEquals(100 * 5 + 4, summary.getCoins(Change.ONE_POUND));
+        assertEquals(100 * (5 * 10 + 5 * 20 + 5 * 50 + 5 * 100) + 170 + 3 * 60, summary.getTotalCash());
+        assertEquals(1, summary.getSoldOutCount());
+        assertTrue(summary.getSoldOutMachines().get(70));
+        assertEquals(1, summary.getLowChangeCount());
+        assertTrue(summary.getLowChangeMachines().get(5));
+    }
+
+    @Test
+    public void parallelTotalsMatchASerialScan() {
+        VendingFleet fleet = new VendingFleet(50000);
+        Random random = new Random(11);
+
+        for (int i = 0; i < 20000; i++) {
+            VendingMachine vendingMachine = fleet.machine(random.nextInt(fleet.size()));
+            vendingMachine.powerOn();
+            vendingMachine.tryInsertChange(Change.ONE_POUND);
+            vendingMachine.tryInsertChange(Change.ONE_POUND);
+
+            if (vendingMachine.tryPurchase(vendingMachine.getProductList().get("C")) != TransactionResult.OK) {
+                vendingMachine.refundChange();
+            }
+        }
+
+        MachineSnapshot snapshot = fleet.snapshot();
+        FleetSummary serial = new FleetAnalytics(new ForkJoinPool(1), 3).summarize(snapshot);
+        FleetSummary parallel = new FleetAnalytics(new ForkJoinPool(4), 3).summarize(snapshot);
+        long sold = 0;
+
+        for (int machine = 0; machine < fleet.size(); machine++) {
+            sold += snapshot.getSold()[machine * 3 + 2];
+        }
+
+        assertEquals(sold, parallel.getUnitsSold(2));
+        assertEquals(serial.getTotalCash(), parallel.getTotalCash());
+        assertEquals(serial.getSoldOutMachines(), parallel.getSoldOutMachines());
+        assertEquals(serial.getLowChangeMachines(), parallel.getLowChangeMachines());
+        assertEquals(sold, parallel.getSoldOutCount());
+    }
+}
@@ -0,0 +1,62 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.simulation.LoadGenerator;
+import com.acme.commerce.vendingmachine.simulation.LoadProfile;
+import com.acme.commerce.vendingmachine.simulation.LoadReport;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public void theSameSeedServesTheSameCustomers() throws Exception {
+        LoadReport first = run("default", 7);
+        LoadReport second = run("concurrent", 7);
+
+        assertEquals(5000, first.getCustomers());
+        assertEquals(first.getOperations(), second.getOperations());
+        assertEquals(first.getCoinsRefused(), second.getCoinsRefused());
+        assertEquals(first.getRestocks(), second.getRestocks());
+
+        for (int result = TransactionResult.OK; result <= TransactionResult.RESERVATION_EXPIRED; result++) {
+            assertEquals(first.getPurchaseOutcomes(result), second.getPurchaseOutcomes(result));
+        }
+
+        assertTrue(first.getPurchaseOutcomes(TransactionResult.OK) > 0);
+        assertTrue(first.getPurchaseOutcomes(TransactionResult.INSUFFICIENT_FUNDS) > 0);
+        assertTrue(first.getRefundLatency().getCount() > 0);
+        assertNotEquals(first.getOperations(), run("default", 8).getOperations());
+    }
+
+    @Test
+    public void optionsAreParsedFromTheCommandLine() {
+        LoadProfile profile = LoadProfile.parse(new String[]{"--implementation=fleet", "--machines=10", "--threads=3"});
+
+        assertEquals("fleet", profile.getImplementation());
+        assertEquals(10, profile.getMachines());
+        assertEquals(3, profile.getThreads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOptionsAreRefused() {
+        LoadProfile.parse(new String[]{"--machnies=10"});
+    }
+
+    private static LoadReport run(String implementation, long seed) throws InterruptedException {
+        LoadProfile profile = new LoadProfile();
+        profile.setImplementation(implementation);
+        profile.setMachines(20);
+        profile.setThreads(2);
+        profile.setCustomers(5000);
+        profile.setWarmupCustomers(500);
+        profile.setSeed(seed);
+
+        return new LoadGenerator(profile).run();
+    }
+}
@@ -0,0 +1,266 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.idempotency.DeduplicatingVendingMachine;
+import com.acme.commerce.vendingmachine.idempotency.TransactionCache;
+import com.acme.commerce.vendingmachine.impl.MachineTemplate;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.net.HashRing;
+import com.acme.commerce.vendingmachine.net.MachineClient;
+import com.acme.commerce.vendingmachine.net.MachineProtocol;
+import com.acme.commerce.vendingmachine.net.MachineServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Three nodes on loopback, each serving only the machines the ring gives it
+ *
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineServerTest {
+    private static final int NODES = 3;
+    private static final int MACHINES = 300;
+
+    private final List<MachineServer> servers = new ArrayList<>();
+    private VendingMachine[][] machines;
+    private MachineClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<VendingMachine[]> served = new ArrayList<>();
+
+        for (int node = 0; node < NODES; node++) {
+            final VendingMachine[] nodeMachines = new VendingMachine[MACHINES];
+            served.add(nodeMachines);
+
+            MachineServer server = new MachineServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    id -> id >= 0 && id < MACHINES ? nodeMachines[id] : null);
+            this.servers.add(server);
+            addresses.add(server.getAddress());
+        }
+
+        HashRing<InetSocketAddress> ring = new HashRing<>(addresses);
+        TransactionCache cache = new TransactionCache();
+
+        for (int id = 0; id < MACHINES; id++) {
+            VendingMachine machine = new VendingMachineImpl(true, MachineTemplate.defaults());
+
+            // Odd machines deduplicate retried calls
+            served.get(ring.indexOf(id))[id] = id % 2 == 0 ? machine : new DeduplicatingVendingMachine(machine, cache, id);
+        }
+
+        this.machines = served.toArray(new VendingMachine[NODES][]);
+        this.client = new MachineClient(ring);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.client.close();
+
+        for (MachineServer server : this.servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCallsReachTheMachineOnItsNode() throws IOException {
+        assertEquals(TransactionResult.OK, this.client.tryInsertChange(7, Change.FIFTY_PENCE));
+        assertEquals(TransactionResult.OK, this.client.tryInsertChange(7, Change.TWENTY_PENCE));
+        assertEquals(70, this.client.getBalance(7));
+        assertEquals(0, this.client.getBalance(8));
+
+        VendingMachine machine = this.machines[this.client.getRing().indexOf(7)][7];
+        assertEquals(70, machine.getBalance());
+
+        assertEquals(TransactionResult.OK, this.client.tryPurchase(7, "A"));
+        assertEquals(0, this.client.getBalance(7));
+        assertEquals(9, machine.getProductList().get("A").getQuantityAvailable());
+
+        assertEquals(TransactionResult.INSUFFICIENT_FUNDS, this.client.tryPurchase(7, "B"));
+        assertEquals(MachineProtocol.BAD_REQUEST, this.client.tryPurchase(7, "Z"));
+
+        assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, this.client.tryInsertChange(7, Change.TWO_POUND));
+        this.client.tryInsertChange(7, Change.ONE_POUND);
+        assertEquals(100, this.client.refundChange(7));
+        assertEquals(0, this.client.getBalance(7));
+    }
+
+    @Test
+    public void testPipelineAnswersEveryCallInOrder() throws IOException {
+        MachineClient.Pipeline pipeline = this.client.pipeline();
+        int calls = 3 * MachineClient.WINDOW + 17;
+        int[] balances = new int[calls];
+
+        for (int call = 0; call < calls; call++) {
+            int machine = call % MACHINES;
+            assertEquals(call, pipeline.insertChange(machine, Change.TEN_PENCE));
+            balances[call] = 10 * (call / MACHINES + 1);
+        }
+
+        pipeline.send();
+
+        assertEquals(calls, pipeline.size());
+
+        for (int call = 0; call < calls; call++) {
+            assertEquals(TransactionResult.OK, pipeline.getResult(call));
+            assertEquals(balances[call], pipeline.getValue(call));
+        }
+
+        long answered = 0;
+
+        for (MachineServer server : this.servers) {
+            assertTrue("Every node should get a share of the machines", server.getRequests() > 0);
+            answered += server.getRequests();
+        }
+
+        assertEquals(calls, answered);
+
+        pipeline.clear();
+        int refund = pipeline.refundChange(5);
+        int balance = pipeline.getBalance(5);
+        pipeline.send();
+
+        assertEquals(10 * ((calls - 1 - 5) / MACHINES + 1), pipeline.getValue(refund));
+        assertEquals(0, pipeline.getValue(balance));
+    }
+
+    @Test
+    public void testRetriedCallsRunOnce() throws IOException {
+        assertEquals(TransactionResult.OK, this.client.tryInsertChange(9, 100L, Change.ONE_POUND));
+        assertEquals(TransactionResult.OK, this.client.tryInsertChange(9, 100L, Change.ONE_POUND));
+        assertEquals(100, this.client.getBalance(9));
+
+        assertEquals(TransactionResult.OK, this.client.tryPurchase(9, 101L, "A"));
+        assertEquals(TransactionResult.OK, this.client.tryPurchase(9, 101L, "A"));
+        assertEquals(9, this.machines[this.client.getRing().indexOf(9)][9].getProductList().get("A").getQuantityAvailable());
+
+        this.client.tryInsertChange(9, 102L, Change.FIFTY_PENCE);
+        assertEquals(50, this.client.refundChange(9, 103L));
+        assertEquals(50, this.client.refundChange(9, 103L));
+
+        // A machine that cannot deduplicate refuses calls that expect it to
+        assertEquals(MachineProtocol.BAD_REQUEST, this.client.tryInsertChange(10, 100L, Change.ONE_POUND));
+        assertEquals(0, this.client.getBalance(10));
+    }
+
+    @Test
+    public void testRetriedCallsRunOnceAfterAReconnect() throws IOException {
+        int machine = 9;
+        int owner = this.client.getRing().indexOf(machine);
+        VendingMachine served = this.machines[owner][machine];
+
+        assertEquals(TransactionResult.OK, this.client.tryInsertChange(machine, 200L, Change.ONE_POUND));
+        assertEquals(TransactionResult.OK, this.client.tryPurchase(machine, 201L, "A"));
+
+        // The node restarts with the same machines, dropping the client's connection
+        InetSocketAddress address = this.servers.get(owner).getAddress();
+        this.servers.get(owner).close();
+        final VendingMachine[] nodeMachines = this.machines[owner];
+        this.servers.set(owner, new MachineServer(address, id -> id >= 0 && id < MACHINES ? nodeMachines[id] : null));
+
+        try {
+            this.client.tryPurchase(machine, 201L, "A");
+            fail("Call on a dropped connection");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(TransactionResult.OK, this.client.tryPurchase(machine, 201L, "A"));
+        assertEquals(9, served.getProductList().get("A").getQuantityAvailable());
+        assertEquals(0, this.client.getBalance(machine));
+    }
+
+    @Test
+    public void testCallsToANodeThatNeverAnswersTimeOut() throws IOException {
+        try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             MachineClient slow = new MachineClient(new HashRing<>(Collections.singletonList(
+                     (InetSocketAddress) silent.getLocalSocketAddress())), 100)) {
+            long start = System.nanoTime();
+
+            try {
+                slow.tryInsertChange(1, Change.ONE_POUND);
+                fail("Answered by a node that never answers");
+            } catch (SocketTimeoutException e) {
+                // Expected
+            }
+
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        }
+    }
+
+    @Test
+    public void testMachinesOffTheNodeAreUnknown() throws IOException {
+        int machine = 11;
+        int owner = this.client.getRing().indexOf(machine);
+        List<InetSocketAddress> others = new ArrayList<>();
+
+        for (int node = 0; node < NODES; node++) {
+            if (node != owner) {
+                others.add(this.servers.get(node).getAddress());
+            }
+        }
+
+        // A client that only knows the other nodes sends the machine to the wrong one
+        try (MachineClient wrong = new MachineClient(others)) {
+            assertEquals(MachineProtocol.UNKNOWN_MACHINE, wrong.tryInsertChange(machine, Change.ONE_POUND));
+        }
+
+        assertEquals(MachineProtocol.UNKNOWN_MACHINE, this.client.tryInsertChange(MACHINES, Change.ONE_POUND));
+        assertEquals(MachineProtocol.UNKNOWN_MACHINE, this.client.tryInsertChange(-1, Change.ONE_POUND));
+
+        try {
+            this.client.getBalance(-1);
+            fail("Balance of an unknown machine");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRingIsStableAndEven() {
+        List<String> nodes = Arrays.asList("node-1", "node-2", "node-3", "node-4");
+        List<String> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+
+        HashRing<String> ring = new HashRing<>(nodes);
+        HashRing<String> sameNodes = new HashRing<>(reversed);
+        HashRing<String> grown = new HashRing<>(Arrays.asList("node-1", "node-2", "node-3", "node-4", "node-5"));
+
+        int machines = 100000;
+        int[] shares = new int[nodes.size()];
+        int moved = 0;
+
+        for (int machine = 0; machine < machines; machine++) {
+            assertEquals(ring.nodeOf(machine), sameNodes.nodeOf(machine));
+            shares[ring.indexOf(machine)]++;
+
+            if (!ring.nodeOf(machine).equals(grown.nodeOf(machine))) {
+                assertEquals("Machines only move to the new node", "node-5", grown.nodeOf(machine));
+                moved++;
+            }
+        }
+
+        for (int share : shares) {
+            assertTrue("Uneven share " + share, Math.abs(share - machines / nodes.size()) < machines / 10);
+        }
+
+        assertTrue("Moved " + moved, Math.abs(moved - machines / 5) < machines / 20);
+    }
+}
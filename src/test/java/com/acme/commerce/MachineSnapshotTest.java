@@ -0,0 +1,101 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.snapshot.MachineSnapshot;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineSnapshotTest {
+
+    @Test
+    public void machineSurvivesARoundTrip() throws Exception {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+        vendingMachine.insertChange(Change.TWENTY_PENCE);
+
+        VendingMachine restored = roundTrip(MachineSnapshot.of(vendingMachine)).restore(0);
+
+        assertTrue(restored.isPoweredOn());
+        assertEquals(20, restored.getBalance());
+        assertEquals(vendingMachine.getChangeInserted(), restored.getChangeInserted());
+        assertEquals(vendingMachine.getChangeAvailable(), restored.getChangeAvailable());
+        assertEquals(vendingMachine.getAcceptedChange(), restored.getAcceptedChange());
+        assertEquals(vendingMachine.getProductList(), restored.getProductList());
+    }
+
+    @Test
+    public void fleetSurvivesARoundTrip() throws Exception {
+        VendingFleet fleet = new VendingFleet(1000);
+        VendingMachine vendingMachine = fleet.machine(777);
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.insertChange(Change.TEN_PENCE);
+        vendingMachine.insertChange(Change.TEN_PENCE);
+
+        MachineSnapshot snapshot = fleet.snapshot();
+        VendingFleet restored = new VendingFleet(roundTrip(snapshot));
+
+        assertEquals(1000, restored.size());
+        assertTrue(restored.machine(777).isPoweredOn());
+        assertFalse(restored.machine(776).isPoweredOn());
+        assertEquals(120, restored.machine(777).getBalance());
+        assertEquals(0, restored.machine(0).getBalance());
+        assertTrue(Arrays.equals(snapshot.getChangeAvailable(), restored.snapshot().getChangeAvailable()));
+        assertEquals(vendingMachine.getChangeInserted(), restored.machine(777).getChangeInserted());
+    }
+
+    @Test
+    public void versionOneSnapshotsReadBackWithNoSales() throws Exception {
+        VendingFleet fleet = new VendingFleet(10);
+        VendingMachine vendingMachine = fleet.machine(3);
+        vendingMachine.powerOn();
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.purchase(vendingMachine.getProductList().get("B"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fleet.snapshot().writeTo(Channels.newChannel(out));
+
+        // Version 1 is version 2 without the trailing units sold column
+        ByteBuffer bytes = ByteBuffer.wrap(Arrays.copyOf(out.toByteArray(), out.size() - 10 * 3 * 4));
+        bytes.putShort(4, (short) 1);
+        MachineSnapshot snapshot = MachineSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.array())));
+
+        assertEquals(1, fleet.snapshot().getSold()[3 * 3 + 1]);
+        assertEquals(0, snapshot.getSold()[3 * 3 + 1]);
+        assertEquals(3, snapshot.getStock()[3 * 3 + 1]);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedSnapshotsAreRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new VendingFleet(10).snapshot().writeTo(Channels.newChannel(out));
+        byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 1);
+
+        MachineSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    private static MachineSnapshot roundTrip(MachineSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(Channels.newChannel(out));
+
+        return MachineSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+    }
+}
@@ -0,0 +1,107 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.impl.MachineTemplate;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class MachineTemplateTest {
+
+    private static MachineTemplate template() {
+        Map<String, Product> products = new HashMap<>();
+        products.put("A", ProductFactory.createProduct("Crisps", 60, 3));
+        products.put("B", ProductFactory.createProduct("Cola", 100, 2));
+
+        return new MachineTemplate(Arrays.asList(Change.TWENTY_PENCE, Change.ONE_POUND),
+                Collections.singletonMap(Change.TWENTY_PENCE, 4), products);
+    }
+
+    @Test
+    public void machinesStartAsTheTemplateSays() {
+        MachineTemplate template = template();
+        VendingMachineImpl vendingMachine = new VendingMachineImpl(true, template);
+
+        assertSame(template.getAcceptedChange(), vendingMachine.getAcceptedChange());
+        assertFalse(vendingMachine.acceptsChangeDenomination(Change.TEN_PENCE));
+        assertEquals(Collections.singletonMap(Change.TWENTY_PENCE, 4), vendingMachine.getChangeAvailable());
+        assertEquals(3, vendingMachine.getProductList().get("A").getQuantityAvailable());
+        assertEquals(2, vendingMachine.getProductList().get("B").getQuantityAvailable());
+        assertEquals(0, vendingMachine.getBalance());
+        assertTrue(vendingMachine.getChangeInserted().isEmpty());
+    }
+
+    @Test
+    public void machinesShareConfigurationButNotState() throws Exception {
+        MachineTemplate template = template();
+        VendingMachineImpl first = new VendingMachineImpl(true, template);
+        VendingMachineImpl second = new VendingMachineImpl(true, template);
+
+        first.insertChange(Change.ONE_POUND);
+        first.purchase(first.getProductList().get("A"));
+
+        // 40p change in two 20p coins out of the float, the pound banked
+        assertEquals(2, (int) first.getChangeAvailable().get(Change.TWENTY_PENCE));
+        assertEquals(1, (int) first.getChangeAvailable().get(Change.ONE_POUND));
+        assertEquals(2, first.getProductList().get("A").getQuantityAvailable());
+
+        assertEquals(Collections.singletonMap(Change.TWENTY_PENCE, 4), second.getChangeAvailable());
+        assertEquals(3, second.getProductList().get("A").getQuantityAvailable());
+        assertEquals(4, template.getChangeFloat(Change.TWENTY_PENCE));
+
+        second.insertChange(Change.TWENTY_PENCE);
+        second.reset();
+
+        assertTrue(second.getChangeAvailable().isEmpty());
+        assertEquals(0, second.getBalance());
+        assertEquals(2, (int) first.getChangeAvailable().get(Change.TWENTY_PENCE));
+        assertEquals(Collections.singletonMap(Change.TWENTY_PENCE, 4),
+                new VendingMachineImpl(true, template).getChangeAvailable());
+    }
+
+    @Test
+    public void publishingToTheTemplateRepricesItsMachines() {
+        MachineTemplate template = template();
+        VendingMachineImpl first = new VendingMachineImpl(true, template);
+        VendingMachineImpl second = new VendingMachineImpl(true, template);
+
+        template.getPublisher().reprice(Collections.singletonMap("B", 80));
+
+        assertEquals(80, first.getProductList().get("B").getCost());
+        assertEquals(80, second.getProductList().get("B").getCost());
+        assertEquals(100, template.getPlanogram().getCost(template.getPlanogram().slotOf("B")));
+    }
+
+    @Test
+    public void defaultMachinesKeepTheirOwnPublisher() {
+        VendingMachineImpl first = new VendingMachineImpl(true);
+        VendingMachineImpl second = new VendingMachineImpl(true);
+
+        first.getCatalog().getPublisher().reprice(Collections.singletonMap("A", 70));
+
+        assertEquals(70, first.getProductList().get("A").getCost());
+        assertEquals(60, second.getProductList().get("A").getCost());
+        assertEquals(60, MachineTemplate.defaults().getPublisher().current()
+                .getCost(MachineTemplate.defaults().getPlanogram().slotOf("A")));
+    }
+
+    @Test
+    public void refundBeforeAnyCoinLeavesTheMachineEmpty() {
+        VendingMachineImpl vendingMachine = new VendingMachineImpl(true, MachineTemplate.defaults());
+
+        assertEquals(0, vendingMachine.refundChange());
+        vendingMachine.reset();
+
+        assertTrue(vendingMachine.getChangeAvailable().isEmpty());
+        assertEquals(5, MachineTemplate.defaults().getChangeFloat(Change.TEN_PENCE));
+    }
+}
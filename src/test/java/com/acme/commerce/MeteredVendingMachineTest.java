@@ -0,0 +1,132 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.metrics.LatencyHistogram;
+import com.acme.commerce.vendingmachine.metrics.MeteredVendingMachine;
+import com.acme.commerce.vendingmachine.metrics.MetricsSnapshot;
+import com.acme.commerce.vendingmachine.metrics.VendingMachineMetrics;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class MeteredVendingMachineTest {
+
+    @Test
+    public void outcomesAreCountedByReason() throws Exception {
+        MeteredVendingMachine vendingMachine = new MeteredVendingMachine(new VendingMachineImpl(true));
+        Product product = vendingMachine.getProductList().get("B");
+
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, vendingMachine.tryInsertChange(Change.ONE_PENCE));
+
+        try {
+            vendingMachine.insertChange(Change.TWO_POUND);
+            fail();
+        } catch (ChangeNotAcceptedException e) {
+            // Counted as rejected
+        }
+
+        try {
+            vendingMachine.purchase(product);
+            fail();
+        } catch (InsufficientChangeException e) {
+            // Counted as short
+        }
+
+        vendingMachine.insertChange(Change.FIFTY_PENCE);
+        vendingMachine.purchase(product);
+        vendingMachine.tryPurchase(ProductFactory.createProduct("Unlisted", 0, 1));
+        vendingMachine.refundChange();
+
+        MetricsSnapshot snapshot = vendingMachine.getMetrics().snapshot();
+
+        assertEquals(2, snapshot.getCoinsInserted(Change.FIFTY_PENCE));
+        assertEquals(1, snapshot.getCoinsRejected(Change.ONE_PENCE));
+        assertEquals(1, snapshot.getCoinsRejected(Change.TWO_POUND));
+        assertEquals(1, snapshot.getSales("B"));
+        assertEquals(0, snapshot.getSales("A"));
+        assertEquals(1, snapshot.getUnlistedSales());
+        assertEquals(2, snapshot.getPurchaseOutcomes(TransactionResult.OK));
+        assertEquals(1, snapshot.getPurchaseOutcomes(TransactionResult.INSUFFICIENT_FUNDS));
+        assertEquals(4, snapshot.getInsertLatency().getCount());
+        assertEquals(3, snapshot.getPurchaseLatency().getCount());
+        assertEquals(1, snapshot.getRefundLatency().getCount());
+    }
+
+    @Test
+    public void percentilesAreWithinABucketOfTheTruth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int nanos = 1; nanos <= 10000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(5000.5, snapshot.getMean(), 0.001);
+        assertEquals(5000, snapshot.getValueAtQuantile(0.5), 5000 / 8);
+        assertEquals(9900, snapshot.getValueAtQuantile(0.99), 9900 / 8);
+        assertTrue(snapshot.getMax() >= 10000);
+    }
+
+    @Test
+    public void metricsArePublishedOverJmx() throws Exception {
+        MeteredVendingMachine vendingMachine = new MeteredVendingMachine(new VendingMachineImpl(true));
+        ObjectName name = vendingMachine.getMetrics().register("metered-test");
+
+        try {
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData latency = (CompositeData) server.getAttribute(name, "PurchaseLatency");
+
+            assertEquals(1L, latency.get("count"));
+            assertNotNull(server.getAttribute(name, "Sales"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, vendingMachine.getMetrics().snapshot().getSales("A"));
+        } finally {
+            VendingMachineMetrics.unregister(name);
+        }
+    }
+
+    @Test
+    public void aPurchaseThatThrowsIsNotCountedAsASale() throws Exception {
+        MeteredVendingMachine vendingMachine = new MeteredVendingMachine(new VendingMachineImpl(true) {
+            @Override
+            public void purchase(Product product) {
+                throw new IllegalStateException("Jammed");
+            }
+        });
+
+        try {
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            fail("Jammed");
+        } catch (IllegalStateException e) {
+            // Passed on
+        }
+
+        MetricsSnapshot snapshot = vendingMachine.getMetrics().snapshot();
+
+        assertEquals(0, snapshot.getSales("A"));
+        assertEquals(0, snapshot.getPurchaseOutcomes(TransactionResult.OK));
+        assertEquals(1, snapshot.getPurchaseLatency().getCount());
+    }
+}
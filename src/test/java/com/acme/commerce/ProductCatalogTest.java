@@ -0,0 +1,120 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.VendingSession;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class ProductCatalogTest {
+
+    @Test
+    public void aSaleTakesAUnitOutOfStock() throws Exception {
+        for (VendingMachine vendingMachine : new VendingMachine[]{
+                new VendingMachineImpl(true), new ConcurrentVendingMachineImpl(true), new VendingFleet(2).machine(1)}) {
+            Product product = vendingMachine.getProductList().get("C");
+
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+            vendingMachine.insertChange(Change.TWENTY_PENCE);
+
+            assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(product));
+            assertEquals(0, vendingMachine.getProductList().get("C").getQuantityAvailable());
+            assertTrue(product.isOutOfStock());
+
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.insertChange(Change.ONE_POUND);
+
+            assertEquals(TransactionResult.OUT_OF_STOCK, vendingMachine.tryPurchase(product));
+        }
+    }
+
+    @Test
+    public void aFailedSaleLeavesStockAlone() {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+        Product product = vendingMachine.getProductList().get("C");
+
+        assertEquals(TransactionResult.INSUFFICIENT_FUNDS, vendingMachine.tryPurchase(product));
+        assertEquals(1, product.getQuantityAvailable());
+    }
+
+    @Test
+    public void affordableProductsComeFromThePriceIndex() {
+        Map<String, Product> products = new HashMap<>();
+        products.put("A1", ProductFactory.createProduct("Mints", 50, 3));
+        products.put("A2", ProductFactory.createProduct("Crisps", 80, 0));
+        products.put("B1", ProductFactory.createProduct("Cola", 120, 2));
+        products.put("B2", ProductFactory.createProduct("Water", 50, 1));
+        ProductCatalog catalog = new ProductCatalog(products);
+
+        assertEquals(1, catalog.getPlanogram().slotOf("A2"));
+        assertEquals(-1, catalog.getPlanogram().slotOf("Z9"));
+        assertEquals(3, catalog.getPlanogram().affordable(100));
+
+        List<Product> affordable = catalog.affordable(100);
+
+        // Crisps are out of stock, ties are in slot order
+        assertEquals(2, affordable.size());
+        assertEquals("Mints", affordable.get(0).getName());
+        assertEquals("Water", affordable.get(1).getName());
+        assertTrue(catalog.affordable(49).isEmpty());
+    }
+
+    @Test
+    public void concurrentBuyersNeverOversell() throws InterruptedException {
+        final ConcurrentVendingMachineImpl vendingMachine = new ConcurrentVendingMachineImpl(true);
+        final Product product = vendingMachine.getProductList().get("A");
+        final AtomicInteger sold = new AtomicInteger();
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (VendingSession session = vendingMachine.openSession()) {
+                        start.await();
+
+                        for (int i = 0; i < 1000; i++) {
+                            session.tryInsertChange(Change.FIFTY_PENCE);
+                            session.tryInsertChange(Change.TEN_PENCE);
+
+                            if (session.tryPurchase(product) == TransactionResult.OK) {
+                                sold.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+
+        assertEquals(10, sold.get());
+        assertEquals(0, product.getQuantityAvailable());
+    }
+}
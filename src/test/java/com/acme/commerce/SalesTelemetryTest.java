@@ -0,0 +1,162 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.audit.AuditEvent;
+import com.acme.commerce.vendingmachine.audit.AuditTrail;
+import com.acme.commerce.vendingmachine.audit.AuditedVendingMachine;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import com.acme.commerce.vendingmachine.telemetry.SalesTelemetry;
+import com.acme.commerce.vendingmachine.telemetry.SalesWindow;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class SalesTelemetryTest {
+    private static final long MINUTE = 60000L;
+    private static final String[] SLOT_CODES = {"A", "B", "C"};
+
+    private final SalesTelemetry telemetry = new SalesTelemetry(4, SLOT_CODES, MINUTE, 60);
+
+    private void insert(int machine, long time, Change change) {
+        this.telemetry.record(machine, time, AuditEvent.INSERT, change, null, change.getValue(), TransactionResult.OK);
+    }
+
+    private void sell(int machine, long time, String slotCode, int cost) {
+        this.telemetry.record(machine, time, AuditEvent.PURCHASE, null, slotCode, cost, TransactionResult.OK);
+    }
+
+    private void refund(int machine, long time, int amount) {
+        this.telemetry.record(machine, time, AuditEvent.REFUND, null, null, amount, TransactionResult.OK);
+    }
+
+    @Test
+    public void windowsSumTheBucketsTheyCover() {
+        long start = 100 * MINUTE;
+
+        for (int minute = 0; minute < 10; minute++) {
+            long time = start + minute * MINUTE + 500;
+            insert(1, time, Change.ONE_POUND);
+            insert(1, time, Change.TWENTY_PENCE);
+            sell(1, time, "A", 60);
+            sell(1, time, "B", 60);
+            refund(1, time, 0);
+        }
+
+        insert(2, start, Change.FIFTY_PENCE);
+        refund(2, start, 50);
+
+        long now = start + 9 * MINUTE + 30000;
+        SalesWindow lastFive = this.telemetry.window(1, now, 5 * MINUTE);
+
+        assertEquals(start + 5 * MINUTE, lastFive.getStartMillis());
+        assertEquals(start + 10 * MINUTE, lastFive.getEndMillis());
+        assertEquals(10, lastFive.getUnitsSold());
+        assertEquals(5, lastFive.getUnitsSold("A"));
+        assertEquals(0, lastFive.getUnitsSold("C"));
+        assertEquals(2.0, lastFive.getUnitsPerMinute(), 1e-9);
+        assertEquals(1.0, lastFive.getUnitsPerMinute("B"), 1e-9);
+        assertEquals(600, lastFive.getRevenue());
+        assertEquals(5, lastFive.getCoins(Change.ONE_POUND));
+        assertEquals(0.5, lastFive.getCoinShare(Change.TWENTY_PENCE), 1e-9);
+        assertEquals(600, lastFive.getInserted());
+        assertEquals("A refund of nothing is not a refund", 0, lastFive.getRefunds());
+        assertEquals(0.0, lastFive.getRefundRatio(), 1e-9);
+
+        SalesWindow hour = this.telemetry.window(1, now, 60 * MINUTE);
+        assertEquals(20, hour.getUnitsSold());
+
+        SalesWindow other = this.telemetry.window(2, now, 60 * MINUTE);
+        assertEquals(0, other.getUnitsSold());
+        assertEquals(1, other.getRefunds());
+        assertEquals(1.0, other.getRefundRatio(), 1e-9);
+
+        SalesWindow fleet = this.telemetry.fleetWindow(now, 60 * MINUTE);
+        assertEquals(20, fleet.getUnitsSold());
+        assertEquals(1250, fleet.getInserted());
+        assertEquals(50, fleet.getRefunded());
+
+        assertEquals(0, this.telemetry.window(3, now, 60 * MINUTE).getUnitsSold());
+    }
+
+    @Test
+    public void oldBucketsAreReusedAndLateEventsDropped() {
+        long start = 1000 * MINUTE;
+
+        sell(0, start, "A", 60);
+        sell(0, start, "Z", 80);
+
+        SalesWindow first = this.telemetry.window(0, start, MINUTE);
+        assertEquals(1, first.getUnitsSold("A"));
+        assertEquals(1, first.getUnlistedUnitsSold());
+
+        // An hour later the same bucket is reused for the new minute
+        sell(0, start + 60 * MINUTE, "C", 170);
+
+        SalesWindow later = this.telemetry.window(0, start + 60 * MINUTE, 60 * MINUTE);
+        assertEquals(1, later.getUnitsSold());
+        assertEquals(170, later.getRevenue());
+
+        // The first minute's bucket now holds a later one, so an event from then is dropped
+        sell(0, start + 30000, "A", 60);
+        sell(99, start + 60 * MINUTE, "A", 60);
+        assertEquals(2, this.telemetry.getDropped());
+        assertEquals(1, this.telemetry.fleetWindow(start + 60 * MINUTE, 60 * MINUTE).getUnitsSold());
+
+        // Windows are capped at the ring
+        SalesWindow capped = this.telemetry.window(0, start + 60 * MINUTE, 1000 * MINUTE);
+        assertEquals(60 * MINUTE, capped.getEndMillis() - capped.getStartMillis());
+    }
+
+    @Test
+    public void eventsTooLateForTheFleetAreDroppedForTheirMachineToo() {
+        long start = 1000 * MINUTE;
+
+        sell(0, start, "A", 60);
+
+        // Another machine moves the fleet an hour on, reusing the first minute's bucket
+        sell(1, start + 60 * MINUTE, "B", 100);
+
+        // Machine 0's own bucket still holds the first minute, but the fleet's does not
+        sell(0, start + 30000, "A", 60);
+
+        assertEquals(1, this.telemetry.getDropped());
+        assertEquals(1, this.telemetry.window(0, start, MINUTE).getUnitsSold());
+        assertEquals(1, this.telemetry.fleetWindow(start + 60 * MINUTE, 60 * MINUTE).getUnitsSold());
+    }
+
+    @Test
+    public void countsTheEventsOfAnAuditTrail() throws Exception {
+        SalesTelemetry telemetry = new SalesTelemetry(1, SLOT_CODES);
+        AuditTrail trail = new AuditTrail(telemetry, 1024);
+        VendingMachine vendingMachine = new AuditedVendingMachine(new VendingMachineImpl(true), trail, 0);
+
+        for (int i = 0; i < 10; i++) {
+            vendingMachine.tryInsertChange(Change.FIFTY_PENCE);
+            vendingMachine.tryInsertChange(Change.TEN_PENCE);
+            vendingMachine.tryPurchase(vendingMachine.getProductList().get("A"));
+        }
+
+        vendingMachine.tryInsertChange(Change.ONE_PENCE);
+        vendingMachine.tryInsertChange(Change.ONE_POUND);
+        vendingMachine.refundChange();
+        trail.awaitWritten(trail.getRecorded());
+        trail.close();
+
+        SalesWindow window = telemetry.window(0, telemetry.getSpanMillis());
+
+        assertEquals(10, window.getUnitsSold("A"));
+        assertEquals(600, window.getRevenue());
+        assertEquals(10, window.getCoins(Change.FIFTY_PENCE));
+        assertEquals("Refused coins are not counted", 0, window.getCoins(Change.ONE_PENCE));
+        assertEquals(700, window.getInserted());
+        assertEquals(100, window.getRefunded());
+        assertEquals(1.0 / 7, window.getRefundRatio(), 1e-9);
+        assertEquals(0, telemetry.getDropped());
+    }
+}
@@ -0,0 +1,162 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.ReservableVendingMachine;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.catalog.ProductCatalog;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.exception.OutOfStockException;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class StockLeasesTest {
+    private long now;
+    private StockLeases leases;
+    private ProductCatalog catalog;
+
+    @Before
+    public void setUp() {
+        this.leases = new StockLeases(2, 8, 10, new StockLeases.Ticker() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        });
+
+        Map<String, Product> products = new HashMap<>();
+        products.put("A", ProductFactory.createProduct("Crisps", 80, 3));
+        this.catalog = new ProductCatalog(products);
+    }
+
+    @Test
+    public void reservingHoldsAUnitUntilReleased() {
+        long lease = this.leases.reserve(this.catalog, 0, 1000);
+
+        assertEquals(2, this.catalog.getStock(0));
+        assertTrue(this.leases.release(lease));
+        assertFalse(this.leases.release(lease));
+        assertEquals(3, this.catalog.getStock(0));
+    }
+
+    @Test
+    public void leasesExpireOnTheWheel() {
+        long first = this.leases.reserve(this.catalog, 0, 25);
+        long second = this.leases.reserve(this.catalog, 0, 500);
+        this.leases.reserve(this.catalog, 0, 30);
+
+        assertEquals(StockLeases.NO_LEASE, this.leases.reserve(this.catalog, 0, 1000));
+
+        advance(20);
+        assertEquals(3, this.leases.expire());
+
+        advance(20);
+        assertEquals(1, this.leases.expire());
+        assertEquals(2, this.catalog.getStock(0));
+        assertFalse(this.leases.claim(first));
+
+        // More than one revolution of the eight bucket wheel before the last lease is due
+        advance(400);
+        assertEquals(1, this.leases.expire());
+
+        advance(100);
+        assertEquals(0, this.leases.expire());
+        assertEquals(3, this.catalog.getStock(0));
+        assertFalse(this.leases.release(second));
+    }
+
+    @Test
+    public void claimedLeasesDoNotExpire() {
+        long lease = this.leases.reserve(this.catalog, 0, 10);
+
+        assertTrue(this.leases.claim(lease));
+        advance(1000);
+        assertEquals(1, this.leases.expire());
+
+        this.leases.commit(lease);
+        assertEquals(0, this.leases.size());
+        assertEquals(2, this.catalog.getStock(0));
+    }
+
+    @Test
+    public void staleIdsNeverMatchAReusedSlot() {
+        long first = this.leases.reserve(this.catalog, 0, 1000);
+        this.leases.release(first);
+        long second = this.leases.reserve(this.catalog, 0, 1000);
+
+        assertNotEquals(first, second);
+        assertFalse(this.leases.release(first));
+        assertTrue(this.leases.release(second));
+    }
+
+    @Test
+    public void aReservedUnitIsBoughtOnceThePaymentIsIn() throws Exception {
+        for (ReservableVendingMachine vendingMachine : new ReservableVendingMachine[]{
+                new ConcurrentVendingMachineImpl(true), new VendingFleet(3).machine(2)}) {
+            Product product = vendingMachine.getProductList().get("C");
+            long lease = vendingMachine.reserve(product, 60000);
+
+            assertTrue(product.isOutOfStock());
+            assertEquals(ReservableVendingMachine.NO_LEASE, vendingMachine.reserve(product, 60000));
+
+            vendingMachine.insertChange(Change.ONE_POUND);
+            assertEquals(TransactionResult.INSUFFICIENT_FUNDS, vendingMachine.tryPurchase(lease));
+
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+            vendingMachine.insertChange(Change.TWENTY_PENCE);
+            vendingMachine.purchase(lease);
+
+            assertEquals(0, vendingMachine.getBalance());
+            assertEquals(0, product.getQuantityAvailable());
+            assertEquals(TransactionResult.RESERVATION_EXPIRED, vendingMachine.tryPurchase(lease));
+        }
+    }
+
+    @Test(expected = OutOfStockException.class)
+    public void aReleasedReservationCannotBeBought() throws Exception {
+        ReservableVendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+        long lease = vendingMachine.reserve(vendingMachine.getProductList().get("A"), 60000);
+
+        vendingMachine.release(lease);
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.purchase(lease);
+    }
+
+    @Test
+    public void aLapsedReservationGoesBackOnSaleToPlainPurchases() throws Exception {
+        for (ReservableVendingMachine vendingMachine : new ReservableVendingMachine[]{
+                new ConcurrentVendingMachineImpl(true), new VendingFleet(3).machine(1)}) {
+            Product product = vendingMachine.getProductList().get("C");
+
+            vendingMachine.reserve(product, 1);
+            assertTrue(product.isOutOfStock());
+
+            // Abandoned at the keypad, nothing else touches the machine until the next customer pays
+            Thread.sleep(100);
+
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.insertChange(Change.ONE_POUND);
+
+            assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(product));
+            assertEquals("Change was paid out", 0, vendingMachine.getBalance());
+            assertEquals(TransactionResult.OUT_OF_STOCK, vendingMachine.tryPurchase(product));
+        }
+    }
+
+    private void advance(long millis) {
+        this.now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,186 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.IdempotentVendingMachine;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.TransactionResult;
+import com.acme.commerce.vendingmachine.admission.AdmissionController;
+import com.acme.commerce.vendingmachine.catalog.StockLeases;
+import com.acme.commerce.vendingmachine.idempotency.DeduplicatingVendingMachine;
+import com.acme.commerce.vendingmachine.idempotency.TransactionCache;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import com.acme.commerce.vendingmachine.impl.VendingMachineImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class TransactionCacheTest {
+    private long now;
+    private TransactionCache cache;
+    private IdempotentVendingMachine vendingMachine;
+    private Product product;
+
+    @Before
+    public void setUp() {
+        this.cache = new TransactionCache(64, 1000, new StockLeases.Ticker() {
+            @Override
+            public long nanoTime() {
+                return TransactionCacheTest.this.now;
+            }
+        });
+        this.vendingMachine = new DeduplicatingVendingMachine(new VendingMachineImpl(true), this.cache, 1);
+        this.product = this.vendingMachine.getProductList().get("A");
+    }
+
+    @Test
+    public void testRetriesReturnTheFirstOutcome() {
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryInsertChange(1, Change.FIFTY_PENCE));
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryInsertChange(1, Change.FIFTY_PENCE));
+        assertEquals("A retried coin is counted once", 50, this.vendingMachine.getBalance());
+
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryInsertChange(2, Change.FIFTY_PENCE));
+        assertEquals(100, this.vendingMachine.getBalance());
+
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryPurchase(3, this.product));
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryPurchase(3, this.product));
+        assertEquals("A retried sale is charged once", 9, this.product.getQuantityAvailable());
+
+        this.vendingMachine.tryInsertChange(4, Change.ONE_POUND);
+        assertEquals(100, this.vendingMachine.refundChange(5));
+        assertEquals("A retried refund reports what was refunded", 100, this.vendingMachine.refundChange(5));
+
+        // Without an id nothing is deduplicated
+        this.vendingMachine.tryInsertChange(IdempotentVendingMachine.NO_TRANSACTION, Change.TEN_PENCE);
+        this.vendingMachine.tryInsertChange(IdempotentVendingMachine.NO_TRANSACTION, Change.TEN_PENCE);
+        assertEquals(20, this.vendingMachine.getBalance());
+    }
+
+    @Test
+    public void testFailuresAreRecordedToo() {
+        assertEquals(TransactionResult.INSUFFICIENT_FUNDS, this.vendingMachine.tryPurchase(1, this.product));
+        this.vendingMachine.tryInsertChange(2, Change.ONE_POUND);
+
+        assertEquals(TransactionResult.INSUFFICIENT_FUNDS, this.vendingMachine.tryPurchase(1, this.product));
+        assertEquals(100, this.vendingMachine.getBalance());
+        assertEquals(TransactionResult.OK, this.vendingMachine.tryPurchase(3, this.product));
+
+        assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, this.vendingMachine.tryInsertChange(4, Change.TWO_POUND));
+        assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, this.vendingMachine.tryInsertChange(4, Change.ONE_POUND));
+    }
+
+    @Test
+    public void testCallsTurnedAwayUnseenAreNotRecorded() {
+        StockLeases.Ticker ticker = new StockLeases.Ticker() {
+            @Override
+            public long nanoTime() {
+                return TransactionCacheTest.this.now;
+            }
+        };
+        AdmissionController controller = new AdmissionController(1e6, 100, 1000, 1, 10, 0, ticker);
+        IdempotentVendingMachine vendingMachine = new DeduplicatingVendingMachine(
+                controller.wrap(new VendingMachineImpl(true)), this.cache, 2);
+        Product product = vendingMachine.getProductList().get("A");
+
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(1, Change.ONE_POUND));
+        assertEquals(TransactionResult.THROTTLED, vendingMachine.tryPurchase(2, product));
+
+        // A token later the retry reaches the machine, and from then on is answered from the cache
+        this.now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(2, product));
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(2, product));
+        assertEquals(9, product.getQuantityAvailable());
+        assertEquals(1, controller.getShed());
+    }
+
+    @Test
+    public void testOutcomesExpire() {
+        this.vendingMachine.tryInsertChange(1, Change.TEN_PENCE);
+        this.now += TimeUnit.MILLISECONDS.toNanos(999);
+        this.vendingMachine.tryInsertChange(1, Change.TEN_PENCE);
+        assertEquals(10, this.vendingMachine.getBalance());
+
+        // Expiry is judged by the time of the latest new transaction
+        this.now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertEquals(TransactionResult.OK, this.cache.get(1, 1));
+        this.vendingMachine.tryInsertChange(2, Change.TEN_PENCE);
+        assertEquals(TransactionCache.MISSING, this.cache.get(1, 1));
+        this.vendingMachine.tryInsertChange(1, Change.TEN_PENCE);
+        assertEquals(30, this.vendingMachine.getBalance());
+        assertEquals(0, this.cache.getEvictions());
+    }
+
+    @Test
+    public void testMemoryStaysFixed() {
+        assertEquals(64, this.cache.getCapacity());
+
+        for (long transaction = 1; transaction <= 10000; transaction++) {
+            this.cache.put(7, transaction, (int) transaction);
+            assertEquals((int) transaction, this.cache.get(7, transaction));
+        }
+
+        assertEquals(64, this.cache.getCapacity());
+        assertTrue(this.cache.getEvictions() >= 10000 - 64);
+
+        int held = 0;
+
+        for (long transaction = 1; transaction <= 10000; transaction++) {
+            if (this.cache.get(7, transaction) != TransactionCache.MISSING) {
+                held++;
+            }
+        }
+
+        assertTrue("Held " + held, held > 0 && held <= 64);
+        assertEquals("Other machines' transactions are their own", TransactionCache.MISSING, this.cache.get(8, 10000));
+
+        this.cache.clear();
+        assertEquals(TransactionCache.MISSING, this.cache.get(7, 10000));
+    }
+
+    @Test
+    public void testConcurrentRetriesRunOnce() throws InterruptedException {
+        final IdempotentVendingMachine vendingMachine = new DeduplicatingVendingMachine(
+                new ConcurrentVendingMachineImpl(true), new TransactionCache(), 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger ok = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (long transaction = 1; transaction <= 50; transaction++) {
+                        if (vendingMachine.tryInsertChange(transaction, Change.TEN_PENCE) == TransactionResult.OK) {
+                            ok.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Each coin was inserted once, and every thread was told the outcome of that one insert
+        assertTrue(vendingMachine.getBalance() > 0);
+        assertEquals(8 * vendingMachine.getBalance() / 10, ok.get());
+    }
+}
@@ -0,0 +1,149 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.journal.JournaledVendingMachine;
+import com.acme.commerce.vendingmachine.journal.TransactionJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class TransactionJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoveryRebuildsTheMachine() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("machine.journal");
+        Map<Change, Integer> changeAvailable;
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            vendingMachine.powerOn();
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            vendingMachine.insertChange(Change.TWENTY_PENCE);
+            vendingMachine.insertChange(Change.TEN_PENCE);
+
+            changeAvailable = vendingMachine.getChangeAvailable();
+        }
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            assertTrue(vendingMachine.isPoweredOn());
+            assertEquals(30, vendingMachine.getBalance());
+            assertEquals(changeAvailable, vendingMachine.getChangeAvailable());
+            assertEquals(6, vendingMachine.getJournal().getAppended());
+        }
+    }
+
+    @Test
+    public void aTornRecordIsDroppedAndOverwritten() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("torn.journal");
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+        }
+
+        // Corrupt the amount of the second record, as if the crash came part way through writing it
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(TransactionJournal.RECORD_SIZE * 2 + 16);
+            raf.writeInt(12345);
+        }
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            assertEquals(100, vendingMachine.getBalance());
+            assertEquals(1, vendingMachine.getJournal().getAppended());
+
+            vendingMachine.insertChange(Change.TEN_PENCE);
+        }
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            assertEquals(110, vendingMachine.getBalance());
+        }
+    }
+
+    @Test
+    public void groupCommitMakesRecordsDurable() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(folder.newFile().toPath(), 4, 1)) {
+            long last = 0;
+
+            // More records than were mapped up front, so the mapping has to grow
+            for (int i = 0; i < 100; i++) {
+                last = journal.append(TransactionJournal.INSERT, Change.TEN_PENCE.ordinal(), 0, 10);
+            }
+
+            journal.awaitDurable(last);
+
+            assertEquals(100, journal.getDurable());
+        }
+    }
+
+    @Test
+    public void checkpointsTruncateTheJournal() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("checkpointed.journal");
+        Path beforeCheckpoint = folder.getRoot().toPath().resolve("before-checkpoint.journal");
+        Map<Change, Integer> changeAvailable;
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            vendingMachine.powerOn();
+            vendingMachine.insertChange(Change.ONE_POUND);
+            vendingMachine.purchase(vendingMachine.getProductList().get("A"));
+            vendingMachine.insertChange(Change.FIFTY_PENCE);
+            vendingMachine.getJournal().sync();
+            Files.copy(file, beforeCheckpoint);
+
+            vendingMachine.checkpoint();
+
+            assertEquals(0, vendingMachine.getJournal().getRecords());
+            assertEquals(4, vendingMachine.getJournal().getBase());
+
+            vendingMachine.insertChange(Change.TEN_PENCE);
+
+            assertEquals(5, vendingMachine.getJournal().getAppended());
+            changeAvailable = vendingMachine.getChangeAvailable();
+        }
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            assertTrue(vendingMachine.isPoweredOn());
+            assertEquals(60, vendingMachine.getBalance());
+            assertEquals(changeAvailable, vendingMachine.getChangeAvailable());
+            assertEquals(9, vendingMachine.getProductList().get("A").getQuantityAvailable());
+            assertEquals(1, vendingMachine.getJournal().getRecords());
+        }
+
+        // A crash after the snapshot was written but before the journal was truncated
+        Files.copy(beforeCheckpoint, file, StandardCopyOption.REPLACE_EXISTING);
+
+        try (JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(file)) {
+            assertEquals("Records the checkpoint covers are not replayed again", 50, vendingMachine.getBalance());
+            assertEquals(9, vendingMachine.getProductList().get("A").getQuantityAvailable());
+        }
+    }
+
+    @Test
+    public void anOperationThatCannotBeJournaledDoesNotHappen() throws Exception {
+        JournaledVendingMachine vendingMachine = JournaledVendingMachine.recover(folder.newFile().toPath());
+        vendingMachine.insertChange(Change.ONE_POUND);
+        vendingMachine.getJournal().close();
+
+        try {
+            vendingMachine.tryPurchase(vendingMachine.getProductList().get("A"));
+            fail("Journal closed");
+        } catch (IllegalStateException e) {
+            assertEquals(100, vendingMachine.getBalance());
+            assertEquals(10, vendingMachine.getProductList().get("A").getQuantityAvailable());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.VendingMachine;
+import com.acme.commerce.vendingmachine.fleet.VendingFleet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class VendingFleetTest {
+
+    @Test
+    public void machinesStartLikeTheDefaultMachine() {
+        VendingMachine vendingMachine = new VendingFleet(10).machine(7);
+
+        assertFalse(vendingMachine.isPoweredOn());
+        assertEquals(4, vendingMachine.getAcceptedChange().size());
+        assertEquals(3, vendingMachine.getProductList().size());
+        assertEquals(10, vendingMachine.getProductList().get("A").getQuantityAvailable());
+        assertEquals(Integer.valueOf(5), vendingMachine.getChangeAvailable().get(Change.ONE_POUND));
+    }
+
+    @Test
+    public void machinesDoNotShareState() throws Exception {
+        VendingFleet fleet = new VendingFleet(130);
+        VendingMachine first = fleet.machine(0);
+        VendingMachine last = fleet.machine(129);
+
+        last.powerOn();
+        last.insertChange(Change.ONE_POUND);
+        last.insertChange(Change.TWENTY_PENCE);
+
+        assertFalse(first.isPoweredOn());
+        assertTrue(last.isPoweredOn());
+        assertTrue(fleet.machine(129).isPoweredOn());
+        assertEquals(0, first.getBalance());
+        assertEquals(120, fleet.machine(129).getBalance());
+
+        last.purchase(last.getProductList().get("B"));
+
+        assertEquals(Integer.valueOf(6), last.getChangeAvailable().get(Change.ONE_POUND));
+        assertEquals(Integer.valueOf(5), first.getChangeAvailable().get(Change.ONE_POUND));
+    }
+
+    @Test
+    public void defaultMachinesCostSixtyFourBytesEach() {
+        int size = 100000;
+        VendingFleet fleet = new VendingFleet(size);
+
+        assertEquals(64.125, fleet.bytesPerMachine(), 0.0);
+        assertTrue(fleet.footprintBytes() / size <= 65);
+    }
+}
@@ -3,6 +3,7 @@ package com.acme.commerce;
 import com.acme.commerce.vendingmachine.Change;
 import com.acme.commerce.vendingmachine.Product;
 import com.acme.commerce.vendingmachine.ProductFactory;
+import com.acme.commerce.vendingmachine.TransactionResult;
 import com.acme.commerce.vendingmachine.VendingMachine;
 import com.acme.commerce.vendingmachine.exception.ChangeNotAcceptedException;
 import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
@@ -189,6 +190,35 @@ public class VendingMachineTest {
         }
     }
 
+    @Test
+    public void tryMethodsReportResultCodes() {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+        Product aProduct = vendingMachine.getProductList().get("A");
+
+        assertEquals(TransactionResult.CHANGE_NOT_ACCEPTED, vendingMachine.tryInsertChange(Change.ONE_PENCE));
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.FIFTY_PENCE));
+        assertEquals(TransactionResult.INSUFFICIENT_FUNDS, vendingMachine.tryPurchase(aProduct));
+        assertEquals(TransactionResult.OUT_OF_STOCK, vendingMachine.tryPurchase(ProductFactory.createProduct("None", 10, 0)));
+        assertEquals(TransactionResult.OK, vendingMachine.tryInsertChange(Change.TEN_PENCE));
+        assertEquals(TransactionResult.OK, vendingMachine.tryPurchase(aProduct));
+        assertEquals(0, vendingMachine.getBalance());
+    }
+
+    @Test
+    public void insufficientChangeNamesTheShortfall() {
+        VendingMachine vendingMachine = new VendingMachineImpl(true);
+
+        try {
+            purchaseTransaction(vendingMachine, vendingMachine.getProductList().get("C"), Change.FIFTY_PENCE);
+            fail("InsufficientChangeException was expected.");
+        } catch (InsufficientChangeException e) {
+            assertTrue(e.getMessage().contains("1.20 more"));
+            assertEquals(0, e.getStackTrace().length);
+        } catch (OutOfStockException | ChangeNotAcceptedException e) {
+            fail(e.getMessage());
+        }
+    }
+
     /**
      * Convenience method to purchasing a product using a single coin
      *
@@ -0,0 +1,73 @@
+package com.acme.commerce;
+
+import com.acme.commerce.vendingmachine.Change;
+import com.acme.commerce.vendingmachine.Product;
+import com.acme.commerce.vendingmachine.SessionVendingMachine;
+import com.acme.commerce.vendingmachine.VendingSession;
+import com.acme.commerce.vendingmachine.exception.InsufficientChangeException;
+import com.acme.commerce.vendingmachine.impl.ConcurrentVendingMachineImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author William Brown
+ * @since 1.0
+ */
+public class VendingSessionTest {
+
+    @Test
+    public void sessionsKeepTheirOwnBalance() throws Exception {
+        SessionVendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+
+        try (VendingSession left = vendingMachine.openSession();
+             VendingSession right = vendingMachine.openSession()) {
+            left.insertChange(Change.FIFTY_PENCE);
+            right.insertChange(Change.TEN_PENCE);
+            right.insertChange(Change.TEN_PENCE);
+
+            assertEquals(50, left.getBalance());
+            assertEquals(20, right.getBalance());
+            assertEquals(0, vendingMachine.getBalance());
+        }
+    }
+
+    @Test
+    public void coinsReachTheCashBoxOnlyOnPurchase() throws Exception {
+        SessionVendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+        Product product = vendingMachine.getProductList().get("B");
+
+        try (VendingSession session = vendingMachine.openSession()) {
+            session.insertChange(Change.ONE_POUND);
+
+            assertEquals(Integer.valueOf(5), vendingMachine.getChangeAvailable().get(Change.ONE_POUND));
+
+            session.purchase(product);
+
+            assertEquals(0, session.getBalance());
+            assertEquals(Integer.valueOf(6), vendingMachine.getChangeAvailable().get(Change.ONE_POUND));
+        }
+    }
+
+    @Test
+    public void closingASessionRefundsIt() throws Exception {
+        SessionVendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+        VendingSession session = vendingMachine.openSession();
+
+        session.insertChange(Change.TWENTY_PENCE);
+        session.close();
+
+        assertEquals(0, session.getBalance());
+        assertEquals(Integer.valueOf(5), vendingMachine.getChangeAvailable().get(Change.TWENTY_PENCE));
+    }
+
+    @Test(expected = InsufficientChangeException.class)
+    public void aSessionCannotSpendAnotherSessionsCoins() throws Exception {
+        SessionVendingMachine vendingMachine = new ConcurrentVendingMachineImpl(true);
+        VendingSession payer = vendingMachine.openSession();
+        VendingSession buyer = vendingMachine.openSession();
+
+        payer.insertChange(Change.ONE_POUND);
+        buyer.purchase(vendingMachine.getProductList().get("A"));
+    }
+}